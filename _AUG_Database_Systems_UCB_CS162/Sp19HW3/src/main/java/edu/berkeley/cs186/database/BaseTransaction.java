@@ -97,6 +97,16 @@ public abstract class BaseTransaction implements AutoCloseable {
      */
     public abstract boolean indexExists(String tableName, String columnName);
 
+    /**
+     * Returns the columns of every index on tableName, in the order of the key
+     * fields of the index. An index on several columns is named by its columns
+     * joined with commas wherever a column name of an index is expected.
+     *
+     * @param tableName the name of the table
+     * @return the columns of each index
+     */
+    public abstract List<List<String>> getIndexColumns(String tableName);
+
     public abstract Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException;
 
     public abstract Iterator<Record> sortedScanFrom(String tableName, String columnName,
@@ -105,6 +115,20 @@ public abstract class BaseTransaction implements AutoCloseable {
     public abstract Iterator<Record> lookupKey(String tableName, String columnName,
                                DataBox key) throws DatabaseException;
 
+    public abstract Iterator<Record> rangeScan(String tableName, String columnName,
+                               DataBox lo, boolean loInclusive,
+                               DataBox hi, boolean hiInclusive) throws DatabaseException;
+
+    /**
+     * Returns the records made of the keys of the index columnName of tableName
+     * between lo and hi, without reading the table: each record holds the
+     * values of the index columns, in the order of the key fields. Only a query
+     * that reads no other column can use it.
+     */
+    public abstract Iterator<Record> indexOnlyScan(String tableName, String columnName,
+                               DataBox lo, boolean loInclusive,
+                               DataBox hi, boolean hiInclusive) throws DatabaseException;
+
     public abstract boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException;
 
     public abstract RecordId addRecord(String tableName, List<DataBox> values) throws DatabaseException;
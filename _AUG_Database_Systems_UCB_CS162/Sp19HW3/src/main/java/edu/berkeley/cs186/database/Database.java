@@ -5,6 +5,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -12,9 +13,12 @@ import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.*;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeException;
+import edu.berkeley.cs186.database.index.HashIndex;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryPlanException;
@@ -22,7 +26,10 @@ import edu.berkeley.cs186.database.query.SortOperator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
+import edu.berkeley.cs186.database.table.ScanPredicate;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.SpillFile;
+import edu.berkeley.cs186.database.table.StringDictionary;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
@@ -30,6 +37,7 @@ import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 public class Database {
     private Map<String, Table> tableLookup;
     private Map<String, BPlusTree> indexLookup;
+    private Map<String, HashIndex> hashIndexLookup;
     private Map<String, List<String>> tableIndices;
     private Map<Long, Transaction> activeTransactions;
     private long numTransactions;
@@ -73,6 +81,7 @@ public class Database {
         numTransactions = 0;
         tableLookup = new ConcurrentHashMap<>();
         indexLookup = new ConcurrentHashMap<>();
+        hashIndexLookup = new ConcurrentHashMap<>();
         tableIndices = new ConcurrentHashMap<>();
         activeTransactions = new ConcurrentHashMap<>();
 
@@ -96,7 +105,7 @@ public class Database {
                     tableLookup.put(tableName, newTable(tableName, f.toPath().toString(),
                             lockContext.childContext("table-" + tableName), initTransaction));
                     if (!tableIndices.containsKey(tableName)) {
-                        tableIndices.put(tableName, new ArrayList<>());
+                        tableIndices.put(tableName, new CopyOnWriteArrayList<>());
                     }
                 } else if (fName.endsWith(BPlusTree.FILENAME_EXTENSION)) {
                     int lastIndex = fName.lastIndexOf(BPlusTree.FILENAME_EXTENSION);
@@ -105,9 +114,14 @@ public class Database {
                     indexLookup.put(indexName, new BPlusTree(f.toString(), getIndexContext(indexName),
                             initTransaction));
                     if (!tableIndices.containsKey(tableName)) {
-                        tableIndices.put(tableName, new ArrayList<>());
+                        tableIndices.put(tableName, new CopyOnWriteArrayList<>());
                     }
                     tableIndices.get(tableName).add(indexName);
+                } else if (fName.endsWith(HashIndex.FILENAME_EXTENSION)) {
+                    int lastIndex = fName.lastIndexOf(HashIndex.FILENAME_EXTENSION);
+                    String indexName = fName.substring(0, lastIndex);
+                    hashIndexLookup.put(indexName, new HashIndex(f.toString(), getHashIndexContext(indexName),
+                                        initTransaction));
                 }
             }
         }
@@ -128,8 +142,13 @@ public class Database {
                 t.close();
             }
 
+            for (HashIndex h : this.hashIndexLookup.values()) {
+                h.close();
+            }
+
             this.tableLookup.clear();
             this.indexLookup.clear();
+            this.hashIndexLookup.clear();
             this.tableIndices.clear();
         }
     }
@@ -146,6 +165,10 @@ public class Database {
         return lockManager.databaseContext().childContext("index-" + index);
     }
 
+    private LockContext getHashIndexContext(String index) {
+        return lockManager.databaseContext().childContext("hash-index-" + index);
+    }
+
     /**
      * Start a new transaction.
      *
@@ -169,9 +192,13 @@ public class Database {
         long transNum;
         boolean active;
         boolean blocked;
-        HashMap<String, Table> tempTables;
+        Map<String, Table> tempTables;
         HashMap<String, String> aliasMaps;
         long tempTableCounter;
+        // Spill files remove themselves when closed, possibly from worker
+        // threads, so this is a concurrent set.
+        Set<SpillFile> spillFiles;
+        long spillFileCounter;
 
         final ReentrantLock transactionLock = new ReentrantLock();
         final Condition unblocked = transactionLock.newCondition();
@@ -180,9 +207,12 @@ public class Database {
             this.transNum = tNum;
             this.active = true;
             this.blocked = false;
-            this.tempTables = new HashMap<String, Table>();
+            // Operators may create temp tables while worker threads read others.
+            this.tempTables = new ConcurrentHashMap<String, Table>();
             this.aliasMaps = new HashMap<String, String>();
             this.tempTableCounter = 0;
+            this.spillFiles = ConcurrentHashMap.newKeySet();
+            this.spillFileCounter = 0;
         }
 
         public long getTransNum() {
@@ -197,6 +227,7 @@ public class Database {
             assert(this.active);
 
             deleteAllTempTables();
+            deleteAllSpillFiles();
             this.active = false;
             Database.this.activeTransactions.remove(this.transNum);
         }
@@ -218,11 +249,12 @@ public class Database {
             Path path = Paths.get(fileDir, tableName + Table.FILENAME_EXTENSION);
             Database.this.tableLookup.put(tableName, newTable(tableName, s, path.toString(), tableContext,
                                           this));
-            Database.this.tableIndices.put(tableName, new ArrayList<>());
+            Database.this.tableIndices.put(tableName, new CopyOnWriteArrayList<>());
         }
 
         /**
          * Create a new table in this database with an index on each of the given column names.
+         * The values of an indexed column may repeat (see BPlusTree#add).
          * @param s the table schema
          * @param tableName the name of the table
          * @param indexColumns the list of unique columnNames on the maintain an index on
@@ -230,23 +262,65 @@ public class Database {
          */
         public void createTableWithIndices(Schema s, String tableName,
                                            List<String> indexColumns) throws DatabaseException {
-            LockContext tableContext = getTableContext(tableName);
+            List<List<String>> indices = new ArrayList<>();
+            for (String col : indexColumns) {
+                indices.add(Collections.singletonList(col));
+            }
+            createTableWithCompositeIndices(s, tableName, indices);
+        }
 
-            List<String> schemaColNames = s.getFieldNames();
-            List<Type> schemaColType = s.getFieldTypes();
+        /**
+         * Create a new table in this database with a B+ tree index on each of indexColumns and a
+         * hash index on each of hashIndexColumns (see createHashIndex). A column may have both.
+         *
+         * @param s the table schema
+         * @param tableName the name of the table
+         * @param indexColumns the columns to maintain a B+ tree index on
+         * @param hashIndexColumns the columns to maintain a hash index on
+         * @throws DatabaseException
+         */
+        public void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+                                           List<String> hashIndexColumns) throws DatabaseException {
+            for (String col : hashIndexColumns) {
+                checkIndexColumns(s, Collections.singletonList(col));
+            }
+            if (new HashSet<>(hashIndexColumns).size() != hashIndexColumns.size()) {
+                throw new DatabaseException("Column desired for index has been duplicated");
+            }
+            createTableWithIndices(s, tableName, indexColumns);
+            for (String col : hashIndexColumns) {
+                createHashIndex(tableName, col);
+            }
+        }
 
-            HashSet<String> seenColNames = new HashSet<String>();
-            List<Integer> schemaColIndex = new ArrayList<Integer>();
-            for (int i = 0; i < indexColumns.size(); i++) {
-                String col = indexColumns.get(i);
-                if (!schemaColNames.contains(col)) {
-                    throw new DatabaseException("Column desired for index does not exist");
-                }
-                if (seenColNames.contains(col)) {
+        /**
+         * Create a new table in this database with an index on each of the given lists of column
+         * names. The keys of an index on several columns are the tuples of the values of those
+         * columns (see TupleDataBox), ordered by the first column, then by the second, and so on,
+         * and the index is named by its columns joined with commas (e.g. "tenant_id,ts") wherever
+         * a column name of an index is expected.
+         *
+         * The leaves of an index hold its keys, so columns that are only ever read can be
+         * included in an index by appending them to its columns: the index on
+         * ("tenant_id", "ts", "amount") orders by tenant_id and ts like the index on those two,
+         * and also answers queries that read nothing but these three columns without reading
+         * the table (see IndexScanOperator).
+         *
+         * @param s the table schema
+         * @param tableName the name of the table
+         * @param indexColumns the column names of each index, none of them twice
+         * @throws DatabaseException
+         */
+        public void createTableWithCompositeIndices(Schema s, String tableName,
+                List<List<String>> indexColumns) throws DatabaseException {
+            LockContext tableContext = getTableContext(tableName);
+
+            HashSet<List<String>> seenIndices = new HashSet<>();
+            for (List<String> cols : indexColumns) {
+                checkIndexColumns(s, cols);
+                if (!seenIndices.add(cols)) {
                     throw new DatabaseException("Column desired for index has been duplicated");
                 }
-                seenColNames.add(col);
-                schemaColIndex.add(schemaColNames.indexOf(col));
             }
 
             if (Database.this.tableLookup.containsKey(tableName)) {
@@ -256,23 +330,253 @@ public class Database {
             Path path = Paths.get(fileDir, tableName + Table.FILENAME_EXTENSION);
             Database.this.tableLookup.put(tableName, newTable(tableName, s, path.toString(), tableContext,
                                           this));
-            Database.this.tableIndices.put(tableName, new ArrayList<>());
-            for (int i : schemaColIndex) {
-                String colName = schemaColNames.get(i);
-                Type colType = schemaColType.get(i);
-                String indexName = tableName + "," + colName;
-                Path p = Paths.get(Database.this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
-                LockContext indexContext = getIndexContext(indexName);
+            Database.this.tableIndices.put(tableName, new CopyOnWriteArrayList<>());
+            for (List<String> cols : indexColumns) {
+                String indexName = tableName + "," + String.join(",", cols);
+                Database.this.indexLookup.put(indexName, newIndex(s, indexName, cols));
+                Database.this.tableIndices.get(tableName).add(indexName);
+            }
+        }
+
+        /**
+         * Create an index on column columnName of the existing table tableName, and load it
+         * with the records of the table. See createCompositeIndex.
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @param fillFactor the fraction of each leaf of the index to fill
+         * @throws DatabaseException
+         */
+        public void createIndex(String tableName, String columnName,
+                                float fillFactor) throws DatabaseException {
+            createCompositeIndex(tableName, Collections.singletonList(columnName), fillFactor);
+        }
+
+        /**
+         * Create an index on columnNames of the existing table tableName (see
+         * createTableWithCompositeIndices), and load it with the records of the table.
+         *
+         * Inserting the records one at a time would descend the tree once per record, to
+         * leaves in random order. Instead, the table is scanned once, its (key, record id)
+         * pairs are sorted by the external sort (see SortOperator), and the sorted pairs are
+         * bulk loaded into the tree from left to right (see BPlusTree#bulkAdd), which fills
+         * each leaf to fillFactor and writes it once.
+         *
+         * The build holds the table's monitor from the scan until the index is registered.
+         * addRecord, deleteRecord and updateRecord change the table and its indexes under
+         * the same monitor, so each of them happens either wholly before the scan, and is
+         * in it, or wholly after the registration, and updates the new index itself. (The
+         * S lock requested through LockUtil adds nothing until table locks are
+         * implemented.) If the build fails, the half built index file is deleted.
+         *
+         * @param tableName the name of the table
+         * @param columnNames the columns to index, none of them twice
+         * @param fillFactor the fraction of each leaf of the index to fill
+         * @throws DatabaseException
+         */
+        public void createCompositeIndex(String tableName, List<String> columnNames,
+                                         float fillFactor) throws DatabaseException {
+            assert(this.active);
+            while (aliasMaps.containsKey(tableName)) {
+                tableName = aliasMaps.get(tableName);
+            }
+            if (!Database.this.tableLookup.containsKey(tableName)) {
+                throw new DatabaseException("Table: " + tableName + " does not exist");
+            }
+            Table tab = Database.this.tableLookup.get(tableName);
+            checkIndexColumns(tab.getSchema(), columnNames);
+            String indexName = tableName + "," + String.join(",", columnNames);
+            if (Database.this.indexLookup.containsKey(indexName)) {
+                throw new DatabaseException("Index already exists");
+            }
+
+            LockUtil.ensureSufficientLockHeld(this, getTableContext(tableName), LockType.S);
+            synchronized (tab) {
+                BPlusTree tree = newIndex(tab.getSchema(), indexName, columnNames);
+                boolean built = false;
                 try {
-                    Database.this.indexLookup.put(indexName, new BPlusTree(p.toString(), colType,
-                                                  BPlusTree.maxOrder(Page.pageSize, colType), indexContext, this));
-                    Database.this.tableIndices.get(tableName).add(indexName);
-                } catch (BPlusTreeException e) {
-                    throw new DatabaseException(e.getMessage());
+                    bulkLoadIndex(tab, tree, columnNames, fillFactor);
+                    built = true;
+                } finally {
+                    if (!built) {
+                        tree.close();
+                        Paths.get(fileDir, indexName + BPlusTree.FILENAME_EXTENSION).toFile().delete();
+                    }
                 }
+                Database.this.indexLookup.put(indexName, tree);
+                Database.this.tableIndices.get(tableName).add(indexName);
+            }
+        }
+
+        /**
+         * Loads tree with the (key, record id) pairs of every record of tab, sorted (see
+         * createCompositeIndex).
+         */
+        private void bulkLoadIndex(Table tab, BPlusTree tree, List<String> columnNames,
+                                   float fillFactor) throws DatabaseException {
+            String entriesTableName = writeIndexEntries(tab, columnNames);
+            try {
+                Comparator<Record> comparator = (r1, r2) -> {
+                    for (int i = 0; i < r1.getValues().size(); ++i) {
+                        int c = r1.getValues().get(i).compareTo(r2.getValues().get(i));
+                        if (c != 0) {
+                            return c;
+                        }
+                    }
+                    return 0;
+                };
+                SortOperator sortOperator = new SortOperator(this, entriesTableName, comparator);
+                Iterator<Record> entries = sortOperator.iterator(Long.MAX_VALUE);
+                int numColumns = columnNames.size();
+                tree.bulkAdd(this, new Iterator<Pair<DataBox, RecordId>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Pair<DataBox, RecordId> next() {
+                        List<DataBox> values = entries.next().getValues();
+                        List<DataBox> key = values.subList(0, numColumns);
+                        RecordId rid = new RecordId(values.get(numColumns).getInt(),
+                                                    (short) values.get(numColumns + 1).getInt());
+                        return new Pair<>(key.size() == 1 ? key.get(0) : new TupleDataBox(key), rid);
+                    }
+                }, fillFactor);
+            } catch (QueryPlanException | BPlusTreeException e) {
+                throw new DatabaseException(e.getMessage());
+            } finally {
+                deleteTempTable(entriesTableName);
             }
         }
 
+        /**
+         * Create a hash index on column columnName of the existing table tableName, and load it
+         * with the records of the table.
+         *
+         * A hash index answers only equality lookups, but reads a single page for each (see
+         * HashIndex), where a B+ tree reads a page per level. lookupKey and contains go through
+         * the hash index of a column that has one, and the query planner weighs it against the
+         * B+ tree index for an EQUALS predicate (see HashIndexScanOperator). Range scans, sorted
+         * scans and indexes on several columns need a B+ tree.
+         *
+         * Every add to a hash index touches one bucket, wherever it is, so the records are
+         * added in page order, without sorting them first (compare createCompositeIndex).
+         * As there, the build holds the table's monitor, under which every writer changes
+         * the table and its indexes, until the index is registered, so each record is added
+         * exactly once; and a failed build deletes the index file.
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @throws DatabaseException
+         */
+        public void createHashIndex(String tableName, String columnName) throws DatabaseException {
+            assert(this.active);
+            while (aliasMaps.containsKey(tableName)) {
+                tableName = aliasMaps.get(tableName);
+            }
+            if (!Database.this.tableLookup.containsKey(tableName)) {
+                throw new DatabaseException("Table: " + tableName + " does not exist");
+            }
+            Table tab = Database.this.tableLookup.get(tableName);
+            Schema s = tab.getSchema();
+            checkIndexColumns(s, Collections.singletonList(columnName));
+            String indexName = tableName + "," + columnName;
+            if (Database.this.hashIndexLookup.containsKey(indexName)) {
+                throw new DatabaseException("Index already exists");
+            }
+
+            int offset = s.getFieldNames().indexOf(columnName);
+            Path p = Paths.get(Database.this.fileDir, indexName + HashIndex.FILENAME_EXTENSION);
+            LockUtil.ensureSufficientLockHeld(this, getTableContext(tableName), LockType.S);
+            synchronized (tab) {
+                HashIndex index = new HashIndex(p.toString(), s.getFieldTypes().get(offset),
+                                                getHashIndexContext(indexName), this);
+                boolean built = false;
+                try {
+                    Iterator<RecordId> rids = tab.ridIterator(this);
+                    while (rids.hasNext()) {
+                        RecordId rid = rids.next();
+                        index.add(this, tab.getRecord(this, rid).getValues().get(offset), rid);
+                    }
+                    built = true;
+                } finally {
+                    if (!built) {
+                        index.close();
+                        p.toFile().delete();
+                    }
+                }
+                Database.this.hashIndexLookup.put(indexName, index);
+            }
+        }
+
+        /**
+         * Writes the index entries of every record of tab to a new temp table, and returns
+         * its name: the values of columnNames of the record, followed by the page number and
+         * entry number of its record id. The table is scanned in page order, and the temp
+         * table is written a page at a time.
+         */
+        private String writeIndexEntries(Table tab, List<String> columnNames) throws DatabaseException {
+            Schema s = tab.getSchema();
+            List<String> fieldNames = new ArrayList<>(columnNames);
+            List<Type> fieldTypes = new ArrayList<>();
+            List<Integer> offsets = new ArrayList<>();
+            for (String col : columnNames) {
+                offsets.add(s.getFieldNames().indexOf(col));
+                fieldTypes.add(s.getFieldTypes().get(offsets.get(offsets.size() - 1)));
+            }
+            fieldNames.add("ridPageNum");
+            fieldNames.add("ridEntryNum");
+            fieldTypes.add(Type.intType());
+            fieldTypes.add(Type.intType());
+            String entriesTableName = createTempTable(new Schema(fieldNames, fieldTypes));
+
+            int recordsPerPage = getNumEntriesPerPage(entriesTableName);
+            List<Record> page = new ArrayList<>(recordsPerPage);
+            Iterator<RecordId> rids = tab.ridIterator(this);
+            while (rids.hasNext()) {
+                RecordId rid = rids.next();
+                List<DataBox> values = tab.getRecord(this, rid).getValues();
+                List<DataBox> entry = new ArrayList<>();
+                for (int offset : offsets) {
+                    entry.add(values.get(offset));
+                }
+                entry.add(new IntDataBox(rid.getPageNum()));
+                entry.add(new IntDataBox(rid.getEntryNum()));
+                page.add(new Record(entry));
+                if (page.size() == recordsPerPage || !rids.hasNext()) {
+                    fillDataPage(entriesTableName, allocDataPages(entriesTableName, 1).get(0), page);
+                    page.clear();
+                }
+            }
+            return entriesTableName;
+        }
+
+        /**
+         * Create a new table in this database in which each of the given string
+         * columns is dictionary encoded with codes of codeSizeInBytes (2 or 4)
+         * bytes. See StringDictionary.
+         *
+         * @param s the table schema
+         * @param tableName the name of the table
+         * @param dictionaryColumns the string columns to dictionary encode
+         * @param codeSizeInBytes the size of a dictionary code, either 2 or 4
+         * @throws DatabaseException
+         */
+        public void createTableWithDictionaries(Schema s, String tableName, List<String> dictionaryColumns,
+                                                int codeSizeInBytes) throws DatabaseException {
+            LockContext tableContext = getTableContext(tableName);
+
+            if (Database.this.tableLookup.containsKey(tableName)) {
+                throw new DatabaseException("Table name already exists");
+            }
+
+            Path path = Paths.get(fileDir, tableName + Table.FILENAME_EXTENSION);
+            Database.this.tableLookup.put(tableName, new Table(tableName, s, path.toString(), tableContext,
+                                          this, dictionaryColumns, codeSizeInBytes));
+            Database.this.tableIndices.put(tableName, new CopyOnWriteArrayList<>());
+        }
+
         /**
          * Delete a table in this database.
          *
@@ -284,16 +588,20 @@ public class Database {
                 return false;
             }
 
-            Database.this.tableLookup.get(tableName).close();
+            Table table = Database.this.tableLookup.get(tableName);
+            table.close();
             Database.this.tableLookup.remove(tableName);
 
             File f = new File(fileDir + tableName + Table.FILENAME_EXTENSION);
             f.delete();
 
-            Iterator<String> indices = Database.this.tableIndices.get(tableName).iterator();
-            while (indices.hasNext()) {
-                String indexName = indices.next();
-                indices.remove();
+            for (int i = 0; i < table.getSchema().getFieldNames().size(); ++i) {
+                if (table.getDictionary(i) != null) {
+                    new File(table.getDictionary(i).getFilename()).delete();
+                }
+            }
+
+            for (String indexName : Database.this.tableIndices.get(tableName)) {
                 Database.this.indexLookup.get(indexName).close();
                 Database.this.indexLookup.remove(indexName);
 
@@ -302,6 +610,11 @@ public class Database {
             }
             Database.this.tableIndices.remove(tableName);
 
+            for (String indexName : getHashIndexNames(tableName)) {
+                Database.this.hashIndexLookup.remove(indexName).close();
+                new File(fileDir + indexName + HashIndex.FILENAME_EXTENSION).delete();
+            }
+
             return true;
         }
 
@@ -367,6 +680,33 @@ public class Database {
                                 this));
         }
 
+        /**
+         * Creates a new, empty spill file for records of schema `schema`. The
+         * file is deleted when it is closed or, at the latest, when this
+         * transaction ends. Closing it also drops it from this transaction.
+         */
+        public synchronized SpillFile createSpillFile(Schema schema) throws DatabaseException {
+            assert(this.active);
+
+            Path dir = Paths.get(Database.this.fileDir, "temp");
+            File f = new File(dir.toAbsolutePath().toString());
+            if (!f.exists()) {
+                f.mkdirs();
+            }
+
+            String filename = "spill" + this.transNum + "_" + spillFileCounter + SpillFile.FILENAME_EXTENSION;
+            spillFileCounter++;
+            SpillFile spillFile = new SpillFile(dir.resolve(filename).toString(), schema) {
+                @Override
+                public void close() {
+                    super.close();
+                    Transaction.this.spillFiles.remove(this);
+                }
+            };
+            this.spillFiles.add(spillFile);
+            return spillFile;
+        }
+
         public boolean indexExists(String tableName, String columnName) {
             try {
                 resolveIndexFromName(tableName, columnName);
@@ -376,6 +716,18 @@ public class Database {
             return true;
         }
 
+        /**
+         * Returns whether column columnName of tableName has a hash index (see createHashIndex).
+         */
+        public boolean hashIndexExists(String tableName, String columnName) {
+            try {
+                resolveHashIndexFromName(tableName, columnName);
+            } catch (DatabaseException e) {
+                return false;
+            }
+            return true;
+        }
+
         public Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException {
             Table tab = getTable(tableName);
             try {
@@ -399,14 +751,66 @@ public class Database {
             return new RecordIterator(this, tab, index.getSecond().scanGreaterEqual(this, startValue));
         }
 
+        /**
+         * Returns the records of tableName whose value of columnName is key, through the hash
+         * index of columnName if it has one, and its B+ tree index if not.
+         */
         public Iterator<Record> lookupKey(String tableName, String columnName,
                                           DataBox key) throws DatabaseException {
             Table tab = getTable(tableName);
+            if (hashIndexExists(tableName, columnName)) {
+                HashIndex index = resolveHashIndexFromName(tableName, columnName);
+                return new RecordIterator(this, tab, index.scanEqual(this, key));
+            }
             Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
             return new RecordIterator(this, tab, index.getSecond().scanEqual(this, key));
         }
 
+        /**
+         * Returns the records of tableName whose value of columnName lies
+         * between lo and hi (see BPlusTree#scanRange), in order of that value.
+         * A null bound leaves that side of the range open.
+         */
+        public Iterator<Record> rangeScan(String tableName, String columnName,
+                                          DataBox lo, boolean loInclusive,
+                                          DataBox hi, boolean hiInclusive) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            return new RecordIterator(this, tab, index.getSecond().scanRange(this, lo, loInclusive,
+                                      hi, hiInclusive));
+        }
+
+        /**
+         * Returns an iterator over the keys of the index columnName of tableName
+         * between lo and hi (see rangeScan), each as a record of the values of
+         * the index columns. No page of the table is read.
+         */
+        public Iterator<Record> indexOnlyScan(String tableName, String columnName,
+                                              DataBox lo, boolean loInclusive,
+                                              DataBox hi, boolean hiInclusive) throws DatabaseException {
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            Iterator<DataBox> keys = index.getSecond().scanRangeKeys(this, lo, loInclusive, hi, hiInclusive);
+            return new Iterator<Record>() {
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public Record next() {
+                    DataBox key = keys.next();
+                    if (key instanceof TupleDataBox) {
+                        return new Record(((TupleDataBox) key).getValues());
+                    }
+                    return new Record(Collections.singletonList(key));
+                }
+            };
+        }
+
         public boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException {
+            if (hashIndexExists(tableName, columnName)) {
+                return resolveHashIndexFromName(tableName, columnName).get(this, key).isPresent();
+            }
             Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
             return index.getSecond().get(this, key).isPresent();
         }
@@ -415,21 +819,48 @@ public class Database {
             assert(this.active);
 
             Table tab = getTable(tableName);
-            RecordId rid = tab.addRecord(this, values);
-            Schema s = tab.getSchema();
-            List<String> colNames = s.getFieldNames();
-
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
-                    try {
-                        resolveIndexFromName(tableName, col).getSecond().put(this, values.get(i), rid);
-                    } catch (BPlusTreeException e) {
-                        throw new DatabaseException(e.getMessage());
-                    }
+            synchronized (tab) {
+                RecordId rid = tab.addRecord(this, values);
+                addIndexEntries(tableName, values, rid);
+                return rid;
+            }
+        }
+
+        /**
+         * Compacts table tableName into as few pages as possible (see
+         * Table#compact) and repoints every index on the table at the new
+         * record ids of the records that were moved.
+         *
+         * Compaction stops the world for the table: the moves and the
+         * repointing run under the table's monitor, which every writer also
+         * holds while it changes the table and its indexes (see addRecord),
+         * so no write can slip in between a move and its repointing, and
+         * every other record operation on the table waits until compaction
+         * is done. (The X lock requested through LockUtil adds nothing until
+         * table locks are implemented.)
+         *
+         * @param tableName the name of the table to compact
+         * @return the number of records that were moved
+         * @throws DatabaseException
+         */
+        public int compactTable(String tableName) throws DatabaseException {
+            assert(this.active);
+
+            Table tab = getTable(tableName);
+            LockUtil.ensureSufficientLockHeld(this, getTableContext(tableName), LockType.X);
+            synchronized (tab) {
+                Map<RecordId, RecordId> moved = tab.compact(this);
+                if (getIndexColumns(tableName).isEmpty() && getHashIndexNames(tableName).isEmpty()) {
+                    return moved.size();
+                }
+
+                for (Map.Entry<RecordId, RecordId> move : moved.entrySet()) {
+                    List<DataBox> values = tab.getRecord(this, move.getValue()).getValues();
+                    removeIndexEntries(tableName, values, move.getKey());
+                    addIndexEntries(tableName, values, move.getValue());
                 }
+                return moved.size();
             }
-            return rid;
         }
 
         public int getNumMemoryPages() throws DatabaseException {
@@ -441,16 +872,10 @@ public class Database {
             assert(this.active);
 
             Table tab = getTable(tableName);
-            Schema s = tab.getSchema();
 
-            Record rec = tab.deleteRecord(this, rid);
-            List<DataBox> values = rec.getValues();
-            List<String> colNames = s.getFieldNames();
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
-                    resolveIndexFromName(tableName, col).getSecond().remove(this, values.get(i));
-                }
+            synchronized (tab) {
+                Record rec = tab.deleteRecord(this, rid);
+                removeIndexEntries(tableName, rec.getValues(), rid);
             }
 
             return rid;
@@ -466,6 +891,40 @@ public class Database {
             return getTable(tableName).iterator(this);
         }
 
+        public List<Integer> getDataPageNums(String tableName) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).getDataPageNums(this);
+        }
+
+        public List<Record> getPageRecords(String tableName, int pageNum) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).getPageRecords(this, pageNum);
+        }
+
+        public List<Record> getPageRecords(String tableName, int pageNum,
+                                           ScanPredicate predicate) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).getPageRecords(this, pageNum, predicate);
+        }
+
+        public ScanPredicate compilePredicate(String tableName, List<Integer> columnIndices,
+                                              List<QueryPlan.PredicateOperator> operators,
+                                              List<DataBox> values) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).compilePredicate(columnIndices, operators, values);
+        }
+
+        public List<Integer> allocDataPages(String tableName, int numPages) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).allocDataPages(this, numPages);
+        }
+
+        public void fillDataPage(String tableName, int pageNum,
+                                 List<Record> records) throws DatabaseException {
+            assert(this.active);
+            getTable(tableName).fillDataPage(this, pageNum, records);
+        }
+
         public RecordId updateRecord(String tableName, List<DataBox> values,
                                      RecordId rid)  throws DatabaseException {
             return runUpdateRecord(tableName, values, rid);
@@ -520,24 +979,11 @@ public class Database {
                                          RecordId rid) throws DatabaseException {
             assert(this.active);
             Table tab = getTable(tableName);
-            Schema s = tab.getSchema();
 
-            Record rec = tab.updateRecord(this, values, rid);
-
-            List<DataBox> oldValues = rec.getValues();
-            List<String> colNames = s.getFieldNames();
-
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
-                    BPlusTree tree = resolveIndexFromName(tableName, col).getSecond();
-                    tree.remove(this, oldValues.get(i));
-                    try {
-                        tree.put(this, values.get(i), rid);
-                    } catch (BPlusTreeException e) {
-                        throw new DatabaseException(e.getMessage());
-                    }
-                }
+            synchronized (tab) {
+                Record rec = tab.updateRecord(this, values, rid);
+                removeIndexEntries(tableName, rec.getValues(), rid);
+                addIndexEntries(tableName, values, rid);
             }
 
             return rid;
@@ -570,7 +1016,16 @@ public class Database {
 
         public int getEntrySize(String tableName) throws DatabaseException {
             assert(this.active);
-            return getTable(tableName).getSchema().getSizeInBytes();
+            return getTable(tableName).getRecordSizeInBytes();
+        }
+
+        /**
+         * Returns the dictionary of column columnIndex of table tableName, or
+         * null if that column is not dictionary encoded.
+         */
+        public StringDictionary getDictionary(String tableName, int columnIndex) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).getDictionary(columnIndex);
         }
 
         public long getNumRecords(String tableName) throws DatabaseException {
@@ -583,6 +1038,15 @@ public class Database {
             return this.resolveIndexFromName(tableName, columnName).getSecond().getNumPages();
         }
 
+        /**
+         * Returns the number of pages that a lookup in the hash index of columnName of
+         * tableName reads (see HashIndex#getPagesPerLookup).
+         */
+        public int getHashIndexPagesPerLookup(String tableName, String columnName) throws DatabaseException {
+            assert(this.active);
+            return this.resolveHashIndexFromName(tableName, columnName).getPagesPerLookup();
+        }
+
         public Schema getSchema(String tableName) throws DatabaseException {
             assert(this.active);
             return getTable(tableName).getSchema();
@@ -600,8 +1064,152 @@ public class Database {
             return new Schema(newColumnNames, schema.getFieldTypes());
         }
 
+        /**
+         * Returns the columns of every index on table tableName, in the order of the key
+         * fields of the index.
+         */
+        public List<List<String>> getIndexColumns(String tableName) {
+            while (aliasMaps.containsKey(tableName)) {
+                tableName = aliasMaps.get(tableName);
+            }
+            List<List<String>> indexColumns = new ArrayList<>();
+            for (String indexName : Database.this.tableIndices.getOrDefault(tableName, Collections.emptyList())) {
+                List<String> names = Arrays.asList(indexName.split(","));
+                indexColumns.add(names.subList(1, names.size()));
+            }
+            return indexColumns;
+        }
+
+        /**
+         * Returns every index on table tableName, each with the key under which it holds the
+         * record with the given values: the value of the indexed column, or the tuple of the
+         * values of the indexed columns.
+         */
+        private List<Pair<BPlusTree, DataBox>> getIndexKeys(String tableName,
+                List<DataBox> values) throws DatabaseException {
+            List<String> colNames = getTable(tableName).getSchema().getFieldNames();
+            List<Pair<BPlusTree, DataBox>> keys = new ArrayList<>();
+            for (List<String> cols : getIndexColumns(tableName)) {
+                List<DataBox> key = new ArrayList<>();
+                for (String col : cols) {
+                    key.add(values.get(colNames.indexOf(col)));
+                }
+                BPlusTree tree = resolveIndexFromName(tableName, String.join(",", cols)).getSecond();
+                keys.add(new Pair<>(tree, key.size() == 1 ? key.get(0) : new TupleDataBox(key)));
+            }
+            return keys;
+        }
+
+        /**
+         * Adds the entries of the record rid, with the given values, to every index on table
+         * tableName, B+ tree and hash index alike.
+         */
+        private void addIndexEntries(String tableName, List<DataBox> values,
+                                     RecordId rid) throws DatabaseException {
+            for (Pair<BPlusTree, DataBox> index : getIndexKeys(tableName, values)) {
+                try {
+                    index.getFirst().add(this, index.getSecond(), rid);
+                } catch (BPlusTreeException e) {
+                    throw new DatabaseException(e.getMessage());
+                }
+            }
+            List<String> colNames = getTable(tableName).getSchema().getFieldNames();
+            for (String indexName : getHashIndexNames(tableName)) {
+                DataBox key = values.get(colNames.indexOf(indexName.split(",", 2)[1]));
+                Database.this.hashIndexLookup.get(indexName).add(this, key, rid);
+            }
+        }
+
+        /** Removes the entries that addIndexEntries added. */
+        private void removeIndexEntries(String tableName, List<DataBox> values,
+                                        RecordId rid) throws DatabaseException {
+            for (Pair<BPlusTree, DataBox> index : getIndexKeys(tableName, values)) {
+                try {
+                    index.getFirst().remove(this, index.getSecond(), rid);
+                } catch (BPlusTreeException e) {
+                    throw new DatabaseException(e.getMessage());
+                }
+            }
+            List<String> colNames = getTable(tableName).getSchema().getFieldNames();
+            for (String indexName : getHashIndexNames(tableName)) {
+                DataBox key = values.get(colNames.indexOf(indexName.split(",", 2)[1]));
+                Database.this.hashIndexLookup.get(indexName).remove(this, key, rid);
+            }
+        }
+
+        /** Returns the names of the hash indexes on table tableName (see createHashIndex). */
+        private List<String> getHashIndexNames(String tableName) {
+            while (aliasMaps.containsKey(tableName)) {
+                tableName = aliasMaps.get(tableName);
+            }
+            List<String> indexNames = new ArrayList<>();
+            for (String indexName : Database.this.hashIndexLookup.keySet()) {
+                if (indexName.startsWith(tableName + ",")) {
+                    indexNames.add(indexName);
+                }
+            }
+            return indexNames;
+        }
+
+        /**
+         * Throws a DatabaseException unless cols are one or more distinct columns of schema s.
+         */
+        private void checkIndexColumns(Schema s, List<String> cols) throws DatabaseException {
+            if (cols.isEmpty()) {
+                throw new DatabaseException("Index must be on at least one column");
+            }
+            for (String col : cols) {
+                if (!s.getFieldNames().contains(col)) {
+                    throw new DatabaseException("Column desired for index does not exist");
+                }
+            }
+            if (new HashSet<>(cols).size() != cols.size()) {
+                throw new DatabaseException("Column desired for index has been duplicated");
+            }
+        }
+
+        /**
+         * Creates the empty index named indexName on cols of a table of schema s. The keys of
+         * an index on several columns are tuples.
+         */
+        private BPlusTree newIndex(Schema s, String indexName, List<String> cols) throws DatabaseException {
+            List<Type> colTypes = new ArrayList<>();
+            for (String col : cols) {
+                colTypes.add(s.getFieldTypes().get(s.getFieldNames().indexOf(col)));
+            }
+            Type keyType = colTypes.size() == 1 ? colTypes.get(0) : Type.tupleType(colTypes);
+            Path p = Paths.get(Database.this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
+            try {
+                return new BPlusTree(p.toString(), keyType, BPlusTree.maxOrder(Page.pageSize, keyType),
+                                     getIndexContext(indexName), this);
+            } catch (BPlusTreeException e) {
+                throw new DatabaseException(e.getMessage());
+            }
+        }
+
         private Pair<String, BPlusTree> resolveIndexFromName(String tableName,
                 String columnName) throws DatabaseException {
+            String indexName = resolveIndexName(tableName, columnName);
+            if (Database.this.indexLookup.containsKey(indexName)) {
+                return new Pair<>(indexName, Database.this.indexLookup.get(indexName));
+            }
+            throw new DatabaseException("Index does not exist");
+        }
+
+        private HashIndex resolveHashIndexFromName(String tableName,
+                String columnName) throws DatabaseException {
+            String indexName = resolveIndexName(tableName, columnName);
+            if (Database.this.hashIndexLookup.containsKey(indexName)) {
+                return Database.this.hashIndexLookup.get(indexName);
+            }
+            throw new DatabaseException("Index does not exist");
+        }
+
+        /**
+         * Returns the name of the index on columnName of tableName (which may be aliases, and
+         * columnName may be qualified by the table), whether or not there is one.
+         */
+        private String resolveIndexName(String tableName, String columnName) throws DatabaseException {
             while (aliasMaps.containsKey(tableName)) {
                 tableName = aliasMaps.get(tableName);
             }
@@ -615,11 +1223,7 @@ public class Database {
                 }
                 columnName = columnName.split("\\.")[1];
             }
-            String indexName = tableName + "," + columnName;
-            if (Database.this.indexLookup.containsKey(indexName)) {
-                return new Pair<>(indexName, Database.this.indexLookup.get(indexName));
-            }
-            throw new DatabaseException("Index does not exist");
+            return tableName + "," + columnName;
         }
 
         private Table getTable(String tableName) throws DatabaseException {
@@ -652,6 +1256,13 @@ public class Database {
             f.delete();
         }
 
+        private synchronized void deleteAllSpillFiles() {
+            for (SpillFile spillFile : spillFiles) {
+                spillFile.close();
+            }
+            spillFiles.clear();
+        }
+
         private void deleteAllTempTables() {
             Set<String> keys = tempTables.keySet();
 
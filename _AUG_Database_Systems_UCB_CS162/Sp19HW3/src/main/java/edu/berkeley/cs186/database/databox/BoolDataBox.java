@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.databox;
 
+import edu.berkeley.cs186.database.common.Buffer;
+
 import java.nio.ByteBuffer;
 
 public class BoolDataBox extends DataBox {
@@ -25,6 +27,12 @@ public class BoolDataBox extends DataBox {
         return ByteBuffer.allocate(1).put(val).array();
     }
 
+    @Override
+    public int writeTo(Buffer buf, int offset) {
+        buf.put(offset, b ? (byte) 1 : (byte) 0);
+        return 1;
+    }
+
     @Override
     public String toString() {
         return new Boolean(b).toString();
@@ -3,6 +3,8 @@ package edu.berkeley.cs186.database.databox;
 import edu.berkeley.cs186.database.common.Buffer;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A DataBox is an element of one of the primitive types specified in
@@ -13,6 +15,8 @@ import java.nio.charset.Charset;
  *   - floats with new FloatDataBox(f), and
  *   - strings with new StringDataBox(s, n).
  *
+ * Index keys over several columns are TupleDataBoxes of the columns' values.
+ *
  * You can unwrap a databox by first pattern matching on its type and then
  * using one of getBool, getInt, getFloat, and getString:
  *
@@ -51,12 +55,24 @@ public abstract class DataBox implements Comparable<DataBox> {
     //     values (e.g. using ByteBuffer::putInt or ByteBuffer::putFloat).
     //   - The first byte of a serialized m-byte StringDataBox is the 4-byte
     //     number m. Then come the m bytes of the string.
+    //   - A TupleDataBox is serialized as its fields, one after the other.
     //
     // Note that when DataBoxes are serialized, they do not serialize their type.
     // That is, serialized DataBoxes are not self-descriptive; you need the type
     // of a Databox in order to parse it.
     public abstract byte[] toBytes();
 
+    /**
+     * Serializes this DataBox directly into buf starting at byte offset,
+     * using the same format as toBytes, but without allocating an intermediate
+     * byte array. The position of buf is not modified.
+     *
+     * @param buf the buffer to write into
+     * @param offset the offset in buf of the first byte to write
+     * @return the number of bytes written
+     */
+    public abstract int writeTo(Buffer buf, int offset);
+
     public static DataBox fromBytes(Buffer buf, Type type) {
         switch (type.getTypeId()) {
         case BOOL: {
@@ -76,6 +92,59 @@ public abstract class DataBox implements Comparable<DataBox> {
             String s = new String(bytes, Charset.forName("UTF-8"));
             return new StringDataBox(s, type.getSizeInBytes());
         }
+        case TUPLE: {
+            List<DataBox> values = new ArrayList<>();
+            for (Type t : type.getFieldTypes()) {
+                values.add(fromBytes(buf, t));
+            }
+            return new TupleDataBox(values);
+        }
+        default: {
+            String err = String.format("Unhandled TypeId %s.",
+                                       type.getTypeId().toString());
+            throw new IllegalArgumentException(err);
+        }
+        }
+    }
+
+    /**
+     * Reads a DataBox of type type out of buf starting at byte offset. This is
+     * the inverse of writeTo and, unlike fromBytes(buf, type), does not modify
+     * the position of buf.
+     *
+     * @param buf the buffer to read from
+     * @param offset the offset in buf of the first byte to read
+     * @param type the type of the serialized DataBox
+     * @return the decoded DataBox
+     */
+    public static DataBox fromBytes(Buffer buf, int offset, Type type) {
+        switch (type.getTypeId()) {
+        case BOOL: {
+            byte b = buf.get(offset);
+            assert (b == 0 || b == 1);
+            return new BoolDataBox(b == 1);
+        }
+        case INT: {
+            return new IntDataBox(buf.getInt(offset));
+        }
+        case FLOAT: {
+            return new FloatDataBox(buf.getFloat(offset));
+        }
+        case STRING: {
+            // One bulk get rather than a (page-synchronized) get per byte.
+            byte[] bytes = new byte[type.getSizeInBytes()];
+            buf.duplicate().position(offset).get(bytes);
+            String s = new String(bytes, Charset.forName("UTF-8"));
+            return new StringDataBox(s, bytes.length);
+        }
+        case TUPLE: {
+            List<DataBox> values = new ArrayList<>();
+            for (Type t : type.getFieldTypes()) {
+                values.add(fromBytes(buf, offset, t));
+                offset += t.getSizeInBytes();
+            }
+            return new TupleDataBox(values);
+        }
         default: {
             String err = String.format("Unhandled TypeId %s.",
                                        type.getTypeId().toString());
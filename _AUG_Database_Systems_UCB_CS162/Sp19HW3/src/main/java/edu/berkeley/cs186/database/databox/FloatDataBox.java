@@ -1,4 +1,7 @@
 package edu.berkeley.cs186.database.databox;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
 import java.nio.ByteBuffer;
 
 public class FloatDataBox extends DataBox {
@@ -23,6 +26,12 @@ public class FloatDataBox extends DataBox {
         return ByteBuffer.allocate(Float.BYTES).putFloat(f).array();
     }
 
+    @Override
+    public int writeTo(Buffer buf, int offset) {
+        buf.putFloat(offset, f);
+        return Float.BYTES;
+    }
+
     @Override
     public String toString() {
         return new Float(f).toString();
@@ -1,4 +1,7 @@
 package edu.berkeley.cs186.database.databox;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
 import java.nio.ByteBuffer;
 
 public class IntDataBox extends DataBox {
@@ -23,6 +26,12 @@ public class IntDataBox extends DataBox {
         return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
     }
 
+    @Override
+    public int writeTo(Buffer buf, int offset) {
+        buf.putInt(offset, i);
+        return Integer.BYTES;
+    }
+
     @Override
     public String toString() {
         return new Integer(i).toString();
@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.databox;
 
+import edu.berkeley.cs186.database.common.Buffer;
+
 import java.nio.charset.Charset;
 
 public class StringDataBox extends DataBox {
@@ -41,6 +43,8 @@ public class StringDataBox extends DataBox {
 
         if (m < s.length()) {
             this.s = s.substring(0, m);
+        } else if (m == s.length()) {
+            this.s = s;
         } else {
             this.s = String.format("%-" + m + "s", s);
         }
@@ -62,6 +66,16 @@ public class StringDataBox extends DataBox {
         return s.getBytes(Charset.forName("UTF-8"));
     }
 
+    @Override
+    public int writeTo(Buffer buf, int offset) {
+        // A page buffer synchronizes on its page for every call, so we write
+        // the whole string with one bulk put. The duplicate keeps buf's own
+        // position untouched.
+        byte[] bytes = toBytes();
+        buf.duplicate().position(offset).put(bytes);
+        return bytes.length;
+    }
+
     @Override
     public String toString() {
         return s;
@@ -0,0 +1,119 @@
+package edu.berkeley.cs186.database.databox;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A tuple of primitive DataBoxes: the key of an index on several columns.
+ *
+ * Tuples are ordered lexicographically: by their first fields, then by their
+ * second fields, and so on. A tuple that is a prefix of another comes before
+ * it, so the tuple (t) is the least of all tuples that start with t, and a
+ * scan of a B+ tree of tuples from (t) starts at the first of them. See
+ * comparePrefix for comparing a key against a prefix of it.
+ */
+public class TupleDataBox extends DataBox {
+    private List<DataBox> values;
+    private Type type;
+
+    public TupleDataBox(List<DataBox> values) {
+        List<Type> fieldTypes = new ArrayList<>();
+        for (DataBox d : values) {
+            fieldTypes.add(d.type());
+        }
+        this.type = Type.tupleType(fieldTypes);
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+    }
+
+    @Override
+    public Type type() {
+        return this.type;
+    }
+
+    /** Returns the fields of this tuple. */
+    public List<DataBox> getValues() {
+        return this.values;
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] bytes = new byte[this.type.getSizeInBytes()];
+        writeTo(ByteBuffer.wrap(bytes), 0);
+        return bytes;
+    }
+
+    @Override
+    public int writeTo(Buffer buf, int offset) {
+        int size = 0;
+        for (DataBox d : this.values) {
+            size += d.writeTo(buf, offset + size);
+        }
+        return size;
+    }
+
+    /**
+     * Compares the leading fields of this tuple against the fields of prefix,
+     * ignoring the rest: every tuple that starts with prefix compares equal to
+     * it.
+     */
+    public int comparePrefix(TupleDataBox prefix) {
+        if (prefix.values.size() > this.values.size()) {
+            return compareTo(prefix);
+        }
+        for (int i = 0; i < prefix.values.size(); ++i) {
+            int c = this.values.get(i).compareTo(prefix.values.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        List<String> ss = new ArrayList<>();
+        for (DataBox d : this.values) {
+            ss.add(d.toString());
+        }
+        return "(" + String.join(", ", ss) + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof TupleDataBox)) {
+            return false;
+        }
+        TupleDataBox t = (TupleDataBox) o;
+        return this.values.equals(t.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.values.hashCode();
+    }
+
+    @Override
+    public int compareTo(DataBox d) {
+        if (!(d instanceof TupleDataBox)) {
+            String err = String.format("Invalid comparison between %s and %s.",
+                                       toString(), d.toString());
+            throw new DataBoxException(err);
+        }
+        TupleDataBox t = (TupleDataBox) d;
+        int n = Math.min(this.values.size(), t.values.size());
+        for (int i = 0; i < n; ++i) {
+            int c = this.values.get(i).compareTo(t.values.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(this.values.size(), t.values.size());
+    }
+}
@@ -3,6 +3,9 @@ package edu.berkeley.cs186.database.databox;
 import edu.berkeley.cs186.database.common.Buffer;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -15,6 +18,10 @@ import java.util.Objects;
  *
  * Note that n-byte strings and m-byte strings are considered different types
  * when n != m.
+ *
+ * The keys of an index on several columns are tuples of those columns'
+ * values (Type.tupleType(fieldTypes)). A tuple type is never the type of a
+ * column of a table.
  */
 public class Type {
     // The type of this type.
@@ -23,9 +30,17 @@ public class Type {
     // The size (in bytes) of an element of this type.
     private int sizeInBytes;
 
+    // The types of the fields of a tuple type, and null for any other type.
+    private List<Type> fieldTypes;
+
     private Type(TypeId typeId, int sizeInBytes) {
+        this(typeId, sizeInBytes, null);
+    }
+
+    private Type(TypeId typeId, int sizeInBytes, List<Type> fieldTypes) {
         this.typeId = typeId;
         this.sizeInBytes = sizeInBytes;
+        this.fieldTypes = fieldTypes;
     }
 
     public static Type boolType() {
@@ -55,6 +70,25 @@ public class Type {
         return new Type(TypeId.STRING, n);
     }
 
+    /**
+     * The type of tuples of values of the given primitive types, in order. A
+     * tuple is serialized as its fields one after the other, so its size is
+     * the sum of theirs.
+     */
+    public static Type tupleType(List<Type> fieldTypes) {
+        if (fieldTypes.isEmpty()) {
+            throw new DataBoxException("Empty tuples are not supported.");
+        }
+        int sizeInBytes = 0;
+        for (Type t : fieldTypes) {
+            if (t.getTypeId() == TypeId.TUPLE) {
+                throw new DataBoxException("Nested tuples are not supported.");
+            }
+            sizeInBytes += t.getSizeInBytes();
+        }
+        return new Type(TypeId.TUPLE, sizeInBytes, Collections.unmodifiableList(new ArrayList<>(fieldTypes)));
+    }
+
     public TypeId getTypeId() {
         return typeId;
     }
@@ -63,6 +97,29 @@ public class Type {
         return sizeInBytes;
     }
 
+    /** Returns the types of the fields of a tuple type. */
+    public List<Type> getFieldTypes() {
+        if (fieldTypes == null) {
+            throw new DataBoxException("not tuple type");
+        }
+        return fieldTypes;
+    }
+
+    /**
+     * Returns whether values of this type can bound a scan over keys of type
+     * t: either this is t, or both are tuple types and the fields of this one
+     * are the leading fields of t.
+     */
+    public boolean isPrefixOf(Type t) {
+        if (this.equals(t)) {
+            return true;
+        }
+        if (fieldTypes == null || t.fieldTypes == null || fieldTypes.size() > t.fieldTypes.size()) {
+            return false;
+        }
+        return fieldTypes.equals(t.fieldTypes.subList(0, fieldTypes.size()));
+    }
+
     public byte[] toBytes() {
         // A Type is uniquely identified by its typeId `t` and the size (in bytes)
         // of an element of the type `s`. A Type is serialized as two integers. The
@@ -71,9 +128,27 @@ public class Type {
         // For example, the type "42-byte string" would serialized as the bytes [3,
         // 42] because 3 is the ordinal of the STRING TypeId and 42 is the number
         // of bytes in a 42-byte string (duh).
-        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * 2);
+        //
+        // A tuple type is followed by the number of its fields and then by
+        // the serializations of their types.
+        int fieldsSize = 0;
+        List<byte[]> fields = new ArrayList<>();
+        if (fieldTypes != null) {
+            fieldsSize += Integer.BYTES;
+            for (Type t : fieldTypes) {
+                fields.add(t.toBytes());
+                fieldsSize += fields.get(fields.size() - 1).length;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * 2 + fieldsSize);
         buf.putInt(typeId.ordinal());
         buf.putInt(sizeInBytes);
+        if (fieldTypes != null) {
+            buf.putInt(fields.size());
+            for (byte[] field : fields) {
+                buf.put(field);
+            }
+        }
         return buf.array();
     }
 
@@ -91,6 +166,15 @@ public class Type {
             return Type.floatType();
         } else if (ordinal == TypeId.STRING.ordinal()) {
             return Type.stringType(sizeInBytes);
+        } else if (ordinal == TypeId.TUPLE.ordinal()) {
+            int n = buf.getInt();
+            List<Type> fieldTypes = new ArrayList<>();
+            for (int i = 0; i < n; ++i) {
+                fieldTypes.add(Type.fromBytes(buf));
+            }
+            Type t = Type.tupleType(fieldTypes);
+            assert(sizeInBytes == t.getSizeInBytes());
+            return t;
         } else {
             String err = String.format("Unknown TypeId ordinal %d.", ordinal);
             throw new IllegalArgumentException(err);
@@ -99,6 +183,9 @@ public class Type {
 
     @Override
     public String toString() {
+        if (fieldTypes != null) {
+            return String.format("(%s, %d, %s)", typeId.toString(), sizeInBytes, fieldTypes);
+        }
         return String.format("(%s, %d)", typeId.toString(), sizeInBytes);
     }
 
@@ -111,11 +198,12 @@ public class Type {
             return false;
         }
         Type t = (Type) o;
-        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes;
+        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes &&
+               Objects.equals(fieldTypes, t.fieldTypes);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(typeId, sizeInBytes);
+        return Objects.hash(typeId, sizeInBytes, fieldTypes);
     }
 }
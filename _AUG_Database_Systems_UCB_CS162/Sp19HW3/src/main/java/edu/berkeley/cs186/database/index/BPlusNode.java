@@ -7,6 +7,8 @@ import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
@@ -55,8 +57,8 @@ abstract class BPlusNode {
      * n.put(k, r) inserts the pair (k, r) into the subtree rooted by n. There
      * are two cases to consider:
      *
-     *   Case 1: If inserting the pair (k, r) does NOT cause n to overflow, then
-     *           Optional.empty() is returned.
+     *   Case 1: If inserting the pair (k, r) does NOT cause n to overflow (see
+     *           overflows), then Optional.empty() is returned.
      *   Case 2: If inserting the pair (k, r) does cause the node n to overflow,
      *           then n is split into a left and right node (described more
      *           below) and a pair (split_key, right_node_page_num) is returned
@@ -92,7 +94,9 @@ abstract class BPlusNode {
      *   leaf0                  leaf3
      *
      * When a leaf splits, it returns the first entry in the right node as the
-     * split key. In this example, 3 is the split key. After leaf0 splits, inner
+     * split key. In this example, 3 is the split key. (For string keys, it
+     * returns the shorter KeyCompression.separator of the last key of the left
+     * node and the first key of the right node.) After leaf0 splits, inner
      * inserts the new key and child pointer into itself and hits case 0 (i.e. it
      * does not overflow). The tree looks like this:
      *
@@ -129,6 +133,12 @@ abstract class BPlusNode {
      * described. For example, do not move entries between nodes to avoid
      * splitting.
      *
+     * Readers search the tree while it is being changed (see search), so a
+     * split must write its nodes in this order: first the new right node,
+     * then the split node, which a leaf does in one page write together with
+     * its right link to the new node (see LeafNode.split), and only then the
+     * parent that takes in the split key.
+     *
      * Our B+ trees do not support duplicate entries with the same key. If a
      * duplicate key is inserted, the tree is left unchanged and an exception is
      * raised.
@@ -216,6 +226,29 @@ abstract class BPlusNode {
     /** Get the page on which this node is persisted. */
     abstract Page getPage();
 
+    /** Get the metadata of the tree that this node belongs to. */
+    abstract BPlusTreeMetadata getMetadata();
+
+    /** Get the number of keys in this node. */
+    abstract int numKeys();
+
+    /**
+     * Returns whether this node overflows: whether it holds more than 2d
+     * keys, or its serialization no longer fits on its page. Nodes of
+     * fixed-width keys fit on a page as long as they hold at most 2d keys
+     * (see maxOrder). Nodes of compressed string keys (see KeyCompression) may
+     * not, if their keys compress poorly, and split before they hold 2d.
+     */
+    boolean overflows() {
+        return numKeys() > 2 * getMetadata().getOrder() || toBytes().length > Page.pageSize;
+    }
+
+    /**
+     * n.copy() returns a node on the same page as n with the same contents,
+     * which can be changed without changing n (see NodeCache).
+     */
+    abstract BPlusNode copy();
+
     // Pretty Printing ///////////////////////////////////////////////////////////
     /**
      * S-expressions (or sexps) are a compact way of encoding nested tree-like
@@ -251,20 +284,125 @@ abstract class BPlusNode {
 
     /**
      * BPlusNode.fromBytes(m, p) loads a BPlusNode from page p of
-     * meta.getAllocator().
+     * meta.getAllocator(). Nodes that were loaded before are taken from the
+     * NodeCache, without reading or decoding their page again.
      */
     public static BPlusNode fromBytes(BaseTransaction transaction, BPlusTreeMetadata metadata,
                                       int pageNum) {
+        long version = NodeCache.version();
+        BPlusNode cached = NodeCache.get(metadata, pageNum);
+        if (cached != null) {
+            return cached;
+        }
+
         Page p = metadata.getAllocator().fetchPage(transaction, pageNum);
         Buffer buf = p.getBuffer(transaction);
         byte b = buf.get();
+        BPlusNode node;
         if (b == 1) {
-            return LeafNode.fromBytes(transaction, metadata, pageNum);
+            node = LeafNode.fromBytes(transaction, metadata, pageNum);
         } else if (b == 0) {
-            return InnerNode.fromBytes(transaction, metadata, pageNum);
+            node = InnerNode.fromBytes(transaction, metadata, pageNum);
         } else {
             String msg = String.format("Unexpected byte %b.", b);
             throw new IllegalArgumentException(msg);
         }
+        NodeCache.put(metadata, pageNum, node, version);
+        return node;
+    }
+
+    // In-Page Search ////////////////////////////////////////////////////////////
+    /**
+     * BPlusNode.search(t, m, p, k) returns the record id of key k in the
+     * subtree rooted at the node on page p of m.getAllocator(), or
+     * Optional.empty() if k is not in it. It finds the same record id as
+     * n.get(k).getKey(k), but walks down the tree with InnerNode.searchChild
+     * and LeafNode.searchKey, which binary search the keys on each page
+     * instead of decoding the nodes.
+     *
+     * search takes no latches, and may run while a writer splits the nodes
+     * it walks through (see BPlusTree). Each node is read in one consistent
+     * piece of its page, and a writer splits a node by writing the new right
+     * node before it shrinks the old one (see LeafNode.split), so a search
+     * sees a leaf either before it split, with all of its keys, or after,
+     * with a right link to the keys it gave away. When key is greater than
+     * every key of the leaf it reaches, the parent may not know of the split
+     * yet, and search follows the right link of the leaf to look for key
+     * there (see LeafNode.rightLink), as in a B-link tree.
+     */
+    static Optional<RecordId> search(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                                     int pageNum, DataBox key) {
+        Page page = searchLeaf(transaction, metadata, pageNum, key);
+        while (true) {
+            Optional<RecordId> rid = LeafNode.searchKey(transaction, metadata, page, key);
+            if (rid.isPresent()) {
+                return rid;
+            }
+            pageNum = LeafNode.rightLink(transaction, metadata, page, key);
+            if (pageNum == -1) {
+                return Optional.empty();
+            }
+            page = metadata.getAllocator().fetchPage(transaction, pageNum);
+        }
+    }
+
+    /**
+     * BPlusNode.replace(t, m, p, k, r) replaces the record id of key k in the
+     * subtree rooted at the node on page p of m.getAllocator() with r, and
+     * returns whether k is in the subtree. It finds the leaf of k as search
+     * does, and overwrites the record id in place (see LeafNode.replaceKey),
+     * so that a concurrent search finds k throughout.
+     */
+    static boolean replace(BaseTransaction transaction, BPlusTreeMetadata metadata, int pageNum,
+                           DataBox key, RecordId rid) {
+        Page page = searchLeaf(transaction, metadata, pageNum, key);
+        while (!LeafNode.replaceKey(transaction, metadata, page, key, rid)) {
+            pageNum = LeafNode.rightLink(transaction, metadata, page, key);
+            if (pageNum == -1) {
+                return false;
+            }
+            page = metadata.getAllocator().fetchPage(transaction, pageNum);
+        }
+        return true;
+    }
+
+    /**
+     * Walks down from the node on page pageNum to the page of the leaf that
+     * the inner nodes direct key to.
+     */
+    private static Page searchLeaf(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                                   int pageNum, DataBox key) {
+        Page page = metadata.getAllocator().fetchPage(transaction, pageNum);
+        while (page.getBuffer(transaction).get(0) == 0) {
+            pageNum = InnerNode.searchChild(transaction, metadata, page, key);
+            page = metadata.getAllocator().fetchPage(transaction, pageNum);
+        }
+        return page;
+    }
+
+    /**
+     * Returns whether keys of type keySchema can be compared where they are
+     * serialized on a page (see compareKeyAt). Only INT and FLOAT keys can:
+     * they are fixed width, and reading one allocates nothing.
+     */
+    static boolean isSearchableInPage(Type keySchema) {
+        TypeId typeId = keySchema.getTypeId();
+        return typeId == TypeId.INT || typeId == TypeId.FLOAT;
+    }
+
+    /**
+     * Compares the key serialized at offset of buf to key, as
+     * key.compareTo would compare them, without decoding the serialized key.
+     */
+    static int compareKeyAt(Buffer buf, int offset, DataBox key) {
+        switch (key.type().getTypeId()) {
+        case INT:
+            return Integer.compare(buf.getInt(offset), key.getInt());
+        case FLOAT:
+            return Float.compare(buf.getFloat(offset), key.getFloat());
+        default:
+            String msg = String.format("Keys of type %s can't be compared in place.", key.type());
+            throw new IllegalArgumentException(msg);
+        }
     }
 }
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.FileWriter;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
@@ -13,6 +14,7 @@ import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
@@ -52,6 +54,21 @@ import edu.berkeley.cs186.database.table.RecordId;
  *   fromDisk.get(new IntDataBox(0)); // Optional.empty()
  *   fromDisk.get(new IntDataBox(1)); // Optional.of(RecordId(1, 1))
  *   fromDisk.get(new IntDataBox(2)); // Optional.of(RecordId(2, 2))
+ *
+ * put maps each key to a single record id. To index a column whose values
+ * repeat, use add and remove(key, rid) instead, which keep the record ids of
+ * a key that appears more than once in a posting list (see PostingList):
+ *
+ *   tree.add(new IntDataBox(7), new RecordId(4, (short) 1));
+ *   tree.add(new IntDataBox(7), new RecordId(2, (short) 5));
+ *   tree.scanEqual(new IntDataBox(7)); // [(2, 5), (4, 1)]
+ *
+ * A tree may be used by many threads at once. Writers (put, bulkLoad,
+ * bulkAdd, add and remove) take turns on a latch of the tree. Readers take no latch at
+ * all: a B+ tree with right links between its leaves, like ours, is a B-link
+ * tree, in which a search that a concurrent split sent to the wrong leaf
+ * finds its key by following right links (see BPlusNode.search). Writers
+ * therefore only change the tree in the order that BPlusNode.put describes.
  */
 public class BPlusTree implements Closeable {
     public static final String FILENAME_PREFIX = "db";
@@ -60,9 +77,12 @@ public class BPlusTree implements Closeable {
     private PageAllocator allocator;
     private BPlusTreeMetadata metadata;
     private Page headerPage;
-    private BPlusNode root;
+    private volatile BPlusNode root;
     private LockContext lockContext;
 
+    // Held by the thread that is changing the tree (see above).
+    private final ReentrantLock writeLatch = new ReentrantLock();
+
     // Constructors ////////////////////////////////////////////////////////////
     /**
      * Construct a new B+ tree which is serialized into the file `filename`,
@@ -149,6 +169,7 @@ public class BPlusTree implements Closeable {
     }
 
     public void close() {
+        NodeCache.invalidateAll(this.allocator);
         this.allocator.close();
     }
 
@@ -165,10 +186,17 @@ public class BPlusTree implements Closeable {
      *   // Get the value we put and also try to get a value we never put.
      *   tree.get(key);                 // Optional.of(rid)
      *   tree.get(new IntDataBox(100)); // Optional.empty()
+     *
+     * If key was added more than once (see add), get(key) returns the first
+     * of its record ids that scanEqual(key) returns.
      */
     public Optional<RecordId> get(BaseTransaction transaction, DataBox key) {
         typecheck(key);
-        return Optional.empty();
+        Optional<RecordId> rid = lookup(transaction, key);
+        if (rid.isPresent() && PostingList.isPointer(rid.get())) {
+            return Optional.of(PostingList.fromPointer(metadata, rid.get()).iterator(transaction).next());
+        }
+        return rid;
     }
 
     /**
@@ -176,20 +204,46 @@ public class BPlusTree implements Closeable {
      * instead of an Optional. That is, if get(k) returns Optional.empty(),
      * then scanEqual(k) returns an empty iterator. If get(k) returns
      * Optional.of(rid) for some rid, then scanEqual(k) returns an iterator
-     * over rid.
+     * over rid. If k was added more than once (see add), scanEqual(k)
+     * returns all of its record ids, in page order, starting with the one
+     * get(k) returns.
      */
     public Iterator<RecordId> scanEqual(BaseTransaction transaction, DataBox key) {
         typecheck(key);
-        Optional<RecordId> rid = get(transaction, key);
+        Optional<RecordId> rid = lookup(transaction, key);
         if (rid.isPresent()) {
             ArrayList<RecordId> l = new ArrayList<>();
             l.add(rid.get());
-            return l.iterator();
+            return PostingList.expand(transaction, metadata, l.iterator());
         } else {
             return new ArrayList<RecordId>().iterator();
         }
     }
 
+    /**
+     * Returns the value stored in the leaf for key: its record id, or a
+     * pointer to its posting list if it was added more than once (see add).
+     * get, scanEqual, add and remove all find key this way, so they always
+     * agree on whether it is in the tree.
+     *
+     * The lookup binary searches the pages of the nodes on the way down (see
+     * BPlusNode.search) rather than decoding every node.
+     */
+    private Optional<RecordId> lookup(BaseTransaction transaction, DataBox key) {
+        return BPlusNode.search(transaction, metadata, root.getPage().getPageNum(), key);
+    }
+
+    /**
+     * Replaces the value stored in the leaf for key, which must be in the
+     * tree, with rid, in a single write of the leaf (see BPlusNode.replace).
+     * Unlike a remove followed by a put, this never leaves key out of the
+     * tree for a concurrent lookup.
+     */
+    private void replace(BaseTransaction transaction, DataBox key, RecordId rid) {
+        boolean replaced = BPlusNode.replace(transaction, metadata, root.getPage().getPageNum(), key, rid);
+        assert(replaced);
+    }
+
     /**
      * Returns an iterator over all the RecordIds stored in the B+ tree in
      * ascending order of their corresponding keys.
@@ -216,7 +270,7 @@ public class BPlusTree implements Closeable {
      * memory will receive 0 points.
      */
     public Iterator<RecordId> scanAll(BaseTransaction transaction) {
-        return Collections.<RecordId>emptyIterator();
+        return scanRange(transaction, null, false, null, false);
     }
 
     /**
@@ -245,7 +299,122 @@ public class BPlusTree implements Closeable {
      */
     public Iterator<RecordId> scanGreaterEqual(BaseTransaction transaction, DataBox key) {
         typecheck(key);
-        return Collections.<RecordId>emptyIterator();
+        return scanRange(transaction, key, true, null, false);
+    }
+
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree whose
+     * keys lie between `lo` and `hi`, each bound included or not as
+     * loInclusive and hiInclusive say. A null bound leaves that side of the
+     * range open. RecordIds are returned in ascending order of their
+     * corresponding keys.
+     *
+     *   // Create a B+ tree and insert some values into it.
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
+     *   tree.put(new IntDataBox(2), new RecordId(2, (short) 2));
+     *   tree.put(new IntDataBox(5), new RecordId(5, (short) 5));
+     *   tree.put(new IntDataBox(4), new RecordId(4, (short) 4));
+     *   tree.put(new IntDataBox(1), new RecordId(1, (short) 1));
+     *   tree.put(new IntDataBox(3), new RecordId(3, (short) 3));
+     *
+     *   Iterator<RecordId> iter = tree.scanRange(new IntDataBox(2), false,
+     *                                            new IntDataBox(4), true);
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // RecordId(4, 4)
+     *   iter.next(); // NoSuchElementException
+     *
+     * The scan descends to the leaf that holds `lo` (or the leftmost leaf)
+     * and walks the leaves to the right from there, lazily, one leaf at a
+     * time. It reads no leaf past the first one with a key beyond `hi`.
+     *
+     * In a tree of tuple keys, the bounds may be prefixes of the keys (see
+     * LeafNode#scanRange). For example, in a tree keyed on (tenant, ts),
+     *
+     *   tree.scanRange((7), true, (7, 100), false)
+     *
+     * returns the record ids of tenant 7 with a ts below 100.
+     */
+    public Iterator<RecordId> scanRange(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                                        DataBox hi, boolean hiInclusive) {
+        return scanLeaves(transaction, (leaf, from, fromInclusive, to, toInclusive) ->
+                          PostingList.expand(transaction, metadata,
+                                             leaf.scanRange(from, fromInclusive, to, toInclusive)),
+                          lo, loInclusive, hi, hiInclusive);
+    }
+
+    /**
+     * Returns an iterator over the keys in the range between `lo` and `hi`,
+     * in ascending order: the keys of the record ids that scanRange returns
+     * for the same range. Only the leaves are read, so a query that needs
+     * nothing but the columns of the index, e.g. in a tree keyed on
+     * (tenant, ts, amount),
+     *
+     *   tree.scanRangeKeys((7), true, (7), true)
+     *
+     * for the ts and amount of tenant 7, is answered without fetching a
+     * single record.
+     */
+    public Iterator<DataBox> scanRangeKeys(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                                           DataBox hi, boolean hiInclusive) {
+        return scanLeaves(transaction, (leaf, from, fromInclusive, to, toInclusive) ->
+                          repeatKeys(transaction, leaf.scanRangeKeys(from, fromInclusive, to, toInclusive),
+                                     leaf.scanRange(from, fromInclusive, to, toInclusive)),
+                          lo, loInclusive, hi, hiInclusive);
+    }
+
+    /**
+     * Returns an iterator over keys, in which a key whose record id in rids
+     * points to a posting list is repeated once for every record id in it.
+     */
+    private Iterator<DataBox> repeatKeys(BaseTransaction transaction, Iterator<DataBox> keys,
+                                         Iterator<RecordId> rids) {
+        return new Iterator<DataBox>() {
+            private DataBox key;
+            private int repeats = 0;
+
+            @Override
+            public boolean hasNext() {
+                return repeats > 0 || keys.hasNext();
+            }
+
+            @Override
+            public DataBox next() {
+                if (repeats == 0) {
+                    key = keys.next();
+                    RecordId rid = rids.next();
+                    repeats = PostingList.isPointer(rid)
+                              ? PostingList.fromPointer(metadata, rid).size(transaction) : 1;
+                }
+                --repeats;
+                return key;
+            }
+        };
+    }
+
+    private <T> Iterator<T> scanLeaves(BaseTransaction transaction, LeafScan<T> scan, DataBox lo,
+                                       boolean loInclusive, DataBox hi, boolean hiInclusive) {
+        if (lo != null) {
+            typecheckBound(lo);
+        }
+        if (hi != null) {
+            typecheckBound(hi);
+        }
+        LeafNode leaf = lo == null ? root.getLeftmostLeaf(transaction) : root.get(transaction, lo);
+        if (leaf == null) {
+            return Collections.<T>emptyIterator();
+        }
+        return new BPlusTreeRangeIterator<>(transaction, scan, leaf, lo, loInclusive, hi, hiInclusive);
+    }
+
+    /**
+     * Returns an iterator over the RecordIds of a tree of tuple keys whose
+     * keys start with the fields of `prefix`, in ascending order of their
+     * keys. For example, in a tree keyed on (tenant, ts),
+     * scanPrefix(transaction, (7)) returns the record ids of tenant 7 in
+     * order of ts.
+     */
+    public Iterator<RecordId> scanPrefix(BaseTransaction transaction, TupleDataBox prefix) {
+        return scanRange(transaction, prefix, true, prefix, true);
     }
 
     /**
@@ -260,7 +429,12 @@ public class BPlusTree implements Closeable {
      */
     public void put(BaseTransaction transaction, DataBox key, RecordId rid) throws BPlusTreeException {
         typecheck(key);
-        return;
+        writeLatch.lock();
+        try {
+            return;
+        } finally {
+            writeLatch.unlock();
+        }
     }
 
     /**
@@ -280,7 +454,98 @@ public class BPlusTree implements Closeable {
      */
     public void bulkLoad(BaseTransaction transaction, Iterator<Pair<DataBox, RecordId>> data,
                          float fillFactor) throws BPlusTreeException {
-        return;
+        writeLatch.lock();
+        try {
+            return;
+        } finally {
+            writeLatch.unlock();
+        }
+    }
+
+    /**
+     * Bulk loads data into the B+ tree like bulkLoad, except that keys may
+     * repeat, like they may for add. data must be sorted by key, and the pairs
+     * of each key by record id (i.e. in the order a scan of the table finds
+     * them). The record ids of a key that appears more than once are loaded
+     * into a posting list as they are read (see PostingList.collapse), so a
+     * key may have more record ids than fit in memory.
+     *
+     *   // (7, (2, 5)), (7, (4, 1)), (9, (1, 0))
+     *   tree.bulkAdd(data, 1.0f);
+     *   tree.scanEqual(new IntDataBox(7)); // [(2, 5), (4, 1)]
+     */
+    public void bulkAdd(BaseTransaction transaction, Iterator<Pair<DataBox, RecordId>> data,
+                        float fillFactor) throws BPlusTreeException {
+        writeLatch.lock();
+        try {
+            bulkLoad(transaction, PostingList.collapse(transaction, metadata, data), fillFactor);
+        } finally {
+            writeLatch.unlock();
+        }
+    }
+
+    /**
+     * Inserts a (key, rid) pair into a B+ tree, like put, except that key may
+     * already be in the tree: its record ids then go into a posting list
+     * (see PostingList), which the leaf entry of key points to.
+     *
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
+     *   DataBox key = new IntDataBox(42);
+     *   tree.add(key, new RecordId(7, (short) 0));
+     *   tree.add(key, new RecordId(3, (short) 1));
+     *   tree.scanEqual(key); // [(3, 1), (7, 0)]
+     *
+     * Adding a pair that is already in the tree does nothing.
+     */
+    public void add(BaseTransaction transaction, DataBox key, RecordId rid) throws BPlusTreeException {
+        typecheck(key);
+        // The latch is reentrant, so put and remove take it again.
+        writeLatch.lock();
+        try {
+            Optional<RecordId> existing = lookup(transaction, key);
+            if (!existing.isPresent()) {
+                put(transaction, key, rid);
+            } else if (PostingList.isPointer(existing.get())) {
+                PostingList.fromPointer(metadata, existing.get()).add(transaction, rid);
+            } else if (!existing.get().equals(rid)) {
+                // The leaf entry is overwritten in place, so concurrent readers
+                // (see lookup) find key throughout.
+                PostingList list = PostingList.create(transaction, metadata, Arrays.asList(existing.get(), rid));
+                replace(transaction, key, list.toPointer());
+            }
+        } finally {
+            writeLatch.unlock();
+        }
+    }
+
+    /**
+     * Deletes a (key, rid) pair from a B+ tree, keeping the other record ids
+     * of key (see add). Once key has a single record id left, it is stored in
+     * the leaf again, and the posting list is freed.
+     */
+    public void remove(BaseTransaction transaction, DataBox key, RecordId rid) throws BPlusTreeException {
+        typecheck(key);
+        writeLatch.lock();
+        try {
+            Optional<RecordId> existing = lookup(transaction, key);
+            if (!existing.isPresent()) {
+                return;
+            }
+            if (!PostingList.isPointer(existing.get())) {
+                if (existing.get().equals(rid)) {
+                    remove(transaction, key);
+                }
+                return;
+            }
+            PostingList list = PostingList.fromPointer(metadata, existing.get());
+            if (list.remove(transaction, rid) && list.size(transaction) == 1) {
+                RecordId last = list.iterator(transaction).next();
+                replace(transaction, key, last);
+                list.free(transaction);
+            }
+        } finally {
+            writeLatch.unlock();
+        }
     }
 
     /**
@@ -297,7 +562,12 @@ public class BPlusTree implements Closeable {
      */
     public void remove(BaseTransaction transaction, DataBox key) {
         typecheck(key);
-        return;
+        writeLatch.lock();
+        try {
+            return;
+        } finally {
+            writeLatch.unlock();
+        }
     }
 
     // Helpers /////////////////////////////////////////////////////////////////
@@ -391,6 +661,14 @@ public class BPlusTree implements Closeable {
         }
     }
 
+    private void typecheckBound(DataBox bound) {
+        Type t = metadata.getKeySchema();
+        if (!bound.type().isPrefixOf(t)) {
+            String msg = String.format("DataBox %s is not of type %s or a prefix of it", bound, t);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
     // Iterator ////////////////////////////////////////////////////////////////
     private class BPlusTreeIterator implements Iterator<RecordId> {
         @Override
@@ -403,4 +681,61 @@ public class BPlusTree implements Closeable {
             throw new NoSuchElementException();
         }
     }
+
+    /**
+     * Scans the entries of a single leaf in a range: its record ids (with
+     * posting lists expanded) or its keys.
+     */
+    private interface LeafScan<T> {
+        Iterator<T> scan(LeafNode leaf, DataBox lo, boolean loInclusive, DataBox hi, boolean hiInclusive);
+    }
+
+    /**
+     * Iterates over the entries (record ids or keys, as scan returns them) of
+     * a leaf and the leaves to its right whose keys lie in a range (see
+     * scanRange). Only the first leaf can hold keys below the lower bound, and
+     * the scan ends with the first leaf that holds a key past the upper bound.
+     */
+    private class BPlusTreeRangeIterator<T> implements Iterator<T> {
+        private BaseTransaction transaction;
+        private LeafScan<T> scan;
+        private LeafNode leaf;
+        private Iterator<T> leafIterator;
+        private DataBox hi;
+        private boolean hiInclusive;
+
+        BPlusTreeRangeIterator(BaseTransaction transaction, LeafScan<T> scan, LeafNode leaf, DataBox lo,
+                               boolean loInclusive, DataBox hi, boolean hiInclusive) {
+            this.transaction = transaction;
+            this.scan = scan;
+            this.leaf = leaf;
+            this.leafIterator = scan.scan(leaf, lo, loInclusive, hi, hiInclusive);
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!leafIterator.hasNext()) {
+                if (leaf.passes(hi, hiInclusive)) {
+                    return false;
+                }
+                Optional<LeafNode> sibling = leaf.getRightSibling(transaction);
+                if (!sibling.isPresent()) {
+                    return false;
+                }
+                leaf = sibling.get();
+                leafIterator = scan.scan(leaf, null, false, hi, hiInclusive);
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return leafIterator.next();
+        }
+    }
 }
@@ -0,0 +1,511 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * A persistent extendible hash index, which maps keys to record ids like a
+ * B+ tree (see BPlusTree#add) but answers nothing but equality lookups.
+ *
+ *   HashIndex index = new HashIndex("t.hash", Type.intType(), lockContext, transaction);
+ *   index.add(transaction, new IntDataBox(7), new RecordId(4, (short) 1));
+ *   index.add(transaction, new IntDataBox(7), new RecordId(2, (short) 5));
+ *   index.scanEqual(transaction, new IntDataBox(7)); // [(4, 1), (2, 5)]
+ *
+ * The entries are kept in buckets, one or more pages each. The directory has
+ * 2^globalDepth slots, and the bucket of a key is the one in the slot given
+ * by the low globalDepth bits of the hash of the key. A bucket with local
+ * depth d is in the 2^(globalDepth - d) slots that share its low d bits. A
+ * full bucket splits in two on bit d of the hashes of its entries, and only
+ * the directory doubles (when d reaches globalDepth), never the buckets. The
+ * directory is held in memory, so a lookup reads the pages of a single
+ * bucket: one page, unless the bucket overflowed.
+ *
+ * A bucket overflows into a chain of pages when splitting it would not help:
+ * when all of its keys hash alike (e.g. a single key repeated more times than
+ * fit on a page), or when the directory is as large as it gets. Buckets never
+ * merge, but overflow pages that become empty are freed.
+ *
+ * Keys are compared by their bytes (see DataBox#toBytes), which for every
+ * type of key agrees with DataBox#compareTo, as in the B+ tree.
+ *
+ * The first page of the file is a header page, which contains:
+ *
+ *   - the key schema of the index,
+ *   - the global depth,
+ *   - the number of buckets, and
+ *   - the number of directory pages, followed by their page numbers.
+ *
+ * A directory page holds the bucket page numbers of Page.pageSize / 4 slots.
+ * A bucket page holds its local depth, its number of entries, and the page
+ * number of the next page of its bucket (or NONE), followed by its entries:
+ * a key and a record id each.
+ *
+ * Lookups share a latch of the index, and writers (add and remove) hold it
+ * alone.
+ */
+public class HashIndex implements Closeable {
+    public static final String FILENAME_EXTENSION = ".hash";
+
+    // The directory of a depth past this would not fit the header page.
+    static final int MAX_GLOBAL_DEPTH = 18;
+    private static final int SLOTS_PER_DIRECTORY_PAGE = Page.pageSize / Integer.BYTES;
+
+    private static final int NONE = -1;
+    private static final int LOCAL_DEPTH_OFFSET = 0;
+    private static final int NUM_ENTRIES_OFFSET = 4;
+    private static final int NEXT_PAGE_OFFSET = 8;
+    private static final int BUCKET_HEADER_SIZE = 12;
+
+    private PageAllocator allocator;
+    private LockContext lockContext;
+    private Type keySchema;
+    private int entrySize;
+    private int bucketCapacity;
+
+    private int globalDepth;
+    private int numBuckets;
+    private int[] directory;
+    private List<Integer> directoryPageNums;
+
+    private final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+
+    // Constructors ////////////////////////////////////////////////////////////
+    /**
+     * Construct a new, empty hash index of keys of type keySchema, serialized
+     * into the file filename: a directory of a single slot, and one bucket.
+     */
+    public HashIndex(String filename, Type keySchema, LockContext lockContext, BaseTransaction transaction) {
+        this.lockContext = lockContext;
+        this.allocator = new PageAllocator(this.lockContext, filename, true, transaction);
+        this.setKeySchema(keySchema);
+
+        int headerPageNum = allocator.allocPage(transaction);
+        assert(headerPageNum == 0);
+
+        this.globalDepth = 0;
+        this.numBuckets = 1;
+        this.directory = new int[] {newBucketPage(transaction, 0)};
+        this.directoryPageNums = new ArrayList<>();
+        writeDirectory(transaction, 0, 1);
+        writeHeader(transaction);
+    }
+
+    /** Read a hash index that was previously serialized to filename. */
+    public HashIndex(String filename, LockContext lockContext, BaseTransaction transaction) {
+        this.lockContext = lockContext;
+        this.allocator = new PageAllocator(this.lockContext, filename, false, transaction);
+
+        // See writeHeader.
+        Buffer buf = allocator.fetchPage(transaction, 0).getBuffer(transaction);
+        this.setKeySchema(Type.fromBytes(buf));
+        this.globalDepth = buf.getInt();
+        this.numBuckets = buf.getInt();
+        int numDirectoryPages = buf.getInt();
+        this.directoryPageNums = new ArrayList<>();
+        for (int i = 0; i < numDirectoryPages; ++i) {
+            this.directoryPageNums.add(buf.getInt());
+        }
+
+        this.directory = new int[1 << globalDepth];
+        for (int i = 0; i < directory.length; ++i) {
+            Page page = allocator.fetchPage(transaction, directoryPageNums.get(i / SLOTS_PER_DIRECTORY_PAGE));
+            directory[i] = page.getBuffer(transaction).getInt((i % SLOTS_PER_DIRECTORY_PAGE) * Integer.BYTES);
+        }
+    }
+
+    public void close() {
+        this.allocator.close();
+    }
+
+    // Core API ////////////////////////////////////////////////////////////////
+    /**
+     * Returns a record id of key, or Optional.empty() if key is not in the
+     * index.
+     */
+    public Optional<RecordId> get(BaseTransaction transaction, DataBox key) {
+        Iterator<RecordId> rids = scanEqual(transaction, key);
+        return rids.hasNext() ? Optional.of(rids.next()) : Optional.empty();
+    }
+
+    /**
+     * Returns an iterator over the record ids of key, in the order they were
+     * added (until a bucket is split or an entry removed). Reads the pages of
+     * the bucket of key, and nothing else.
+     */
+    public Iterator<RecordId> scanEqual(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        byte[] keyBytes = key.toBytes();
+        List<RecordId> rids = new ArrayList<>();
+        latch.readLock().lock();
+        try {
+            int pageNum = directory[slotOf(hash(keyBytes))];
+            while (pageNum != NONE) {
+                Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+                int numEntries = buf.getInt(NUM_ENTRIES_OFFSET);
+                for (int i = 0; i < numEntries; ++i) {
+                    int offset = entryOffset(i);
+                    if (keyEquals(buf, offset, keyBytes)) {
+                        rids.add(RecordId.fromBytes(buf, offset + keyBytes.length));
+                    }
+                }
+                pageNum = buf.getInt(NEXT_PAGE_OFFSET);
+            }
+        } finally {
+            latch.readLock().unlock();
+        }
+        return rids.iterator();
+    }
+
+    /**
+     * Adds a (key, rid) pair to the index. key may already be in the index
+     * with other record ids. Adding a pair that is already in the index does
+     * nothing.
+     */
+    public void add(BaseTransaction transaction, DataBox key, RecordId rid) {
+        typecheck(key);
+        byte[] keyBytes = key.toBytes();
+        int hash = hash(keyBytes);
+        latch.writeLock().lock();
+        try {
+            while (true) {
+                int slot = slotOf(hash);
+                List<Page> bucket = getBucketPages(transaction, directory[slot]);
+                Page free = null;
+                for (Page page : bucket) {
+                    Buffer buf = page.getBuffer(transaction);
+                    int numEntries = buf.getInt(NUM_ENTRIES_OFFSET);
+                    if (findEntry(buf, numEntries, keyBytes, rid) != NONE) {
+                        return;
+                    }
+                    if (free == null && numEntries < bucketCapacity) {
+                        free = page;
+                    }
+                }
+
+                if (free != null) {
+                    appendEntry(transaction, free, keyBytes, rid);
+                    return;
+                }
+                if (canSplit(transaction, bucket, hash)) {
+                    split(transaction, slot, bucket);
+                    continue;
+                }
+                // Chain a new page right after the first page of the bucket.
+                Buffer first = bucket.get(0).getBuffer(transaction);
+                int pageNum = newBucketPage(transaction, first.getInt(LOCAL_DEPTH_OFFSET));
+                Page page = allocator.fetchPage(transaction, pageNum);
+                page.getBuffer(transaction).putInt(NEXT_PAGE_OFFSET, first.getInt(NEXT_PAGE_OFFSET));
+                appendEntry(transaction, page, keyBytes, rid);
+                first.putInt(NEXT_PAGE_OFFSET, pageNum);
+                return;
+            }
+        } finally {
+            latch.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes a (key, rid) pair from the index, keeping the other record ids
+     * of key. Deleting a pair that is not in the index does nothing.
+     */
+    public void remove(BaseTransaction transaction, DataBox key, RecordId rid) {
+        typecheck(key);
+        byte[] keyBytes = key.toBytes();
+        latch.writeLock().lock();
+        try {
+            Page previous = null;
+            int pageNum = directory[slotOf(hash(keyBytes))];
+            while (pageNum != NONE) {
+                Page page = allocator.fetchPage(transaction, pageNum);
+                Buffer buf = page.getBuffer(transaction);
+                int numEntries = buf.getInt(NUM_ENTRIES_OFFSET);
+                int i = findEntry(buf, numEntries, keyBytes, rid);
+                if (i == NONE) {
+                    previous = page;
+                    pageNum = buf.getInt(NEXT_PAGE_OFFSET);
+                    continue;
+                }
+
+                // Move the last entry of the page into the hole.
+                byte[] last = new byte[entrySize];
+                buf.position(entryOffset(numEntries - 1));
+                buf.get(last);
+                buf.position(entryOffset(i));
+                buf.put(last);
+                buf.putInt(NUM_ENTRIES_OFFSET, numEntries - 1);
+                if (numEntries == 1 && previous != null) {
+                    previous.getBuffer(transaction).putInt(NEXT_PAGE_OFFSET, buf.getInt(NEXT_PAGE_OFFSET));
+                    allocator.freePage(transaction, page);
+                }
+                return;
+            }
+        } finally {
+            latch.writeLock().unlock();
+        }
+    }
+
+    // Statistics //////////////////////////////////////////////////////////////
+    /** Returns the number of pages used to serialize the index. */
+    public int getNumPages() {
+        return allocator.getNumPages();
+    }
+
+    public int getGlobalDepth() {
+        latch.readLock().lock();
+        try {
+            return globalDepth;
+        } finally {
+            latch.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the average number of pages that a lookup reads: the number of
+     * bucket pages per bucket, rounded up. This is 1 unless buckets have
+     * overflowed.
+     */
+    public int getPagesPerLookup() {
+        latch.readLock().lock();
+        try {
+            int numBucketPages = getNumPages() - 1 - directoryPageNums.size();
+            return Math.max(1, (numBucketPages + numBuckets - 1) / numBuckets);
+        } finally {
+            latch.readLock().unlock();
+        }
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private void setKeySchema(Type keySchema) {
+        this.keySchema = keySchema;
+        this.entrySize = keySchema.getSizeInBytes() + RecordId.getSizeInBytes();
+        this.bucketCapacity = (Page.pageSize - BUCKET_HEADER_SIZE) / entrySize;
+    }
+
+    /**
+     * Returns the hash of the bytes of a key. The bits of Arrays.hashCode are
+     * mixed (as in the finalizer of MurmurHash3), since the directory only
+     * looks at the low bits, and those of the hash codes of consecutive
+     * integers hardly differ.
+     */
+    static int hash(byte[] keyBytes) {
+        int h = Arrays.hashCode(keyBytes);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private int slotOf(int hash) {
+        return hash & ((1 << globalDepth) - 1);
+    }
+
+    private int entryOffset(int i) {
+        return BUCKET_HEADER_SIZE + i * entrySize;
+    }
+
+    private boolean keyEquals(Buffer buf, int offset, byte[] keyBytes) {
+        for (int i = 0; i < keyBytes.length; ++i) {
+            if (buf.get(offset + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the number of the entry (key, rid) of a bucket page, or NONE. */
+    private int findEntry(Buffer buf, int numEntries, byte[] keyBytes, RecordId rid) {
+        for (int i = 0; i < numEntries; ++i) {
+            int offset = entryOffset(i);
+            if (keyEquals(buf, offset, keyBytes) && RecordId.fromBytes(buf, offset + keyBytes.length).equals(rid)) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    private void appendEntry(BaseTransaction transaction, Page page, byte[] keyBytes, RecordId rid) {
+        Buffer buf = page.getBuffer(transaction);
+        int numEntries = buf.getInt(NUM_ENTRIES_OFFSET);
+        int offset = entryOffset(numEntries);
+        buf.position(offset);
+        buf.put(keyBytes);
+        rid.writeTo(buf, offset + keyBytes.length);
+        buf.putInt(NUM_ENTRIES_OFFSET, numEntries + 1);
+    }
+
+    /** Allocates an empty bucket page of local depth localDepth. */
+    private int newBucketPage(BaseTransaction transaction, int localDepth) {
+        int pageNum = allocator.allocPage(transaction);
+        Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+        buf.putInt(LOCAL_DEPTH_OFFSET, localDepth);
+        buf.putInt(NUM_ENTRIES_OFFSET, 0);
+        buf.putInt(NEXT_PAGE_OFFSET, NONE);
+        return pageNum;
+    }
+
+    /** Returns the pages of the bucket whose first page is pageNum. */
+    private List<Page> getBucketPages(BaseTransaction transaction, int pageNum) {
+        List<Page> pages = new ArrayList<>();
+        while (pageNum != NONE) {
+            Page page = allocator.fetchPage(transaction, pageNum);
+            pages.add(page);
+            pageNum = page.getBuffer(transaction).getInt(NEXT_PAGE_OFFSET);
+        }
+        return pages;
+    }
+
+    /** Returns the entries of the pages of a bucket, each a key and a record id. */
+    private List<Pair<byte[], RecordId>> readEntries(BaseTransaction transaction, List<Page> bucket) {
+        List<Pair<byte[], RecordId>> entries = new ArrayList<>();
+        for (Page page : bucket) {
+            Buffer buf = page.getBuffer(transaction);
+            int numEntries = buf.getInt(NUM_ENTRIES_OFFSET);
+            for (int i = 0; i < numEntries; ++i) {
+                byte[] keyBytes = new byte[keySchema.getSizeInBytes()];
+                buf.position(entryOffset(i));
+                buf.get(keyBytes);
+                entries.add(new Pair<>(keyBytes, RecordId.fromBytes(buf, entryOffset(i) + keyBytes.length)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns whether splitting a full bucket would make room for a key of
+     * the given hash: the directory may grow, and not every key of the bucket
+     * hashes like that key (or splitting would only move them all together).
+     */
+    private boolean canSplit(BaseTransaction transaction, List<Page> bucket, int hash) {
+        int localDepth = bucket.get(0).getBuffer(transaction).getInt(LOCAL_DEPTH_OFFSET);
+        if (localDepth == MAX_GLOBAL_DEPTH) {
+            return false;
+        }
+        for (Pair<byte[], RecordId> entry : readEntries(transaction, bucket)) {
+            if (hash(entry.getFirst()) != hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the bucket in the given slot, whose pages are bucket, in two on
+     * the bit of the hashes past its local depth, doubling the directory
+     * first if the bucket is in a single slot.
+     */
+    private void split(BaseTransaction transaction, int slot, List<Page> bucket) {
+        Page first = bucket.get(0);
+        int localDepth = first.getBuffer(transaction).getInt(LOCAL_DEPTH_OFFSET);
+        if (localDepth == globalDepth) {
+            int size = directory.length;
+            directory = Arrays.copyOf(directory, 2 * size);
+            System.arraycopy(directory, 0, directory, size, size);
+            ++globalDepth;
+            writeDirectory(transaction, size, 2 * size);
+        }
+
+        List<Pair<byte[], RecordId>> entries = readEntries(transaction, bucket);
+        for (Page page : bucket.subList(1, bucket.size())) {
+            allocator.freePage(transaction, page);
+        }
+        int bit = 1 << localDepth;
+        List<Pair<byte[], RecordId>> low = new ArrayList<>();
+        List<Pair<byte[], RecordId>> high = new ArrayList<>();
+        for (Pair<byte[], RecordId> entry : entries) {
+            ((hash(entry.getFirst()) & bit) == 0 ? low : high).add(entry);
+        }
+
+        // Fill the new bucket before the directory points at it.
+        int highPageNum = newBucketPage(transaction, localDepth + 1);
+        writeEntries(transaction, allocator.fetchPage(transaction, highPageNum), high);
+        Buffer buf = first.getBuffer(transaction);
+        buf.putInt(LOCAL_DEPTH_OFFSET, localDepth + 1);
+        buf.putInt(NUM_ENTRIES_OFFSET, 0);
+        buf.putInt(NEXT_PAGE_OFFSET, NONE);
+        writeEntries(transaction, first, low);
+
+        int lowPageNum = first.getPageNum();
+        for (int i = slot & (bit - 1); i < directory.length; i += bit) {
+            if ((i & bit) != 0) {
+                assert(directory[i] == lowPageNum);
+                directory[i] = highPageNum;
+                writeDirectory(transaction, i, i + 1);
+            }
+        }
+        ++numBuckets;
+        writeHeader(transaction);
+    }
+
+    /**
+     * Appends entries to the bucket whose first page is page, chaining new
+     * pages to it as they fill up.
+     */
+    private void writeEntries(BaseTransaction transaction, Page page, List<Pair<byte[], RecordId>> entries) {
+        int localDepth = page.getBuffer(transaction).getInt(LOCAL_DEPTH_OFFSET);
+        for (Pair<byte[], RecordId> entry : entries) {
+            Buffer buf = page.getBuffer(transaction);
+            if (buf.getInt(NUM_ENTRIES_OFFSET) == bucketCapacity) {
+                int pageNum = newBucketPage(transaction, localDepth);
+                buf.putInt(NEXT_PAGE_OFFSET, pageNum);
+                page = allocator.fetchPage(transaction, pageNum);
+            }
+            appendEntry(transaction, page, entry.getFirst(), entry.getSecond());
+        }
+    }
+
+    /**
+     * Writes the slots from to to - 1 of the directory to the directory
+     * pages, allocating the pages that the directory has grown into.
+     */
+    private void writeDirectory(BaseTransaction transaction, int from, int to) {
+        boolean grown = false;
+        while (directoryPageNums.size() * SLOTS_PER_DIRECTORY_PAGE < to) {
+            directoryPageNums.add(allocator.allocPage(transaction));
+            grown = true;
+        }
+        for (int i = from; i < to; ++i) {
+            Page page = allocator.fetchPage(transaction, directoryPageNums.get(i / SLOTS_PER_DIRECTORY_PAGE));
+            page.getBuffer(transaction).putInt((i % SLOTS_PER_DIRECTORY_PAGE) * Integer.BYTES, directory[i]);
+        }
+        if (grown) {
+            writeHeader(transaction);
+        }
+    }
+
+    /** Serializes the header page. */
+    private void writeHeader(BaseTransaction transaction) {
+        Buffer buf = allocator.fetchPage(transaction, 0).getBuffer(transaction);
+        buf.put(keySchema.toBytes());
+        buf.putInt(globalDepth);
+        buf.putInt(numBuckets);
+        buf.putInt(directoryPageNums.size());
+        for (int pageNum : directoryPageNums) {
+            buf.putInt(pageNum);
+        }
+    }
+
+    private void typecheck(DataBox key) {
+        if (!key.type().equals(keySchema)) {
+            String msg = String.format("DataBox %s is not of type %s", key, keySchema);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+}
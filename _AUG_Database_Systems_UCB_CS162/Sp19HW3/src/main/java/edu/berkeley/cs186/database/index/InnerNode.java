@@ -1,10 +1,10 @@
 package edu.berkeley.cs186.database.index;
 
-import java.nio.ByteBuffer;
 import java.util.*;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
@@ -64,6 +64,26 @@ class InnerNode extends BPlusNode {
         sync(transaction);
     }
 
+    /**
+     * Construct the inner node that is serialized on page as keys and
+     * children, without writing it back (see fromBytes).
+     */
+    private InnerNode(BPlusTreeMetadata metadata, Page page, List<DataBox> keys,
+                      List<Integer> children) {
+        this.metadata = metadata;
+        this.page = page;
+        this.keys = keys;
+        this.children = children;
+    }
+
+    /** Construct a copy of n (see BPlusNode#copy). */
+    private InnerNode(InnerNode n) {
+        this.metadata = n.metadata;
+        this.page = n.page;
+        this.keys = new ArrayList<>(n.keys);
+        this.children = new ArrayList<>(n.children);
+    }
+
     // Core API //////////////////////////////////////////////////////////////////
     // See BPlusNode.get.
     @Override
@@ -110,13 +130,29 @@ class InnerNode extends BPlusNode {
         return BPlusNode.fromBytes(transaction, metadata, pageNum);
     }
 
+    @Override
+    BPlusTreeMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    int numKeys() {
+        return keys.size();
+    }
+
+    @Override
+    InnerNode copy() {
+        return new InnerNode(this);
+    }
+
     private void sync(BaseTransaction transaction) {
         Buffer b = page.getBuffer(transaction);
         byte[] newBytes = toBytes();
         byte[] bytes = new byte[newBytes.length];
         b.get(bytes);
         if (!Arrays.equals(bytes, newBytes)) {
-            page.getBuffer(transaction).put(toBytes());
+            page.getBuffer(transaction).put(newBytes);
+            NodeCache.invalidate(metadata, page.getPageNum());
         }
     }
 
@@ -156,7 +192,12 @@ class InnerNode extends BPlusNode {
         //   n = (pageSizeInBytes - 9) / (keySize + 4)
         //
         // The order d is half of n.
-        int keySize = keySchema.getSizeInBytes();
+        //
+        // String keys are stored compressed (see KeyCompression), so an inner
+        // node of them fits as many keys as their compressed sizes allow, and
+        // splits when they no longer fit on its page (see
+        // BPlusNode.overflows). A key takes at least 2 bytes, which bounds n.
+        int keySize = KeyCompression.appliesTo(keySchema) ? Short.BYTES : keySchema.getSizeInBytes();
         int n = (pageSizeInBytes - 9) / (keySize + 4);
         return n / 2;
     }
@@ -200,6 +241,50 @@ class InnerNode extends BPlusNode {
         return n;
     }
 
+    /**
+     * InnerNode.searchChild(t, m, p, k) returns the page number of the child
+     * of the inner node on page p that a search for k descends into, i.e.
+     * child numLessThanEqual(k, keys). INT and FLOAT keys are binary searched
+     * in place on the page (see BPlusNode.compareKeyAt), which reads about
+     * log2(2d) of the keys and decodes none of them. Compressed STRING keys
+     * vary in length, so they are scanned in a copy of the page instead (see
+     * KeyCompression.searchChild). Other keys are searched in the decoded
+     * node.
+     */
+    static int searchChild(BaseTransaction transaction, BPlusTreeMetadata metadata, Page page,
+                           DataBox key) {
+        if (KeyCompression.appliesTo(metadata.getKeySchema())) {
+            Buffer buf = ByteBuffer.wrap(page.readBytes(transaction));
+            return KeyCompression.searchChild(buf, 1 + Integer.BYTES, buf.getInt(1), key.getString());
+        }
+        if (!BPlusNode.isSearchableInPage(metadata.getKeySchema())) {
+            InnerNode n = (InnerNode) BPlusNode.fromBytes(transaction, metadata, page.getPageNum());
+            return n.children.get(numLessThanEqual(key, n.keys));
+        }
+
+        // See toBytes for the layout of the page. Every read of the page
+        // synchronizes on it, and so does a write of the whole node (see
+        // sync), so holding its monitor keeps the keys read from one version
+        // of the node.
+        Buffer buf = page.getBuffer(transaction);
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        synchronized (page) {
+            int n = buf.getInt(1);
+            int keysOffset = 1 + Integer.BYTES;
+            int lo = 0;
+            int hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (BPlusNode.compareKeyAt(buf, keysOffset + mid * keySize, key) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return buf.getInt(keysOffset + n * keySize + lo * Integer.BYTES);
+        }
+    }
+
     /** Same as numLessThanEqual but for < instead of <= */
     public static <T extends Comparable<T>> int numLessThan(T x, List<T> ys) {
         int n = 0;
@@ -292,47 +377,71 @@ class InnerNode extends BPlusNode {
         //
         // represent an inner node with one key (i.e. 1) and two children pointers
         // (i.e. page 3 and page 7).
+        //
+        // String keys are stored without their trailing spaces instead (see
+        // KeyCompression).
 
         // All sizes are in bytes.
         int isLeafSize = 1;
         int numKeysSize = Integer.BYTES;
-        int keysSize = metadata.getKeySchema().getSizeInBytes() * keys.size();
+        boolean compressed = KeyCompression.appliesTo(metadata.getKeySchema());
+        int keysSize = compressed ? KeyCompression.keysSize(keys)
+                       : metadata.getKeySchema().getSizeInBytes() * keys.size();
         int childrenSize = Integer.BYTES * children.size();
         int size = isLeafSize + numKeysSize + keysSize + childrenSize;
 
-        ByteBuffer buf = ByteBuffer.allocate(size);
-        buf.put((byte) 0);
-        buf.putInt(keys.size());
-        for (DataBox key : keys) {
-            buf.put(key.toBytes());
+        // Keys are written in place so that serializing a node only allocates
+        // the returned array.
+        byte[] bytes = new byte[size];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        buf.put(0, (byte) 0);
+        buf.putInt(isLeafSize, keys.size());
+        int offset = isLeafSize + numKeysSize;
+        if (compressed) {
+            offset += KeyCompression.writeKeys(buf, offset, keys);
+        } else {
+            for (DataBox key : keys) {
+                offset += key.writeTo(buf, offset);
+            }
         }
         for (Integer child : children) {
-            buf.putInt(child);
+            buf.putInt(offset, child);
+            offset += Integer.BYTES;
         }
-        return buf.array();
+        return bytes;
     }
 
     /**
      * InnerNode.fromBytes(t, meta, p) loads a InnerNode from page p of
-     * meta.getAllocator().
+     * meta.getAllocator(). The node is decoded from a copy of the page, read
+     * at once, so that a writer changing the page meanwhile (see
+     * BPlusNode.search) can't mix two versions of the node, and the old
+     * version is never written back over the new one.
      */
     public static InnerNode fromBytes(BaseTransaction transaction, BPlusTreeMetadata metadata,
                                       int pageNum) {
         Page page = metadata.getAllocator().fetchPage(transaction, pageNum);
-        Buffer buf = page.getBuffer(transaction);
+        Buffer buf = ByteBuffer.wrap(page.readBytes(transaction));
 
-        assert(buf.get() == (byte) 0);
+        // Read the isLeaf byte outside of the assert, which is skipped when
+        // assertions are disabled.
+        byte isLeaf = buf.get();
+        assert(isLeaf == (byte) 0);
 
         List<DataBox> keys = new ArrayList<>();
         List<Integer> children = new ArrayList<>();
         int n = buf.getInt();
-        for (int i = 0; i < n; ++i) {
-            keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
+        if (KeyCompression.appliesTo(metadata.getKeySchema())) {
+            KeyCompression.readKeys(buf, metadata.getKeySchema(), n, keys);
+        } else {
+            for (int i = 0; i < n; ++i) {
+                keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
+            }
         }
         for (int i = 0; i < n + 1; ++i) {
             children.add(buf.getInt());
         }
-        return new InnerNode(metadata, pageNum, keys, children, transaction);
+        return new InnerNode(metadata, page, keys, children);
     }
 
     // Builtins //////////////////////////////////////////////////////////////////
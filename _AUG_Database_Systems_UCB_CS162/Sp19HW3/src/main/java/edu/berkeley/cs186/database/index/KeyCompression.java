@@ -0,0 +1,257 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * The compressed layout of string keys on the pages of B+ tree nodes.
+ *
+ * A key of type stringType(m) is m bytes wide: its value padded with spaces.
+ * Stored at full width, a stringType(64) index fits only a few dozen keys on
+ * a page. Nodes store string keys compressed instead:
+ *
+ *   - The trailing spaces of a key are dropped. The space is the smallest
+ *     character a string may contain (see StringDataBox), so padding a key
+ *     back to m bytes restores it without changing its order.
+ *   - A leaf stores the longest prefix common to all of its keys once, and
+ *     each key as the rest of it (prefix compression). The keys of a leaf are
+ *     neighbors in sort order and tend to share long prefixes.
+ *   - The keys of inner nodes only need to route searches between their
+ *     children, and a split passes up the shortest key that does so (suffix
+ *     truncation, see separator).
+ *
+ * Each stored string (a prefix, a suffix or the key of an inner node) is its
+ * length (2 bytes) followed by its bytes. Nodes of other key types store
+ * their keys at full width.
+ */
+class KeyCompression {
+    private static final Charset charset = Charset.forName("UTF-8");
+
+    /** Returns whether the nodes of a tree of keySchema keys compress them. */
+    static boolean appliesTo(Type keySchema) {
+        return keySchema.getTypeId() == TypeId.STRING;
+    }
+
+    /**
+     * Returns the split key to pass up when a node splits between the keys
+     * left and right, where left < right: a key s with left < s <= right, so
+     * that every key of the left node is less than s and every key of the
+     * right node is at least s. For string keys, s is the shortest prefix of
+     * right that is greater than left (padded back to width), e.g. "b" for
+     * left "apple" and right "banana". For other keys, s is right.
+     */
+    static DataBox separator(DataBox left, DataBox right) {
+        if (!appliesTo(right.type())) {
+            return right;
+        }
+        String l = left.getString();
+        String r = right.getString();
+        int i = 0;
+        while (i < r.length() && i < l.length() && l.charAt(i) == r.charAt(i)) {
+            ++i;
+        }
+        return new StringDataBox(r.substring(0, Math.min(i + 1, r.length())), r.length());
+    }
+
+    // Leaves //////////////////////////////////////////////////////////////////
+    /** Returns the number of bytes that writeLeafEntries writes. */
+    static int leafEntriesSize(List<DataBox> keys) {
+        int prefixLength = commonPrefixLength(keys);
+        int size = Short.BYTES + prefixLength;
+        for (DataBox key : keys) {
+            size += Short.BYTES + trimmedLength(key.getString()) - prefixLength + RecordId.getSizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Writes the entries of a leaf at offset of buf: the common prefix of
+     * keys, then every key without it, followed by its record id. Returns
+     * the number of bytes written.
+     */
+    static int writeLeafEntries(Buffer buf, int offset, List<DataBox> keys, List<RecordId> rids) {
+        int start = offset;
+        int prefixLength = commonPrefixLength(keys);
+        offset += prefixLength == 0 ? writeString(buf, offset, "", 0, 0)
+                  : writeString(buf, offset, keys.get(0).getString(), 0, prefixLength);
+        for (int i = 0; i < keys.size(); ++i) {
+            String s = keys.get(i).getString();
+            offset += writeString(buf, offset, s, prefixLength, trimmedLength(s));
+            offset += rids.get(i).writeTo(buf, offset);
+        }
+        return offset - start;
+    }
+
+    /**
+     * Reads the n entries that writeLeafEntries wrote at the position of buf
+     * into keys and rids.
+     */
+    static void readLeafEntries(Buffer buf, Type keySchema, int n, List<DataBox> keys,
+                                List<RecordId> rids) {
+        String prefix = readString(buf);
+        for (int i = 0; i < n; ++i) {
+            keys.add(new StringDataBox(prefix + readString(buf), keySchema.getSizeInBytes()));
+            rids.add(RecordId.fromBytes(buf));
+        }
+    }
+
+    /**
+     * Returns the offset in buf of the record id of key among the n entries
+     * that writeLeafEntries wrote at offset of buf, or -1 if key is not among
+     * them. The entries are compared with key where they are (see compare),
+     * without decoding them.
+     */
+    static int findLeafEntry(Buffer buf, int offset, int n, String key) {
+        // Every key of the leaf starts with the prefix, so a key that doesn't
+        // is not in the leaf.
+        int prefixLength = buf.getShort(offset);
+        offset += Short.BYTES;
+        if (compare(buf, offset, prefixLength, key.substring(0, prefixLength), 0) != 0) {
+            return -1;
+        }
+        offset += prefixLength;
+
+        for (int i = 0; i < n; ++i) {
+            int length = buf.getShort(offset);
+            int c = compare(buf, offset + Short.BYTES, length, key, prefixLength);
+            offset += Short.BYTES + length;
+            if (c == 0) {
+                return offset;
+            } else if (c > 0) {
+                break;
+            }
+            offset += RecordId.getSizeInBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the last of the n > 0 keys that writeLeafEntries wrote at
+     * offset of buf to key, as String#compareTo would, without decoding it.
+     */
+    static int compareLastLeafEntry(Buffer buf, int offset, int n, String key) {
+        int prefixLength = buf.getShort(offset);
+        int c = compare(buf, offset + Short.BYTES, prefixLength, key.substring(0, prefixLength), 0);
+        if (c != 0) {
+            return c;
+        }
+        offset += Short.BYTES + prefixLength;
+        for (int i = 0; i < n - 1; ++i) {
+            offset += Short.BYTES + buf.getShort(offset) + RecordId.getSizeInBytes();
+        }
+        return compare(buf, offset + Short.BYTES, buf.getShort(offset), key, prefixLength);
+    }
+
+    // Inner Nodes /////////////////////////////////////////////////////////////
+    /** Returns the number of bytes that writeKeys writes. */
+    static int keysSize(List<DataBox> keys) {
+        int size = 0;
+        for (DataBox key : keys) {
+            size += Short.BYTES + trimmedLength(key.getString());
+        }
+        return size;
+    }
+
+    /** Writes keys at offset of buf and returns the number of bytes written. */
+    static int writeKeys(Buffer buf, int offset, List<DataBox> keys) {
+        int start = offset;
+        for (DataBox key : keys) {
+            String s = key.getString();
+            offset += writeString(buf, offset, s, 0, trimmedLength(s));
+        }
+        return offset - start;
+    }
+
+    /**
+     * Returns the page number of the child that a search for key descends
+     * into, in an inner node whose n keys writeKeys wrote at offset of buf,
+     * followed by its children: child numLessThanEqual(key, keys). The keys
+     * are compared with key where they are (see compare), without decoding
+     * them.
+     */
+    static int searchChild(Buffer buf, int offset, int n, String key) {
+        int numLessThanEqual = 0;
+        for (int i = 0; i < n; ++i) {
+            int length = buf.getShort(offset);
+            if (numLessThanEqual == i && compare(buf, offset + Short.BYTES, length, key, 0) <= 0) {
+                ++numLessThanEqual;
+            }
+            offset += Short.BYTES + length;
+        }
+        return buf.getInt(offset + numLessThanEqual * Integer.BYTES);
+    }
+
+    /** Reads the n keys that writeKeys wrote at the position of buf into keys. */
+    static void readKeys(Buffer buf, Type keySchema, int n, List<DataBox> keys) {
+        for (int i = 0; i < n; ++i) {
+            keys.add(new StringDataBox(readString(buf), keySchema.getSizeInBytes()));
+        }
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    /** Returns the length of s without its trailing spaces. */
+    static int trimmedLength(String s) {
+        int length = s.length();
+        while (length > 0 && s.charAt(length - 1) == ' ') {
+            --length;
+        }
+        return length;
+    }
+
+    /** Returns the length of the longest prefix shared by keys (trimmed). */
+    static int commonPrefixLength(List<DataBox> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        String first = keys.get(0).getString();
+        int length = trimmedLength(first);
+        for (DataBox key : keys) {
+            String s = key.getString();
+            int i = 0;
+            int max = Math.min(length, trimmedLength(s));
+            while (i < max && s.charAt(i) == first.charAt(i)) {
+                ++i;
+            }
+            length = i;
+        }
+        return length;
+    }
+
+    /**
+     * Compares the length bytes at offset of buf, padded with spaces, to
+     * key.substring(from), as String#compareTo would.
+     */
+    private static int compare(Buffer buf, int offset, int length, String key, int from) {
+        for (int i = 0; i < key.length() - from; ++i) {
+            char c = i < length ? (char) buf.get(offset + i) : ' ';
+            if (c != key.charAt(from + i)) {
+                return c - key.charAt(from + i);
+            }
+        }
+        return 0;
+    }
+
+    /** Writes s.substring(from, to) and its length at offset of buf. */
+    private static int writeString(Buffer buf, int offset, String s, int from, int to) {
+        buf.putShort(offset, (short) (to - from));
+        offset += Short.BYTES;
+        // Every character a string may contain is a single byte in UTF-8.
+        for (int i = from; i < to; ++i) {
+            buf.put(offset + i - from, (byte) s.charAt(i));
+        }
+        return Short.BYTES + to - from;
+    }
+
+    private static String readString(Buffer buf) {
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return new String(bytes, charset);
+    }
+}
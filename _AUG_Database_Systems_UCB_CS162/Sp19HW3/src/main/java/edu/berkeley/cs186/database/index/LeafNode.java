@@ -1,12 +1,13 @@
 package edu.berkeley.cs186.database.index;
 
-import java.nio.ByteBuffer;
 import java.util.*;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.RecordId;
@@ -126,6 +127,15 @@ class LeafNode extends BPlusNode {
         sync(transaction);
     }
 
+    /** Construct a copy of n (see BPlusNode#copy). */
+    private LeafNode(LeafNode n) {
+        this.metadata = n.metadata;
+        this.page = n.page;
+        this.keys = new ArrayList<>(n.keys);
+        this.rids = new ArrayList<>(n.rids);
+        this.rightSibling = n.rightSibling;
+    }
+
     // Core API //////////////////////////////////////////////////////////////////
     // See BPlusNode.get.
     @Override
@@ -168,6 +178,168 @@ class LeafNode extends BPlusNode {
         return index == -1 ? Optional.empty() : Optional.of(rids.get(index));
     }
 
+    /**
+     * LeafNode.searchKey(t, m, p, k) returns the record id associated with k
+     * in the leaf on page p, like getKey. INT and FLOAT keys are binary
+     * searched in place on the page (see BPlusNode.compareKeyAt), which reads
+     * about log2(2d) of the keys and decodes none of them. Compressed STRING
+     * keys vary in length, so they are scanned in a copy of the page instead
+     * (see KeyCompression.findLeafEntry). Other keys are searched in the
+     * decoded leaf.
+     */
+    static Optional<RecordId> searchKey(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                                        Page page, DataBox key) {
+        if (KeyCompression.appliesTo(metadata.getKeySchema())) {
+            Buffer buf = ByteBuffer.wrap(page.readBytes(transaction));
+            int offset = ridOffset(metadata, buf, key);
+            return offset == -1 ? Optional.empty() : Optional.of(RecordId.fromBytes(buf, offset));
+        }
+        if (!BPlusNode.isSearchableInPage(metadata.getKeySchema())) {
+            LeafNode leaf = (LeafNode) BPlusNode.fromBytes(transaction, metadata, page.getPageNum());
+            return leaf.getKey(key);
+        }
+
+        // Holding the monitor of the page keeps the keys read from one
+        // version of the leaf (see InnerNode.searchChild).
+        Buffer buf = page.getBuffer(transaction);
+        synchronized (page) {
+            int offset = ridOffset(metadata, buf, key);
+            return offset == -1 ? Optional.empty() : Optional.of(RecordId.fromBytes(buf, offset));
+        }
+    }
+
+    /**
+     * LeafNode.replaceKey(t, m, p, k, r) replaces the record id associated
+     * with k in the leaf on page p with r, and returns whether k is in the
+     * leaf. The record id is overwritten where it is on the page, in a single
+     * write of its bytes, so a concurrent searchKey finds k with either its
+     * old record id or r, and never misses k (see BPlusTree.add). Keys that
+     * can't be searched on the page are replaced in the decoded leaf, which
+     * is then written back in a single write of the page.
+     */
+    static boolean replaceKey(BaseTransaction transaction, BPlusTreeMetadata metadata, Page page,
+                              DataBox key, RecordId rid) {
+        Type keySchema = metadata.getKeySchema();
+        if (!KeyCompression.appliesTo(keySchema) && !BPlusNode.isSearchableInPage(keySchema)) {
+            LeafNode leaf = (LeafNode) BPlusNode.fromBytes(transaction, metadata, page.getPageNum());
+            int index = leaf.keys.indexOf(key);
+            if (index == -1) {
+                return false;
+            }
+            leaf.rids.set(index, rid);
+            leaf.sync(transaction);
+            return true;
+        }
+
+        byte[] bytes = new byte[RecordId.getSizeInBytes()];
+        rid.writeTo(ByteBuffer.wrap(bytes), 0);
+        synchronized (page) {
+            Buffer buf = KeyCompression.appliesTo(keySchema) ? ByteBuffer.wrap(page.readBytes(transaction))
+                         : page.getBuffer(transaction);
+            int offset = ridOffset(metadata, buf, key);
+            if (offset == -1) {
+                return false;
+            }
+            page.getBuffer(transaction).position(offset).put(bytes);
+        }
+        NodeCache.invalidate(metadata, page.getPageNum());
+        return true;
+    }
+
+    /**
+     * Returns the offset of the record id associated with key in buf, which
+     * holds the page of a leaf whose keys are compressed or searchable on the
+     * page, or -1 if key is not in the leaf. See toBytes for the layout of
+     * the page.
+     */
+    private static int ridOffset(BPlusTreeMetadata metadata, Buffer buf, DataBox key) {
+        int entriesOffset = 1 + Integer.BYTES + Integer.BYTES;
+        int n = buf.getInt(1 + Integer.BYTES);
+        if (KeyCompression.appliesTo(metadata.getKeySchema())) {
+            return KeyCompression.findLeafEntry(buf, entriesOffset, n, key.getString());
+        }
+
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        int entrySize = keySize + RecordId.getSizeInBytes();
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (BPlusNode.compareKeyAt(buf, entriesOffset + mid * entrySize, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int offset = entriesOffset + lo * entrySize;
+        if (lo == n || BPlusNode.compareKeyAt(buf, offset, key) != 0) {
+            return -1;
+        }
+        return offset + keySize;
+    }
+
+    /**
+     * LeafNode.rightLink(t, m, p, k) returns the page number of the right
+     * sibling of the leaf on page p if k is greater than every key of the
+     * leaf, and -1 otherwise, or if the leaf has no right sibling. A search
+     * that reaches a leaf whose keys are all less than k may have been
+     * directed there by a parent that doesn't know yet that the leaf split,
+     * and continues at the right sibling (see BPlusNode.search). Keys are
+     * compared as searchKey compares them.
+     */
+    static int rightLink(BaseTransaction transaction, BPlusTreeMetadata metadata, Page page,
+                         DataBox key) {
+        int entriesOffset = 1 + Integer.BYTES + Integer.BYTES;
+        if (KeyCompression.appliesTo(metadata.getKeySchema())) {
+            Buffer buf = ByteBuffer.wrap(page.readBytes(transaction));
+            int n = buf.getInt(1 + Integer.BYTES);
+            if (n > 0 && KeyCompression.compareLastLeafEntry(buf, entriesOffset, n, key.getString()) >= 0) {
+                return -1;
+            }
+            return buf.getInt(1);
+        }
+        if (!BPlusNode.isSearchableInPage(metadata.getKeySchema())) {
+            LeafNode leaf = (LeafNode) BPlusNode.fromBytes(transaction, metadata, page.getPageNum());
+            if (!leaf.keys.isEmpty() && leaf.keys.get(leaf.keys.size() - 1).compareTo(key) >= 0) {
+                return -1;
+            }
+            return leaf.rightSibling.orElse(-1);
+        }
+
+        Buffer buf = page.getBuffer(transaction);
+        int entrySize = metadata.getKeySchema().getSizeInBytes() + RecordId.getSizeInBytes();
+        synchronized (page) {
+            int n = buf.getInt(1 + Integer.BYTES);
+            if (n > 0 && BPlusNode.compareKeyAt(buf, entriesOffset + (n - 1) * entrySize, key) >= 0) {
+                return -1;
+            }
+            return buf.getInt(1);
+        }
+    }
+
+    /**
+     * Splits this leaf in two: keeps the first half of its entries, and moves
+     * the rest to a new right sibling, which it returns. The new leaf is
+     * written first, and then this leaf, its entries and its right link to
+     * the new leaf in a single write of its page, so that a concurrent
+     * BPlusNode.search finds every key either here or to the right. The
+     * split key to pass up to the parent, which the caller inserts after this
+     * returns, is KeyCompression.separator of the last key of this leaf and
+     * the first key of the new one.
+     */
+    LeafNode split(BaseTransaction transaction) {
+        int d = keys.size() / 2;
+        List<DataBox> rightKeys = new ArrayList<>(keys.subList(d, keys.size()));
+        List<RecordId> rightRids = new ArrayList<>(rids.subList(d, rids.size()));
+        LeafNode right = new LeafNode(metadata, rightKeys, rightRids, rightSibling, transaction);
+
+        keys = new ArrayList<>(keys.subList(0, d));
+        rids = new ArrayList<>(rids.subList(0, d));
+        rightSibling = Optional.of(right.getPage().getPageNum());
+        sync(transaction);
+        return right;
+    }
+
     /**
      * Returns an iterator over the record ids of this leaf in ascending order of
      * their corresponding keys.
@@ -186,6 +358,77 @@ class LeafNode extends BPlusNode {
         return rids.subList(index, rids.size()).iterator();
     }
 
+    /**
+     * Returns an iterator over the record ids of this leaf that have a
+     * corresponding key between `lo` and `hi`, each bound included or not as
+     * loInclusive and hiInclusive say. A null bound leaves that side of the
+     * range open. The record ids are returned in ascending order of their
+     * corresponding keys.
+     *
+     * In a tree of tuple keys, a bound may be a prefix of the keys, which
+     * every key that starts with it is equal to: scanRange(p, true, p, true)
+     * matches every key that starts with p.
+     */
+    public Iterator<RecordId> scanRange(DataBox lo, boolean loInclusive, DataBox hi, boolean hiInclusive) {
+        int from = lo == null ? 0 : numBefore(lo, !loInclusive);
+        int to = hi == null ? keys.size() : numBefore(hi, hiInclusive);
+        return rids.subList(from, Math.max(from, to)).iterator();
+    }
+
+    /**
+     * Returns an iterator over the keys of this leaf that lie in the same
+     * range as the record ids returned by scanRange, in ascending order.
+     * Together with the keys of the leaves to its right, these answer a query
+     * on the indexed columns alone without reading any of the records.
+     */
+    public Iterator<DataBox> scanRangeKeys(DataBox lo, boolean loInclusive, DataBox hi, boolean hiInclusive) {
+        int from = lo == null ? 0 : numBefore(lo, !loInclusive);
+        int to = hi == null ? keys.size() : numBefore(hi, hiInclusive);
+        return keys.subList(from, Math.max(from, to)).iterator();
+    }
+
+    /**
+     * Returns whether this leaf has a key past the upper bound `hi` (included
+     * in the range or not as hiInclusive says), in which case so does every
+     * leaf to its right and a range scan can stop at this leaf. A null bound
+     * is never passed.
+     */
+    public boolean passes(DataBox hi, boolean hiInclusive) {
+        if (hi == null || keys.isEmpty()) {
+            return false;
+        }
+        int c = compareToBound(keys.get(keys.size() - 1), hi);
+        return hiInclusive ? c > 0 : c >= 0;
+    }
+
+    /**
+     * Returns the number of keys that are less than bound, or less than or
+     * equal to it if orEqual.
+     */
+    private int numBefore(DataBox bound, boolean orEqual) {
+        int n = 0;
+        for (DataBox key : keys) {
+            int c = compareToBound(key, bound);
+            if (c < 0 || (orEqual && c == 0)) {
+                ++n;
+            } else {
+                break;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Compares key against a bound of a range scan, which, if keys are tuples,
+     * may be a prefix of key (see TupleDataBox#comparePrefix).
+     */
+    static int compareToBound(DataBox key, DataBox bound) {
+        if (key instanceof TupleDataBox && bound instanceof TupleDataBox) {
+            return ((TupleDataBox) key).comparePrefix((TupleDataBox) bound);
+        }
+        return key.compareTo(bound);
+    }
+
     // Helpers ///////////////////////////////////////////////////////////////////
     @Override
     public Page getPage() {
@@ -202,14 +445,33 @@ class LeafNode extends BPlusNode {
         return Optional.of(LeafNode.fromBytes(transaction, metadata, pageNum));
     }
 
-    /** Serializes this leaf to its page. */
+    @Override
+    BPlusTreeMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    int numKeys() {
+        return keys.size();
+    }
+
+    @Override
+    LeafNode copy() {
+        return new LeafNode(this);
+    }
+
+    /**
+     * Serializes this leaf to its page, and drops the leaf from the NodeCache
+     * if that changes the page.
+     */
     private void sync(BaseTransaction transaction) {
         Buffer b = page.getBuffer(transaction);
         byte[] newBytes = toBytes();
         byte[] bytes = new byte[newBytes.length];
         b.get(bytes);
         if (!Arrays.equals(bytes, newBytes)) {
-            page.getBuffer(transaction).put(toBytes());
+            page.getBuffer(transaction).put(newBytes);
+            NodeCache.invalidate(metadata, page.getPageNum());
         }
     }
 
@@ -240,8 +502,17 @@ class LeafNode extends BPlusNode {
         //   n = (pageSizeInBytes - 9) / (keySize + ridSize)
         //
         // The order d is half of n.
+        //
+        // String keys are compressed (see KeyCompression), so a leaf of them
+        // fits as many entries as their compressed sizes allow, and splits
+        // when they no longer fit on its page (see BPlusNode.overflows). An
+        // entry takes at least 2 + ridSize bytes, after the 2 bytes of the
+        // length of the common prefix, which bounds n.
         int keySize = keySchema.getSizeInBytes();
         int ridSize = RecordId.getSizeInBytes();
+        if (KeyCompression.appliesTo(keySchema)) {
+            return (pageSizeInBytes - 11) / (Short.BYTES + ridSize) / 2;
+        }
         int n = (pageSizeInBytes - 9) / (keySize + ridSize);
         return n / 2;
     }
@@ -314,6 +585,10 @@ class LeafNode extends BPlusNode {
         //
         // represent a leaf node with sibling on page 4 and a single (key, rid)
         // pair with key 3 and page id (3, 1).
+        //
+        // String keys are prefix compressed instead (see KeyCompression): d is
+        // the prefix that all keys share, followed by the rest of each key and
+        // its rid.
 
         // All sizes are in bytes.
         int isLeafSize = 1;
@@ -321,18 +596,28 @@ class LeafNode extends BPlusNode {
         int lenSize = Integer.BYTES;
         int keySize = metadata.getKeySchema().getSizeInBytes();
         int ridSize = RecordId.getSizeInBytes();
-        int entriesSize = (keySize + ridSize) * keys.size();
+        boolean compressed = KeyCompression.appliesTo(metadata.getKeySchema());
+        int entriesSize = compressed ? KeyCompression.leafEntriesSize(keys)
+                          : (keySize + ridSize) * keys.size();
         int size = isLeafSize + siblingSize + lenSize + entriesSize;
 
-        ByteBuffer buf = ByteBuffer.allocate(size);
-        buf.put((byte) 1);
-        buf.putInt(rightSibling.orElse(-1));
-        buf.putInt(keys.size());
+        // Keys and rids are written in place so that serializing a node only
+        // allocates the returned array.
+        byte[] bytes = new byte[size];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        buf.put(0, (byte) 1);
+        buf.putInt(isLeafSize, rightSibling.orElse(-1));
+        buf.putInt(isLeafSize + siblingSize, keys.size());
+        int offset = isLeafSize + siblingSize + lenSize;
+        if (compressed) {
+            KeyCompression.writeLeafEntries(buf, offset, keys, rids);
+            return bytes;
+        }
         for (int i = 0; i < keys.size(); ++i) {
-            buf.put(keys.get(i).toBytes());
-            buf.put(rids.get(i).toBytes());
+            offset += keys.get(i).writeTo(buf, offset);
+            offset += rids.get(i).writeTo(buf, offset);
         }
-        return buf.array();
+        return bytes;
     }
 
     /**
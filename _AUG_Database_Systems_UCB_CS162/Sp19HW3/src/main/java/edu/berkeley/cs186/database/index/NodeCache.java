@@ -0,0 +1,298 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.io.PageAllocator;
+
+/**
+ * A cache of decoded B+ tree nodes, shared by all trees.
+ *
+ * Every step of a root-to-leaf traversal reads a node with
+ * BPlusNode.fromBytes, which deserializes the keys and child pointers (or
+ * record ids) of its page again. The upper levels of a tree are read by every
+ * traversal, so fromBytes looks nodes up here first, by the file (allocator)
+ * of their tree and their page number, and only decodes those it misses.
+ *
+ * A cached node is never handed out itself, but as a copy (see
+ * BPlusNode#copy), so that a caller that changes its node changes neither the
+ * cached node nor the node of another caller. Once the change is written to
+ * the page (see LeafNode#sync and InnerNode#sync), the cached node is out of
+ * date and is dropped.
+ *
+ * The cache holds at most getCapacityInBytes bytes of nodes, by an estimate
+ * of the memory a decoded node takes up (see estimateSizeInBytes), and
+ * evicts nodes that have not been used recently to stay below it.
+ *
+ * Readers decode nodes while a writer may be changing them (see BPlusTree),
+ * so a reader can decode a page just before a writer changes it and cache
+ * the old node just after the writer dropped it. To keep such a node out,
+ * every invalidation advances a version, and a reader only caches the node
+ * it decoded if the version has not moved since it started (see put).
+ *
+ * Every traversal goes through the cache, so nothing in it takes a lock:
+ * nodes are kept in a ConcurrentHashMap, and the counts and the version are
+ * atomic. Eviction approximates least-recently used order with the CLOCK
+ * algorithm. Cached entries sit in a ring (a concurrent queue) in the order
+ * they were cached, and a lookup only sets the referenced bit of its entry.
+ * To evict, the hand takes the entry at the head of the ring: a referenced
+ * entry gets a second chance, its bit cleared and sent to the tail, and an
+ * unreferenced one is dropped. Each eviction thus costs O(1) amortized,
+ * however large the cache.
+ */
+public class NodeCache {
+    private static final long defaultCapacityInBytes = 4 * 1024 * 1024;
+
+    // An estimate of the memory that a decoded node takes up besides its
+    // entries, and that each entry takes up besides the bytes of its key: the
+    // objects and references of the key, the list slots and the child pointer
+    // or record id.
+    private static final int nodeOverheadInBytes = 128;
+    private static final int entryOverheadInBytes = 48;
+
+    private static ConcurrentHashMap<Pair<PageAllocator, Integer>, Entry> nodes = new ConcurrentHashMap<>();
+    private static volatile long capacityInBytes = defaultCapacityInBytes;
+    private static AtomicLong sizeInBytes = new AtomicLong();
+    private static AtomicLong version = new AtomicLong();
+    private static ConcurrentLinkedQueue<Entry> ring = new ConcurrentLinkedQueue<>();
+    private static AtomicInteger ringSize = new AtomicInteger();
+    private static AtomicBoolean purging = new AtomicBoolean();
+
+    private static LongAdder numHits = new LongAdder();
+    private static LongAdder numMisses = new LongAdder();
+    private static LongAdder numEvictions = new LongAdder();
+    private static LongAdder numInvalidations = new LongAdder();
+
+    /**
+     * A cached node, its key and estimated size, and whether it was looked up
+     * since the hand of the clock last passed it.
+     */
+    private static class Entry {
+        final Pair<PageAllocator, Integer> key;
+        final BPlusNode node;
+        final long sizeInBytes;
+        volatile boolean referenced = false;
+
+        Entry(Pair<PageAllocator, Integer> key, BPlusNode node, long sizeInBytes) {
+            this.key = key;
+            this.node = node;
+            this.sizeInBytes = sizeInBytes;
+        }
+
+        /** Returns whether this entry is still the one cached under its key. */
+        boolean isCached() {
+            return nodes.get(key) == this;
+        }
+    }
+
+    /**
+     * Returns a copy of the cached node on page pageNum of the tree of
+     * metadata, or null if it is not cached.
+     */
+    static BPlusNode get(BPlusTreeMetadata metadata, int pageNum) {
+        Entry entry = nodes.get(key(metadata, pageNum));
+        if (entry == null) {
+            numMisses.increment();
+            return null;
+        }
+        numHits.increment();
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.node.copy();
+    }
+
+    /**
+     * Returns the version of the cache, which every invalidation advances. A
+     * reader takes it before it reads a page and passes it to put.
+     */
+    static long version() {
+        return version.get();
+    }
+
+    /**
+     * Caches a copy of node, the node on page pageNum of the tree of metadata,
+     * which was read from its page at version readVersion (see version). If
+     * a node was invalidated since, the page may have changed after it was
+     * read, and node is not cached.
+     *
+     * The version is checked again once the node is in the map: an
+     * invalidation that advanced it in between either sees the node and
+     * drops it, or is seen here and the node is taken back out.
+     */
+    static void put(BPlusTreeMetadata metadata, int pageNum, BPlusNode node,
+                    long readVersion) {
+        long size = estimateSizeInBytes(node);
+        if (readVersion != version.get() || size > capacityInBytes) {
+            return;
+        }
+        Pair<PageAllocator, Integer> key = key(metadata, pageNum);
+        Entry entry = new Entry(key, node.copy(), size);
+        Entry old = nodes.put(key, entry);
+        if (old != null) {
+            sizeInBytes.addAndGet(-old.sizeInBytes);
+        }
+        sizeInBytes.addAndGet(size);
+        ring.offer(entry);
+        ringSize.incrementAndGet();
+        purgeRing();
+        if (readVersion != version.get()) {
+            remove(key, entry);
+            return;
+        }
+        evict();
+    }
+
+    /** Drops the node on page pageNum of the tree of metadata, which has changed. */
+    static void invalidate(BPlusTreeMetadata metadata, int pageNum) {
+        version.incrementAndGet();
+        Entry old = nodes.remove(key(metadata, pageNum));
+        if (old != null) {
+            sizeInBytes.addAndGet(-old.sizeInBytes);
+            numInvalidations.increment();
+        }
+    }
+
+    /** Drops every node of the tree stored by allocator, e.g. when it is closed. */
+    static void invalidateAll(PageAllocator allocator) {
+        version.incrementAndGet();
+        for (Map.Entry<Pair<PageAllocator, Integer>, Entry> entry : nodes.entrySet()) {
+            if (entry.getKey().getFirst() == allocator) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** Drops every node and resets the hit and miss counts. */
+    public static void clear() {
+        for (Map.Entry<Pair<PageAllocator, Integer>, Entry> entry : nodes.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+        purgeRing();
+        numHits.reset();
+        numMisses.reset();
+        numEvictions.reset();
+        numInvalidations.reset();
+    }
+
+    /** Sets the most memory the cached nodes may take up, evicting nodes to fit. */
+    public static void setCapacityInBytes(long capacityInBytes) {
+        NodeCache.capacityInBytes = capacityInBytes;
+        evict();
+    }
+
+    public static long getCapacityInBytes() {
+        return capacityInBytes;
+    }
+
+    /** Returns the estimated memory taken up by the cached nodes. */
+    public static long getSizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    public static int getNumNodes() {
+        return nodes.size();
+    }
+
+    public static long getNumHits() {
+        return numHits.sum();
+    }
+
+    public static long getNumMisses() {
+        return numMisses.sum();
+    }
+
+    public static long getNumEvictions() {
+        return numEvictions.sum();
+    }
+
+    public static long getNumInvalidations() {
+        return numInvalidations.sum();
+    }
+
+    /** Returns the fraction of lookups that found their node, or 0 if there were none. */
+    public static double getHitRate() {
+        long hits = getNumHits();
+        long numLookups = hits + getNumMisses();
+        return numLookups == 0 ? 0 : (double) hits / numLookups;
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private static Pair<PageAllocator, Integer> key(BPlusTreeMetadata metadata, int pageNum) {
+        return new Pair<>(metadata.getAllocator(), pageNum);
+    }
+
+    /**
+     * Removes the entry of key if it is still entry, and returns whether it
+     * was.
+     */
+    private static boolean remove(Pair<PageAllocator, Integer> key, Entry entry) {
+        if (nodes.remove(key, entry)) {
+            sizeInBytes.addAndGet(-entry.sizeInBytes);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Evicts nodes until the cache fits in its capacity, by moving the hand
+     * of the clock around the ring. Entries that were dropped or replaced
+     * since they were queued are skipped on the way. Every referenced entry
+     * is passed over at most once before its bit is clear, so the hand goes
+     * around at most twice.
+     */
+    private static void evict() {
+        while (sizeInBytes.get() > capacityInBytes) {
+            Entry entry = ring.poll();
+            if (entry == null) {
+                return;
+            }
+            ringSize.decrementAndGet();
+            if (!entry.isCached()) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                ring.offer(entry);
+                ringSize.incrementAndGet();
+            } else if (remove(entry.key, entry)) {
+                numEvictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the entries of the ring that are no longer cached, once they
+     * outnumber the cached ones. Invalidated and replaced nodes leave their
+     * entries behind in the ring, and without evictions nothing else would
+     * take them out. One thread purges at a time; the others carry on.
+     */
+    private static void purgeRing() {
+        if (ringSize.get() <= 2 * nodes.size() + 64 || !purging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<Entry> iter = ring.iterator();
+            while (iter.hasNext()) {
+                if (!iter.next().isCached()) {
+                    iter.remove();
+                    ringSize.decrementAndGet();
+                }
+            }
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    private static long estimateSizeInBytes(BPlusNode node) {
+        int keySize = node.getMetadata().getKeySchema().getSizeInBytes();
+        return nodeOverheadInBytes + (long) node.numKeys() * (keySize + entryOverheadInBytes);
+    }
+}
@@ -0,0 +1,419 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * The record ids of a key that appears in more than one entry of a B+ tree.
+ *
+ * A leaf stores a single record id per key. If a key has more than one, the
+ * leaf stores a pointer in place of the record id instead: a RecordId whose
+ * entry number is POINTER_ENTRY_NUM and whose page number is the first page
+ * of the posting list of the key. A posting list is a chain of overflow pages
+ * in the file of the tree, which together hold the record ids of the key in
+ * page order, i.e. in the order in which a scan of the table finds them.
+ *
+ * Each page is serialized as follows:
+ *
+ *   - the page number of the next page of the list (or -1 for the last),
+ *   - the number n of record ids on the page,
+ *   - the number of bytes that encode them, and
+ *   - the n record ids, delta encoded.
+ *
+ * Each record id is encoded by the difference of its page number from that
+ * of the previous record id on the page, and by the difference of its entry
+ * number from that of the previous one if they are on the same page (or else
+ * the entry number itself), both as variable length integers of 7 bits per
+ * byte. The record ids of a key tend to lie on few pages, so most take two
+ * bytes instead of six. A page that fills up is split in two.
+ */
+class PostingList {
+    // The entry number of a record id in a leaf that points to a posting list.
+    static final short POINTER_ENTRY_NUM = -1;
+
+    private static final int NO_PAGE = -1;
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Short.BYTES;
+
+    private BPlusTreeMetadata metadata;
+    private int headPageNum;
+
+    private PostingList(BPlusTreeMetadata metadata, int headPageNum) {
+        this.metadata = metadata;
+        this.headPageNum = headPageNum;
+    }
+
+    /** Returns whether rid, taken from a leaf, points to a posting list. */
+    static boolean isPointer(RecordId rid) {
+        return rid.getEntryNum() == POINTER_ENTRY_NUM;
+    }
+
+    /** Returns the posting list that pointer (see isPointer) points to. */
+    static PostingList fromPointer(BPlusTreeMetadata metadata, RecordId pointer) {
+        assert(isPointer(pointer));
+        return new PostingList(metadata, pointer.getPageNum());
+    }
+
+    /** Creates a posting list of the given record ids on newly allocated pages. */
+    static PostingList create(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                              List<RecordId> rids) {
+        List<RecordId> sorted = new ArrayList<>(rids);
+        Collections.sort(sorted);
+        return create(transaction, metadata, sorted.iterator());
+    }
+
+    /**
+     * Creates a posting list of rids, which must be in page order and
+     * distinct, on newly allocated pages. Every page but the last is filled,
+     * and the record ids are read one at a time, so a list may be longer than
+     * would fit in memory.
+     */
+    static PostingList create(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                              Iterator<RecordId> rids) {
+        PageAllocator allocator = metadata.getAllocator();
+        int pageNum = allocator.allocPage(transaction);
+        PostingList list = new PostingList(metadata, pageNum);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordId prev = null;
+        int n = 0;
+        while (rids.hasNext()) {
+            RecordId rid = rids.next();
+            int size = out.size();
+            writeRecordId(out, prev, rid);
+            if (out.size() > Page.pageSize - HEADER_SIZE) {
+                // rid doesn't fit, and starts the next page instead.
+                int next = allocator.allocPage(transaction);
+                byte[] bytes = out.toByteArray();
+                list.writePage(transaction, pageNum, next, n, Arrays.copyOf(bytes, size));
+                pageNum = next;
+                out.reset();
+                writeRecordId(out, null, rid);
+                n = 0;
+            }
+            prev = rid;
+            ++n;
+        }
+        list.writePage(transaction, pageNum, NO_PAGE, n, out.toByteArray());
+        return list;
+    }
+
+    /**
+     * Returns an iterator over the (key, rid) pairs of data, which must be
+     * sorted by key and, for each key, in page order, in which the pairs of
+     * every key that appears more than once are replaced by a single pair of
+     * the key and a pointer to a new posting list of their record ids. This
+     * undoes expand, and turns the entries of a table into the entries of a
+     * tree that can be bulk loaded (see BPlusTree#bulkAdd).
+     */
+    static Iterator<Pair<DataBox, RecordId>> collapse(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                                                      Iterator<Pair<DataBox, RecordId>> data) {
+        return new Iterator<Pair<DataBox, RecordId>>() {
+            // The next pair of data, if it was read ahead.
+            private Pair<DataBox, RecordId> peeked = null;
+
+            @Override
+            public boolean hasNext() {
+                return peeked != null || data.hasNext();
+            }
+
+            @Override
+            public Pair<DataBox, RecordId> next() {
+                Pair<DataBox, RecordId> first = take();
+                DataBox key = first.getFirst();
+                if (!hasKey(key)) {
+                    return first;
+                }
+                PostingList list = create(transaction, metadata, new Iterator<RecordId>() {
+                    private boolean tookFirst = false;
+
+                    @Override
+                    public boolean hasNext() {
+                        return !tookFirst || hasKey(key);
+                    }
+
+                    @Override
+                    public RecordId next() {
+                        if (!tookFirst) {
+                            tookFirst = true;
+                            return first.getSecond();
+                        }
+                        return take().getSecond();
+                    }
+                });
+                return new Pair<>(key, list.toPointer());
+            }
+
+            private Pair<DataBox, RecordId> take() {
+                if (peeked == null) {
+                    return data.next();
+                }
+                Pair<DataBox, RecordId> pair = peeked;
+                peeked = null;
+                return pair;
+            }
+
+            // Returns whether the next pair of data is one of key.
+            private boolean hasKey(DataBox key) {
+                if (peeked == null && data.hasNext()) {
+                    peeked = data.next();
+                }
+                return peeked != null && peeked.getFirst().equals(key);
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the record ids of rids, in which every pointer
+     * to a posting list is replaced by the record ids of that list.
+     */
+    static Iterator<RecordId> expand(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                                     Iterator<RecordId> rids) {
+        return new Iterator<RecordId>() {
+            private Iterator<RecordId> postings = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                return postings.hasNext() || rids.hasNext();
+            }
+
+            @Override
+            public RecordId next() {
+                if (postings.hasNext()) {
+                    return postings.next();
+                }
+                RecordId rid = rids.next();
+                if (!isPointer(rid)) {
+                    return rid;
+                }
+                postings = fromPointer(metadata, rid).iterator(transaction);
+                return postings.next();
+            }
+        };
+    }
+
+    /** Returns the pointer to this posting list to store in a leaf. */
+    RecordId toPointer() {
+        return new RecordId(headPageNum, POINTER_ENTRY_NUM);
+    }
+
+    /** Returns the number of record ids in this posting list. */
+    int size(BaseTransaction transaction) {
+        int size = 0;
+        for (int pageNum = headPageNum; pageNum != NO_PAGE; pageNum = nextPageNum(transaction, pageNum)) {
+            size += getBuffer(transaction, pageNum).getInt(Integer.BYTES);
+        }
+        return size;
+    }
+
+    /**
+     * Returns an iterator over the record ids of this posting list in page
+     * order. The pages of the list are read one at a time, as the iterator
+     * reaches them.
+     */
+    Iterator<RecordId> iterator(BaseTransaction transaction) {
+        return new Iterator<RecordId>() {
+            private int pageNum = headPageNum;
+            private Iterator<RecordId> pageIterator = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!pageIterator.hasNext() && pageNum != NO_PAGE) {
+                    pageIterator = readPage(transaction, pageNum).iterator();
+                    pageNum = nextPageNum(transaction, pageNum);
+                }
+                return pageIterator.hasNext();
+            }
+
+            @Override
+            public RecordId next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return pageIterator.next();
+            }
+        };
+    }
+
+    /**
+     * Adds rid to this posting list, if it is not in it yet, on the page of
+     * the list where it belongs in page order.
+     */
+    void add(BaseTransaction transaction, RecordId rid) {
+        int pageNum = headPageNum;
+        int next = nextPageNum(transaction, pageNum);
+        while (next != NO_PAGE && firstRecordId(transaction, next).compareTo(rid) <= 0) {
+            pageNum = next;
+            next = nextPageNum(transaction, pageNum);
+        }
+
+        List<RecordId> rids = readPage(transaction, pageNum);
+        int index = Collections.binarySearch(rids, rid);
+        if (index >= 0) {
+            return;
+        }
+        rids.add(-index - 1, rid);
+        byte[] bytes = encode(rids);
+        if (bytes.length <= Page.pageSize - HEADER_SIZE) {
+            writePage(transaction, pageNum, next, rids.size(), bytes);
+            return;
+        }
+
+        // Split the page in two, the second half on a new page after it.
+        int half = rids.size() / 2;
+        int newPageNum = metadata.getAllocator().allocPage(transaction);
+        writePage(transaction, newPageNum, next, rids.subList(half, rids.size()));
+        writePage(transaction, pageNum, newPageNum, rids.subList(0, half));
+    }
+
+    /**
+     * Removes rid from this posting list. A page of the list that becomes
+     * empty is freed, unless it is the only one.
+     *
+     * @return whether rid was in this posting list
+     */
+    boolean remove(BaseTransaction transaction, RecordId rid) {
+        int prev = NO_PAGE;
+        for (int pageNum = headPageNum; pageNum != NO_PAGE; pageNum = nextPageNum(transaction, pageNum)) {
+            List<RecordId> rids = readPage(transaction, pageNum);
+            int next = nextPageNum(transaction, pageNum);
+            if (!rids.remove(rid)) {
+                prev = pageNum;
+                continue;
+            }
+
+            PageAllocator allocator = metadata.getAllocator();
+            if (!rids.isEmpty() || (prev == NO_PAGE && next == NO_PAGE)) {
+                writePage(transaction, pageNum, next, rids);
+            } else if (prev != NO_PAGE) {
+                writePage(transaction, prev, next, readPage(transaction, prev));
+                allocator.freePage(transaction, pageNum);
+            } else {
+                // The head stays where the leaf points to, so it takes over
+                // the contents of the next page instead.
+                writePage(transaction, pageNum, nextPageNum(transaction, next), readPage(transaction, next));
+                allocator.freePage(transaction, next);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** Frees every page of this posting list. */
+    void free(BaseTransaction transaction) {
+        int pageNum = headPageNum;
+        while (pageNum != NO_PAGE) {
+            int next = nextPageNum(transaction, pageNum);
+            metadata.getAllocator().freePage(transaction, pageNum);
+            pageNum = next;
+        }
+    }
+
+    // Pages ///////////////////////////////////////////////////////////////////
+    private Buffer getBuffer(BaseTransaction transaction, int pageNum) {
+        return metadata.getAllocator().fetchPage(transaction, pageNum).getBuffer(transaction);
+    }
+
+    private int nextPageNum(BaseTransaction transaction, int pageNum) {
+        return getBuffer(transaction, pageNum).getInt(0);
+    }
+
+    private RecordId firstRecordId(BaseTransaction transaction, int pageNum) {
+        return readPage(transaction, pageNum, 1).get(0);
+    }
+
+    private List<RecordId> readPage(BaseTransaction transaction, int pageNum) {
+        return readPage(transaction, pageNum, Integer.MAX_VALUE);
+    }
+
+    /** Reads the first (at most) limit record ids of a page. */
+    private List<RecordId> readPage(BaseTransaction transaction, int pageNum, int limit) {
+        Buffer buf = getBuffer(transaction, pageNum);
+        buf.getInt();
+        int n = buf.getInt();
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return decode(bytes, Math.min(n, limit));
+    }
+
+    private void writePage(BaseTransaction transaction, int pageNum, int next, List<RecordId> rids) {
+        writePage(transaction, pageNum, next, rids.size(), encode(rids));
+    }
+
+    private void writePage(BaseTransaction transaction, int pageNum, int next, int n, byte[] bytes) {
+        assert(bytes.length <= Page.pageSize - HEADER_SIZE);
+        Buffer buf = getBuffer(transaction, pageNum);
+        buf.putInt(next);
+        buf.putInt(n);
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    // Encoding ////////////////////////////////////////////////////////////////
+    /** Delta encodes rids, which are sorted. See the comment at the top. */
+    static byte[] encode(List<RecordId> rids) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordId prev = null;
+        for (RecordId rid : rids) {
+            writeRecordId(out, prev, rid);
+            prev = rid;
+        }
+        return out.toByteArray();
+    }
+
+    /** Encodes rid after prev, or as the first of a page if prev is null. */
+    private static void writeRecordId(ByteArrayOutputStream out, RecordId prev, RecordId rid) {
+        int prevPageNum = prev == null ? 0 : prev.getPageNum();
+        int prevEntryNum = prev == null ? 0 : prev.getEntryNum();
+        int pageDelta = rid.getPageNum() - prevPageNum;
+        writeVarInt(out, pageDelta);
+        writeVarInt(out, pageDelta == 0 ? rid.getEntryNum() - prevEntryNum : rid.getEntryNum());
+    }
+
+    /** Decodes the n record ids that bytes encodes. */
+    static List<RecordId> decode(byte[] bytes, int n) {
+        List<RecordId> rids = new ArrayList<>(n);
+        int[] offset = new int[1];
+        int pageNum = 0;
+        int entryNum = 0;
+        for (int i = 0; i < n; ++i) {
+            int pageDelta = readVarInt(bytes, offset);
+            int entryValue = readVarInt(bytes, offset);
+            pageNum += pageDelta;
+            entryNum = pageDelta == 0 ? entryNum + entryValue : entryValue;
+            rids.add(new RecordId(pageNum, (short) entryNum));
+        }
+        return rids;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int x) {
+        while ((x & ~0x7f) != 0) {
+            out.write((x & 0x7f) | 0x80);
+            x >>>= 7;
+        }
+        out.write(x);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] offset) {
+        int x = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[offset[0]++];
+            x |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return x;
+    }
+}
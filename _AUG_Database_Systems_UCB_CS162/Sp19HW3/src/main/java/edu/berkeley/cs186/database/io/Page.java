@@ -61,11 +61,15 @@ public class Page {
     /**
      * Reads num bytes from offset position into buf.
      *
+     * The same Page object is handed out to every thread that fetches it, and
+     * pageData has a single position, so reads and writes synchronize on the
+     * page.
+     *
      * @param position the offset in the page to read from
      * @param num the number of bytes to read
      * @param buf the buffer to put the bytes into
      */
-    private void readBytes(int position, int num, byte[] buf) {
+    private synchronized void readBytes(int position, int num, byte[] buf) {
         if (position < 0 || num < 0) {
             throw new PageException("position or num can't be negative");
         }
@@ -97,7 +101,7 @@ public class Page {
      * @param num the number of bytes to write
      * @param buf the source for the write
      */
-    private void writeBytes(int position, int num, byte[] buf) {
+    private synchronized void writeBytes(int position, int num, byte[] buf) {
         if (buf.length < num) {
             throw new PageException("num bytes to write is longer than buffer");
         }
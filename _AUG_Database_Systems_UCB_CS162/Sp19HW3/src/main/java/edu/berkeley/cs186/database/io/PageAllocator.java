@@ -45,7 +45,7 @@ public class PageAllocator implements Closeable {
     private FileChannel fc;
     private int numPages;
     private int numUsedHeaderPages;
-    private int allocID;
+    private final int allocID;
     private boolean durable;
     /**
      * Create a new PageAllocator that writes its bytes into a file named fName. If wipe is true, the
@@ -181,13 +181,32 @@ public class PageAllocator implements Closeable {
      * @param pageNum the virtual page number
      * @return a Page object wrapping the page corresponding to pageNum
      */
-    public synchronized Page fetchPage(BaseTransaction transaction, int pageNum) {
+    public Page fetchPage(BaseTransaction transaction, int pageNum) {
         if (pageNum < 0) {
             throw new PageException("invalid page number -- out of bounds");
         }
 
         numIOs.getAndIncrement();
 
+        // A cached page is returned without taking the monitor of this
+        // allocator, which allocating and loading pages hold, so that threads
+        // reading the same file (e.g. the readers of a B+ tree) only meet on
+        // the cache.
+        synchronized(PageAllocator.class) {
+            Page page = pageLRU.get(translatePageNum(pageNum));
+            if (page != null) {
+                return page;
+            }
+        }
+        return loadPage(transaction, pageNum);
+    }
+
+    /**
+     * Loads the page corresponding to virtual page number pageNum into the
+     * cache, unless another thread has meanwhile, so that every thread is
+     * handed the same Page object.
+     */
+    private synchronized Page loadPage(BaseTransaction transaction, int pageNum) {
         synchronized(PageAllocator.class) {
             if (pageLRU.containsKey(translatePageNum(pageNum))) {
                 return pageLRU.get(translatePageNum(pageNum));
@@ -292,6 +311,75 @@ public class PageAllocator implements Closeable {
         return freePage(transaction, p);
     }
 
+    /**
+     * Shrinks the file backing this PageAllocator so that it ends right after
+     * the block of the highest numbered allocated page. Freeing a page only
+     * clears its bit in the header page, so without this the file never shrinks
+     * below its high-water mark. Pages past the new end of the file are
+     * unallocated, and are mapped (and the file regrown) as usual if they are
+     * allocated again.
+     *
+     * @return the number of bytes by which the file shrank
+     */
+    public synchronized long truncate(BaseTransaction transaction) {
+        int lastPageNum = -1;
+        Buffer masterBuffer = this.masterPage.getBuffer(transaction);
+        for (int i = numHeaderPages - 1; i >= 0 && lastPageNum == -1; i--) {
+            if (masterBuffer.getInt(i * 4) == 0) {
+                continue;
+            }
+            byte[] headerBytes = getHeadPage(i).readBytes(transaction);
+            for (int j = Page.pageSize - 1; j >= 0; j--) {
+                if (headerBytes[j] != 0) {
+                    lastPageNum = i * Page.pageSize + j;
+                    break;
+                }
+            }
+        }
+
+        // The master page and the first header page are always kept.
+        long numBlocks = 2;
+        if (lastPageNum != -1) {
+            int headPageIndex = lastPageNum / Page.pageSize;
+            int dataPageIndex = lastPageNum % Page.pageSize;
+            numBlocks = 2 + headPageIndex * (Page.pageSize + 1) + dataPageIndex + 1;
+        }
+
+        try {
+            long oldSize = this.fc.size();
+            long newSize = numBlocks * Page.pageSize;
+            if (newSize >= oldSize) {
+                return 0;
+            }
+            this.fc.truncate(newSize);
+            return oldSize - newSize;
+        } catch (IOException e) {
+            throw new PageException("Could not truncate file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the virtual page numbers of every allocated page in increasing
+     * order. Only the master and header pages are read, so unlike iterator()
+     * this does not fetch (or count an IO for) any data page.
+     */
+    public synchronized List<Integer> getAllocatedPageNums(BaseTransaction transaction) {
+        List<Integer> pageNums = new ArrayList<>(this.numPages);
+        Buffer masterBuffer = this.masterPage.getBuffer(transaction);
+        for (int i = 0; i < numHeaderPages && pageNums.size() < this.numPages; i++) {
+            if (masterBuffer.getInt(i * 4) == 0) {
+                continue;
+            }
+            byte[] headerBytes = getHeadPage(i).readBytes(transaction);
+            for (int j = 0; j < Page.pageSize; j++) {
+                if (headerBytes[j] != 0) {
+                    pageNums.add(i * Page.pageSize + j);
+                }
+            }
+        }
+        return pageNums;
+    }
+
     /**
      * Close this PageAllocator.
      */
@@ -362,7 +450,7 @@ public class PageAllocator implements Closeable {
         return PageAllocator.cacheMisses.get();
     }
 
-    private synchronized long translatePageNum(int pageNum) {
+    private long translatePageNum(int pageNum) {
         return (((long) this.allocID) << 32) | (((long) pageNum) & 0xFFFFFFFFL);
     }
 
@@ -0,0 +1,108 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * An AggregateOperator groups the records of its source on a column, and
+ * returns one record per group: the group by value followed by the aggregates
+ * of the group (see Aggregator). HashAggregateOperator and
+ * StreamAggregateOperator differ only in how they find the groups.
+ */
+public abstract class AggregateOperator extends QueryOperator {
+    protected Database.Transaction transaction;
+    protected String groupByColumn;
+    protected int groupByColumnIndex;
+    protected Aggregator aggregator;
+    private List<QueryPlan.AggregateFunction> functions;
+    private List<String> aggregateColumns;
+
+    /**
+     * Creates a new AggregateOperator that groups the records of source on
+     * groupByColumn and computes the given aggregates of every group.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param groupByColumn the column to group on
+     * @param functions the aggregates to compute, each at most once
+     * @param aggregateColumns for every aggregate, the column it is computed
+     *                         over, which is ignored (and may be null) for COUNT
+     * @throws QueryPlanException
+     */
+    public AggregateOperator(QueryOperator source,
+                             Database.Transaction transaction,
+                             String groupByColumn,
+                             List<QueryPlan.AggregateFunction> functions,
+                             List<String> aggregateColumns) throws QueryPlanException {
+        super(OperatorType.GROUPBY);
+        this.transaction = transaction;
+        this.groupByColumn = groupByColumn;
+        this.functions = functions;
+        this.aggregateColumns = aggregateColumns;
+        if (functions.size() != aggregateColumns.size()) {
+            throw new QueryPlanException("Every aggregate needs a column.");
+        }
+        if (functions.size() != functions.stream().distinct().count()) {
+            throw new QueryPlanException("Cannot compute an aggregate more than once.");
+        }
+
+        this.setSource(source);
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        Schema sourceSchema = this.getSource().getOutputSchema();
+        this.groupByColumn = this.checkSchemaForColumn(sourceSchema, this.groupByColumn);
+        this.groupByColumnIndex = sourceSchema.getFieldNames().indexOf(this.groupByColumn);
+        List<Integer> columnIndices = new ArrayList<>();
+        for (int i = 0; i < this.functions.size(); ++i) {
+            if (this.functions.get(i) == QueryPlan.AggregateFunction.COUNT) {
+                columnIndices.add(-1);
+            } else {
+                String column = this.checkSchemaForColumn(sourceSchema, this.aggregateColumns.get(i));
+                columnIndices.add(sourceSchema.getFieldNames().indexOf(column));
+            }
+        }
+        this.aggregator = new Aggregator(sourceSchema, this.groupByColumnIndex, this.functions, columnIndices);
+
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        names.add(this.groupByColumn);
+        types.add(sourceSchema.getFieldTypes().get(this.groupByColumnIndex));
+        for (QueryPlan.AggregateFunction function : this.functions) {
+            names.add(Aggregator.getOutputName(function));
+        }
+        types.addAll(this.aggregator.getOutputTypes());
+        return new Schema(names, types);
+    }
+
+    public String getGroupByColumn() {
+        return this.groupByColumn;
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\ncolumn: " + this.groupByColumn +
+               "\naggregates: " + this.functions;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    public int estimateIOCost() throws QueryPlanException {
+        return this.getSource().getIOCost();
+    }
+}
@@ -0,0 +1,266 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * Computes a list of aggregates (COUNT, SUM, AVERAGE, MIN and MAX) over groups
+ * of records, one running State per group.
+ *
+ * A State can be written out as a partial aggregate record, and partial
+ * aggregates of the same group can be merged back into a State, so that an
+ * aggregation that runs out of memory can spill groups to disk and finish
+ * them later. A partial aggregate record holds the group by value, the number
+ * of records aggregated, and for every aggregate in turn: nothing for COUNT,
+ * the running sum for SUM and AVERAGE (as the two halves of the bits of a
+ * double, so that nothing is lost), and the running minimum or maximum for MIN
+ * and MAX.
+ *
+ * The output of a group is its COUNT as an INT, its SUM as the type of the
+ * column summed, its AVERAGE as a FLOAT, and its MIN and MAX as the type of
+ * the column, just like ProjectOperator's aggregates.
+ */
+public class Aggregator {
+    private List<QueryPlan.AggregateFunction> functions;
+    private List<Integer> columnIndices;
+    private List<Type> columnTypes;
+    private Schema partialSchema;
+
+    /**
+     * @param sourceSchema the schema of the records aggregated
+     * @param groupByColumnIndex the index of the group by column in sourceSchema
+     * @param functions the aggregates to compute
+     * @param columnIndices for every aggregate, the index of the column it is
+     *                      computed over, which is ignored for COUNT
+     * @throws QueryPlanException if a SUM or AVERAGE is over a column that is
+     *                            neither an INT nor a FLOAT
+     */
+    public Aggregator(Schema sourceSchema, int groupByColumnIndex,
+                      List<QueryPlan.AggregateFunction> functions,
+                      List<Integer> columnIndices) throws QueryPlanException {
+        this.functions = functions;
+        this.columnIndices = columnIndices;
+        this.columnTypes = new ArrayList<>();
+
+        List<String> partialNames = new ArrayList<>();
+        List<Type> partialTypes = new ArrayList<>();
+        partialNames.add("key");
+        partialTypes.add(sourceSchema.getFieldTypes().get(groupByColumnIndex));
+        partialNames.add("count");
+        partialTypes.add(Type.intType());
+        for (int i = 0; i < functions.size(); ++i) {
+            QueryPlan.AggregateFunction function = functions.get(i);
+            Type type = function == QueryPlan.AggregateFunction.COUNT ? Type.intType() :
+                        sourceSchema.getFieldTypes().get(columnIndices.get(i));
+            this.columnTypes.add(type);
+            switch (function) {
+            case SUM:
+            case AVERAGE:
+                if (type.getTypeId() != TypeId.INT && type.getTypeId() != TypeId.FLOAT) {
+                    throw new QueryPlanException("Cannot compute " + function + " over a column of type " +
+                                                 type.getTypeId() + ".");
+                }
+                partialNames.add("sumHigh" + i);
+                partialTypes.add(Type.intType());
+                partialNames.add("sumLow" + i);
+                partialTypes.add(Type.intType());
+                break;
+            case MIN:
+            case MAX:
+                partialNames.add("extreme" + i);
+                partialTypes.add(type);
+                break;
+            default:
+                break;
+            }
+        }
+        this.partialSchema = new Schema(partialNames, partialTypes);
+    }
+
+    /**
+     * Returns the name of the output column of an aggregate.
+     */
+    public static String getOutputName(QueryPlan.AggregateFunction function) {
+        switch (function) {
+        case COUNT:
+            return "countAgg";
+        case SUM:
+            return "sumAgg";
+        case AVERAGE:
+            return "averageAgg";
+        case MIN:
+            return "minAgg";
+        default:
+            return "maxAgg";
+        }
+    }
+
+    /**
+     * Returns the types of the output columns of the aggregates.
+     */
+    public List<Type> getOutputTypes() {
+        List<Type> types = new ArrayList<>();
+        for (int i = 0; i < this.functions.size(); ++i) {
+            switch (this.functions.get(i)) {
+            case COUNT:
+                types.add(Type.intType());
+                break;
+            case AVERAGE:
+                types.add(Type.floatType());
+                break;
+            default:
+                types.add(this.columnTypes.get(i));
+                break;
+            }
+        }
+        return types;
+    }
+
+    public Schema getPartialSchema() {
+        return this.partialSchema;
+    }
+
+    public State newState() {
+        return new State(this.functions.size());
+    }
+
+    /**
+     * Adds a record of the group to state.
+     */
+    public void add(State state, Record record) {
+        List<DataBox> values = record.getValues();
+        state.count++;
+        for (int i = 0; i < this.functions.size(); ++i) {
+            switch (this.functions.get(i)) {
+            case SUM:
+            case AVERAGE:
+                DataBox value = values.get(this.columnIndices.get(i));
+                state.sums[i] += this.columnTypes.get(i).getTypeId() == TypeId.INT ? value.getInt() : value.getFloat();
+                break;
+            case MIN:
+                state.extremes[i] = min(state.extremes[i], values.get(this.columnIndices.get(i)));
+                break;
+            case MAX:
+                state.extremes[i] = max(state.extremes[i], values.get(this.columnIndices.get(i)));
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Merges a partial aggregate record of the group into state.
+     */
+    public void merge(State state, Record partial) {
+        List<DataBox> values = partial.getValues();
+        state.count += values.get(1).getInt();
+        int position = 2;
+        for (int i = 0; i < this.functions.size(); ++i) {
+            switch (this.functions.get(i)) {
+            case SUM:
+            case AVERAGE:
+                long bits = ((long) values.get(position).getInt() << 32) |
+                            (values.get(position + 1).getInt() & 0xFFFFFFFFL);
+                state.sums[i] += Double.longBitsToDouble(bits);
+                position += 2;
+                break;
+            case MIN:
+                state.extremes[i] = min(state.extremes[i], values.get(position++));
+                break;
+            case MAX:
+                state.extremes[i] = max(state.extremes[i], values.get(position++));
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the partial aggregate record of the group with the given group
+     * by value.
+     */
+    public Record toPartial(DataBox key, State state) {
+        List<DataBox> values = new ArrayList<>();
+        values.add(key);
+        values.add(new IntDataBox(state.count));
+        for (int i = 0; i < this.functions.size(); ++i) {
+            switch (this.functions.get(i)) {
+            case SUM:
+            case AVERAGE:
+                long bits = Double.doubleToRawLongBits(state.sums[i]);
+                values.add(new IntDataBox((int) (bits >>> 32)));
+                values.add(new IntDataBox((int) bits));
+                break;
+            case MIN:
+            case MAX:
+                values.add(state.extremes[i]);
+                break;
+            default:
+                break;
+            }
+        }
+        return new Record(values);
+    }
+
+    /**
+     * Returns the values of the aggregates of a group, which must have at
+     * least one record.
+     */
+    public List<DataBox> getOutputValues(State state) {
+        List<DataBox> values = new ArrayList<>();
+        for (int i = 0; i < this.functions.size(); ++i) {
+            switch (this.functions.get(i)) {
+            case COUNT:
+                values.add(new IntDataBox(state.count));
+                break;
+            case SUM:
+                if (this.columnTypes.get(i).getTypeId() == TypeId.INT) {
+                    values.add(new IntDataBox((int) state.sums[i]));
+                } else {
+                    values.add(new FloatDataBox((float) state.sums[i]));
+                }
+                break;
+            case AVERAGE:
+                values.add(new FloatDataBox((float) (state.sums[i] / state.count)));
+                break;
+            default:
+                values.add(state.extremes[i]);
+                break;
+            }
+        }
+        return values;
+    }
+
+    private static DataBox min(DataBox current, DataBox value) {
+        return current == null || value.compareTo(current) < 0 ? value : current;
+    }
+
+    private static DataBox max(DataBox current, DataBox value) {
+        return current == null || value.compareTo(current) > 0 ? value : current;
+    }
+
+    /**
+     * The running aggregates of a single group.
+     */
+    public static class State {
+        private int count;
+        private double[] sums;
+        private DataBox[] extremes;
+
+        private State(int numAggregates) {
+            this.count = 0;
+            this.sums = new double[numAggregates];
+            this.extremes = new DataBox[numAggregates];
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.SpillFile;
+
+/**
+ * Grace Hash Join.
+ *
+ * Both inputs are hashed on their join column into numBuffers - 1 partitions,
+ * each of which is a SpillFile, so that matching records always land in
+ * partitions with the same number. Every pair of partitions is then joined on
+ * its own by a PartitionJoiner, which partitions again (up to
+ * MAX_RECURSION_DEPTH times) any pair too large to join in memory.
+ *
+ * Unlike the other joins, the inputs are read straight from the source
+ * operators and never copied into temp tables.
+ */
+public class GraceHashOperator extends JoinOperator {
+    // The number of times a pair of partitions may be partitioned again.
+    public static final int MAX_RECURSION_DEPTH = 3;
+
+    private int numBuffers;
+
+    public GraceHashOperator(QueryOperator leftSource,
+                             QueryOperator rightSource,
+                             String leftColumnName,
+                             String rightColumnName,
+                             Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.GRACEHASH);
+
+        this.numBuffers = transaction.getNumMemoryPages();
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        if (this.numBuffers < 3) {
+            throw new QueryPlanException("Grace hash join needs at least 3 buffers, not " + this.numBuffers + ".");
+        }
+        return new GraceHashIterator();
+    }
+
+    /**
+     * Both inputs are read once, written once as partitions, and read once
+     * more to join the partitions: 3(M + N). Partitioning again only happens
+     * for partitions that do not fit in memory, which we do not account for.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+        return 3 * (numLeftPages + numRightPages);
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class GraceHashIterator implements Iterator<Record> {
+        private PartitionJoiner joiner;
+        private Record nextRecord;
+
+        public GraceHashIterator() throws QueryPlanException, DatabaseException {
+            this.joiner = new PartitionJoiner(GraceHashOperator.this.getTransaction(), GraceHashOperator.this.numBuffers,
+                                              GraceHashOperator.this.getLeftSource().getOutputSchema(), getLeftColumnIndex(),
+                                              GraceHashOperator.this.getRightSource().getOutputSchema(), getRightColumnIndex());
+            List<SpillFile> leftPartitions = this.joiner.partition(GraceHashOperator.this.getLeftSource().iterator(),
+                                             true, 0);
+            List<SpillFile> rightPartitions = this.joiner.partition(GraceHashOperator.this.getRightSource().iterator(),
+                                              false, 0);
+            for (int i = 0; i < leftPartitions.size(); ++i) {
+                this.joiner.addPair(leftPartitions.get(i), rightPartitions.get(i), 1);
+            }
+            this.nextRecord = this.joiner.fetchNextRecord();
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.nextRecord != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record record = this.nextRecord;
+            try {
+                this.nextRecord = this.joiner.fetchNextRecord();
+            } catch (DatabaseException e) {
+                throw new IllegalStateException(e);
+            }
+            return record;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.SpillFile;
+
+/**
+ * An AggregateOperator that finds the groups with hash tables.
+ *
+ * Every group is kept in memory as a running Aggregator.State, in a hash table
+ * per partition of the group by values. As long as the states of all groups
+ * fit in numBuffers - 1 pages (counting every state as a partial aggregate
+ * record), nothing is written to disk. Whenever they stop fitting, the
+ * partition with the most groups is spilled: the states of its groups are
+ * written to a SpillFile as partial aggregate records, and so is every later
+ * record of the partition, as a partial aggregate of one record. Once the
+ * source is exhausted the groups in memory are returned, and every spilled
+ * partition is aggregated in turn the same way, with a differently seeded
+ * hash function, by merging its partial aggregates.
+ *
+ * Every spilled partition takes a page for its output buffer, and there is no
+ * estimate of the number of groups to size the partitions by, so we make
+ * sqrt(numBuffers - 1) of them: few enough that an input which is only a
+ * little too large keeps most of its groups in memory, and enough that one
+ * which is much too large only needs a few rounds of partitioning. After
+ * MAX_RECURSION_DEPTH rounds (which only happens if many group by values
+ * share a hash code) the rest of a partition is aggregated in memory
+ * regardless of its size.
+ */
+public class HashAggregateOperator extends AggregateOperator {
+    // The number of times a partition may be spilled and partitioned again.
+    public static final int MAX_RECURSION_DEPTH = 3;
+
+    // The number of partitions spilled by the last iterator created.
+    private int numSpilledPartitions;
+
+    /**
+     * Creates a new HashAggregateOperator that groups the records of source on
+     * groupByColumn and computes the given aggregates of every group.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param groupByColumn the column to group on
+     * @param functions the aggregates to compute, each at most once
+     * @param aggregateColumns for every aggregate, the column it is computed
+     *                         over, which is ignored (and may be null) for COUNT
+     * @throws QueryPlanException
+     */
+    public HashAggregateOperator(QueryOperator source,
+                                 Database.Transaction transaction,
+                                 String groupByColumn,
+                                 List<QueryPlan.AggregateFunction> functions,
+                                 List<String> aggregateColumns) throws QueryPlanException {
+        super(source, transaction, groupByColumn, functions, aggregateColumns);
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        int numBuffers = this.transaction.getNumMemoryPages();
+        if (numBuffers < 3) {
+            throw new QueryPlanException("Hash aggregation needs at least 3 buffers, not " + numBuffers + ".");
+        }
+        return new HashAggregateIterator();
+    }
+
+    public int getNumSpilledPartitions() {
+        return this.numSpilledPartitions;
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class HashAggregateIterator implements Iterator<Record> {
+        private int numBuffers;
+        private int numPartitions;
+        private int partialsPerPage;
+        // Spilled partitions still to be aggregated, and the number of rounds
+        // of partitioning that produced each.
+        private Deque<SpillFile> pendingPartitions;
+        private Deque<Integer> pendingDepths;
+        // The groups of the round being returned.
+        private Iterator<Map.Entry<DataBox, Aggregator.State>> groupIterator;
+
+        public HashAggregateIterator() throws QueryPlanException, DatabaseException {
+            this.numBuffers = HashAggregateOperator.this.transaction.getNumMemoryPages();
+            this.numPartitions = Math.max(2, (int) Math.sqrt(this.numBuffers - 1));
+            Schema partialSchema = HashAggregateOperator.this.aggregator.getPartialSchema();
+            this.partialsPerPage = Page.pageSize / partialSchema.getSizeInBytes();
+            this.pendingPartitions = new ArrayDeque<>();
+            this.pendingDepths = new ArrayDeque<>();
+            HashAggregateOperator.this.numSpilledPartitions = 0;
+            this.aggregate(HashAggregateOperator.this.getSource().iterator(), false, 0);
+        }
+
+        /**
+         * Aggregates records, which are partial aggregates if partial is true
+         * and source records otherwise, in the given round of partitioning.
+         * The groups kept in memory are returned next; the spilled partitions
+         * are queued.
+         */
+        private void aggregate(Iterator<Record> records, boolean partial, int depth) throws DatabaseException {
+            Aggregator aggregator = HashAggregateOperator.this.aggregator;
+            int keyIndex = partial ? 0 : HashAggregateOperator.this.groupByColumnIndex;
+            List<Map<DataBox, Aggregator.State>> groups = new ArrayList<>();
+            for (int i = 0; i < this.numPartitions; ++i) {
+                groups.add(new HashMap<>());
+            }
+            SpillFile[] spilled = new SpillFile[this.numPartitions];
+            int numSpilled = 0;
+            long numGroups = 0;
+
+            while (records.hasNext()) {
+                Record record = records.next();
+                DataBox key = record.getValues().get(keyIndex);
+                int partition = Math.floorMod(PartitionJoiner.hash(key, depth), this.numPartitions);
+                if (spilled[partition] != null) {
+                    if (!partial) {
+                        Aggregator.State state = aggregator.newState();
+                        aggregator.add(state, record);
+                        record = aggregator.toPartial(key, state);
+                    }
+                    spilled[partition].append(record);
+                    continue;
+                }
+
+                Aggregator.State state = groups.get(partition).get(key);
+                if (state == null) {
+                    state = aggregator.newState();
+                    groups.get(partition).put(key, state);
+                    numGroups++;
+                }
+                if (partial) {
+                    aggregator.merge(state, record);
+                } else {
+                    aggregator.add(state, record);
+                }
+
+                while (depth < MAX_RECURSION_DEPTH &&
+                        numGroups > (long) (this.numBuffers - 1 - numSpilled) * this.partialsPerPage) {
+                    int largest = -1;
+                    for (int i = 0; i < this.numPartitions; ++i) {
+                        if (spilled[i] == null &&
+                                (largest == -1 || groups.get(i).size() > groups.get(largest).size())) {
+                            largest = i;
+                        }
+                    }
+                    spilled[largest] = HashAggregateOperator.this.transaction.createSpillFile(
+                                           aggregator.getPartialSchema());
+                    for (Map.Entry<DataBox, Aggregator.State> group : groups.get(largest).entrySet()) {
+                        spilled[largest].append(aggregator.toPartial(group.getKey(), group.getValue()));
+                    }
+                    numGroups -= groups.get(largest).size();
+                    groups.set(largest, Collections.emptyMap());
+                    numSpilled++;
+                }
+            }
+
+            HashAggregateOperator.this.numSpilledPartitions += numSpilled;
+            for (SpillFile spillFile : spilled) {
+                if (spillFile != null) {
+                    this.pendingPartitions.push(spillFile);
+                    this.pendingDepths.push(depth + 1);
+                }
+            }
+            this.groupIterator = groups.stream().flatMap(partition -> partition.entrySet().stream()).iterator();
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            while (!this.groupIterator.hasNext() && !this.pendingPartitions.isEmpty()) {
+                SpillFile partition = this.pendingPartitions.pop();
+                int depth = this.pendingDepths.pop();
+                try {
+                    this.aggregate(partition.iterator(), true, depth);
+                } catch (DatabaseException e) {
+                    throw new IllegalStateException(e);
+                }
+                partition.close();
+            }
+            return this.groupIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<DataBox, Aggregator.State> group = this.groupIterator.next();
+            List<DataBox> values = new ArrayList<>();
+            values.add(group.getKey());
+            values.addAll(HashAggregateOperator.this.aggregator.getOutputValues(group.getValue()));
+            return new Record(values);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * An equality lookup in the hash index of a column (see
+ * Database.Transaction#createHashIndex): the records of a table whose value
+ * of the column is equal to a given value, in no particular order.
+ *
+ * It is an index scan like IndexScanOperator, but a hash index can answer
+ * nothing but an EQUALS predicate, so QueryPlan only weighs it against the
+ * B+ tree index for one.
+ */
+public class HashIndexScanOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String tableName;
+    private String columnName;
+    private DataBox value;
+
+    /**
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to look up records in
+     * @param columnName the name of the column the hash index is on
+     * @param value the value of the column to look up
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public HashIndexScanOperator(Database.Transaction transaction,
+                                 String tableName,
+                                 String columnName,
+                                 DataBox value) throws QueryPlanException, DatabaseException {
+        super(OperatorType.INDEXSCAN);
+        this.transaction = transaction;
+        this.tableName = tableName;
+        this.value = value;
+        this.setOutputSchema(this.computeSchema());
+        this.columnName = this.checkSchemaForColumn(this.getOutputSchema(), columnName);
+        if (!transaction.hashIndexExists(tableName, this.columnName)) {
+            throw new QueryPlanException("There is no hash index on " + columnName + ".");
+        }
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\ntable: " + this.tableName +
+               "\ncolumn: " + this.columnName +
+               "\nindex: hash" +
+               "\noperator: " + QueryPlan.PredicateOperator.EQUALS +
+               "\nvalue: " + this.value;
+    }
+
+    public String getColumnName() {
+        return this.columnName;
+    }
+
+    public TableStats estimateStats() throws QueryPlanException {
+        try {
+            return this.transaction.getStats(this.tableName).copyWithPredicate(
+                       this.getOutputSchema().getFieldNames().indexOf(this.columnName),
+                       QueryPlan.PredicateOperator.EQUALS,
+                       this.value);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * The lookup reads the pages of one bucket of the index, and the index is
+     * unclustered, so every matching record costs a page of the table:
+     *
+     *   pagesPerLookup + numMatches
+     *
+     * Compare IndexScanOperator#estimateIOCost, which pays for the pages of
+     * the B+ tree instead.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        int pagesPerLookup;
+        try {
+            pagesPerLookup = this.transaction.getHashIndexPagesPerLookup(this.tableName, this.columnName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+        return pagesPerLookup + this.stats.getNumRecords();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return this.transaction.lookupKey(this.tableName, this.columnName, this.value);
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        try {
+            return this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.SpillFile;
+
+/**
+ * Hybrid Hash Join.
+ *
+ * The smaller input (by its estimated number of pages; the left input on a
+ * tie) is the build side. Its records are hashed on the join column into
+ * partitions which, unlike in a Grace hash join, are kept in memory for as
+ * long as they fit. Whenever they stop fitting in numBuffers - 1 pages, the
+ * largest partition still in memory is spilled to a SpillFile, which from then
+ * on takes a page of memory for its output buffer. If the whole build side
+ * fits, nothing is ever written to disk.
+ *
+ * Every spilled partition costs a page, and partitions kept in memory must be
+ * kept whole, so the number of partitions matters: with numBuffers - 1 of
+ * them, a build side only a little too large to fit would spill every one.
+ * We instead pick the number of partitions that, going by the estimated size
+ * of the build side, keeps the largest fraction of it in memory.
+ *
+ * The partitions left in memory are loaded into a single JoinHashTable, and
+ * the other input (the probe side) is streamed past it: a probe record whose
+ * partition is in memory is joined right away, and one whose partition was
+ * spilled is appended to the matching probe partition. Once the probe side is
+ * exhausted, the spilled pairs of partitions are joined by a PartitionJoiner,
+ * the same way a Grace hash join joins its partitions.
+ */
+public class HybridHashOperator extends JoinOperator {
+    private int numBuffers;
+    // The number of build partitions spilled by the last iterator created.
+    private int numSpilledPartitions;
+
+    public HybridHashOperator(QueryOperator leftSource,
+                              QueryOperator rightSource,
+                              String leftColumnName,
+                              String rightColumnName,
+                              Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.HYBRIDHASH);
+
+        this.numBuffers = transaction.getNumMemoryPages();
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        if (this.numBuffers < 3) {
+            throw new QueryPlanException("Hybrid hash join needs at least 3 buffers, not " + this.numBuffers + ".");
+        }
+        return new HybridHashIterator();
+    }
+
+    public int getNumSpilledPartitions() {
+        return this.numSpilledPartitions;
+    }
+
+    /**
+     * Returns the number of partitions the build side is hashed into.
+     */
+    public int getNumPartitions() {
+        int memory = Math.max(1, this.numBuffers - 1);
+        int numBuildPages = this.getNumBuildPages();
+        if (numBuildPages <= memory) {
+            return memory;
+        }
+        int best = memory;
+        for (int numPartitions = 2; numPartitions < memory; ++numPartitions) {
+            if (numResidentPartitions(numBuildPages, numPartitions) * best >
+                    numResidentPartitions(numBuildPages, best) * numPartitions) {
+                best = numPartitions;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Both inputs are read once. The fraction of both inputs that belongs to
+     * spilled partitions is also written once and read once more:
+     * (M + N) + 2f(M + N).
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        int numPages = getLeftSource().getStats().getNumPages() + getRightSource().getStats().getNumPages();
+        int numPartitions = this.getNumPartitions();
+        int numSpilled = numPartitions - numResidentPartitions(this.getNumBuildPages(), numPartitions);
+        return numPages + 2 * (int) Math.ceil((double) numSpilled / numPartitions * numPages);
+    }
+
+    /**
+     * Returns how many of numPartitions partitions of a build side of
+     * numBuildPages pages stay in memory, assuming its keys are spread evenly:
+     * as many as fit in numBuffers - 1 pages alongside a page for every
+     * spilled partition.
+     */
+    private int numResidentPartitions(int numBuildPages, int numPartitions) {
+        double partitionPages = (double) numBuildPages / numPartitions;
+        int numResident = numPartitions;
+        while (numResident > 0 &&
+                numResident * partitionPages + (numPartitions - numResident) > this.numBuffers - 1) {
+            numResident--;
+        }
+        return numResident;
+    }
+
+    private int getNumBuildPages() {
+        return Math.min(getLeftSource().getStats().getNumPages(), getRightSource().getStats().getNumPages());
+    }
+
+    private boolean isBuildLeft() {
+        return getLeftSource().getStats().getNumPages() <= getRightSource().getStats().getNumPages();
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class HybridHashIterator implements Iterator<Record> {
+        private PartitionJoiner joiner;
+        private int numPartitions;
+        private boolean buildIsLeft;
+        private int probeColumnIndex;
+        // The build and probe partitions that were spilled, or null for the
+        // partitions that are in memory.
+        private SpillFile[] buildPartitions;
+        private SpillFile[] probePartitions;
+        // The build partitions in memory; null once the probe side is exhausted.
+        private JoinHashTable hashTable;
+        private Iterator<Record> probeIterator;
+        private Record probeRecord;
+        private int match;
+        private Record nextRecord;
+
+        public HybridHashIterator() throws QueryPlanException, DatabaseException {
+            Schema leftSchema = HybridHashOperator.this.getLeftSource().getOutputSchema();
+            Schema rightSchema = HybridHashOperator.this.getRightSource().getOutputSchema();
+            this.joiner = new PartitionJoiner(HybridHashOperator.this.getTransaction(), HybridHashOperator.this.numBuffers,
+                                              leftSchema, getLeftColumnIndex(), rightSchema, getRightColumnIndex());
+            this.numPartitions = HybridHashOperator.this.getNumPartitions();
+            this.buildIsLeft = HybridHashOperator.this.isBuildLeft();
+            QueryOperator buildSource = this.buildIsLeft ? getLeftSource() : getRightSource();
+            QueryOperator probeSource = this.buildIsLeft ? getRightSource() : getLeftSource();
+            this.probeColumnIndex = this.buildIsLeft ? getRightColumnIndex() : getLeftColumnIndex();
+
+            this.build(buildSource.iterator(), buildSource.getOutputSchema(),
+                       this.buildIsLeft ? getLeftColumnIndex() : getRightColumnIndex());
+            this.probePartitions = new SpillFile[this.buildPartitions.length];
+            for (int i = 0; i < this.buildPartitions.length; ++i) {
+                if (this.buildPartitions[i] != null) {
+                    this.probePartitions[i] = HybridHashOperator.this.getTransaction()
+                                              .createSpillFile(probeSource.getOutputSchema());
+                }
+            }
+            this.probeIterator = probeSource.iterator();
+            this.match = JoinHashTable.NONE;
+            this.nextRecord = this.fetchNextRecord();
+        }
+
+        /**
+         * Partitions the build side, spilling the largest partition in memory
+         * whenever the partitions in memory and the output buffers of the
+         * spilled ones no longer fit in numBuffers - 1 pages, and loads the
+         * partitions left in memory into the hash table.
+         */
+        private void build(Iterator<Record> records, Schema schema, int columnIndex) throws DatabaseException {
+            int numPartitions = this.numPartitions;
+            long recordsPerPage = Page.pageSize / schema.getSizeInBytes();
+            List<List<Record>> partitions = new ArrayList<>();
+            for (int i = 0; i < numPartitions; ++i) {
+                partitions.add(new ArrayList<>());
+            }
+            this.buildPartitions = new SpillFile[numPartitions];
+            int numSpilled = 0;
+            long numInMemory = 0;
+
+            while (records.hasNext()) {
+                Record record = records.next();
+                int partition = this.partitionOf(record.getValues().get(columnIndex));
+                if (this.buildPartitions[partition] != null) {
+                    this.buildPartitions[partition].append(record);
+                    continue;
+                }
+                partitions.get(partition).add(record);
+                numInMemory++;
+                while (numInMemory > (HybridHashOperator.this.numBuffers - 1 - numSpilled) * recordsPerPage) {
+                    int largest = -1;
+                    for (int i = 0; i < numPartitions; ++i) {
+                        if (this.buildPartitions[i] == null &&
+                                (largest == -1 || partitions.get(i).size() > partitions.get(largest).size())) {
+                            largest = i;
+                        }
+                    }
+                    SpillFile spillFile = HybridHashOperator.this.getTransaction().createSpillFile(schema);
+                    spillFile.append(partitions.get(largest));
+                    numInMemory -= partitions.get(largest).size();
+                    partitions.set(largest, null);
+                    this.buildPartitions[largest] = spillFile;
+                    numSpilled++;
+                }
+            }
+            HybridHashOperator.this.numSpilledPartitions = numSpilled;
+
+            this.hashTable = new JoinHashTable(schema.getFieldTypes().get(columnIndex), columnIndex,
+                                               (int) numInMemory);
+            for (List<Record> partition : partitions) {
+                if (partition != null) {
+                    for (Record record : partition) {
+                        this.hashTable.add(record);
+                    }
+                }
+            }
+        }
+
+        private int partitionOf(DataBox key) {
+            return Math.floorMod(PartitionJoiner.hash(key, 0), this.numPartitions);
+        }
+
+        /**
+         * Returns the next joined record, or null if there are none left.
+         */
+        private Record fetchNextRecord() throws DatabaseException {
+            while (this.hashTable != null) {
+                if (this.match != JoinHashTable.NONE) {
+                    Record buildRecord = this.hashTable.get(this.match);
+                    this.match = this.hashTable.next(this.match);
+                    return this.buildIsLeft ? PartitionJoiner.joinRecords(buildRecord, this.probeRecord)
+                           : PartitionJoiner.joinRecords(this.probeRecord, buildRecord);
+                }
+                if (this.probeIterator.hasNext()) {
+                    this.probeRecord = this.probeIterator.next();
+                    DataBox key = this.probeRecord.getValues().get(this.probeColumnIndex);
+                    SpillFile probePartition = this.probePartitions[this.partitionOf(key)];
+                    if (probePartition != null) {
+                        probePartition.append(this.probeRecord);
+                    } else {
+                        this.match = this.hashTable.first(key);
+                    }
+                    continue;
+                }
+                this.hashTable = null;
+                for (int i = 0; i < this.buildPartitions.length; ++i) {
+                    if (this.buildPartitions[i] != null) {
+                        SpillFile left = this.buildIsLeft ? this.buildPartitions[i] : this.probePartitions[i];
+                        SpillFile right = this.buildIsLeft ? this.probePartitions[i] : this.buildPartitions[i];
+                        this.joiner.addPair(left, right, 1);
+                    }
+                }
+            }
+            return this.joiner.fetchNextRecord();
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.nextRecord != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record record = this.nextRecord;
+            try {
+                this.nextRecord = this.fetchNextRecord();
+            } catch (DatabaseException e) {
+                throw new IllegalStateException(e);
+            }
+            return record;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
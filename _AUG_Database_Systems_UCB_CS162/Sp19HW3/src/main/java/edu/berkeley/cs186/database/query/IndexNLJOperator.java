@@ -0,0 +1,235 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.index.BPlusTree;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.stats.Histogram;
+
+/**
+ * Index Nested Loop Join.
+ *
+ * The right source must be a full sequential scan of a table with a B+ tree
+ * index on the right join column. The right table is never scanned: for every
+ * left record, the index is probed for the records with the same key (see
+ * Database.Transaction#lookupKey).
+ *
+ * If sortLeft is set, the left records are first sorted on the join column
+ * (with an OrderByOperator), so that the probes walk the leaves of the index
+ * from left to right and every page of the index is read at most once,
+ * instead of once for every probe that passes through it.
+ */
+public class IndexNLJOperator extends JoinOperator {
+    private String rightTableName;
+    private boolean sortLeft;
+    // The left source, sorted on the join column if sortLeft is set.
+    private QueryOperator outerSource;
+
+    public IndexNLJOperator(QueryOperator leftSource,
+                            QueryOperator rightSource,
+                            String leftColumnName,
+                            String rightColumnName,
+                            Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        this(leftSource, rightSource, leftColumnName, rightColumnName, transaction, false);
+    }
+
+    public IndexNLJOperator(QueryOperator leftSource,
+                            QueryOperator rightSource,
+                            String leftColumnName,
+                            String rightColumnName,
+                            Database.Transaction transaction,
+                            boolean sortLeft) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.INDEXNL);
+
+        if (!rightSource.isSequentialScan() || !((SequentialScanOperator) rightSource).isFullScan()) {
+            throw new QueryPlanException("The right source of an index nested loop join must be a table.");
+        }
+        this.rightTableName = ((SequentialScanOperator) rightSource).getTableName();
+        if (!transaction.indexExists(this.rightTableName, this.getRightColumnName())) {
+            throw new QueryPlanException("There is no index on " + this.getRightColumnName() + ".");
+        }
+        this.sortLeft = sortLeft;
+        if (sortLeft) {
+            this.outerSource = new OrderByOperator(leftSource, transaction, this.getLeftColumnName(),
+                                                   QueryPlan.SortDirection.ASCENDING);
+        } else {
+            this.outerSource = leftSource;
+        }
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new IndexNLJIterator();
+    }
+
+    public boolean isSortLeft() {
+        return this.sortLeft;
+    }
+
+    @Override
+    public String str() {
+        return super.str() + "\nsortLeft: " + this.sortLeft;
+    }
+
+    /**
+     * The left source is read once (and sorted, if sortLeft is set). Every
+     * probe reads the index from the root down to a leaf, getIndexHeight()
+     * pages, and then one page of the right table per match. Without sorting,
+     * that is
+     *
+     *   cost(left) + numLeftRecords * (height + matchesPerKey)
+     *
+     * With the left records sorted, consecutive probes share their path, and
+     * the index is read at most once over all of them:
+     *
+     *   cost(sorted left) + min(numLeftRecords * height, numIndexPages)
+     *                     + numLeftRecords * matchesPerKey
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        long numLeftRecords = this.getLeftSource().getStats().getNumRecords();
+        long numIndexPages;
+        try {
+            numIndexPages = this.getTransaction().getNumIndexPages(this.rightTableName, this.getRightColumnName());
+        } catch (DatabaseException e) {
+            throw new QueryPlanException(e);
+        }
+        long indexCost = numLeftRecords * this.getIndexHeight();
+        if (this.sortLeft) {
+            indexCost = Math.min(indexCost, numIndexPages);
+        }
+        double matchCost = numLeftRecords * this.getMatchesPerKey();
+        long cost = this.outerSource.getIOCost() + indexCost + (long) Math.ceil(matchCost);
+        return (int) Math.min(cost, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns an estimate of the number of pages read to get from the root of
+     * the index to a leaf: the number of levels of a tree whose nodes are
+     * full and which has as many nodes as the index has pages, less its
+     * header page.
+     */
+    public int getIndexHeight() throws QueryPlanException {
+        int numIndexPages;
+        try {
+            numIndexPages = this.getTransaction().getNumIndexPages(this.rightTableName, this.getRightColumnName());
+        } catch (DatabaseException e) {
+            throw new QueryPlanException(e);
+        }
+        Type keyType = this.getRightSource().getOutputSchema().getFieldTypes().get(this.getRightColumnIndex());
+        int fanout = 2 * BPlusTree.maxOrder(Page.pageSize, keyType) + 1;
+        int height = 1;
+        long numNodes = 1;
+        while (numNodes < numIndexPages - 1) {
+            numNodes *= fanout;
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * Returns an estimate of the number of right records that a probe
+     * matches: the number of right records per distinct right key, but no
+     * more than the join is estimated to return per left record. Without a
+     * histogram of the right join column, the keys are taken to be distinct.
+     */
+    public double getMatchesPerKey() throws QueryPlanException {
+        int numRightRecords = this.getRightSource().getStats().getNumRecords();
+        if (numRightRecords == 0) {
+            return 0;
+        }
+        int numDistinct = numRightRecords;
+        List<Histogram> histograms = this.getRightSource().getStats().getHistograms();
+        if (histograms.size() > this.getRightColumnIndex()) {
+            int histogramDistinct = histograms.get(this.getRightColumnIndex()).getNumDistinct();
+            if (histogramDistinct > 0) {
+                numDistinct = histogramDistinct;
+            }
+        }
+        double matchesPerKey = (double) numRightRecords / numDistinct;
+        int numLeftRecords = this.getLeftSource().getStats().getNumRecords();
+        if (numLeftRecords > 0) {
+            matchesPerKey = Math.min(matchesPerKey, (double) this.getStats().getNumRecords() / numLeftRecords);
+        }
+        return matchesPerKey;
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class IndexNLJIterator implements Iterator<Record> {
+        private Iterator<Record> leftIterator;
+        private Record leftRecord;
+        private Iterator<Record> matchIterator;
+        private Record nextRecord;
+
+        public IndexNLJIterator() throws QueryPlanException, DatabaseException {
+            this.leftIterator = IndexNLJOperator.this.outerSource.iterator();
+            this.matchIterator = Collections.emptyIterator();
+            this.fetchNextRecord();
+        }
+
+        /**
+         * Sets nextRecord to the next joined record, or to null if there are
+         * no more, probing the index for left records until one has a match.
+         */
+        private void fetchNextRecord() throws DatabaseException {
+            this.nextRecord = null;
+            while (!this.matchIterator.hasNext()) {
+                if (!this.leftIterator.hasNext()) {
+                    return;
+                }
+                this.leftRecord = this.leftIterator.next();
+                DataBox key = this.leftRecord.getValues().get(IndexNLJOperator.this.getLeftColumnIndex());
+                this.matchIterator = IndexNLJOperator.this.getTransaction().lookupKey(
+                                         IndexNLJOperator.this.rightTableName,
+                                         IndexNLJOperator.this.getRightColumnName(), key);
+            }
+            List<DataBox> values = new ArrayList<>(this.leftRecord.getValues());
+            values.addAll(this.matchIterator.next().getValues());
+            this.nextRecord = new Record(values);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.nextRecord != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record record = this.nextRecord;
+            try {
+                this.fetchNextRecord();
+            } catch (DatabaseException e) {
+                throw new IllegalStateException(e);
+            }
+            return record;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
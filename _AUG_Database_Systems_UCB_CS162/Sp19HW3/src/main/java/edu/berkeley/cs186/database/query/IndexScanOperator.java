@@ -5,12 +5,15 @@ import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 import edu.berkeley.cs186.database.table.stats.Histogram;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -19,8 +22,18 @@ public class IndexScanOperator extends QueryOperator {
     private Database.Transaction transaction;
     private String tableName;
     private String columnName;
+    // For an index on several columns: its columns, and the values that the
+    // leading ones are equal to. columnName is the column after those.
+    private List<String> indexColumnNames;
+    private List<DataBox> prefix;
     private QueryPlan.PredicateOperator predicate;
     private DataBox value;
+    // The upper bound of a range scan, if predicate is its lower bound.
+    private QueryPlan.PredicateOperator upperPredicate;
+    private DataBox upperValue;
+    // Whether the records are made of the keys of the index alone, without
+    // reading the table.
+    private boolean indexOnly;
 
     private int columnIndex;
 
@@ -38,12 +51,126 @@ public class IndexScanOperator extends QueryOperator {
                              String columnName,
                              QueryPlan.PredicateOperator predicate,
                              DataBox value) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, columnName, predicate, value, null, null);
+    }
+
+    /**
+     * An index scan operator over the records whose value of columnName
+     * satisfies both `predicate value` and `upperPredicate upperValue`, where
+     * the former is a lower bound (GREATER_THAN or GREATER_THAN_EQUALS) and the
+     * latter an upper bound (LESS_THAN or LESS_THAN_EQUALS). The scan walks the
+     * leaves of the index from the lower bound and stops at the upper one.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexScanOperator(Database.Transaction transaction,
+                             String tableName,
+                             String columnName,
+                             QueryPlan.PredicateOperator predicate,
+                             DataBox value,
+                             QueryPlan.PredicateOperator upperPredicate,
+                             DataBox upperValue) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, null, columnName, Collections.emptyList(), predicate, value,
+             upperPredicate, upperValue, false);
+    }
+
+    /**
+     * An index scan operator over an index on the columns indexColumnNames
+     * (see Database.Transaction#createTableWithCompositeIndices), which
+     * returns the records whose leading index columns are equal to the values
+     * of prefix and whose next index column satisfies `predicate value` and
+     * `upperPredicate upperValue`. Either predicate may be null, and if both
+     * are not, they are a lower and an upper bound as above. The records come
+     * out in order of the index columns after the prefix.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param indexColumnNames the names of the columns the index is on
+     * @param prefix the values of the leading columns of the index
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexScanOperator(Database.Transaction transaction,
+                             String tableName,
+                             List<String> indexColumnNames,
+                             List<DataBox> prefix,
+                             QueryPlan.PredicateOperator predicate,
+                             DataBox value,
+                             QueryPlan.PredicateOperator upperPredicate,
+                             DataBox upperValue) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, indexColumnNames, prefix, predicate, value, upperPredicate, upperValue,
+             false);
+    }
+
+    /**
+     * An index scan operator over an index on several columns as above. If
+     * indexOnly, the records are read from the leaves of the index alone and
+     * hold only the index columns, in their order in the index, so the scan
+     * reads no page of the table; it is up to the caller to check that no
+     * other column is needed.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param indexColumnNames the names of the columns the index is on
+     * @param prefix the values of the leading columns of the index
+     * @param indexOnly whether to return only the index columns, from the index
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexScanOperator(Database.Transaction transaction,
+                             String tableName,
+                             List<String> indexColumnNames,
+                             List<DataBox> prefix,
+                             QueryPlan.PredicateOperator predicate,
+                             DataBox value,
+                             QueryPlan.PredicateOperator upperPredicate,
+                             DataBox upperValue,
+                             boolean indexOnly) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, indexColumnNames,
+             indexColumnNames.get(Math.min(prefix.size(), indexColumnNames.size() - 1)), prefix,
+             predicate, value, upperPredicate, upperValue, indexOnly);
+    }
+
+    private IndexScanOperator(Database.Transaction transaction,
+                              String tableName,
+                              List<String> indexColumnNames,
+                              String columnName,
+                              List<DataBox> prefix,
+                              QueryPlan.PredicateOperator predicate,
+                              DataBox value,
+                              QueryPlan.PredicateOperator upperPredicate,
+                              DataBox upperValue,
+                              boolean indexOnly) throws QueryPlanException, DatabaseException {
         super(OperatorType.INDEXSCAN);
+        if (upperPredicate != null && (!isLowerBound(predicate) || !isUpperBound(upperPredicate))) {
+            throw new QueryPlanException("A range index scan needs a lower and an upper bound, not " +
+                                         predicate + " and " + upperPredicate + ".");
+        }
+        if (indexColumnNames != null) {
+            if (indexColumnNames.size() < 2 || prefix.size() > indexColumnNames.size()) {
+                throw new QueryPlanException("A prefix of " + prefix.size() + " values does not fit an " +
+                                             "index on " + indexColumnNames + ".");
+            }
+            if (predicate != null && (prefix.size() == indexColumnNames.size() ||
+                                      (!isLowerBound(predicate) && !isUpperBound(predicate)))) {
+                throw new QueryPlanException("Only a range on the column after the prefix can be " +
+                                             "scanned, not " + predicate + ".");
+            }
+        }
         this.tableName = tableName;
         this.transaction = transaction;
         this.columnName = columnName;
+        this.indexColumnNames = indexColumnNames;
+        this.prefix = prefix;
         this.predicate = predicate;
         this.value = value;
+        this.upperPredicate = upperPredicate;
+        this.upperValue = upperValue;
+        this.indexOnly = indexOnly;
         this.setOutputSchema(this.computeSchema());
         columnName = this.checkSchemaForColumn(this.getOutputSchema(), columnName);
         this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(columnName);
@@ -52,12 +179,50 @@ public class IndexScanOperator extends QueryOperator {
         this.cost = this.estimateIOCost();
     }
 
+    /**
+     * An index scan operator that returns every record of the table, in order
+     * of columnName.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexScanOperator(Database.Transaction transaction,
+                             String tableName,
+                             String columnName) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, columnName, null, null);
+    }
+
     public String str() {
-        return "type: " + this.getType() +
-               "\ntable: " + this.tableName +
-               "\ncolumn: " + this.columnName +
-               "\noperator: " + this.predicate +
-               "\nvalue: " + this.value;
+        String s = "type: " + this.getType() +
+                   "\ntable: " + this.tableName +
+                   "\ncolumn: " + this.columnName;
+        if (this.indexColumnNames != null) {
+            s += "\nindex: " + this.indexColumnNames +
+                 "\nprefix: " + this.prefix;
+        }
+        s += "\noperator: " + this.predicate +
+                   "\nvalue: " + this.value;
+        if (this.upperPredicate != null) {
+            s += "\nupper operator: " + this.upperPredicate +
+                 "\nupper value: " + this.upperValue;
+        }
+        if (this.indexOnly) {
+            s += "\nindex only: true";
+        }
+        return s;
+    }
+
+    static boolean isLowerBound(QueryPlan.PredicateOperator predicate) {
+        return predicate == QueryPlan.PredicateOperator.GREATER_THAN ||
+               predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS;
+    }
+
+    static boolean isUpperBound(QueryPlan.PredicateOperator predicate) {
+        return predicate == QueryPlan.PredicateOperator.LESS_THAN ||
+               predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS;
     }
 
     /**
@@ -69,6 +234,14 @@ public class IndexScanOperator extends QueryOperator {
         return this.columnName;
     }
 
+    /**
+     * Returns the name of the index to look up in the transaction: the column
+     * name, or the columns of an index on several columns joined with commas.
+     */
+    private String getIndexName() {
+        return this.indexColumnNames == null ? this.columnName : String.join(",", this.indexColumnNames);
+    }
+
     /**
      * Estimates the table statistics for the result of executing this query operator.
      *
@@ -82,10 +255,47 @@ public class IndexScanOperator extends QueryOperator {
         } catch (DatabaseException de) {
             throw new QueryPlanException(de);
         }
+        for (int i = 0; i < this.prefix.size(); ++i) {
+            stats = stats.copyWithPredicate(this.getTableColumnIndex(this.indexColumnNames.get(i)),
+                                            QueryPlan.PredicateOperator.EQUALS,
+                                            this.prefix.get(i));
+        }
+        if (this.predicate != null) {
+            int tableColumnIndex = this.getTableColumnIndex(this.columnName);
+            stats = stats.copyWithPredicate(tableColumnIndex,
+                                            this.predicate,
+                                            this.value);
+            if (this.upperPredicate != null) {
+                stats = stats.copyWithPredicate(tableColumnIndex,
+                                                this.upperPredicate,
+                                                this.upperValue);
+            }
+        }
+        if (this.indexOnly) {
+            List<Integer> indexColumns = new ArrayList<>();
+            for (String column : this.indexColumnNames) {
+                indexColumns.add(this.getTableColumnIndex(column));
+            }
+            stats = stats.copyWithColumns(indexColumns);
+        }
+        return stats;
+    }
 
-        return stats.copyWithPredicate(this.columnIndex,
-                                       this.predicate,
-                                       this.value);
+    /**
+     * Returns the index of column in the schema of the table, which is the
+     * output schema unless the scan is index only.
+     */
+    private int getTableColumnIndex(String column) throws QueryPlanException {
+        Schema tableSchema = this.getTableSchema();
+        return tableSchema.getFieldNames().indexOf(this.checkSchemaForColumn(tableSchema, column));
+    }
+
+    private Schema getTableSchema() throws QueryPlanException {
+        try {
+            return this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
     }
 
     /**
@@ -111,15 +321,24 @@ public class IndexScanOperator extends QueryOperator {
         TableStats tableStats;
         try {
             numRecords = this.transaction.getNumRecords(this.tableName);
-            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.columnName);
+            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.getIndexName());
             tableStats = this.transaction.getStats(this.tableName);
 
         } catch (DatabaseException err) {
             throw new QueryPlanException("Can't find the number of records in IndexScanOperator#estimateIOCost().");
 
         }
+        if (this.indexOnly) {
+            // No record is fetched: only the fraction of the leaves that holds
+            // the matching keys is read.
+            long numMatches = this.stats.getNumRecords();
+            return (int) Math.max(1, (numIndexPages * numMatches + numRecords - 1) / Math.max(1, numRecords));
+        }
+        if (this.predicate == null) {
+            return (int) (numRecords + numIndexPages);
+        }
 
-        return (int)(tableStats.getHistograms().get(columnIndex).getCount() +
+        return (int)(tableStats.getHistograms().get(this.getTableColumnIndex(this.columnName)).getCount() +
                      numIndexPages); //round up and cast to an int
     }
 
@@ -128,11 +347,18 @@ public class IndexScanOperator extends QueryOperator {
     }
 
     public Schema computeSchema() throws QueryPlanException {
-        try {
-            return this.transaction.getFullyQualifiedSchema(this.tableName);
-        } catch (DatabaseException de) {
-            throw new QueryPlanException(de);
+        Schema tableSchema = this.getTableSchema();
+        if (!this.indexOnly) {
+            return tableSchema;
+        }
+        List<String> fieldNames = new ArrayList<>();
+        List<Type> fieldTypes = new ArrayList<>();
+        for (String column : this.indexColumnNames) {
+            String fieldName = this.checkSchemaForColumn(tableSchema, column);
+            fieldNames.add(fieldName);
+            fieldTypes.add(tableSchema.getFieldTypes().get(tableSchema.getFieldNames().indexOf(fieldName)));
         }
+        return new Schema(fieldNames, fieldTypes);
     }
 
     /**
@@ -140,79 +366,91 @@ public class IndexScanOperator extends QueryOperator {
      */
     private class IndexScanIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
-        private Record nextRecord;
 
         public IndexScanIterator() throws QueryPlanException, DatabaseException {
-            this.nextRecord = null;
-            if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.lookupKey(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN ||
-                       IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
+            QueryPlan.PredicateOperator predicate = IndexScanOperator.this.predicate;
+            DataBox value = IndexScanOperator.this.value;
+            if (IndexScanOperator.this.indexColumnNames != null) {
+                this.sourceIterator = this.prefixScan();
+            } else if (predicate == null) {
                 this.sourceIterator = IndexScanOperator.this.transaction.sortedScan(
                                           IndexScanOperator.this.tableName,
                                           IndexScanOperator.this.columnName);
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
+            } else if (predicate == QueryPlan.PredicateOperator.EQUALS) {
+                this.sourceIterator = IndexScanOperator.this.transaction.lookupKey(
                                           IndexScanOperator.this.tableName,
                                           IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-                while (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
-                        this.nextRecord = r;
-                        break;
-                    }
-                }
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
+                                          value);
+            } else if (isUpperBound(predicate)) {
+                this.sourceIterator = IndexScanOperator.this.transaction.rangeScan(
                                           IndexScanOperator.this.tableName,
                                           IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
+                                          null, false,
+                                          value, predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS);
+            } else if (isLowerBound(predicate)) {
+                // Either bounded above by upperPredicate, or not at all.
+                QueryPlan.PredicateOperator upperPredicate = IndexScanOperator.this.upperPredicate;
+                this.sourceIterator = IndexScanOperator.this.transaction.rangeScan(
+                                          IndexScanOperator.this.tableName,
+                                          IndexScanOperator.this.columnName,
+                                          value, predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                                          IndexScanOperator.this.upperValue,
+                                          upperPredicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS);
             }
         }
 
+        /**
+         * Scans an index on several columns from the prefix, extended by the
+         * lower bound if there is one, to the prefix, extended by the upper
+         * bound if there is one. A bound that is just the prefix is inclusive:
+         * every key that starts with the prefix is equal to it.
+         */
+        private Iterator<Record> prefixScan() throws DatabaseException {
+            QueryPlan.PredicateOperator predicate = IndexScanOperator.this.predicate;
+            QueryPlan.PredicateOperator upperPredicate = IndexScanOperator.this.upperPredicate;
+            DataBox lowerValue = null;
+            DataBox upperValue = null;
+            if (isLowerBound(predicate)) {
+                lowerValue = IndexScanOperator.this.value;
+                upperValue = IndexScanOperator.this.upperValue;
+            } else if (isUpperBound(predicate)) {
+                upperPredicate = predicate;
+                upperValue = IndexScanOperator.this.value;
+            }
+            TupleDataBox lo = this.extendPrefix(lowerValue);
+            TupleDataBox hi = this.extendPrefix(upperValue);
+            boolean loInclusive = lowerValue == null || predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS;
+            boolean hiInclusive = upperValue == null ||
+                                  upperPredicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS;
+            if (IndexScanOperator.this.indexOnly) {
+                return IndexScanOperator.this.transaction.indexOnlyScan(
+                           IndexScanOperator.this.tableName, IndexScanOperator.this.getIndexName(),
+                           lo, loInclusive, hi, hiInclusive);
+            }
+            return IndexScanOperator.this.transaction.rangeScan(
+                       IndexScanOperator.this.tableName, IndexScanOperator.this.getIndexName(),
+                       lo, loInclusive, hi, hiInclusive);
+        }
+
+        /**
+         * Returns the prefix followed by value (if not null), or null if that
+         * is no value at all.
+         */
+        private TupleDataBox extendPrefix(DataBox value) {
+            List<DataBox> values = new ArrayList<>(IndexScanOperator.this.prefix);
+            if (value != null) {
+                values.add(value);
+            }
+            return values.isEmpty() ? null : new TupleDataBox(values);
+        }
+
         /**
          * Checks if there are more record(s) to yield
          *
          * @return true if this iterator has another record to yield, otherwise false
          */
         public boolean hasNext() {
-            if (this.nextRecord != null) {
-                return true;
-            }
-            if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN) {
-                if (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) >= 0) {
-                        return false;
-                    }
-                    this.nextRecord = r;
-                    return true;
-                }
-                return false;
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
-                if (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
-                        return false;
-                    }
-                    this.nextRecord = r;
-                    return true;
-                }
-                return false;
-            }
-            if (this.sourceIterator.hasNext()) {
-                this.nextRecord = this.sourceIterator.next();
-                return true;
-            }
-            return false;
+            return this.sourceIterator.hasNext();
         }
 
         /**
@@ -223,9 +461,7 @@ public class IndexScanOperator extends QueryOperator {
          */
         public Record next() {
             if (this.hasNext()) {
-                Record r = this.nextRecord;
-                this.nextRecord = null;
-                return r;
+                return this.sourceIterator.next();
             }
             throw new NoSuchElementException();
         }
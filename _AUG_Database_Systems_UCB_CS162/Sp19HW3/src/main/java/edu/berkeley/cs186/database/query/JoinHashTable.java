@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * The in memory table built over the build side of a hash join, mapping every
+ * join key to the records with that key.
+ *
+ * Records are numbered in the order they are added, and the records sharing a
+ * key are chained together through those numbers: first(key) returns the
+ * number of one record with the key (or NONE), next(i) the number of another
+ * (or NONE), and get(i) the record itself. Nothing is allocated while
+ * probing.
+ *
+ * For INT and FLOAT keys the chains are found through an open addressing
+ * (linear probing) table of int keys, so that the probe loop never builds a
+ * DataBox, hashes one, or calls DataBox.equals. FLOAT keys are compared the
+ * way FloatDataBox.equals compares them: 0.0 equals -0.0, and NaN equals
+ * nothing, so a record with a NaN key is never added. Keys of any other type
+ * go through a HashMap from key to chain.
+ */
+public class JoinHashTable {
+    public static final int NONE = -1;
+
+    private int columnIndex;
+    private TypeId keyType;
+
+    // Every record added, and for each the number of the next record with the
+    // same key, or NONE.
+    private Record[] records;
+    private int[] nextRecord;
+    private int numRecords;
+
+    // For INT and FLOAT keys: slot i holds key slotKeys[i] with chain
+    // slotHeads[i], or is empty if slotHeads[i] is NONE.
+    private int[] slotKeys;
+    private int[] slotHeads;
+    private int numKeys;
+
+    // For every other type of key.
+    private Map<DataBox, Integer> heads;
+
+    /**
+     * @param keyType the type of the join column
+     * @param columnIndex the index of the join column in the records added
+     * @param expectedNumRecords roughly how many records will be added
+     */
+    public JoinHashTable(Type keyType, int columnIndex, int expectedNumRecords) {
+        this.columnIndex = columnIndex;
+        this.keyType = keyType.getTypeId();
+        int capacity = Math.max(16, expectedNumRecords);
+        this.records = new Record[capacity];
+        this.nextRecord = new int[capacity];
+        this.numRecords = 0;
+        if (this.hasPrimitiveKeys()) {
+            // Keep the table at most half full.
+            this.slotKeys = new int[Integer.highestOneBit(capacity) * 4];
+            this.slotHeads = new int[this.slotKeys.length];
+            Arrays.fill(this.slotHeads, NONE);
+            this.numKeys = 0;
+        } else {
+            this.heads = new HashMap<>();
+        }
+    }
+
+    public int size() {
+        return this.numRecords;
+    }
+
+    public Record get(int i) {
+        return this.records[i];
+    }
+
+    public int next(int i) {
+        return this.nextRecord[i];
+    }
+
+    /**
+     * Returns the number of a record with the given key, or NONE if there are
+     * none.
+     */
+    public int first(DataBox key) {
+        if (!this.hasPrimitiveKeys()) {
+            Integer head = this.heads.get(key);
+            return head == null ? NONE : head;
+        }
+        if (this.keyType == TypeId.FLOAT && Float.isNaN(key.getFloat())) {
+            return NONE;
+        }
+        int slot = this.findSlot(this.primitiveKey(key));
+        return this.slotHeads[slot];
+    }
+
+    public void add(Record record) {
+        DataBox key = record.getValues().get(this.columnIndex);
+        if (this.keyType == TypeId.FLOAT && Float.isNaN(key.getFloat())) {
+            return;
+        }
+        if (this.numRecords == this.records.length) {
+            this.records = Arrays.copyOf(this.records, this.numRecords * 2);
+            this.nextRecord = Arrays.copyOf(this.nextRecord, this.numRecords * 2);
+        }
+        int i = this.numRecords++;
+        this.records[i] = record;
+
+        if (!this.hasPrimitiveKeys()) {
+            Integer head = this.heads.put(key, i);
+            this.nextRecord[i] = head == null ? NONE : head;
+            return;
+        }
+        int primitiveKey = this.primitiveKey(key);
+        int slot = this.findSlot(primitiveKey);
+        if (this.slotHeads[slot] == NONE) {
+            if (2 * (this.numKeys + 1) > this.slotKeys.length) {
+                this.grow();
+                slot = this.findSlot(primitiveKey);
+            }
+            this.slotKeys[slot] = primitiveKey;
+            this.numKeys++;
+        }
+        this.nextRecord[i] = this.slotHeads[slot];
+        this.slotHeads[slot] = i;
+    }
+
+    private boolean hasPrimitiveKeys() {
+        return this.keyType == TypeId.INT || this.keyType == TypeId.FLOAT;
+    }
+
+    private int primitiveKey(DataBox key) {
+        if (this.keyType == TypeId.INT) {
+            return key.getInt();
+        }
+        float f = key.getFloat();
+        // -0.0 == 0.0, but their bits differ.
+        return f == 0.0f ? 0 : Float.floatToIntBits(f);
+    }
+
+    /**
+     * Returns the slot holding key, or the empty slot where it would go.
+     */
+    private int findSlot(int key) {
+        int mask = this.slotKeys.length - 1;
+        int h = key * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (this.slotHeads[slot] != NONE && this.slotKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = this.slotKeys;
+        int[] oldHeads = this.slotHeads;
+        this.slotKeys = new int[oldKeys.length * 2];
+        this.slotHeads = new int[oldKeys.length * 2];
+        Arrays.fill(this.slotHeads, NONE);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldHeads[i] != NONE) {
+                int slot = this.findSlot(oldKeys[i]);
+                this.slotKeys[slot] = oldKeys[i];
+                this.slotHeads[slot] = oldHeads[i];
+            }
+        }
+    }
+}
@@ -22,6 +22,8 @@ public abstract class JoinOperator extends QueryOperator {
         PNLJ,
         BNLJ,
         GRACEHASH,
+        HYBRIDHASH,
+        INDEXNL,
         SORTMERGE
     }
 
@@ -239,7 +241,8 @@ public abstract class JoinOperator extends QueryOperator {
         private String rightTableName;
 
         public JoinIterator() throws QueryPlanException, DatabaseException {
-            if (JoinOperator.this.getLeftSource().isSequentialScan()) {
+            if (JoinOperator.this.getLeftSource().isSequentialScan() &&
+                    ((SequentialScanOperator) JoinOperator.this.getLeftSource()).isFullScan()) {
                 this.leftTableName = ((SequentialScanOperator) JoinOperator.this.getLeftSource()).getTableName();
             } else {
                 this.leftTableName = JoinOperator.this.createTempTable(
@@ -249,7 +252,8 @@ public abstract class JoinOperator extends QueryOperator {
                     JoinOperator.this.addRecord(this.leftTableName, leftIter.next().getValues());
                 }
             }
-            if (JoinOperator.this.getRightSource().isSequentialScan()) {
+            if (JoinOperator.this.getRightSource().isSequentialScan() &&
+                    ((SequentialScanOperator) JoinOperator.this.getRightSource()).isFullScan()) {
                 this.rightTableName = ((SequentialScanOperator) JoinOperator.this.getRightSource()).getTableName();
             } else {
                 this.rightTableName = JoinOperator.this.createTempTable(
@@ -0,0 +1,102 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+public class LimitOperator extends QueryOperator {
+    private int limit;
+
+    /**
+     * Creates a new LimitOperator that returns the first limit records of
+     * source. The source is not read any further than that.
+     *
+     * @param source the source operator of this operator
+     * @param limit the number of records to return
+     * @throws QueryPlanException
+     */
+    public LimitOperator(QueryOperator source, int limit) throws QueryPlanException {
+        super(OperatorType.LIMIT, source);
+        if (limit < 0) {
+            throw new QueryPlanException("Limit must not be negative, not " + limit + ".");
+        }
+        this.limit = limit;
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new LimitIterator();
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        return this.getSource().getOutputSchema();
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\nlimit: " + this.limit;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    public int estimateIOCost() throws QueryPlanException {
+        return this.getSource().getIOCost();
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class LimitIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+        private int remaining;
+
+        public LimitIterator() throws QueryPlanException, DatabaseException {
+            this.remaining = LimitOperator.this.limit;
+            this.sourceIterator = this.remaining > 0 ? LimitOperator.this.getSource().iterator() : null;
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.remaining > 0 && this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.remaining--;
+            return this.sourceIterator.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
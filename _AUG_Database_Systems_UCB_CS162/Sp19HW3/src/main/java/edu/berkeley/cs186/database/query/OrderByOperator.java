@@ -0,0 +1,210 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * An OrderByOperator returns the records of its source ordered on a single
+ * column, optionally only the first `limit` of them.
+ *
+ * If there is a limit and that many records fit in the operator's memory
+ * (numMemoryPages - 1 pages of them), the source is streamed through a
+ * bounded heap that keeps the best `limit` records seen so far, and nothing
+ * is ever written to disk. Otherwise the source is sorted with a
+ * SortOperator, which for a limit stops as soon as it has produced `limit`
+ * records (see SortOperator#iterator(long)).
+ */
+public class OrderByOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String orderByColumn;
+    private int orderByColumnIndex;
+    private QueryPlan.SortDirection direction;
+    private int limit;
+
+    /**
+     * Creates a new OrderByOperator that returns every record of source,
+     * ordered on orderByColumn.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param orderByColumn the column to order on
+     * @param direction whether to order ascending or descending
+     * @throws QueryPlanException
+     */
+    public OrderByOperator(QueryOperator source,
+                           Database.Transaction transaction,
+                           String orderByColumn,
+                           QueryPlan.SortDirection direction) throws QueryPlanException {
+        this(source, transaction, orderByColumn, direction, -1);
+    }
+
+    /**
+     * Creates a new OrderByOperator that returns the first limit records of
+     * source, ordered on orderByColumn.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param orderByColumn the column to order on
+     * @param direction whether to order ascending or descending
+     * @param limit the number of records to return, or -1 to return all of them
+     * @throws QueryPlanException
+     */
+    public OrderByOperator(QueryOperator source,
+                           Database.Transaction transaction,
+                           String orderByColumn,
+                           QueryPlan.SortDirection direction,
+                           int limit) throws QueryPlanException {
+        super(OperatorType.ORDERBY, source);
+        Schema sourceSchema = this.getSource().getOutputSchema();
+        this.transaction = transaction;
+        this.orderByColumn = this.checkSchemaForColumn(sourceSchema, orderByColumn);
+        this.orderByColumnIndex = sourceSchema.getFieldNames().indexOf(this.orderByColumn);
+        this.direction = direction;
+        this.limit = limit;
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        if (this.isTopK()) {
+            return this.topK().iterator();
+        }
+        Comparator<Record> comparator = this.getComparator();
+        SortOperator sortOperator = new SortOperator(this.transaction, this.materializeSource(), comparator);
+        return sortOperator.iterator(this.limit < 0 ? Long.MAX_VALUE : this.limit);
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        return this.getSource().getOutputSchema();
+    }
+
+    public String getOrderByColumn() {
+        return this.orderByColumn;
+    }
+
+    public QueryPlan.SortDirection getDirection() {
+        return this.direction;
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Returns whether this operator keeps its output in a bounded in-memory
+     * heap rather than sorting its source.
+     */
+    public boolean isTopK() throws QueryPlanException {
+        if (this.limit < 0) {
+            return false;
+        }
+        int recordsPerPage = Page.pageSize / this.getOutputSchema().getSizeInBytes();
+        try {
+            return (long) this.limit <= (long) (this.transaction.getNumMemoryPages() - 1) * recordsPerPage;
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\ncolumn: " + this.orderByColumn +
+               "\ndirection: " + this.direction +
+               "\nlimit: " + this.limit;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    /**
+     * A top-K costs nothing beyond its source. Otherwise the SortOperator
+     * reads the source's pages as they are, and then writes and reads back its
+     * runs; SortOperator#estimateSpillPageIOs counts those pages the way the
+     * sort actually cuts and merges the runs, and stops the final merge after
+     * `limit` records.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        if (this.isTopK()) {
+            return this.getSource().getIOCost();
+        }
+        int numBuffers;
+        try {
+            numBuffers = this.transaction.getNumMemoryPages();
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+        int numPages = this.getSource().getStats().getNumPages();
+        int recordsPerPage = Page.pageSize / this.getOutputSchema().getSizeInBytes();
+        long numSpillPageIOs = SortOperator.estimateSpillPageIOs(
+                                   numBuffers, SortOperator.DEFAULT_PARALLELISM,
+                                   SortOperator.RunGeneration.SORTED_BLOCKS, numPages, recordsPerPage,
+                                   this.limit < 0 ? Long.MAX_VALUE : this.limit);
+        return (int) Math.min(Integer.MAX_VALUE, this.getSource().getIOCost() + numSpillPageIOs);
+    }
+
+    private Comparator<Record> getComparator() {
+        int index = this.orderByColumnIndex;
+        Comparator<Record> comparator = (r1, r2) -> r1.getValues().get(index).compareTo(r2.getValues().get(index));
+        return this.direction == QueryPlan.SortDirection.DESCENDING ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * Streams the source through a heap of at most limit records whose root
+     * is the worst record kept so far, and returns the kept records in order.
+     */
+    private List<Record> topK() throws QueryPlanException, DatabaseException {
+        Comparator<Record> comparator = this.getComparator();
+        PriorityQueue<Record> heap = new PriorityQueue<>(Math.max(1, this.limit), comparator.reversed());
+        Iterator<Record> sourceIterator = this.getSource().iterator();
+        while (sourceIterator.hasNext()) {
+            Record record = sourceIterator.next();
+            if (heap.size() < this.limit) {
+                heap.add(record);
+            } else if (this.limit > 0 && comparator.compare(record, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(record);
+            }
+        }
+        List<Record> records = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            records.add(heap.poll());
+        }
+        Collections.reverse(records);
+        return records;
+    }
+
+    /**
+     * Returns the name of a table holding the records of the source: the
+     * scanned table itself for a full sequential scan, and a new temp table
+     * otherwise.
+     */
+    private String materializeSource() throws QueryPlanException, DatabaseException {
+        if (this.getSource().isSequentialScan() && ((SequentialScanOperator) this.getSource()).isFullScan()) {
+            return ((SequentialScanOperator) this.getSource()).getTableName();
+        }
+        String tableName = this.transaction.createTempTable(this.getSource().getOutputSchema());
+        Iterator<Record> sourceIterator = this.getSource().iterator();
+        while (sourceIterator.hasNext()) {
+            this.transaction.addRecord(tableName, sourceIterator.next().getValues());
+        }
+        return tableName;
+    }
+}
@@ -0,0 +1,347 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.ScanPredicate;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * A ParallelScanOperator scans a table like a SequentialScanOperator, but
+ * splits the table's data pages into morsels of MORSEL_SIZE consecutive pages
+ * and scans the morsels on the common ForkJoinPool. Every worker applies the
+ * scan's selections (compiled into a ScanPredicate, like a
+ * SequentialScanOperator's) and projection to its own morsel, so the consuming thread only ever sees
+ * output records.
+ *
+ * If ordered is true, records are returned in page order, i.e. in the same
+ * order as a sequential scan followed by the same selects and project.
+ * Otherwise morsels are returned in whichever order they finish.
+ *
+ * At most 2 * parallelism morsels are scanned ahead of the consumer, which
+ * bounds the memory used by a scan whose consumer is slower than its workers.
+ * Since the pool is shared, a consumer that stops early (e.g. under a LIMIT)
+ * leaves nothing behind but those few morsels, which finish and are dropped.
+ *
+ * NOTE: Like SequentialScanOperator, a parallel scan must be at the bottom of
+ * the DAG.
+ */
+public class ParallelScanOperator extends QueryOperator {
+    // The number of data pages in a morsel.
+    public static final int MORSEL_SIZE = 8;
+
+    private Database.Transaction transaction;
+    private String tableName;
+    private List<String> selectColumnNames;
+    private List<Integer> selectColumnIndices;
+    private List<QueryPlan.PredicateOperator> selectOperators;
+    private List<DataBox> selectValues;
+    private List<String> projectColumns;
+    private List<Integer> projectIndices;
+    private boolean ordered;
+    private int parallelism;
+
+    /**
+     * Creates a new ParallelScanOperator that returns every record of a table
+     * using one worker per available processor.
+     *
+     * @param transaction
+     * @param tableName
+     * @param ordered whether to return records in page order
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public ParallelScanOperator(Database.Transaction transaction, String tableName,
+                                boolean ordered) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, Collections.emptyList(), Collections.emptyList(),
+             Collections.emptyList(), null, ordered, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new ParallelScanOperator that returns the projectColumns
+     * columns of every record of a table that satisfies all of the selection
+     * predicates. The i-th predicate is `selectColumnNames[i]
+     * selectOperators[i] selectValues[i]`, just as in QueryPlan.
+     *
+     * @param transaction
+     * @param tableName
+     * @param selectColumnNames the columns of the selection predicates
+     * @param selectOperators the comparators of the selection predicates
+     * @param selectValues the values of the selection predicates
+     * @param projectColumns the columns to return, or null to return all of them
+     * @param ordered whether to return records in page order
+     * @param parallelism the number of morsels to scan concurrently
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public ParallelScanOperator(Database.Transaction transaction,
+                                String tableName,
+                                List<String> selectColumnNames,
+                                List<QueryPlan.PredicateOperator> selectOperators,
+                                List<DataBox> selectValues,
+                                List<String> projectColumns,
+                                boolean ordered,
+                                int parallelism) throws QueryPlanException, DatabaseException {
+        super(OperatorType.PARALLELSCAN);
+        if (selectColumnNames.size() != selectOperators.size() ||
+                selectColumnNames.size() != selectValues.size()) {
+            throw new QueryPlanException("Selection columns, operators, and values must have the same length.");
+        }
+        if (parallelism < 1) {
+            throw new QueryPlanException("Parallelism must be positive, not " + parallelism + ".");
+        }
+        this.transaction = transaction;
+        this.tableName = tableName;
+        this.selectColumnNames = new ArrayList<>(selectColumnNames);
+        this.selectOperators = new ArrayList<>(selectOperators);
+        this.selectValues = new ArrayList<>(selectValues);
+        this.projectColumns = projectColumns == null ? null : new ArrayList<>(projectColumns);
+        this.ordered = ordered;
+        this.parallelism = parallelism;
+        this.setOutputSchema(this.computeSchema());
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String getTableName() {
+        return this.tableName;
+    }
+
+    public boolean isOrdered() {
+        return this.ordered;
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    public Iterator<Record> iterator() throws DatabaseException {
+        return new ParallelScanIterator();
+    }
+
+    /**
+     * Resolves the selection and projection columns against the table's
+     * (fully qualified) schema and returns the schema of the projected records.
+     */
+    public Schema computeSchema() throws QueryPlanException {
+        Schema tableSchema;
+        try {
+            tableSchema = this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+        List<String> fieldNames = tableSchema.getFieldNames();
+        List<Type> fieldTypes = tableSchema.getFieldTypes();
+
+        this.selectColumnIndices = new ArrayList<>();
+        for (int i = 0; i < this.selectColumnNames.size(); ++i) {
+            String columnName = this.checkSchemaForColumn(tableSchema, this.selectColumnNames.get(i));
+            this.selectColumnNames.set(i, columnName);
+            this.selectColumnIndices.add(fieldNames.indexOf(columnName));
+        }
+
+        if (this.projectColumns == null) {
+            this.projectIndices = null;
+            return tableSchema;
+        }
+        this.projectIndices = new ArrayList<>();
+        List<String> columnNames = new ArrayList<>();
+        List<Type> columnTypes = new ArrayList<>();
+        for (String columnName : this.projectColumns) {
+            columnName = this.checkSchemaForColumn(tableSchema, columnName);
+            int index = fieldNames.indexOf(columnName);
+            this.projectIndices.add(index);
+            columnNames.add(columnName);
+            columnTypes.add(fieldTypes.get(index));
+        }
+        return new Schema(columnNames, columnTypes);
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\ntable: " + this.tableName +
+               "\nselect columns: " + this.selectColumnNames +
+               "\nselect operators: " + this.selectOperators +
+               "\nselect values: " + this.selectValues +
+               "\nproject columns: " + this.projectColumns +
+               "\nordered: " + this.ordered +
+               "\nparallelism: " + this.parallelism;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats;
+        try {
+            stats = this.transaction.getStats(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+        for (int i = 0; i < this.selectColumnIndices.size(); ++i) {
+            stats = stats.copyWithPredicate(this.selectColumnIndices.get(i),
+                                            this.selectOperators.get(i),
+                                            this.selectValues.get(i));
+        }
+        return stats;
+    }
+
+    public int estimateIOCost() throws QueryPlanException {
+        try {
+            return this.transaction.getNumDataPages(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * Scans the pages of a single morsel, returning the selected and projected
+     * records in page order. Runs on a worker thread.
+     */
+    private List<Record> scanMorsel(List<Integer> pageNums, ScanPredicate predicate) throws DatabaseException {
+        List<Record> records = new ArrayList<>();
+        for (int pageNum : pageNums) {
+            for (Record record : this.transaction.getPageRecords(this.tableName, pageNum, predicate)) {
+                records.add(this.project(record));
+            }
+        }
+        return records;
+    }
+
+    private Record project(Record record) {
+        if (this.projectIndices == null) {
+            return record;
+        }
+        List<DataBox> values = record.getValues();
+        List<DataBox> projected = new ArrayList<>(this.projectIndices.size());
+        for (int index : this.projectIndices) {
+            projected.add(values.get(index));
+        }
+        return new Record(projected);
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     *
+     * Morsels are scanned on the common ForkJoinPool, so the iterator owns no
+     * threads, and there is nothing to shut down however it is abandoned.
+     */
+    private class ParallelScanIterator implements Iterator<Record> {
+        private Iterator<List<Integer>> morselIterator;
+        // Morsels in flight, in page order. Only used when ordered.
+        private Deque<Future<List<Record>>> pendingMorsels;
+        // Morsels in flight, in completion order. Only used when not ordered.
+        private CompletionService<List<Record>> completedMorsels;
+        private int numInFlight;
+        private Iterator<Record> recordIterator;
+        private ScanPredicate predicate;
+
+        public ParallelScanIterator() throws DatabaseException {
+            List<Integer> pageNums = ParallelScanOperator.this.transaction.getDataPageNums(
+                                         ParallelScanOperator.this.tableName);
+            List<List<Integer>> morsels = new ArrayList<>();
+            for (int i = 0; i < pageNums.size(); i += MORSEL_SIZE) {
+                morsels.add(pageNums.subList(i, Math.min(i + MORSEL_SIZE, pageNums.size())));
+            }
+
+            this.predicate = ParallelScanOperator.this.transaction.compilePredicate(
+                                 ParallelScanOperator.this.tableName, ParallelScanOperator.this.selectColumnIndices,
+                                 ParallelScanOperator.this.selectOperators, ParallelScanOperator.this.selectValues);
+
+            this.morselIterator = morsels.iterator();
+            this.pendingMorsels = new ArrayDeque<>();
+            this.completedMorsels = new ExecutorCompletionService<>(ForkJoinPool.commonPool());
+            this.numInFlight = 0;
+            this.recordIterator = Collections.emptyIterator();
+
+            for (int i = 0; i < 2 * ParallelScanOperator.this.parallelism; ++i) {
+                this.submitNextMorsel();
+            }
+        }
+
+        private void submitNextMorsel() {
+            if (!this.morselIterator.hasNext()) {
+                return;
+            }
+            List<Integer> morsel = this.morselIterator.next();
+            if (ParallelScanOperator.this.ordered) {
+                this.pendingMorsels.addLast(ForkJoinPool.commonPool().submit(() -> scanMorsel(morsel, this.predicate)));
+            } else {
+                this.completedMorsels.submit(() -> scanMorsel(morsel, this.predicate));
+            }
+            this.numInFlight++;
+        }
+
+        /**
+         * Waits for the next morsel (the next in page order if ordered, the
+         * next to finish otherwise) and returns its records.
+         */
+        private List<Record> takeNextMorsel() {
+            try {
+                Future<List<Record>> future = ParallelScanOperator.this.ordered
+                                              ? this.pendingMorsels.pollFirst()
+                                              : this.completedMorsels.take();
+                this.numInFlight--;
+                return future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                for (Future<List<Record>> pending : this.pendingMorsels) {
+                    pending.cancel(true);
+                }
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            while (!this.recordIterator.hasNext()) {
+                if (this.numInFlight == 0) {
+                    return false;
+                }
+                this.recordIterator = this.takeNextMorsel().iterator();
+                this.submitNextMorsel();
+            }
+            return true;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                return this.recordIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
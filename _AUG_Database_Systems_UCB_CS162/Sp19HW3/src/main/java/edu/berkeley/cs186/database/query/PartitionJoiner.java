@@ -0,0 +1,249 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.SpillFile;
+
+/**
+ * Joins the pairs of partitions that the hash joins (GraceHashOperator and
+ * HybridHashOperator) spill to disk.
+ *
+ * Every pair is joined on its own: the smaller side (the build side) is loaded
+ * into a JoinHashTable of at most numBuffers - 2 pages, and the other side
+ * (the probe side) is streamed past it a page at a time.
+ *
+ * A pair whose build side does not fit in memory is partitioned again, with a
+ * differently seeded hash function, and its partitions are joined the same
+ * way. A pair that does not shrink when partitioned again (i.e. most of its
+ * records share a single key), or that is still too large after
+ * GraceHashOperator.MAX_RECURSION_DEPTH rounds, is joined in chunks instead:
+ * every chunk of numBuffers - 2 pages of the build side is joined against the
+ * whole probe side.
+ */
+class PartitionJoiner {
+    private Database.Transaction transaction;
+    private int numBuffers;
+    private Schema leftSchema;
+    private Schema rightSchema;
+    private int leftColumnIndex;
+    private int rightColumnIndex;
+    // Pairs of partitions still to be joined.
+    private Deque<PartitionPair> pendingPairs;
+
+    // The pair being joined, and which of its sides is the build side.
+    private PartitionPair pair;
+    private SpillFile build;
+    private SpillFile probe;
+    private boolean buildIsLeft;
+    // The records of build before buildPosition have been joined already,
+    // and the chunk just before buildPosition is in hashTable.
+    private long buildPosition;
+    private JoinHashTable hashTable;
+    private Iterator<Record> probeIterator;
+    private Record probeRecord;
+    private int match;
+
+    PartitionJoiner(Database.Transaction transaction, int numBuffers,
+                    Schema leftSchema, int leftColumnIndex,
+                    Schema rightSchema, int rightColumnIndex) {
+        this.transaction = transaction;
+        this.numBuffers = numBuffers;
+        this.leftSchema = leftSchema;
+        this.leftColumnIndex = leftColumnIndex;
+        this.rightSchema = rightSchema;
+        this.rightColumnIndex = rightColumnIndex;
+        this.pendingPairs = new ArrayDeque<>();
+        this.pair = null;
+        this.match = JoinHashTable.NONE;
+    }
+
+    /**
+     * Returns the number of partitions every round of partitioning makes.
+     */
+    int getNumPartitions() {
+        return this.numBuffers - 1;
+    }
+
+    /**
+     * Returns the partition that key belongs to in the given round of
+     * partitioning.
+     */
+    int partitionOf(DataBox key, int depth) {
+        return Math.floorMod(hash(key, depth), this.getNumPartitions());
+    }
+
+    /**
+     * Hashes key for the given round of partitioning. Every round uses a
+     * different seed, so that records which shared a partition in one round
+     * are spread out in the next.
+     */
+    static int hash(DataBox key, int depth) {
+        int h = key.hashCode() + depth * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Hashes every record of records, which come from the left input if left
+     * is true and from the right input otherwise, into one of
+     * getNumPartitions() new partitions.
+     */
+    List<SpillFile> partition(Iterator<Record> records, boolean left, int depth) throws DatabaseException {
+        Schema schema = left ? this.leftSchema : this.rightSchema;
+        int columnIndex = left ? this.leftColumnIndex : this.rightColumnIndex;
+        List<SpillFile> partitions = new ArrayList<>();
+        for (int i = 0; i < this.getNumPartitions(); ++i) {
+            partitions.add(this.transaction.createSpillFile(schema));
+        }
+        while (records.hasNext()) {
+            Record record = records.next();
+            int partition = partitionOf(record.getValues().get(columnIndex), depth);
+            partitions.get(partition).append(record);
+        }
+        return partitions;
+    }
+
+    /**
+     * Queues a pair of partitions made by depth rounds of partitioning to be
+     * joined, unless one of its sides is empty, in which case there is nothing
+     * to join. The partitions are closed once they have been joined.
+     */
+    void addPair(SpillFile left, SpillFile right, int depth) {
+        PartitionPair pair = new PartitionPair(left, right, depth);
+        if (left.getNumRecords() == 0 || right.getNumRecords() == 0) {
+            pair.close();
+        } else {
+            this.pendingPairs.push(pair);
+        }
+    }
+
+    /**
+     * Returns the next joined record of the queued pairs, or null if there are
+     * none left.
+     */
+    Record fetchNextRecord() throws DatabaseException {
+        int probeColumnIndex = this.buildIsLeft ? this.rightColumnIndex : this.leftColumnIndex;
+        while (true) {
+            if (this.match != JoinHashTable.NONE) {
+                Record buildRecord = this.hashTable.get(this.match);
+                this.match = this.hashTable.next(this.match);
+                return this.buildIsLeft ? joinRecords(buildRecord, this.probeRecord)
+                       : joinRecords(this.probeRecord, buildRecord);
+            }
+            if (this.pair != null && this.probeIterator.hasNext()) {
+                this.probeRecord = this.probeIterator.next();
+                this.match = this.hashTable.first(this.probeRecord.getValues().get(probeColumnIndex));
+                continue;
+            }
+            if (this.pair != null && this.buildPosition < this.build.getNumRecords()) {
+                this.loadNextChunk();
+                continue;
+            }
+            if (this.pair != null) {
+                this.pair.close();
+                this.pair = null;
+                this.hashTable = null;
+            }
+            if (!this.startNextPair()) {
+                return null;
+            }
+            probeColumnIndex = this.buildIsLeft ? this.rightColumnIndex : this.leftColumnIndex;
+        }
+    }
+
+    static Record joinRecords(Record leftRecord, Record rightRecord) {
+        List<DataBox> values = new ArrayList<>(leftRecord.getValues());
+        values.addAll(rightRecord.getValues());
+        return new Record(values);
+    }
+
+    private static long numPages(SpillFile spillFile) {
+        int recordsPerPage = spillFile.getNumRecordsPerPage();
+        return (spillFile.getNumRecords() + recordsPerPage - 1) / recordsPerPage;
+    }
+
+    /**
+     * Takes pairs off the queue, partitioning again those which are too
+     * large, until one is found that can be joined, and starts joining it.
+     * Returns false if there are no pairs left.
+     */
+    private boolean startNextPair() throws DatabaseException {
+        while (!this.pendingPairs.isEmpty()) {
+            PartitionPair pair = this.pendingPairs.pop();
+            long buildPages = Math.min(numPages(pair.left), numPages(pair.right));
+            if (buildPages > this.numBuffers - 2 && pair.depth <= GraceHashOperator.MAX_RECURSION_DEPTH) {
+                List<SpillFile> leftPartitions = partition(pair.left.iterator(), true, pair.depth);
+                List<SpillFile> rightPartitions = partition(pair.right.iterator(), false, pair.depth);
+                for (int i = 0; i < leftPartitions.size(); ++i) {
+                    SpillFile left = leftPartitions.get(i);
+                    SpillFile right = rightPartitions.get(i);
+                    // A partition holding everything will not shrink however
+                    // often it is partitioned, so it is joined in chunks.
+                    boolean shrunk = left.getNumRecords() < pair.left.getNumRecords() ||
+                                     right.getNumRecords() < pair.right.getNumRecords();
+                    this.addPair(left, right, shrunk ? pair.depth + 1 : GraceHashOperator.MAX_RECURSION_DEPTH + 1);
+                }
+                pair.close();
+                continue;
+            }
+
+            this.pair = pair;
+            this.buildIsLeft = pair.left.getNumRecords() <= pair.right.getNumRecords();
+            this.build = this.buildIsLeft ? pair.left : pair.right;
+            this.probe = this.buildIsLeft ? pair.right : pair.left;
+            this.buildPosition = 0;
+            this.loadNextChunk();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Loads the next numBuffers - 2 pages of the build side into the hash
+     * table, and starts a new pass over the probe side.
+     */
+    private void loadNextChunk() throws DatabaseException {
+        Schema buildSchema = this.buildIsLeft ? this.leftSchema : this.rightSchema;
+        int buildColumnIndex = this.buildIsLeft ? this.leftColumnIndex : this.rightColumnIndex;
+        long chunkSize = (long) (this.numBuffers - 2) * this.build.getNumRecordsPerPage();
+        long chunkEnd = Math.min(this.build.getNumRecords(), this.buildPosition + chunkSize);
+        this.hashTable = new JoinHashTable(buildSchema.getFieldTypes().get(buildColumnIndex), buildColumnIndex,
+                                           (int) (chunkEnd - this.buildPosition));
+        Iterator<Record> buildIterator = this.build.iterator(this.buildPosition, chunkEnd);
+        while (buildIterator.hasNext()) {
+            this.hashTable.add(buildIterator.next());
+        }
+        this.buildPosition = chunkEnd;
+        this.probeIterator = this.probe.iterator();
+    }
+
+    /**
+     * A pair of partitions with the same number, one from each input, and the
+     * number of rounds of partitioning that produced it.
+     */
+    private static class PartitionPair {
+        SpillFile left;
+        SpillFile right;
+        int depth;
+
+        PartitionPair(SpillFile left, SpillFile right, int depth) {
+            this.left = left;
+            this.right = right;
+            this.depth = depth;
+        }
+
+        void close() {
+            this.left.close();
+            this.right.close();
+        }
+    }
+}
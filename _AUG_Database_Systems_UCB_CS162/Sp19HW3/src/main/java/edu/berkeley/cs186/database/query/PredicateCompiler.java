@@ -0,0 +1,207 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.StringDictionary;
+import edu.berkeley.cs186.database.table.stats.Histogram;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * Compiles a conjunction of select predicates `column operator value` into a
+ * single Predicate<Record>.
+ *
+ * Every comparison is compiled into its own lambda, specialized on both the
+ * type of the column and the operator: an INT column GREATER_THAN a constant
+ * becomes `r -> r.getValues().get(i).getInt() > c`, with no switch and no
+ * DataBox#compareTo left to run per record. Each lambda is a class of its
+ * own, so the call sites that invoke it only ever see that one class and the
+ * JIT can inline it. Conjunctions of one and two comparisons are fused into a
+ * single lambda; longer ones loop over an array of them.
+ *
+ * Comparisons are evaluated most selective first (see order), so that a
+ * record is rejected by the first comparison whenever possible.
+ */
+class PredicateCompiler {
+    // Selectivities assumed for a column without a usable histogram, as in
+    // System R.
+    static final float DEFAULT_EQUALS_SELECTIVITY = 0.1f;
+    static final float DEFAULT_RANGE_SELECTIVITY = 1.0f / 3;
+
+    private PredicateCompiler() {}
+
+    /**
+     * Returns the indices of the given comparisons in the order to evaluate
+     * them: by increasing estimated selectivity, and, among comparisons that
+     * are as selective, cheaper types (anything but strings) first.
+     */
+    static List<Integer> order(TableStats stats, List<Integer> columnIndices, List<Type> columnTypes,
+                               List<QueryPlan.PredicateOperator> operators, List<DataBox> values) {
+        List<Float> selectivities = new ArrayList<>();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < columnIndices.size(); ++i) {
+            selectivities.add(estimateSelectivity(stats, columnIndices.get(i), operators.get(i), values.get(i)));
+            order.add(i);
+        }
+        order.sort(Comparator.comparing((Integer i) -> selectivities.get(i))
+                   .thenComparing(i -> columnTypes.get(i).getTypeId() == TypeId.STRING));
+        return order;
+    }
+
+    /**
+     * Returns the estimated fraction of records that satisfy `column operator
+     * value`, from the column's histogram if it has one with records in it.
+     */
+    static float estimateSelectivity(TableStats stats, int columnIndex,
+                                     QueryPlan.PredicateOperator operator, DataBox value) {
+        List<Histogram> histograms = stats.getHistograms();
+        if (histograms.size() > columnIndex && histograms.get(columnIndex).getCount() > 0) {
+            float reductionFactor = histograms.get(columnIndex).computeReductionFactor(operator, value);
+            if (reductionFactor >= 0 && reductionFactor <= 1) {
+                return reductionFactor;
+            }
+        }
+        switch (operator) {
+        case EQUALS:
+            return DEFAULT_EQUALS_SELECTIVITY;
+        case NOT_EQUALS:
+            return 1 - DEFAULT_EQUALS_SELECTIVITY;
+        default:
+            return DEFAULT_RANGE_SELECTIVITY;
+        }
+    }
+
+    /**
+     * Compiles the conjunction of `columnIndices[i] operators[i] values[i]`,
+     * evaluated in list order. dictionaries[i] is the dictionary of the
+     * column of the i-th comparison if the records come straight from a table
+     * in which that column is dictionary encoded, and null otherwise. Every
+     * value of such a column is the dictionary's canonical instance, so
+     * EQUALS and NOT_EQUALS on it compare references (i.e. codes).
+     */
+    static Predicate<Record> compile(List<Integer> columnIndices, List<Type> columnTypes,
+                                     List<QueryPlan.PredicateOperator> operators, List<DataBox> values,
+                                     List<StringDictionary> dictionaries) {
+        List<Predicate<Record>> comparisons = new ArrayList<>();
+        for (int i = 0; i < columnIndices.size(); ++i) {
+            QueryPlan.PredicateOperator operator = operators.get(i);
+            StringDictionary dictionary = dictionaries.get(i);
+            if (dictionary != null && (operator == QueryPlan.PredicateOperator.EQUALS ||
+                                       operator == QueryPlan.PredicateOperator.NOT_EQUALS)) {
+                // A value missing from the dictionary has no canonical
+                // instance, and nothing is equal to it.
+                comparisons.add(compileReference(columnIndices.get(i), operator,
+                                                 dictionary.canonicalize(values.get(i))));
+            } else {
+                comparisons.add(compileComparison(columnIndices.get(i), columnTypes.get(i),
+                                                  operator, values.get(i)));
+            }
+        }
+
+        switch (comparisons.size()) {
+        case 0:
+            return r -> true;
+        case 1:
+            return comparisons.get(0);
+        case 2: {
+            Predicate<Record> first = comparisons.get(0);
+            Predicate<Record> second = comparisons.get(1);
+            return r -> first.test(r) && second.test(r);
+        }
+        default: {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Predicate<Record>[] all = comparisons.toArray(new Predicate[0]);
+            return r -> {
+                for (Predicate<Record> comparison : all) {
+                    if (!comparison.test(r)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+        }
+    }
+
+    private static Predicate<Record> compileReference(int i, QueryPlan.PredicateOperator operator,
+            DataBox canonicalValue) {
+        if (operator == QueryPlan.PredicateOperator.EQUALS) {
+            return r -> r.getValues().get(i) == canonicalValue;
+        }
+        return r -> r.getValues().get(i) != canonicalValue;
+    }
+
+    private static Predicate<Record> compileComparison(int i, Type type, QueryPlan.PredicateOperator operator,
+            DataBox value) {
+        if (value.type().getTypeId() != type.getTypeId()) {
+            // Comparing DataBoxes of different types fails, just as it should.
+            return r -> operator.evaluate(r.getValues().get(i), value);
+        }
+
+        switch (type.getTypeId()) {
+        case INT: {
+            int c = value.getInt();
+            switch (operator) {
+            case EQUALS:
+                return r -> r.getValues().get(i).getInt() == c;
+            case NOT_EQUALS:
+                return r -> r.getValues().get(i).getInt() != c;
+            case LESS_THAN:
+                return r -> r.getValues().get(i).getInt() < c;
+            case LESS_THAN_EQUALS:
+                return r -> r.getValues().get(i).getInt() <= c;
+            case GREATER_THAN:
+                return r -> r.getValues().get(i).getInt() > c;
+            default:
+                return r -> r.getValues().get(i).getInt() >= c;
+            }
+        }
+        case FLOAT: {
+            // Float.compare, like FloatDataBox#compareTo, orders -0.0 before
+            // 0.0 and NaN after everything, which < and > do not.
+            float c = value.getFloat();
+            switch (operator) {
+            case EQUALS:
+                return r -> Float.compare(r.getValues().get(i).getFloat(), c) == 0;
+            case NOT_EQUALS:
+                return r -> Float.compare(r.getValues().get(i).getFloat(), c) != 0;
+            case LESS_THAN:
+                return r -> Float.compare(r.getValues().get(i).getFloat(), c) < 0;
+            case LESS_THAN_EQUALS:
+                return r -> Float.compare(r.getValues().get(i).getFloat(), c) <= 0;
+            case GREATER_THAN:
+                return r -> Float.compare(r.getValues().get(i).getFloat(), c) > 0;
+            default:
+                return r -> Float.compare(r.getValues().get(i).getFloat(), c) >= 0;
+            }
+        }
+        case STRING: {
+            String c = value.getString();
+            switch (operator) {
+            case EQUALS:
+                return r -> r.getValues().get(i).getString().equals(c);
+            case NOT_EQUALS:
+                return r -> !r.getValues().get(i).getString().equals(c);
+            case LESS_THAN:
+                return r -> r.getValues().get(i).getString().compareTo(c) < 0;
+            case LESS_THAN_EQUALS:
+                return r -> r.getValues().get(i).getString().compareTo(c) <= 0;
+            case GREATER_THAN:
+                return r -> r.getValues().get(i).getString().compareTo(c) > 0;
+            default:
+                return r -> r.getValues().get(i).getString().compareTo(c) >= 0;
+            }
+        }
+        default: {
+            boolean c = value.getBool();
+            return r -> operator.holds(Boolean.compare(r.getValues().get(i).getBool(), c));
+        }
+        }
+    }
+}
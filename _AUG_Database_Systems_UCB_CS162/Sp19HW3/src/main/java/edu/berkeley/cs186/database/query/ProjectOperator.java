@@ -11,7 +11,6 @@ import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
-import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -190,17 +189,11 @@ public class ProjectOperator extends QueryOperator {
      */
     private class ProjectIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
-        private MarkerRecord markerRecord;
-        private Record nextRecord;
-        private boolean prevWasMarker;
         private List<DataBox> baseValues;
 
         public ProjectIterator() throws QueryPlanException, DatabaseException {
             this.sourceIterator = ProjectOperator.this.getSource().iterator();
-            this.markerRecord = MarkerRecord.getMarker();
-            this.nextRecord = null;
-            this.prevWasMarker = true;
-            this.baseValues = new ArrayList<DataBox>();
+            this.baseValues = null;
         }
 
         /**
@@ -221,57 +214,31 @@ public class ProjectOperator extends QueryOperator {
         public Record next() {
             if (this.hasNext()) {
                 if (ProjectOperator.this.hasAggregate) {
+                    // the whole source is a single group (grouped aggregates are computed by an
+                    // AggregateOperator instead), so we aggregate every record into one result
                     while (this.sourceIterator.hasNext()) {
                         Record r = this.sourceIterator.next();
                         List<DataBox> recordValues = r.getValues();
 
-                        // if the record is a MarkerRecord, that means we reached the end of a group... we reset
-                        // the aggregates and add the appropriate new record to the new Records
-                        if (r == this.markerRecord) {
-                            if (ProjectOperator.this.hasCount) {
-                                int count = ProjectOperator.this.getAndResetCount();
-                                this.baseValues.add(new IntDataBox(count));
-                            }
-                            if (ProjectOperator.this.sumColumnIndex != -1) {
-                                double sum = ProjectOperator.this.getAndResetSum();
-
-                                if (ProjectOperator.this.sumIsFloat) {
-                                    this.baseValues.add(new FloatDataBox((float) sum));
-                                } else {
-                                    this.baseValues.add(new IntDataBox((int) sum));
-                                }
-                            }
-                            if (ProjectOperator.this.averageColumnIndex != -1) {
-                                double average = (float) ProjectOperator.this.getAndResetAverage();
-                                this.baseValues.add(new FloatDataBox((float) average));
-                            }
-                            // record that we just saw a marker record
-                            this.prevWasMarker = true;
-                            return new Record(this.baseValues);
-                        } else {
-                            // if the previous record was a marker (or for the first record) we have to get the relevant
-                            // fields out of the record
-                            if (this.prevWasMarker) {
-                                this.baseValues = new ArrayList<DataBox>();
-                                for (int index : ProjectOperator.this.indices) {
-                                    this.baseValues.add(recordValues.get(index));
-                                }
-                                this.prevWasMarker = false;
-                            }
-                            if (ProjectOperator.this.hasCount) {
-                                ProjectOperator.this.addToCount();
-                            }
-                            if (ProjectOperator.this.sumColumnIndex != -1) {
-                                ProjectOperator.this.addToSum(r);
-                            }
-                            if (ProjectOperator.this.averageColumnIndex != -1) {
-                                ProjectOperator.this.addToAverage(r);
+                        // the projected columns are taken from the first record
+                        if (this.baseValues == null) {
+                            this.baseValues = new ArrayList<DataBox>();
+                            for (int index : ProjectOperator.this.indices) {
+                                this.baseValues.add(recordValues.get(index));
                             }
                         }
+                        if (ProjectOperator.this.hasCount) {
+                            ProjectOperator.this.addToCount();
+                        }
+                        if (ProjectOperator.this.sumColumnIndex != -1) {
+                            ProjectOperator.this.addToSum(r);
+                        }
+                        if (ProjectOperator.this.averageColumnIndex != -1) {
+                            ProjectOperator.this.addToAverage(r);
+                        }
                     }
 
-                    // at the very end, we need to make sure we add all the aggregated records to the result
-                    // either because there was no group by or to add the last group we saw
+                    // at the very end, we add the aggregates to the result
                     if (ProjectOperator.this.hasCount) {
                         int count = ProjectOperator.this.getAndResetCount();
                         this.baseValues.add(new IntDataBox(count));
@@ -294,17 +261,10 @@ public class ProjectOperator extends QueryOperator {
                     Record r = this.sourceIterator.next();
                     List<DataBox> recordValues = r.getValues();
                     List<DataBox> newValues = new ArrayList<DataBox>();
-
-                    // if there is a marker record (in the case we're projecting from a group by), we simply
-                    // leave the marker records in
-                    if (r == this.markerRecord) {
-                        return markerRecord;
-                    } else {
-                        for (int index : ProjectOperator.this.indices) {
-                            newValues.add(recordValues.get(index));
-                        }
-                        return new Record(newValues);
+                    for (int index : ProjectOperator.this.indices) {
+                        newValues.add(recordValues.get(index));
                     }
+                    return new Record(newValues);
                 }
             }
             throw new NoSuchElementException();
@@ -21,7 +21,10 @@ public abstract class QueryOperator {
         SELECT,
         GROUPBY,
         SEQSCAN,
-        INDEXSCAN
+        INDEXSCAN,
+        PARALLELSCAN,
+        ORDERBY,
+        LIMIT
     }
 
     private OperatorType type;
@@ -68,6 +71,18 @@ public abstract class QueryOperator {
         return this.type.equals(OperatorType.INDEXSCAN);
     }
 
+    public boolean isParallelScan() {
+        return this.type.equals(OperatorType.PARALLELSCAN);
+    }
+
+    public boolean isOrderBy() {
+        return this.type.equals(OperatorType.ORDERBY);
+    }
+
+    public boolean isLimit() {
+        return this.type.equals(OperatorType.LIMIT);
+    }
+
     public QueryOperator getSource() throws QueryPlanException {
         return this.source;
     }
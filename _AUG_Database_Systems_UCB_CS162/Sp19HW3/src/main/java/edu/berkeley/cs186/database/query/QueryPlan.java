@@ -20,7 +20,51 @@ public class QueryPlan {
         LESS_THAN,
         LESS_THAN_EQUALS,
         GREATER_THAN,
-        GREATER_THAN_EQUALS
+        GREATER_THAN_EQUALS;
+
+        /**
+         * Returns whether `left operator right` holds, e.g. LESS_THAN.evaluate(a, b)
+         * is a < b.
+         */
+        public boolean evaluate(DataBox left, DataBox right) {
+            return this.holds(left.compareTo(right));
+        }
+
+        /**
+         * Returns whether `left operator right` holds for a left and right
+         * for which left.compareTo(right) is c.
+         */
+        public boolean holds(int c) {
+            switch (this) {
+            case EQUALS:
+                return c == 0;
+            case NOT_EQUALS:
+                return c != 0;
+            case LESS_THAN:
+                return c < 0;
+            case LESS_THAN_EQUALS:
+                return c <= 0;
+            case GREATER_THAN:
+                return c > 0;
+            case GREATER_THAN_EQUALS:
+                return c >= 0;
+            default:
+                return false;
+            }
+        }
+    }
+
+    public enum SortDirection {
+        ASCENDING,
+        DESCENDING
+    }
+
+    public enum AggregateFunction {
+        COUNT,
+        SUM,
+        AVERAGE,
+        MIN,
+        MAX
     }
 
     private Database.Transaction transaction;
@@ -38,6 +82,9 @@ public class QueryPlan {
     private boolean hasCount;
     private String averageColumnName;
     private String sumColumnName;
+    private String orderByColumn;
+    private SortDirection orderByDirection;
+    private int limit;
 
     /**
      * Creates a new QueryPlan within transaction. The base table is startTableName.
@@ -64,6 +111,10 @@ public class QueryPlan {
 
         this.groupByColumn = null;
 
+        this.orderByColumn = null;
+        this.orderByDirection = null;
+        this.limit = -1;
+
         this.finalOperator = null;
     }
 
@@ -116,6 +167,37 @@ public class QueryPlan {
         this.groupByColumn = column;
     }
 
+    /**
+     * Order the results of this query on column. Can only order on one column.
+     *
+     * @param column the column to order on
+     * @param direction whether to order ascending or descending
+     * @throws QueryPlanException
+     */
+    public void orderBy(String column, SortDirection direction) throws QueryPlanException {
+        if (this.orderByColumn != null) {
+            throw new QueryPlanException("Cannot order by more than one column.");
+        }
+        this.orderByColumn = column;
+        this.orderByDirection = direction;
+    }
+
+    /**
+     * Only return the first k results of this query.
+     *
+     * @param k the number of results to return
+     * @throws QueryPlanException
+     */
+    public void limit(int k) throws QueryPlanException {
+        if (k < 0) {
+            throw new QueryPlanException("Limit must not be negative, not " + k + ".");
+        }
+        if (this.limit >= 0) {
+            throw new QueryPlanException("Cannot add more than one limit to this query.");
+        }
+        this.limit = k;
+    }
+
     /**
      * Add a count aggregate to this query. Only can specify count(*).
      *
@@ -171,26 +253,46 @@ public class QueryPlan {
 
     /**
      * Generates a naive QueryPlan in which all joins are at the bottom of the DAG followed by all select
-     * predicates, an optional group by operator, and a set of projects (in that order).
+     * predicates, an optional group by operator, an optional order by operator, a set of projects, and an
+     * optional limit (in that order).
+     *
+     * An index on a select column of the start table is used instead of a sequential scan when there
+     * are no joins, preferably one on the group by column so that the groups come out in order and can
+     * be aggregated as a stream. A lower and an upper bound on the index column are both answered by a
+     * single range scan of the index. An equality on a column with a hash index is answered by the
+     * hash index, or by the B+ tree index on the column if that is estimated to be cheaper. An index on several columns is used over all of these if the
+     * select predicates pin down more than one of its columns: equalities on its leading columns,
+     * optionally followed by a range on the next one. If every column the query reads is in such an
+     * index, one restricted column is enough, and the records come from the index alone. Failing that, an index on the order by column is used when there are
+     * no joins or group by. Otherwise the select predicates on columns of the start table alone are
+     * pushed down into its sequential scan.
      *
      * @return an iterator of records that is the result of this query
      * @throws DatabaseException
      * @throws QueryPlanException
      */
     public Iterator<Record> execute() throws DatabaseException, QueryPlanException {
-        String indexColumn = this.checkIndexEligible();
-
-        if (indexColumn != null) {
-            this.generateIndexPlan(indexColumn);
+        CompositeIndexMatch compositeIndex = this.joinTableNames.isEmpty()
+                                             ? this.getEligibleCompositeIndex(this.startTableName) : null;
+        int indexSelect = this.checkIndexEligible();
+
+        if (compositeIndex != null) {
+            this.generateCompositeIndexPlan(compositeIndex);
+        } else if (indexSelect != -1) {
+            this.generateIndexPlan(indexSelect);
+        } else if (this.checkOrderByIndexEligible()) {
+            this.generateOrderByIndexPlan();
         } else {
             // start off with the start table scan as the source
-            this.finalOperator = new SequentialScanOperator(this.transaction, this.startTableName);
+            this.finalOperator = this.startTableScan();
 
             this.addJoins();
             this.addSelects();
             this.addGroupBy();
+            this.addOrderBy();
             this.addProjects();
         }
+        this.addLimit();
 
         return this.finalOperator.execute();
     }
@@ -228,6 +330,125 @@ public class QueryPlan {
         return selectIndices;
     }
 
+    /**
+     * The select predicates that an index on several columns can answer: an
+     * equality on each of its first prefixSelects.size() columns, and a lower
+     * and/or an upper bound on the column after those. If the index covers the
+     * query, i.e. it holds every column the query reads, it answers the query
+     * without reading the table.
+     */
+    private static class CompositeIndexMatch {
+        List<String> columns;
+        List<Integer> prefixSelects = new ArrayList<>();
+        int lowerSelect = -1;
+        int upperSelect = -1;
+        boolean covering;
+
+        CompositeIndexMatch(List<String> columns) {
+            this.columns = columns;
+        }
+
+        /** Returns the number of index columns that the predicates restrict. */
+        int numColumns() {
+            return this.prefixSelects.size() + (this.lowerSelect != -1 || this.upperSelect != -1 ? 1 : 0);
+        }
+    }
+
+    /**
+     * Gets the index on several columns of the given table that the SELECT
+     * predicates restrict the most columns of, as long as they restrict at
+     * least two (on one column, an index on that column alone does as well).
+     * Those are equalities on leading columns of the index, optionally
+     * followed by a range on the next column. Unlike getEligibleIndexColumns,
+     * which only considers single column indices, the predicates used are
+     * grouped into a CompositeIndexMatch.
+     *
+     * An index that covers the query is preferred over any other, and is
+     * eligible as long as the predicates restrict one of its columns: no
+     * record has to be fetched from the table at all.
+     *
+     * @return the best match, or null if no index on several columns is eligible
+     */
+    private CompositeIndexMatch getEligibleCompositeIndex(String table) {
+        Set<String> queryColumns = this.getQueryColumns(table);
+        CompositeIndexMatch best = null;
+        for (List<String> columns : this.transaction.getIndexColumns(table)) {
+            if (columns.size() < 2) {
+                continue;
+            }
+            CompositeIndexMatch match = new CompositeIndexMatch(columns);
+            for (String column : columns) {
+                int equality = this.findSelect(table, column, PredicateOperator.EQUALS);
+                if (equality == -1) {
+                    break;
+                }
+                match.prefixSelects.add(equality);
+            }
+            if (match.prefixSelects.size() < columns.size()) {
+                String column = columns.get(match.prefixSelects.size());
+                match.lowerSelect = Math.max(this.findSelect(table, column, PredicateOperator.GREATER_THAN),
+                                             this.findSelect(table, column, PredicateOperator.GREATER_THAN_EQUALS));
+                match.upperSelect = Math.max(this.findSelect(table, column, PredicateOperator.LESS_THAN),
+                                             this.findSelect(table, column, PredicateOperator.LESS_THAN_EQUALS));
+            }
+            match.covering = queryColumns != null && columns.containsAll(queryColumns);
+            if (match.numColumns() < (match.covering ? 1 : 2)) {
+                continue;
+            }
+            if (best == null || (match.covering && !best.covering) ||
+                    (match.covering == best.covering && match.numColumns() > best.numColumns())) {
+                best = match;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the (unqualified) columns of the given table that this query
+     * reads, or null if it reads all of them or some column of another table.
+     */
+    private Set<String> getQueryColumns(String table) {
+        if (this.projectColumns.isEmpty()) {
+            return null;
+        }
+        List<String> columns = new ArrayList<>(this.projectColumns);
+        columns.addAll(this.selectColumnNames);
+        columns.add(this.groupByColumn);
+        columns.add(this.sumColumnName);
+        columns.add(this.averageColumnName);
+        columns.add(this.orderByColumn);
+        Set<String> queryColumns = new HashSet<>();
+        for (String column : columns) {
+            if (column == null) {
+                continue;
+            }
+            if (column.contains(".")) {
+                if (!column.startsWith(table + ".")) {
+                    return null;
+                }
+                column = column.substring(table.length() + 1);
+            }
+            queryColumns.add(column);
+        }
+        return queryColumns;
+    }
+
+    /**
+     * Returns the index of the last SELECT predicate `column operator value`
+     * on column of table (either qualified with the table name or not), or -1
+     * if there is none.
+     */
+    private int findSelect(String table, String column, PredicateOperator operator) {
+        for (int i = this.selectColumnNames.size() - 1; i >= 0; i--) {
+            String selectColumn = this.selectColumnNames.get(i);
+            if ((selectColumn.equals(column) || selectColumn.equals(table + "." + column)) &&
+                    this.selectOperators.get(i) == operator) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Gets all columns for which there exists an index for that table
      *
@@ -326,6 +547,13 @@ public class QueryPlan {
         List<QueryOperator> allJoins = new ArrayList<QueryOperator>();
         allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new GraceHashOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new HybridHashOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        if (rightOp.isSequentialScan() && ((SequentialScanOperator) rightOp).isFullScan() &&
+                this.transaction.indexExists(((SequentialScanOperator) rightOp).getTableName(), rightColumn)) {
+            allJoins.add(new IndexNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction, false));
+            allJoins.add(new IndexNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction, true));
+        }
 
         for (QueryOperator join : allJoins) {
             int joinCost = join.estimateIOCost();
@@ -384,42 +612,221 @@ public class QueryPlan {
         return minOp;
     }
 
-    private String checkIndexEligible() {
+    /**
+     * Returns the index of the select predicate that an index of the start table answers, or -1 if
+     * there is none. A predicate on the group by column is preferred.
+     */
+    private int checkIndexEligible() {
         if (this.selectColumnNames.size() > 0
-                && this.groupByColumn == null
                 && this.joinTableNames.size() == 0) {
-            int index = 0;
-            for (String column : selectColumnNames) {
-                if (this.transaction.indexExists(this.startTableName, column)) {
-                    if (this.selectOperators.get(index) != PredicateOperator.NOT_EQUALS) {
-                        return column;
-                    }
+            // An index scan on the group by column also orders the groups.
+            for (int i = 0; i < this.selectColumnNames.size(); i++) {
+                if (this.selectColumnNames.get(i).equals(this.groupByColumn) && this.isIndexEligible(i)) {
+                    return i;
                 }
+            }
 
-                index++;
+            for (int i = 0; i < this.selectColumnNames.size(); i++) {
+                if (this.isIndexEligible(i)) {
+                    return i;
+                }
             }
         }
 
-        return null;
+        return -1;
+    }
+
+    /**
+     * Returns whether an index of the start table answers the select predicate at selectIndex:
+     * a B+ tree index on its column answers anything but NOT_EQUALS, and a hash index only
+     * EQUALS.
+     */
+    private boolean isIndexEligible(int selectIndex) {
+        String column = this.selectColumnNames.get(selectIndex);
+        PredicateOperator operator = this.selectOperators.get(selectIndex);
+        if (operator == PredicateOperator.NOT_EQUALS) {
+            return false;
+        }
+        return this.transaction.indexExists(this.startTableName, column) ||
+               (operator == PredicateOperator.EQUALS && this.transaction.hashIndexExists(this.startTableName, column));
+    }
+
+    /**
+     * Returns the cheapest scan of an index on indexColumn that answers `indexColumn operator
+     * value`, which isIndexEligible checked there is one of: a lookup in the hash index for an
+     * EQUALS, or a scan of the B+ tree index.
+     */
+    private QueryOperator minCostIndexScan(String indexColumn, PredicateOperator operator,
+                                           DataBox value) throws QueryPlanException, DatabaseException {
+        QueryOperator minOp = null;
+        if (operator == PredicateOperator.EQUALS &&
+                this.transaction.hashIndexExists(this.startTableName, indexColumn)) {
+            minOp = new HashIndexScanOperator(this.transaction, this.startTableName, indexColumn, value);
+        }
+        if (this.transaction.indexExists(this.startTableName, indexColumn)) {
+            QueryOperator treeOp = new IndexScanOperator(this.transaction, this.startTableName, indexColumn,
+                    operator, value);
+            if (minOp == null || treeOp.getIOCost() < minOp.getIOCost()) {
+                minOp = treeOp;
+            }
+        }
+        return minOp;
     }
 
-    private void generateIndexPlan(String indexColumn) throws QueryPlanException, DatabaseException {
-        int selectIndex = this.selectColumnNames.indexOf(indexColumn);
+    private void generateIndexPlan(int selectIndex) throws QueryPlanException, DatabaseException {
+        String indexColumn = this.selectColumnNames.get(selectIndex);
         PredicateOperator operator = this.selectOperators.get(selectIndex);
         DataBox value = this.selectDataBoxes.get(selectIndex);
 
-        this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumn,
-                operator,
-                value);
+        int otherIndex = this.findOtherBound(indexColumn, selectIndex);
+        if (otherIndex == -1) {
+            this.finalOperator = this.minCostIndexScan(indexColumn, operator, value);
+        } else {
+            // Both bounds make a single scan of the leaves between them.
+            int lower = IndexScanOperator.isLowerBound(operator) ? selectIndex : otherIndex;
+            int upper = lower == selectIndex ? otherIndex : selectIndex;
+            this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumn,
+                    this.selectOperators.get(lower), this.selectDataBoxes.get(lower),
+                    this.selectOperators.get(upper), this.selectDataBoxes.get(upper));
+
+            this.selectColumnNames.remove(otherIndex);
+            this.selectOperators.remove(otherIndex);
+            this.selectDataBoxes.remove(otherIndex);
+            if (otherIndex < selectIndex) {
+                selectIndex--;
+            }
+        }
 
         this.selectColumnNames.remove(selectIndex);
         this.selectOperators.remove(selectIndex);
         this.selectDataBoxes.remove(selectIndex);
 
         this.addSelects();
+        this.addGroupBy();
+        this.addOrderBy();
         this.addProjects();
     }
 
+    private void generateCompositeIndexPlan(CompositeIndexMatch match) throws QueryPlanException,
+        DatabaseException {
+        List<DataBox> prefix = new ArrayList<>();
+        for (int i : match.prefixSelects) {
+            prefix.add(this.selectDataBoxes.get(i));
+        }
+        // An upper bound alone goes in the place of the lower one.
+        int first = match.lowerSelect != -1 ? match.lowerSelect : match.upperSelect;
+        int second = match.lowerSelect != -1 ? match.upperSelect : -1;
+        this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, match.columns, prefix,
+                first == -1 ? null : this.selectOperators.get(first),
+                first == -1 ? null : this.selectDataBoxes.get(first),
+                second == -1 ? null : this.selectOperators.get(second),
+                second == -1 ? null : this.selectDataBoxes.get(second),
+                match.covering);
+
+        List<Integer> used = new ArrayList<>(match.prefixSelects);
+        used.add(match.lowerSelect);
+        used.add(match.upperSelect);
+        used.sort(Collections.reverseOrder());
+        for (int i : used) {
+            if (i != -1) {
+                this.selectColumnNames.remove(i);
+                this.selectOperators.remove(i);
+                this.selectDataBoxes.remove(i);
+            }
+        }
+
+        this.addSelects();
+        this.addGroupBy();
+        this.addOrderBy();
+        this.addProjects();
+    }
+
+    /**
+     * Returns the index of a select predicate on column that bounds it from
+     * the other side than the range predicate at selectIndex does (e.g. a
+     * LESS_THAN for a GREATER_THAN_EQUALS), or -1 if there is none or the
+     * predicate at selectIndex is not a range predicate.
+     */
+    private int findOtherBound(String column, int selectIndex) {
+        PredicateOperator operator = this.selectOperators.get(selectIndex);
+        boolean lower = IndexScanOperator.isLowerBound(operator);
+        if (!lower && !IndexScanOperator.isUpperBound(operator)) {
+            return -1;
+        }
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            if (this.selectColumnNames.get(i).equals(column) &&
+                    (lower ? IndexScanOperator.isUpperBound(this.selectOperators.get(i))
+                     : IndexScanOperator.isLowerBound(this.selectOperators.get(i)))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * An ascending order by on an indexed column of the start table can be
+     * answered by scanning the index in order, as long as no join or group by
+     * changes the order of the records.
+     */
+    private boolean checkOrderByIndexEligible() {
+        return this.orderByColumn != null
+               && this.orderByDirection == SortDirection.ASCENDING
+               && this.groupByColumn == null
+               && this.joinTableNames.size() == 0
+               && this.transaction.indexExists(this.startTableName, this.orderByColumn);
+    }
+
+    private void generateOrderByIndexPlan() throws QueryPlanException, DatabaseException {
+        this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName,
+                this.orderByColumn);
+
+        this.addSelects();
+        this.addProjects();
+    }
+
+    /**
+     * Returns a sequential scan of the start table that evaluates the select
+     * predicates on columns of the start table itself, on the raw bytes of its
+     * pages, and removes them from the select predicates still to be added.
+     * A predicate on a column that a joined table has too is left for after
+     * the joins, where it resolves (or fails to) just as it always has.
+     */
+    private SequentialScanOperator startTableScan() throws QueryPlanException, DatabaseException {
+        SequentialScanOperator scan = new SequentialScanOperator(this.transaction, this.startTableName);
+        List<Schema> joinSchemas = new ArrayList<>();
+        for (String joinTable : this.joinTableNames) {
+            joinSchemas.add(this.transaction.getFullyQualifiedSchema(joinTable));
+        }
+
+        List<String> columns = new ArrayList<>();
+        List<PredicateOperator> operators = new ArrayList<>();
+        List<DataBox> values = new ArrayList<>();
+        for (int i = 0; i < this.selectColumnNames.size(); ) {
+            String column = this.selectColumnNames.get(i);
+            if (!this.resolves(scan, scan.getOutputSchema(), column) ||
+                    joinSchemas.stream().anyMatch(schema -> this.resolves(scan, schema, column))) {
+                ++i;
+                continue;
+            }
+            columns.add(this.selectColumnNames.remove(i));
+            operators.add(this.selectOperators.remove(i));
+            values.add(this.selectDataBoxes.remove(i));
+        }
+        if (columns.isEmpty()) {
+            return scan;
+        }
+        return new SequentialScanOperator(this.transaction, this.startTableName, columns, operators, values);
+    }
+
+    private boolean resolves(QueryOperator operator, Schema schema, String column) {
+        try {
+            operator.checkSchemaForColumn(schema, column);
+            return true;
+        } catch (QueryPlanException e) {
+            return false;
+        }
+    }
+
     private void addJoins() throws QueryPlanException, DatabaseException {
         int index = 0;
 
@@ -436,18 +843,12 @@ public class QueryPlan {
     }
 
     private void addSelects() throws QueryPlanException, DatabaseException {
-        int index = 0;
-
-        for (String selectColumn : this.selectColumnNames) {
-            PredicateOperator operator = this.selectOperators.get(index);
-            DataBox value = this.selectDataBoxes.get(index);
-
-            SelectOperator selectOperator = new SelectOperator(this.finalOperator, selectColumn,
-                    operator, value);
-
-            this.finalOperator = selectOperator;
-            index++;
+        if (this.selectColumnNames.isEmpty()) {
+            return;
         }
+        // A single operator evaluates all of the predicates, fused into one test.
+        this.finalOperator = new SelectOperator(this.finalOperator, this.selectColumnNames,
+                                                this.selectOperators, this.selectDataBoxes);
     }
 
     private void addGroupBy() throws QueryPlanException, DatabaseException {
@@ -457,14 +858,105 @@ public class QueryPlan {
                 throw new QueryPlanException("Can only project columns specified in the GROUP BY clause.");
             }
 
-            GroupByOperator groupByOperator = new GroupByOperator(this.finalOperator, this.transaction,
-                    this.groupByColumn);
+            List<AggregateFunction> functions = new ArrayList<>();
+            List<String> columns = new ArrayList<>();
+            if (this.hasCount) {
+                functions.add(AggregateFunction.COUNT);
+                columns.add(null);
+            }
+            if (this.sumColumnName != null) {
+                functions.add(AggregateFunction.SUM);
+                columns.add(this.sumColumnName);
+            }
+            if (this.averageColumnName != null) {
+                functions.add(AggregateFunction.AVERAGE);
+                columns.add(this.averageColumnName);
+            }
+            if (this.isOrderedBy(this.groupByColumn, SortDirection.ASCENDING)) {
+                // The groups come one after the other, so they can be
+                // aggregated as they go by.
+                this.finalOperator = new StreamAggregateOperator(this.finalOperator, this.transaction,
+                        this.groupByColumn, functions, columns);
+            } else {
+                this.finalOperator = new HashAggregateOperator(this.finalOperator, this.transaction,
+                        this.groupByColumn, functions, columns);
+            }
+        }
+    }
 
-            this.finalOperator = groupByOperator;
+    private void addOrderBy() throws QueryPlanException, DatabaseException {
+        if (this.orderByColumn == null) {
+            return;
+        }
+        if (this.groupByColumn != null) {
+            throw new QueryPlanException("Cannot order a query with a GROUP BY clause.");
+        }
+        if (this.hasCount || this.sumColumnName != null || this.averageColumnName != null) {
+            // An aggregate is a single record, which is trivially in order.
+            return;
+        }
+        if (this.isOrderedBy(this.orderByColumn, this.orderByDirection)) {
+            return;
+        }
+
+        this.finalOperator = new OrderByOperator(this.finalOperator, this.transaction,
+                this.orderByColumn, this.orderByDirection, this.limit);
+    }
+
+    /**
+     * Returns whether the records of finalOperator already come out ordered
+     * on column, which is the case when they come from an index scan on that
+     * column or from a sort merge join on it (possibly through selects).
+     */
+    private boolean isOrderedBy(String column, SortDirection direction) throws QueryPlanException {
+        if (direction != SortDirection.ASCENDING) {
+            return false;
+        }
+        QueryOperator source = this.finalOperator;
+        while (source.isSelect()) {
+            source = source.getSource();
+        }
+        Schema schema = source.getOutputSchema();
+        if (source.isIndexScan()) {
+            String indexColumn = source.checkSchemaForColumn(schema, ((IndexScanOperator) source).getColumnName());
+            return indexColumn.equals(source.checkSchemaForColumn(schema, column));
+        }
+        if (source.isJoin() && ((JoinOperator) source).getJoinType() == JoinOperator.JoinType.SORTMERGE) {
+            // Both join columns hold the join key, in order.
+            JoinOperator join = (JoinOperator) source;
+            int columnIndex = schema.getFieldNames().indexOf(source.checkSchemaForColumn(schema, column));
+            int numLeftColumns = join.getLeftSource().getOutputSchema().getFieldNames().size();
+            return columnIndex == join.getLeftColumnIndex() ||
+                   columnIndex == numLeftColumns + join.getRightColumnIndex();
+        }
+        return false;
+    }
+
+    private void addLimit() throws QueryPlanException {
+        if (this.limit >= 0) {
+            this.finalOperator = new LimitOperator(this.finalOperator, this.limit);
         }
     }
 
     private void addProjects() throws QueryPlanException, DatabaseException {
+        if (this.groupByColumn != null) {
+            // The aggregates were computed by the group by already; only the
+            // columns asked for are kept.
+            List<String> columns = new ArrayList<>(this.projectColumns);
+            if (this.hasCount) {
+                columns.add(Aggregator.getOutputName(AggregateFunction.COUNT));
+            }
+            if (this.sumColumnName != null) {
+                columns.add(Aggregator.getOutputName(AggregateFunction.SUM));
+            }
+            if (this.averageColumnName != null) {
+                columns.add(Aggregator.getOutputName(AggregateFunction.AVERAGE));
+            }
+            if (!columns.isEmpty()) {
+                this.finalOperator = new ProjectOperator(this.finalOperator, columns, false, null, null);
+            }
+            return;
+        }
         if (!this.projectColumns.isEmpty() || this.hasCount || this.sumColumnName != null
                 || this.averageColumnName != null) {
             ProjectOperator projectOperator = new ProjectOperator(this.finalOperator, this.projectColumns,
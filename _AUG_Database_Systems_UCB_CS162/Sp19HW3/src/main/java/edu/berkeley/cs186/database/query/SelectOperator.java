@@ -1,20 +1,32 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
-import edu.berkeley.cs186.database.table.MarkerRecord;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.StringDictionary;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
+/**
+ * A SelectOperator returns the records of its source that satisfy a
+ * conjunction of predicates `column operator value`. The conjunction is
+ * compiled into a single type specialized test (see PredicateCompiler) whose
+ * predicates run most selective first.
+ */
 public class SelectOperator extends QueryOperator {
-    private int columnIndex;
-    private String columnName;
-    private QueryPlan.PredicateOperator operator;
-    private DataBox value;
+    private List<String> columnNames;
+    private List<Integer> columnIndices;
+    private List<QueryPlan.PredicateOperator> operators;
+    private List<DataBox> values;
+    private List<StringDictionary> dictionaries;
 
     /**
      * Creates a new SelectOperator that pulls from source and only returns tuples for which the
@@ -30,12 +42,53 @@ public class SelectOperator extends QueryOperator {
                           String columnName,
                           QueryPlan.PredicateOperator operator,
                           DataBox value) throws QueryPlanException {
+        this(source, Collections.singletonList(columnName), Collections.singletonList(operator),
+             Collections.singletonList(value));
+    }
+
+    /**
+     * Creates a new SelectOperator that pulls from source and only returns tuples that satisfy all
+     * of the predicates. The i-th predicate is `columnNames[i] operators[i] values[i]`.
+     *
+     * @param source the source of this operator
+     * @param columnNames the names of the columns to evaluate the predicates on
+     * @param operators the actual comparators
+     * @param values the values to compare against
+     * @throws QueryPlanException
+     */
+    public SelectOperator(QueryOperator source,
+                          List<String> columnNames,
+                          List<QueryPlan.PredicateOperator> operators,
+                          List<DataBox> values) throws QueryPlanException {
         super(OperatorType.SELECT, source);
-        this.operator = operator;
-        this.value = value;
+        if (columnNames.size() != operators.size() || columnNames.size() != values.size()) {
+            throw new QueryPlanException("Selection columns, operators, and values must have the same length.");
+        }
+
+        Schema schema = this.getOutputSchema();
+        List<Integer> indices = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        for (String columnName : columnNames) {
+            columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnName);
+            int index = schema.getFieldNames().indexOf(columnName);
+            names.add(columnName);
+            indices.add(index);
+            types.add(schema.getFieldTypes().get(index));
+        }
 
-        this.columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnName);
-        this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(this.columnName);
+        // Keep the predicates in the order in which to evaluate them.
+        this.columnNames = new ArrayList<>();
+        this.columnIndices = new ArrayList<>();
+        this.operators = new ArrayList<>();
+        this.values = new ArrayList<>();
+        for (int i : PredicateCompiler.order(source.getStats(), indices, types, operators, values)) {
+            this.columnNames.add(names.get(i));
+            this.columnIndices.add(indices.get(i));
+            this.operators.add(operators.get(i));
+            this.values.add(values.get(i));
+        }
+        this.dictionaries = this.findDictionaries();
 
         this.stats = this.estimateStats();
         this.cost = this.estimateIOCost();
@@ -46,10 +99,24 @@ public class SelectOperator extends QueryOperator {
     }
 
     public String str() {
+        if (this.columnNames.size() == 1) {
+            return "type: " + this.getType() +
+                   "\ncolumn: " + this.columnNames.get(0) +
+                   "\noperator: " + this.operators.get(0) +
+                   "\nvalue: " + this.values.get(0);
+        }
         return "type: " + this.getType() +
-               "\ncolumn: " + this.columnName +
-               "\noperator: " + this.operator +
-               "\nvalue: " + this.value;
+               "\ncolumns: " + this.columnNames +
+               "\noperators: " + this.operators +
+               "\nvalues: " + this.values;
+    }
+
+    /**
+     * Returns the names of the columns of the predicates, in the order in
+     * which the predicates are evaluated.
+     */
+    public List<String> getColumnNames() {
+        return this.columnNames;
     }
 
     /**
@@ -59,9 +126,12 @@ public class SelectOperator extends QueryOperator {
      */
     public TableStats estimateStats() throws QueryPlanException {
         TableStats stats = this.getSource().getStats();
-        return stats.copyWithPredicate(this.columnIndex,
-                                       this.operator,
-                                       this.value);
+        for (int i = 0; i < this.columnIndices.size(); ++i) {
+            stats = stats.copyWithPredicate(this.columnIndices.get(i),
+                                            this.operators.get(i),
+                                            this.values.get(i));
+        }
+        return stats;
     }
 
     public int estimateIOCost() throws QueryPlanException {
@@ -70,18 +140,46 @@ public class SelectOperator extends QueryOperator {
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new SelectIterator(); }
 
+    /**
+     * Returns, for every predicate, the dictionary of its column if this
+     * operator sits (possibly through other selects) directly on a sequential
+     * scan of a table in which that column is dictionary encoded, and null
+     * otherwise.
+     */
+    private List<StringDictionary> findDictionaries() throws QueryPlanException {
+        QueryOperator source = this.getSource();
+        while (source.isSelect()) {
+            source = source.getSource();
+        }
+        List<StringDictionary> dictionaries = new ArrayList<>();
+        for (int columnIndex : this.columnIndices) {
+            dictionaries.add(source.isSequentialScan()
+                             ? ((SequentialScanOperator) source).getDictionary(columnIndex)
+                             : null);
+        }
+        return dictionaries;
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
     private class SelectIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
-        private MarkerRecord markerRecord;
         private Record nextRecord;
+        private Predicate<Record> predicate;
 
         public SelectIterator() throws QueryPlanException, DatabaseException {
             this.sourceIterator = SelectOperator.this.getSource().iterator();
-            this.markerRecord = MarkerRecord.getMarker();
             this.nextRecord = null;
+            // Compiled here rather than with the operator, so that values
+            // added to a dictionary since are found in it.
+            List<Type> types = new ArrayList<>();
+            for (int columnIndex : SelectOperator.this.columnIndices) {
+                types.add(SelectOperator.this.getOutputSchema().getFieldTypes().get(columnIndex));
+            }
+            this.predicate = PredicateCompiler.compile(SelectOperator.this.columnIndices, types,
+                             SelectOperator.this.operators, SelectOperator.this.values,
+                             SelectOperator.this.dictionaries);
         }
 
         /**
@@ -95,56 +193,10 @@ public class SelectOperator extends QueryOperator {
             }
             while (this.sourceIterator.hasNext()) {
                 Record r = this.sourceIterator.next();
-                if (r == this.markerRecord) {
+                if (this.predicate.test(r)) {
                     this.nextRecord = r;
                     return true;
                 }
-                switch (SelectOperator.this.operator) {
-                case EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case NOT_EQUALS:
-                    if (!r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                default:
-                    break;
-                }
             }
             return false;
         }
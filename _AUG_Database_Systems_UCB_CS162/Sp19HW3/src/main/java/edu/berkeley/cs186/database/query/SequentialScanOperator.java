@@ -1,16 +1,37 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.ScanPredicate;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.StringDictionary;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
+/**
+ * A SequentialScanOperator returns the records of a table in page order.
+ *
+ * A scan may be given selection predicates, which it then evaluates itself:
+ * they are compiled against the table's record layout (see ScanPredicate) and
+ * tested on every record in place in its page, so that only the records that
+ * satisfy all of them are ever decoded. A scan with predicates no longer
+ * returns every record of its table (see isFullScan), and operators that would
+ * otherwise read the table directly have to read the scan instead.
+ */
 public class SequentialScanOperator extends QueryOperator {
     private Database.Transaction transaction;
     private String tableName;
+    private List<String> selectColumnNames;
+    private List<Integer> selectColumnIndices;
+    private List<QueryPlan.PredicateOperator> selectOperators;
+    private List<DataBox> selectValues;
 
     /**
      * Creates a new SequentialScanOperator that provides an iterator on all tuples in a table.
@@ -25,11 +46,47 @@ public class SequentialScanOperator extends QueryOperator {
      */
     public SequentialScanOperator(Database.Transaction transaction,
                                   String tableName) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Creates a new SequentialScanOperator that provides an iterator on the
+     * tuples of a table that satisfy all of the selection predicates. The i-th
+     * predicate is `selectColumnNames[i] selectOperators[i] selectValues[i]`,
+     * just as in QueryPlan.
+     *
+     * @param transaction
+     * @param tableName
+     * @param selectColumnNames the columns of the selection predicates
+     * @param selectOperators the comparators of the selection predicates
+     * @param selectValues the values of the selection predicates
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public SequentialScanOperator(Database.Transaction transaction,
+                                  String tableName,
+                                  List<String> selectColumnNames,
+                                  List<QueryPlan.PredicateOperator> selectOperators,
+                                  List<DataBox> selectValues) throws QueryPlanException, DatabaseException {
         super(OperatorType.SEQSCAN);
+        if (selectColumnNames.size() != selectOperators.size() ||
+                selectColumnNames.size() != selectValues.size()) {
+            throw new QueryPlanException("Selection columns, operators, and values must have the same length.");
+        }
         this.transaction = transaction;
         this.tableName = tableName;
         this.setOutputSchema(this.computeSchema());
 
+        this.selectColumnNames = new ArrayList<>();
+        this.selectColumnIndices = new ArrayList<>();
+        for (String columnName : selectColumnNames) {
+            columnName = this.checkSchemaForColumn(this.getOutputSchema(), columnName);
+            this.selectColumnNames.add(columnName);
+            this.selectColumnIndices.add(this.getOutputSchema().getFieldNames().indexOf(columnName));
+        }
+        this.selectOperators = new ArrayList<>(selectOperators);
+        this.selectValues = new ArrayList<>(selectValues);
+
         this.stats = this.estimateStats();
         this.cost = this.estimateIOCost();
     }
@@ -38,8 +95,31 @@ public class SequentialScanOperator extends QueryOperator {
         return this.tableName;
     }
 
+    /**
+     * Returns the dictionary of column columnIndex of the scanned table, or null
+     * if that column is not dictionary encoded.
+     */
+    public StringDictionary getDictionary(int columnIndex) throws QueryPlanException {
+        try {
+            return this.transaction.getDictionary(this.tableName, columnIndex);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * Returns whether this scan returns every record of its table, i.e. has
+     * no selection predicates.
+     */
+    public boolean isFullScan() {
+        return this.selectColumnIndices.isEmpty();
+    }
+
     public Iterator<Record> iterator() throws DatabaseException {
-        return this.transaction.getRecordIterator(tableName);
+        if (this.isFullScan()) {
+            return this.transaction.getRecordIterator(tableName);
+        }
+        return new FilteredScanIterator();
     }
 
     public Schema computeSchema() throws QueryPlanException {
@@ -51,8 +131,14 @@ public class SequentialScanOperator extends QueryOperator {
     }
 
     public String str() {
-        return "type: " + this.getType() +
-               "\ntable: " + this.tableName;
+        String str = "type: " + this.getType() +
+                     "\ntable: " + this.tableName;
+        if (!this.isFullScan()) {
+            str += "\nselect columns: " + this.selectColumnNames +
+                   "\nselect operators: " + this.selectOperators +
+                   "\nselect values: " + this.selectValues;
+        }
+        return str;
     }
 
     /**
@@ -61,13 +147,26 @@ public class SequentialScanOperator extends QueryOperator {
      * @return estimated TableStats
      */
     public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats;
         try {
-            return this.transaction.getStats(this.tableName);
+            stats = this.transaction.getStats(this.tableName);
         } catch (DatabaseException de) {
             throw new QueryPlanException(de);
         }
+        for (int i = 0; i < this.selectColumnIndices.size(); ++i) {
+            stats = stats.copyWithPredicate(this.selectColumnIndices.get(i),
+                                            this.selectOperators.get(i),
+                                            this.selectValues.get(i));
+        }
+        return stats;
     }
 
+    /**
+     * Every data page is read whether or not the scan has predicates: they
+     * only save decoding records, which costs no I/O. The selectivity of the
+     * predicates shows in the estimated stats instead, and so in the cost of
+     * the operators above the scan.
+     */
     public int estimateIOCost() throws QueryPlanException {
         try {
             return this.transaction.getNumDataPages(this.tableName);
@@ -75,4 +174,58 @@ public class SequentialScanOperator extends QueryOperator {
             throw new QueryPlanException(de);
         }
     }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for a
+     * scan with predicates, which reads the table a page at a time.
+     */
+    private class FilteredScanIterator implements Iterator<Record> {
+        private Iterator<Integer> pageNumIterator;
+        private ScanPredicate predicate;
+        private Iterator<Record> recordIterator;
+
+        public FilteredScanIterator() throws DatabaseException {
+            Database.Transaction transaction = SequentialScanOperator.this.transaction;
+            String tableName = SequentialScanOperator.this.tableName;
+            this.pageNumIterator = transaction.getDataPageNums(tableName).iterator();
+            this.predicate = transaction.compilePredicate(tableName, SequentialScanOperator.this.selectColumnIndices,
+                             SequentialScanOperator.this.selectOperators, SequentialScanOperator.this.selectValues);
+            this.recordIterator = Collections.emptyIterator();
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            while (!this.recordIterator.hasNext() && this.pageNumIterator.hasNext()) {
+                try {
+                    this.recordIterator = SequentialScanOperator.this.transaction.getPageRecords(
+                                              SequentialScanOperator.this.tableName, this.pageNumIterator.next(),
+                                              this.predicate).iterator();
+                } catch (DatabaseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return this.recordIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                return this.recordIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -7,26 +7,155 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.SpillFile;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.io.Page;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * SortOperator does an external merge sort of a table using numBuffers pages
+ * of memory in total.
+ *
+ * The work is spread over `parallelism` threads, and the numBuffers pages are
+ * split evenly among them: every thread gets workerBuffers = numBuffers /
+ * parallelism pages of its own. Blocks of workerBuffers - 1 pages are sorted
+ * into runs concurrently, the (workerBuffers - 1)-way merge windows of a merge
+ * pass are merged concurrently, and the final merge splits the key range into
+ * one partition per thread, each of which writes its own pages of the output
+ * table. A thread needs at least three pages to merge two runs, so
+ * parallelism is capped at numBuffers / 3; with a single thread this is the
+ * usual (numBuffers - 1)-way sort, which is what the constructor without a
+ * parallelism does: a parallel sort trades merge fan-in, and perhaps extra
+ * passes, for threads. Temp tables are only ever created by the
+ * thread calling sort(); worker threads just fill them.
+ *
+ * Intermediate runs are SpillFiles, and are deleted as soon as they have been
+ * merged. Only the final output is written to a temp table.
+ *
+ * Initial runs are generated in one of two ways (see RunGeneration). By
+ * default every block of workerBuffers - 1 pages is sorted in memory, which
+ * gives runs of exactly workerBuffers - 1 pages. With replacement selection the
+ * same amount of memory holds a heap of records instead, and a run only ends
+ * when the heap holds nothing that can still extend it; that gives runs about
+ * twice as long on random input and a single run on input that is already
+ * (nearly) sorted, which can save whole merge passes.
+ */
 public class SortOperator {
+    // The number of threads a SortOperator sorts with unless told otherwise.
+    // More threads split the same memory, which cuts the merge fan-in and so
+    // can cost extra passes, so only callers that ask for it sort in parallel.
+    static final int DEFAULT_PARALLELISM = 1;
+
     private Database.Transaction transaction; //track operations you perform on data
     private String tableName; //reference which serves as key to access table in transaction
     private Comparator<Record> comparator; //record comparator
     private Schema operatorSchema; //schema for your records
     private int numBuffers; //how many buffs u got?
     private String sortedTableName = null; // output table name, persisted from constructor
+    private int parallelism; // number of threads to sort with
+    private int workerBuffers; // pages of memory each of those threads gets
+    private RunGeneration runGeneration; // how initial runs are generated
+    private long runLimit = Long.MAX_VALUE; // no run ever needs more records than this
+
+    // Statistics of the last call to sort().
+    private int numInitialRuns = 0;
+    private int numMergePasses = 0;
+    private long numSpillPageIOs = 0;
+
+    /**
+     * How a SortOperator cuts its input into initial sorted runs.
+     */
+    public enum RunGeneration {
+        // Sort every block of workerBuffers - 1 pages in memory.
+        SORTED_BLOCKS,
+        // Stream the input through a heap of workerBuffers - 1 pages of records.
+        REPLACEMENT_SELECTION
+    }
 
     public SortOperator(Database.Transaction transaction, String tableName,
                         Comparator<Record> comparator) throws DatabaseException, QueryPlanException {
+        this(transaction, tableName, comparator, DEFAULT_PARALLELISM);
+    }
+
+    public SortOperator(Database.Transaction transaction, String tableName,
+                        Comparator<Record> comparator,
+                        int parallelism) throws DatabaseException, QueryPlanException {
+        this(transaction, tableName, comparator, parallelism, RunGeneration.SORTED_BLOCKS);
+    }
+
+    public SortOperator(Database.Transaction transaction, String tableName,
+                        Comparator<Record> comparator, int parallelism,
+                        RunGeneration runGeneration) throws DatabaseException, QueryPlanException {
+        if (parallelism < 1) {
+            throw new QueryPlanException("Parallelism must be positive, not " + parallelism + ".");
+        }
         this.transaction = transaction;
         this.tableName = tableName;
         this.comparator = comparator;
         this.operatorSchema = this.computeSchema();
         this.numBuffers = this.transaction.getNumMemoryPages();
+        this.parallelism = capParallelism(this.numBuffers, parallelism);
+        this.workerBuffers = this.numBuffers / this.parallelism;
+        this.runGeneration = runGeneration;
+    }
+
+    /**
+     * Returns the number of threads the sort actually runs on: the requested
+     * parallelism, capped so that every thread gets at least three of the
+     * numBuffers pages.
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    private static int capParallelism(int numBuffers, int parallelism) {
+        return Math.max(1, Math.min(parallelism, numBuffers / 3));
+    }
+
+    /**
+     * Estimates the number of spill file pages written and read (see
+     * getNumSpillPageIOs()) by sorting numPages pages of records,
+     * recordsPerPage of which fit on a page of a run, and keeping only the
+     * first `limit` of them (Long.MAX_VALUE for all of them).
+     *
+     * It goes through the same steps as generateAndMergeRuns. Sorted blocks
+     * make runs of workerBuffers - 1 pages, and replacement selection runs of
+     * twice that, as it does on random input, but at least one per slice. No
+     * run is longer than `limit` records. Runs are merged workerBuffers - 1 at
+     * a time until that many are left, and the final merge, which stops after
+     * `limit` records, reads the pages holding those and at most the first
+     * page of every other run.
+     */
+    static long estimateSpillPageIOs(int numBuffers, int parallelism, RunGeneration runGeneration,
+                                     long numPages, int recordsPerPage, long limit) {
+        if (numPages == 0 || limit == 0) {
+            return 0;
+        }
+        int numWorkers = capParallelism(numBuffers, parallelism);
+        int fanIn = Math.max(2, numBuffers / numWorkers - 1);
+        long limitPages = limit / recordsPerPage + (limit % recordsPerPage == 0 ? 0 : 1);
+
+        long runPages = runGeneration == RunGeneration.REPLACEMENT_SELECTION ? 2L * fanIn : fanIn;
+        long numRuns = (numPages + runPages - 1) / runPages;
+        if (runGeneration == RunGeneration.REPLACEMENT_SELECTION) {
+            numRuns = Math.max(numRuns, Math.min(numWorkers, numPages));
+        }
+        long totalPages = Math.min(numPages, numRuns * limitPages);
+        long numIOs = totalPages;
+        while (numRuns > fanIn) {
+            numRuns = (numRuns + fanIn - 1) / fanIn;
+            long mergedPages = Math.min(totalPages, numRuns * limitPages);
+            numIOs += totalPages + mergedPages;
+            totalPages = mergedPages;
+        }
+        return numIOs + Math.min(totalPages, limitPages + numRuns - 1);
     }
 
     public Schema computeSchema() throws QueryPlanException {
@@ -40,32 +169,46 @@ public class SortOperator {
     /**
      * Run is a subclass of the SortOperator (helper class)
      *
-     *
+     * A run is backed by a SpillFile rather than a temp table, so adding a
+     * record to it is just a copy into the spill file's page buffer.
      */
     public class Run {
-        String tempTableName;
+        SpillFile spillFile;
 
         public Run() throws DatabaseException {
-            this.tempTableName = SortOperator.this.transaction.createTempTable(
-                                     SortOperator.this.operatorSchema);
+            this.spillFile = SortOperator.this.transaction.createSpillFile(
+                                 SortOperator.this.operatorSchema);
         }
 
         public void addRecord(List<DataBox> values) throws DatabaseException {
-            SortOperator.this.transaction.addRecord(this.tempTableName, values);
+            this.spillFile.append(new Record(values));
         }
 
         public void addRecords(List<Record> records) throws DatabaseException {
-            for (Record r : records) {
-                this.addRecord(r.getValues());
-            }
+            this.spillFile.append(records);
         }
 
         public Iterator<Record> iterator() throws DatabaseException {
-            return SortOperator.this.transaction.getRecordIterator(this.tempTableName);
+            return this.spillFile.iterator();
+        }
+
+        public long size() {
+            return this.spillFile.getNumRecords();
         }
 
-        public String tableName() {
-            return this.tempTableName;
+        /**
+         * Returns the number of pages of the run's spill file.
+         */
+        public long numPages() {
+            int recordsPerPage = this.spillFile.getNumRecordsPerPage();
+            return (size() + recordsPerPage - 1) / recordsPerPage;
+        }
+
+        /**
+         * Deletes the run's spill file. The run may not be used afterwards.
+         */
+        public void close() {
+            this.spillFile.close();
         }
     }
 
@@ -98,7 +241,10 @@ public class SortOperator {
      * sorting on currently unmerged from run i.
      */
     public Run mergeSortedRuns(List<Run> runs) throws DatabaseException {
-        Run sortedRun = new Run();
+        return mergeSortedRuns(runs, new Run());
+    }
+
+    private Run mergeSortedRuns(List<Run> runs, Run sortedRun) throws DatabaseException {
         ArrayList<Iterator<Record>> runIterators = new ArrayList<>();
         PriorityQueue<Pair<Record, Integer>> runMinsQueue = new PriorityQueue<>(
                 (p1, p2) -> comparator.compare(p1.getFirst(), p2.getFirst()));
@@ -113,8 +259,11 @@ public class SortOperator {
         }
         while (runMinsQueue.size() > 0) {
             Pair<Record, Integer> nextRecordPair = runMinsQueue.poll();
-            sortedRun.addRecord(nextRecordPair.getFirst().getValues());
+            sortedRun.spillFile.append(nextRecordPair.getFirst());
             int nextRecordIndex = nextRecordPair.getSecond();
+            if (sortedRun.size() == runLimit) {
+                break;
+            }
             if (runIterators.get(nextRecordIndex).hasNext()) {
                 runMinsQueue.add(new Pair<>(runIterators.get(nextRecordIndex).next(), nextRecordIndex));
             }
@@ -124,19 +273,18 @@ public class SortOperator {
 
     /**
      * Given a list of N sorted runs, returns a list of
-     * sorted runs that is the result of merging (numBuffers - 1)
-     * of the input runs at a time.
+     * sorted runs that is the result of merging (workerBuffers - 1)
+     * of the input runs at a time. The windows are merged concurrently.
      */
     public List<Run> mergePass(List<Run> runs) throws DatabaseException {
-        ArrayList<Run> mergedRuns = new ArrayList<>();
-        int windowStart;
-        int windowEnd = 0;
-        while (windowEnd < runs.size()) {
-            windowStart = windowEnd;
-            windowEnd = Math.min(runs.size(), windowEnd + numBuffers - 1);
-            mergedRuns.add(mergeSortedRuns(runs.subList(windowStart, windowEnd)));
+        List<Callable<Run>> merges = new ArrayList<>();
+        for (int windowStart = 0; windowStart < runs.size(); windowStart += workerBuffers - 1) {
+            int windowEnd = Math.min(runs.size(), windowStart + workerBuffers - 1);
+            List<Run> window = runs.subList(windowStart, windowEnd);
+            Run mergedRun = new Run();
+            merges.add(() -> mergeSortedRuns(window, mergedRun));
         }
-        return mergedRuns;
+        return runAll(merges);
     }
 
     /**
@@ -145,23 +293,440 @@ public class SortOperator {
      * Returns the name of the table that backs the final run.
      */
     public String sort() throws DatabaseException {
-        Iterator<Page> recordIterator = transaction.getPageIterator(tableName);
-        recordIterator.next();
+        runLimit = Long.MAX_VALUE;
+        List<Run> runs = generateAndMergeRuns();
+        String sortedTableName = finalMerge(runs);
+        for (Run run : runs) {
+            run.close();
+        }
+        return sortedTableName;
+    }
+
+    /**
+     * Returns an iterator over the first `limit` records of the sorted table.
+     *
+     * No record past the first `limit` of a run can be among the first
+     * `limit` records of the output, so runs are cut off at `limit` records as
+     * they are generated and merged. The last merge is not written out at
+     * all: the iterator merges the remaining runs as it goes, and so stops
+     * reading them as soon as `limit` records have been returned.
+     */
+    public Iterator<Record> iterator(long limit) throws DatabaseException {
+        runLimit = limit;
+        List<Run> runs = generateAndMergeRuns();
+        return new MergeIterator(runs, limit);
+    }
+
+    /**
+     * Generates the initial runs and merges them until at most
+     * workerBuffers - 1 are left, which are returned. That is few enough for
+     * every partition of the final merge to read all of them at once.
+     */
+    private List<Run> generateAndMergeRuns() throws DatabaseException {
+        List<Run> runs = runGeneration == RunGeneration.REPLACEMENT_SELECTION
+                         ? generateRunsByReplacementSelection()
+                         : generateRuns();
+        numInitialRuns = runs.size();
+        numMergePasses = 0;
+        numSpillPageIOs = numPages(runs);
+        while (runs.size() > workerBuffers - 1) {
+            List<Run> mergedRuns = mergePass(runs);
+            numMergePasses++;
+            numSpillPageIOs += numPages(runs) + numPages(mergedRuns);
+            for (Run run : runs) {
+                run.close();
+            }
+            runs = mergedRuns;
+        }
+        if (runs.size() > 1) {
+            numMergePasses++;
+        }
+        numSpillPageIOs += numPages(runs);
+        return runs;
+    }
+
+    /**
+     * Returns the number of initial runs generated by the last call to sort().
+     */
+    public int getNumInitialRuns() {
+        return numInitialRuns;
+    }
+
+    /**
+     * Returns the number of passes the last call to sort() made that merged
+     * two or more runs, including the final merge into the output table.
+     */
+    public int getNumMergePasses() {
+        return numMergePasses;
+    }
+
+    /**
+     * Returns the number of spill file pages the last call to sort() wrote
+     * and read back. Reading the input and writing the output table are the
+     * same no matter how many passes there are, so are not counted.
+     */
+    public long getNumSpillPageIOs() {
+        return numSpillPageIOs;
+    }
+
+    private static long numPages(List<Run> runs) {
+        long numPages = 0;
+        for (Run run : runs) {
+            numPages += run.numPages();
+        }
+        return numPages;
+    }
+
+    /**
+     * Sorts every block of workerBuffers - 1 pages of the table into its own
+     * run.
+     */
+    private List<Run> generateRuns() throws DatabaseException {
+        List<Integer> pageNums = transaction.getDataPageNums(tableName);
+        List<Callable<Run>> sorts = new ArrayList<>();
+        for (int blockStart = 0; blockStart < pageNums.size(); blockStart += workerBuffers - 1) {
+            int blockEnd = Math.min(pageNums.size(), blockStart + workerBuffers - 1);
+            List<Integer> block = pageNums.subList(blockStart, blockEnd);
+            Run sortedRun = new Run();
+            sorts.add(() -> {
+                List<Record> records = new ArrayList<>();
+                for (int pageNum : block) {
+                    records.addAll(transaction.getPageRecords(tableName, pageNum));
+                }
+                records.sort(comparator);
+                sortedRun.addRecords(records.subList(0, (int) Math.min(records.size(), runLimit)));
+                return sortedRun;
+            });
+        }
+        return runAll(sorts);
+    }
+
+    /**
+     * Generates runs by replacement selection. The table's pages are cut into
+     * `parallelism` contiguous slices, and each slice is streamed through its
+     * own heap of workerBuffers - 1 pages concurrently. The runs are returned
+     * slice by slice.
+     */
+    private List<Run> generateRunsByReplacementSelection() throws DatabaseException {
+        List<Integer> pageNums = transaction.getDataPageNums(tableName);
+        int heapSize = Math.max(1, (workerBuffers - 1) * transaction.getNumEntriesPerPage(tableName));
+        int numSlices = Math.min(parallelism, pageNums.size());
+        List<Callable<List<Run>>> slices = new ArrayList<>();
+        for (int i = 0; i < numSlices; ++i) {
+            List<Integer> slice = pageNums.subList(pageNums.size() * i / numSlices,
+                                                   pageNums.size() * (i + 1) / numSlices);
+            slices.add(() -> replacementSelection(slice, heapSize));
+        }
         List<Run> runs = new ArrayList<>();
-        while (recordIterator.hasNext()) {
-            BacktrackingIterator<Record> nextBlock = transaction.getBlockIterator(tableName, recordIterator, numBuffers-1);
-            ArrayList<Record> blockRecords = new ArrayList<>();
-            while (nextBlock.hasNext()) {
-                blockRecords.add(nextBlock.next());
+        for (List<Run> sliceRuns : runAll(slices)) {
+            runs.addAll(sliceRuns);
+        }
+        return runs;
+    }
+
+    /**
+     * Streams the records of pages pageNums through a heap of at most heapSize
+     * records, repeatedly moving the smallest record of the heap to the
+     * current run and replacing it with the next input record.
+     *
+     * Every heap entry is tagged with the run it belongs to, and the heap is
+     * ordered by (run, record). An input record smaller than the record it
+     * replaces can no longer go in the current run, so it is tagged for the
+     * next one. The current run ends when the smallest entry left in the heap
+     * belongs to the next run.
+     */
+    private List<Run> replacementSelection(List<Integer> pageNums,
+                                           int heapSize) throws DatabaseException {
+        PriorityQueue<Pair<Integer, Record>> heap = new PriorityQueue<>(heapSize, (p1, p2) -> {
+            int c = Integer.compare(p1.getFirst(), p2.getFirst());
+            return c != 0 ? c : comparator.compare(p1.getSecond(), p2.getSecond());
+        });
+        Iterator<Record> input = new PageRecordIterator(pageNums);
+        while (heap.size() < heapSize && input.hasNext()) {
+            heap.add(new Pair<>(0, input.next()));
+        }
+
+        List<Run> runs = new ArrayList<>();
+        Run run = null;
+        int runNum = -1;
+        while (!heap.isEmpty()) {
+            Pair<Integer, Record> min = heap.poll();
+            if (min.getFirst() != runNum) {
+                run = new Run();
+                runs.add(run);
+                runNum = min.getFirst();
+            }
+            if (run.size() < runLimit) {
+                run.spillFile.append(min.getSecond());
+            }
+            if (input.hasNext()) {
+                Record next = input.next();
+                boolean fitsInRun = comparator.compare(next, min.getSecond()) >= 0;
+                heap.add(new Pair<>(fitsInRun ? runNum : runNum + 1, next));
             }
-            Run nextRun = new Run();
-            nextRun.addRecords(blockRecords);
-            runs.add(sortRun(nextRun));
         }
-        while (runs.size() > 1) {
-            runs = mergePass(runs);
+        return runs;
+    }
+
+    /**
+     * Iterates over the records of a list of pages of the table, reading one
+     * page at a time.
+     */
+    private class PageRecordIterator implements Iterator<Record> {
+        private Iterator<Integer> pageNumIterator;
+        private Iterator<Record> recordIterator;
+
+        PageRecordIterator(List<Integer> pageNums) {
+            this.pageNumIterator = pageNums.iterator();
+            this.recordIterator = Collections.emptyIterator();
+        }
+
+        public boolean hasNext() {
+            while (!recordIterator.hasNext() && pageNumIterator.hasNext()) {
+                try {
+                    recordIterator = transaction.getPageRecords(tableName, pageNumIterator.next()).iterator();
+                } catch (DatabaseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return recordIterator.hasNext();
+        }
+
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return recordIterator.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Merges the last (at most workerBuffers - 1) runs into a new temp table
+     * and returns its name.
+     *
+     * The merged output is cut into `parallelism` partitions of whole pages.
+     * For every partition boundary we find, in each run, how many of that
+     * run's records fall before it (see splitAtRank), and each partition is
+     * then merged independently straight into its own pages of the table.
+     */
+    private String finalMerge(List<Run> runs) throws DatabaseException {
+        String sortedTableName = transaction.createTempTable(operatorSchema);
+        int recordsPerPage = transaction.getNumEntriesPerPage(sortedTableName);
+        long numRecords = 0;
+        for (Run run : runs) {
+            numRecords += run.size();
+        }
+        int numPages = (int) ((numRecords + recordsPerPage - 1) / recordsPerPage);
+        int numPartitions = Math.min(parallelism, numPages);
+        if (numPartitions == 0) {
+            return sortedTableName;
+        }
+
+        List<Integer> outputPageNums = transaction.allocDataPages(sortedTableName, numPages);
+        long[][] splits = new long[numPartitions + 1][];
+        splits[0] = new long[runs.size()];
+        splits[numPartitions] = new long[runs.size()];
+        for (int i = 0; i < runs.size(); ++i) {
+            splits[numPartitions][i] = runs.get(i).size();
+        }
+        int[] firstPages = new int[numPartitions + 1];
+        firstPages[numPartitions] = numPages;
+        for (int p = 1; p < numPartitions; ++p) {
+            firstPages[p] = (int) ((long) numPages * p / numPartitions);
+            splits[p] = splitAtRank(runs, (long) firstPages[p] * recordsPerPage);
+        }
+
+        List<Callable<Void>> merges = new ArrayList<>();
+        for (int p = 0; p < numPartitions; ++p) {
+            long[] from = splits[p];
+            long[] to = splits[p + 1];
+            List<Integer> pageNums = outputPageNums.subList(firstPages[p], firstPages[p + 1]);
+            merges.add(() -> {
+                mergeRange(runs, from, to, sortedTableName, pageNums, recordsPerPage);
+                return null;
+            });
+        }
+        runAll(merges);
+        return sortedTableName;
+    }
+
+    /**
+     * Returns, for each run, the number of that run's records which come
+     * before the record of rank `rank` in the merged output. Equivalently, the
+     * split is such that no record before it sorts after a record after it,
+     * and exactly `rank` records come before it.
+     *
+     * Every run keeps an active range [lo, hi) of positions that might be on
+     * either side of the split. Each round picks the middle record of the
+     * widest range as a pivot and counts the records on either side of it in
+     * every run; the pivot either settles the split or at least halves the
+     * widest range.
+     */
+    private long[] splitAtRank(List<Run> runs, long rank) throws DatabaseException {
+        int numRuns = runs.size();
+        long[] lo = new long[numRuns];
+        long[] hi = new long[numRuns];
+        for (int i = 0; i < numRuns; ++i) {
+            hi[i] = runs.get(i).size();
+        }
+
+        while (true) {
+            int widest = 0;
+            for (int i = 1; i < numRuns; ++i) {
+                if (hi[i] - lo[i] > hi[widest] - lo[widest]) {
+                    widest = i;
+                }
+            }
+            if (hi[widest] == lo[widest]) {
+                return lo;
+            }
+
+            Record pivot = runs.get(widest).spillFile.get((lo[widest] + hi[widest]) / 2);
+            long[] less = new long[numRuns];
+            long[] lessOrEqual = new long[numRuns];
+            long numLess = 0;
+            long numLessOrEqual = 0;
+            for (int i = 0; i < numRuns; ++i) {
+                less[i] = search(runs.get(i), pivot, lo[i], hi[i], false);
+                lessOrEqual[i] = search(runs.get(i), pivot, less[i], hi[i], true);
+                numLess += less[i];
+                numLessOrEqual += lessOrEqual[i];
+            }
+
+            if (rank < numLess) {
+                hi = less;
+            } else if (rank > numLessOrEqual) {
+                lo = lessOrEqual;
+            } else {
+                // Every record less than the pivot goes first, and the records
+                // equal to it are divided up to make exactly rank records.
+                long remaining = rank - numLess;
+                for (int i = 0; i < numRuns; ++i) {
+                    long numEqual = Math.min(remaining, lessOrEqual[i] - less[i]);
+                    less[i] += numEqual;
+                    remaining -= numEqual;
+                }
+                return less;
+            }
         }
-        return runs.get(0).tableName();
+    }
+
+    /**
+     * Returns the first position in [lo, hi) of run whose record is greater
+     * than (if inclusive) or not less than (otherwise) key, or hi if there is
+     * none.
+     */
+    private long search(Run run, Record key, long lo, long hi,
+                        boolean inclusive) throws DatabaseException {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            int c = comparator.compare(run.spillFile.get(mid), key);
+            if (c < 0 || (inclusive && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Merges positions [from[i], to[i]) of every run i into the pages pageNums
+     * of table sortedTableName, filling each page completely before moving on
+     * to the next.
+     */
+    private void mergeRange(List<Run> runs, long[] from, long[] to, String sortedTableName,
+                            List<Integer> pageNums, int recordsPerPage) throws DatabaseException {
+        List<Iterator<Record>> runIterators = new ArrayList<>();
+        PriorityQueue<Pair<Record, Integer>> runMinsQueue = new PriorityQueue<>(new RecordPairComparator());
+        for (int i = 0; i < runs.size(); ++i) {
+            Iterator<Record> runIterator = runs.get(i).spillFile.iterator(from[i], to[i]);
+            runIterators.add(runIterator);
+            if (runIterator.hasNext()) {
+                runMinsQueue.add(new Pair<>(runIterator.next(), i));
+            }
+        }
+
+        Iterator<Integer> pageNumIterator = pageNums.iterator();
+        List<Record> page = new ArrayList<>(recordsPerPage);
+        while (!runMinsQueue.isEmpty()) {
+            Pair<Record, Integer> nextRecordPair = runMinsQueue.poll();
+            page.add(nextRecordPair.getFirst());
+            if (page.size() == recordsPerPage) {
+                transaction.fillDataPage(sortedTableName, pageNumIterator.next(), page);
+                page = new ArrayList<>(recordsPerPage);
+            }
+            Iterator<Record> runIterator = runIterators.get(nextRecordPair.getSecond());
+            if (runIterator.hasNext()) {
+                runMinsQueue.add(new Pair<>(runIterator.next(), nextRecordPair.getSecond()));
+            }
+        }
+        if (!page.isEmpty()) {
+            transaction.fillDataPage(sortedTableName, pageNumIterator.next(), page);
+        }
+    }
+
+    /**
+     * Runs every task and returns their results in order.
+     *
+     * The tasks run on the shared common ForkJoinPool, but never more than
+     * `parallelism` of them at once, since each may use workerBuffers pages:
+     * up to `parallelism` workers are submitted, and every worker keeps taking
+     * the next task that no one has started until there are none left. After
+     * a task fails, no worker starts another one.
+     */
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws DatabaseException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (parallelism == 1 || tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (DatabaseException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new DatabaseException(e);
+                }
+            }
+            return results;
+        }
+
+        AtomicInteger nextTask = new AtomicInteger();
+        AtomicReferenceArray<T> taskResults = new AtomicReferenceArray<>(tasks.size());
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int w = 0; w < Math.min(parallelism, tasks.size()); ++w) {
+            workers.add(() -> {
+                int i;
+                while ((i = nextTask.getAndIncrement()) < tasks.size()) {
+                    try {
+                        taskResults.set(i, tasks.get(i).call());
+                    } catch (Exception e) {
+                        nextTask.set(tasks.size());
+                        throw e;
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(workers)) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DatabaseException) {
+                throw (DatabaseException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new DatabaseException(e);
+        }
+        for (int i = 0; i < tasks.size(); ++i) {
+            results.add(taskResults.get(i));
+        }
+        return results;
     }
 
     public Iterator<Record> iterator() throws DatabaseException {
@@ -171,6 +736,63 @@ public class SortOperator {
         return this.transaction.getRecordIterator(sortedTableName);
     }
 
+    /**
+     * Merges a list of sorted runs a record at a time, closing the runs once
+     * `limit` records have been returned or the runs are exhausted.
+     */
+    private class MergeIterator implements Iterator<Record> {
+        private List<Run> runs;
+        private List<Iterator<Record>> runIterators;
+        private PriorityQueue<Pair<Record, Integer>> runMinsQueue;
+        private long remaining;
+
+        MergeIterator(List<Run> runs, long limit) throws DatabaseException {
+            this.runs = runs;
+            this.runIterators = new ArrayList<>();
+            this.runMinsQueue = new PriorityQueue<>(new RecordPairComparator());
+            this.remaining = limit;
+            for (int i = 0; i < runs.size(); ++i) {
+                Iterator<Record> runIterator = runs.get(i).iterator();
+                runIterators.add(runIterator);
+                if (runIterator.hasNext()) {
+                    runMinsQueue.add(new Pair<>(runIterator.next(), i));
+                }
+            }
+            closeIfDone();
+        }
+
+        private void closeIfDone() {
+            if (remaining <= 0 || runMinsQueue.isEmpty()) {
+                runMinsQueue.clear();
+                for (Run run : runs) {
+                    run.close();
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !runMinsQueue.isEmpty();
+        }
+
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Pair<Record, Integer> nextRecordPair = runMinsQueue.poll();
+            Iterator<Record> runIterator = runIterators.get(nextRecordPair.getSecond());
+            if (runIterator.hasNext()) {
+                runMinsQueue.add(new Pair<>(runIterator.next(), nextRecordPair.getSecond()));
+            }
+            remaining--;
+            closeIfDone();
+            return nextRecordPair.getFirst();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     private class RecordPairComparator implements Comparator<Pair<Record, Integer>> {
         public int compare(Pair<Record, Integer> o1, Pair<Record, Integer> o2) {
             return SortOperator.this.comparator.compare(o1.getFirst(), o2.getFirst());
@@ -181,4 +803,3 @@ public class SortOperator {
         return new Run();
     }
 }
-
@@ -0,0 +1,107 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * An AggregateOperator for a source whose records come out ordered on the
+ * group by column (e.g. an index scan on it, or a sort merge join on it), so
+ * that the records of every group are next to each other. The groups are
+ * aggregated in a single pass over the source, one at a time, and every group
+ * is returned as soon as the next one starts: only one Aggregator.State is
+ * ever kept, and nothing is written to disk.
+ *
+ * If the source is not ordered on the group by column, a group whose records
+ * are not all together is returned once for every run of its records.
+ */
+public class StreamAggregateOperator extends AggregateOperator {
+    /**
+     * Creates a new StreamAggregateOperator that groups the records of source
+     * on groupByColumn, which source must be ordered on, and computes the
+     * given aggregates of every group.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param groupByColumn the column to group on
+     * @param functions the aggregates to compute, each at most once
+     * @param aggregateColumns for every aggregate, the column it is computed
+     *                         over, which is ignored (and may be null) for COUNT
+     * @throws QueryPlanException
+     */
+    public StreamAggregateOperator(QueryOperator source,
+                                   Database.Transaction transaction,
+                                   String groupByColumn,
+                                   List<QueryPlan.AggregateFunction> functions,
+                                   List<String> aggregateColumns) throws QueryPlanException {
+        super(source, transaction, groupByColumn, functions, aggregateColumns);
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new StreamAggregateIterator();
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class StreamAggregateIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+        // The first record of the next group, or null if there are no more.
+        private Record nextGroupRecord;
+
+        public StreamAggregateIterator() throws QueryPlanException, DatabaseException {
+            this.sourceIterator = StreamAggregateOperator.this.getSource().iterator();
+            this.nextGroupRecord = this.sourceIterator.hasNext() ? this.sourceIterator.next() : null;
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.nextGroupRecord != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Aggregator aggregator = StreamAggregateOperator.this.aggregator;
+            int keyIndex = StreamAggregateOperator.this.groupByColumnIndex;
+            DataBox key = this.nextGroupRecord.getValues().get(keyIndex);
+            Aggregator.State state = aggregator.newState();
+            aggregator.add(state, this.nextGroupRecord);
+            this.nextGroupRecord = null;
+            while (this.sourceIterator.hasNext()) {
+                Record record = this.sourceIterator.next();
+                if (!record.getValues().get(keyIndex).equals(key)) {
+                    this.nextGroupRecord = record;
+                    break;
+                }
+                aggregator.add(state, record);
+            }
+
+            List<DataBox> values = new ArrayList<>();
+            values.add(key);
+            values.addAll(aggregator.getOutputValues(state));
+            return new Record(values);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
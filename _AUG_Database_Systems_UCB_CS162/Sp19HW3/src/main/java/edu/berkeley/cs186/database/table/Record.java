@@ -1,10 +1,10 @@
 package edu.berkeley.cs186.database.table;
 
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 
@@ -21,11 +21,27 @@ public class Record {
     }
 
     public byte[] toBytes(Schema schema) {
-        ByteBuffer byteBuffer = ByteBuffer.allocate(schema.getSizeInBytes());
+        byte[] bytes = new byte[schema.getSizeInBytes()];
+        writeTo(ByteBuffer.wrap(bytes), 0);
+        return bytes;
+    }
+
+    /**
+     * Serializes this record directly into buf starting at byte offset, in the
+     * same format as toBytes. Each value is written in place, so no
+     * intermediate byte arrays are allocated. The position of buf is not
+     * modified.
+     *
+     * @param buf the buffer to write into
+     * @param offset the offset in buf of the first byte to write
+     * @return the number of bytes written
+     */
+    public int writeTo(Buffer buf, int offset) {
+        int start = offset;
         for (DataBox value : values) {
-            byteBuffer.put(value.toBytes());
+            offset += value.writeTo(buf, offset);
         }
-        return byteBuffer.array();
+        return offset - start;
     }
 
     /**
@@ -44,6 +60,26 @@ public class Record {
         return new Record(values);
     }
 
+    /**
+     * Decodes a Record of schema schema out of buf starting at byte offset.
+     * This is the inverse of writeTo and, unlike fromBytes(buf, schema), does
+     * not modify the position of buf.
+     *
+     * @param buf the buffer to decode from
+     * @param offset the offset in buf of the first byte of the record
+     * @param schema the schema used for this record
+     * @return the decoded Record
+     */
+    public static Record fromBytes(Buffer buf, int offset, Schema schema) {
+        List<Type> types = schema.getFieldTypes();
+        List<DataBox> values = new ArrayList<DataBox>(types.size());
+        for (Type t : types) {
+            values.add(DataBox.fromBytes(buf, offset, t));
+            offset += t.getSizeInBytes();
+        }
+        return new Record(values);
+    }
+
     @Override
     public String toString() {
         return values.toString();
@@ -42,10 +42,26 @@ public class RecordId implements Comparable<RecordId> {
                .array();
     }
 
+    /**
+     * Serializes this RecordId into buf starting at byte offset, in the same
+     * format as toBytes, without modifying the position of buf.
+     *
+     * @return the number of bytes written
+     */
+    public int writeTo(Buffer buf, int offset) {
+        buf.putInt(offset, pageNum);
+        buf.putShort(offset + Integer.BYTES, entryNum);
+        return getSizeInBytes();
+    }
+
     public static RecordId fromBytes(Buffer buf) {
         return new RecordId(buf.getInt(), buf.getShort());
     }
 
+    public static RecordId fromBytes(Buffer buf, int offset) {
+        return new RecordId(buf.getInt(offset), buf.getShort(offset + Integer.BYTES));
+    }
+
     @Override
     public String toString() {
         return String.format("RecordId(%d, %d)", pageNum, entryNum);
@@ -0,0 +1,133 @@
+package edu.berkeley.cs186.database.table;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+
+/**
+ * A ScanPredicate is a conjunction of comparisons `column operator value`,
+ * compiled against the record layout of a table (see Table#compilePredicate)
+ * so that a scan can test a record right where it lies in a page, and only
+ * decode the records that satisfy it.
+ *
+ * Every comparison reads its field at a fixed offset from the start of the
+ * record: an INT or FLOAT is read as such and compared with Integer.compare
+ * or Float.compare, a BOOL is a single byte, and a STRING is compared byte by
+ * byte against the bytes of value (strings only hold single-byte characters,
+ * so this orders them exactly like StringDataBox#compareTo). For a dictionary
+ * encoded column, EQUALS and NOT_EQUALS compare codes, and value's code is
+ * looked up when the predicate is compiled; any other comparison on such a
+ * column decodes the field through the dictionary, which does not allocate.
+ * A comparison against a value of another type decodes the field and compares
+ * DataBoxes, which fails just like a SelectOperator would.
+ */
+public class ScanPredicate {
+    private PredicateOperator[] operators;
+    private FieldComparator[] comparators;
+
+    /**
+     * Compiles the predicate that the i-th column of columnIndices satisfies
+     * operators[i] against values[i] for every i, for records of schema
+     * stored with the given dictionaries (null for columns which are not
+     * dictionary encoded).
+     */
+    ScanPredicate(Schema schema, StringDictionary[] dictionaries, List<Integer> columnIndices,
+                  List<PredicateOperator> operators, List<DataBox> values) {
+        List<Type> types = schema.getFieldTypes();
+        int[] offsets = new int[types.size()];
+        for (int i = 1; i < types.size(); ++i) {
+            StringDictionary dictionary = dictionaries[i - 1];
+            offsets[i] = offsets[i - 1] + (dictionary == null ? types.get(i - 1).getSizeInBytes()
+                                           : dictionary.getCodeSizeInBytes());
+        }
+
+        this.operators = operators.toArray(new PredicateOperator[0]);
+        this.comparators = new FieldComparator[columnIndices.size()];
+        for (int i = 0; i < columnIndices.size(); ++i) {
+            int column = columnIndices.get(i);
+            this.comparators[i] = compile(offsets[column], types.get(column), dictionaries[column],
+                                          this.operators[i], values.get(i));
+        }
+    }
+
+    /**
+     * Returns whether the record serialized in buf at offset satisfies every
+     * comparison of this predicate.
+     */
+    public boolean test(Buffer buf, int offset) {
+        for (int i = 0; i < this.comparators.length; ++i) {
+            if (!this.operators[i].holds(this.comparators[i].compare(buf, offset))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares a field of a serialized record against a constant: returns a
+     * negative number, zero, or a positive number as the field is less than,
+     * equal to, or greater than it.
+     */
+    private interface FieldComparator {
+        int compare(Buffer buf, int recordOffset);
+    }
+
+    private static FieldComparator compile(int fieldOffset, Type type, StringDictionary dictionary,
+                                           PredicateOperator operator, DataBox value) {
+        TypeId typeId = type.getTypeId();
+        if (value.type().getTypeId() != typeId) {
+            return (buf, offset) -> DataBox.fromBytes(buf, offset + fieldOffset, type).compareTo(value);
+        }
+
+        if (dictionary != null) {
+            if (operator == PredicateOperator.EQUALS || operator == PredicateOperator.NOT_EQUALS) {
+                // A value missing from the dictionary has code -1, which no
+                // field has.
+                int code = dictionary.lookup(value);
+                return (buf, offset) -> dictionary.readCode(buf, offset + fieldOffset) == code ? 0 : 1;
+            }
+            return (buf, offset) -> dictionary.decode(dictionary.readCode(buf, offset + fieldOffset))
+                   .compareTo(value);
+        }
+
+        switch (typeId) {
+        case BOOL: {
+            boolean b = value.getBool();
+            return (buf, offset) -> Boolean.compare(buf.get(offset + fieldOffset) == 1, b);
+        }
+        case INT: {
+            int i = value.getInt();
+            return (buf, offset) -> Integer.compare(buf.getInt(offset + fieldOffset), i);
+        }
+        case FLOAT: {
+            float f = value.getFloat();
+            return (buf, offset) -> Float.compare(buf.getFloat(offset + fieldOffset), f);
+        }
+        default: {
+            byte[] bytes = value.getString().getBytes(Charset.forName("UTF-8"));
+            int length = type.getSizeInBytes();
+            return (buf, offset) -> compareBytes(buf, offset + fieldOffset, length, bytes);
+        }
+        }
+    }
+
+    /**
+     * Compares the length bytes of buf at offset against bytes, as unsigned
+     * bytes and then by length, like String#compareTo.
+     */
+    private static int compareBytes(Buffer buf, int offset, int length, byte[] bytes) {
+        int n = Math.min(length, bytes.length);
+        for (int i = 0; i < n; ++i) {
+            int c = (buf.get(offset + i) & 0xFF) - (bytes[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - bytes.length;
+    }
+}
@@ -0,0 +1,255 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.Page;
+
+/**
+ * A SpillFile is an append-only file of records that operators use for
+ * intermediate results: sort runs, hash partitions, groups, and the like.
+ *
+ * Compared to a temp Table, a SpillFile has no header page, no bitmaps, no
+ * statistics and no indices, does not verify records against its schema, and
+ * is never forced to disk. Records are packed Page.pageSize / n to a page
+ * (where n is the size of a record), the page being filled is buffered in
+ * memory, and every full page is written with a single sequential write. The
+ * file is deleted when the SpillFile is closed.
+ *
+ * A SpillFile is written by one thread at a time. Once writing is done, any
+ * number of threads may read it at once: readers use positional reads into
+ * their own buffers and never share a file position.
+ */
+public class SpillFile implements Closeable {
+    public static final String FILENAME_EXTENSION = ".spill";
+
+    // The file in which the records are stored.
+    private String filename;
+    private FileChannel channel;
+
+    // The schema of the records and the number of bytes each one takes.
+    private Schema schema;
+    private int recordSizeInBytes;
+    private int numRecordsPerPage;
+
+    // The page currently being filled, which is page numRecords / numRecordsPerPage.
+    private byte[] page;
+    private Buffer pageBuffer;
+    private boolean pageIsDirty;
+
+    private long numRecords;
+
+    // Constructors //////////////////////////////////////////////////////////////
+    /**
+     * Create a new, empty spill file `filename` for records of schema `schema`,
+     * truncating the file if it already exists.
+     */
+    public SpillFile(String filename, Schema schema) throws DatabaseException {
+        this.filename = filename;
+        this.schema = schema;
+        this.recordSizeInBytes = schema.getSizeInBytes();
+        if (recordSizeInBytes > Page.pageSize) {
+            String msg = String.format("Records of %d bytes do not fit on a %d byte page.",
+                                       recordSizeInBytes, Page.pageSize);
+            throw new DatabaseException(msg);
+        }
+        this.numRecordsPerPage = Page.pageSize / recordSizeInBytes;
+        this.page = new byte[Page.pageSize];
+        this.pageBuffer = ByteBuffer.wrap(page);
+        this.pageIsDirty = false;
+        this.numRecords = 0;
+        try {
+            this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    // Accessors /////////////////////////////////////////////////////////////////
+    public String getFilename() {
+        return filename;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public synchronized long getNumRecords() {
+        return numRecords;
+    }
+
+    public int getNumRecordsPerPage() {
+        return numRecordsPerPage;
+    }
+
+    // Writing ///////////////////////////////////////////////////////////////////
+    /**
+     * Appends record to the end of the file.
+     */
+    public synchronized void append(Record record) throws DatabaseException {
+        int entryNum = (int) (numRecords % numRecordsPerPage);
+        record.writeTo(pageBuffer, entryNum * recordSizeInBytes);
+        pageIsDirty = true;
+        numRecords++;
+        if (entryNum + 1 == numRecordsPerPage) {
+            writePage(numRecords / numRecordsPerPage - 1);
+        }
+    }
+
+    /**
+     * Appends every record of records, in order, to the end of the file.
+     */
+    public synchronized void append(Iterable<Record> records) throws DatabaseException {
+        for (Record record : records) {
+            append(record);
+        }
+    }
+
+    /**
+     * Writes out the partially filled last page, if there is one. Reading the
+     * file does this automatically.
+     */
+    public synchronized void flush() throws DatabaseException {
+        if (pageIsDirty) {
+            writePage(numRecords / numRecordsPerPage);
+        }
+    }
+
+    private void writePage(long pageIndex) throws DatabaseException {
+        java.nio.ByteBuffer src = java.nio.ByteBuffer.wrap(page);
+        long position = pageIndex * Page.pageSize;
+        try {
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+        pageIsDirty = false;
+    }
+
+    // Reading ///////////////////////////////////////////////////////////////////
+    /**
+     * Returns the index-th record of the file.
+     */
+    public Record get(long index) throws DatabaseException {
+        if (index < 0 || index >= getNumRecords()) {
+            String msg = String.format("Record %d of %s does not exist; it has %d records.",
+                                       index, filename, getNumRecords());
+            throw new DatabaseException(msg);
+        }
+        flush();
+        byte[] bytes = new byte[recordSizeInBytes];
+        read(bytes, offsetOf(index));
+        return Record.fromBytes(ByteBuffer.wrap(bytes), 0, schema);
+    }
+
+    /**
+     * Returns an iterator over every record of the file.
+     */
+    public Iterator<Record> iterator() throws DatabaseException {
+        return iterator(0, getNumRecords());
+    }
+
+    /**
+     * Returns an iterator over records from (inclusive) through to (exclusive),
+     * which reads the file a page at a time.
+     */
+    public Iterator<Record> iterator(long from, long to) throws DatabaseException {
+        flush();
+        return new SpillFileIterator(from, to);
+    }
+
+    private long offsetOf(long index) {
+        return (index / numRecordsPerPage) * Page.pageSize +
+               (index % numRecordsPerPage) * recordSizeInBytes;
+    }
+
+    private void read(byte[] bytes, long position) throws DatabaseException {
+        java.nio.ByteBuffer dst = java.nio.ByteBuffer.wrap(bytes);
+        try {
+            while (dst.hasRemaining()) {
+                int n = channel.read(dst, position);
+                if (n < 0) {
+                    break;
+                }
+                position += n;
+            }
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Closes the file and deletes it. The in-memory page is released too, so
+     * a closed SpillFile that is still referenced holds no page of data.
+     */
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The file is deleted below anyway.
+        }
+        channel = null;
+        page = null;
+        pageBuffer = null;
+        pageIsDirty = false;
+        new File(filename).delete();
+    }
+
+    private class SpillFileIterator implements Iterator<Record> {
+        private long index;
+        private long end;
+        private byte[] bytes;
+        private Buffer buf;
+        private long pageIndex;
+
+        SpillFileIterator(long from, long to) {
+            this.index = from;
+            this.end = to;
+            this.bytes = new byte[Page.pageSize];
+            this.buf = ByteBuffer.wrap(bytes);
+            this.pageIndex = -1;
+        }
+
+        public boolean hasNext() {
+            return index < end;
+        }
+
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long nextPageIndex = index / numRecordsPerPage;
+            if (nextPageIndex != pageIndex) {
+                try {
+                    read(bytes, nextPageIndex * Page.pageSize);
+                } catch (DatabaseException e) {
+                    throw new IllegalStateException(e);
+                }
+                pageIndex = nextPageIndex;
+            }
+            int entryNum = (int) (index % numRecordsPerPage);
+            index++;
+            return Record.fromBytes(buf, entryNum * recordSizeInBytes, schema);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+
+/**
+ * A StringDictionary maps each distinct value of a single string column of a
+ * table to a small integer code. Tables store the code in place of the string
+ * for every dictionary encoded column, so a stringType(64) column with a few
+ * hundred distinct values costs 2 bytes per row instead of 64.
+ *
+ * Codes are handed out densely starting from 0 in the order values are first
+ * seen, and are never reassigned. Every code decodes to the same StringDataBox
+ * instance, so two values decoded from the same dictionary are equal if and
+ * only if they are the same object (see canonicalize).
+ *
+ * # Storage Format
+ * A dictionary is persisted in its own file (next to the table's file) so that
+ * it never shows up as a data page of the table:
+ *
+ *   - Page 0 is a header page holding the code size (4 bytes) and the number
+ *     of values in the dictionary (4 bytes).
+ *   - Every remaining page holds Page.pageSize / n values packed back to back,
+ *     where n is the size of the column's type. The value with code c is
+ *     stored on page 1 + c / valuesPerPage at index c % valuesPerPage.
+ *
+ * Dictionary pages are never freed, so the dictionary is rebuilt in memory
+ * simply by reading the pages back in order.
+ */
+public class StringDictionary implements Closeable {
+    public static final String FILENAME_EXTENSION = ".dict";
+
+    // The filename of the file in which this dictionary is persisted.
+    private String filename;
+
+    // The allocator used to persist the dictionary.
+    private PageAllocator allocator;
+
+    // The type of the encoded column.
+    private Type type;
+
+    // The number of bytes used to store a code; either 2 or 4.
+    private int codeSizeInBytes;
+
+    // The number of values stored on each non-header page.
+    private int valuesPerPage;
+
+    // values.get(c) is the value with code c, and codes.get(v) is the code of v.
+    private List<StringDataBox> values;
+    private Map<DataBox, Integer> codes;
+
+    // Constructors //////////////////////////////////////////////////////////////
+    /**
+     * Construct a brand new, empty dictionary for a column of type `type`
+     * persisted in file `filename`.
+     */
+    public StringDictionary(String filename, Type type, int codeSizeInBytes,
+                            BaseTransaction transaction) throws DatabaseException {
+        checkCodeSize(codeSizeInBytes);
+        this.filename = filename;
+        this.allocator = new PageAllocator(filename, true, transaction);
+        this.type = type;
+        this.codeSizeInBytes = codeSizeInBytes;
+        this.valuesPerPage = Page.pageSize / type.getSizeInBytes();
+        this.values = new ArrayList<>();
+        this.codes = new HashMap<>();
+
+        int headerPageNum = allocator.allocPage(transaction);
+        assert(headerPageNum == 0);
+        writeHeader(transaction);
+    }
+
+    /**
+     * Load a dictionary for a column of type `type` from the file `filename`.
+     */
+    public StringDictionary(String filename, Type type,
+                            BaseTransaction transaction) throws DatabaseException {
+        this.filename = filename;
+        this.allocator = new PageAllocator(filename, false, transaction);
+        this.type = type;
+        this.valuesPerPage = Page.pageSize / type.getSizeInBytes();
+
+        Buffer header = allocator.fetchPage(transaction, 0).getBuffer(transaction);
+        this.codeSizeInBytes = header.getInt(0);
+        checkCodeSize(codeSizeInBytes);
+        int numValues = header.getInt(Integer.BYTES);
+
+        this.values = new ArrayList<>(numValues);
+        this.codes = new HashMap<>();
+        for (int code = 0; code < numValues; ++code) {
+            Page page = allocator.fetchPage(transaction, 1 + code / valuesPerPage);
+            int offset = (code % valuesPerPage) * type.getSizeInBytes();
+            StringDataBox value = (StringDataBox) DataBox.fromBytes(page.getBuffer(transaction),
+                                  offset, type);
+            values.add(value);
+            codes.put(value, code);
+        }
+    }
+
+    // Accessors /////////////////////////////////////////////////////////////////
+    public String getFilename() {
+        return filename;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getCodeSizeInBytes() {
+        return codeSizeInBytes;
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Returns the largest number of distinct values a dictionary with codes of
+     * codeSizeInBytes bytes can hold. 2-byte codes are treated as unsigned.
+     */
+    public int getMaxSize() {
+        return codeSizeInBytes == Short.BYTES ? (1 << 16) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the code of value, or -1 if value is not in the dictionary.
+     */
+    public synchronized int lookup(DataBox value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Returns the canonical instance of value, or null if value is not in the
+     * dictionary. Comparing a decoded value against the canonical instance by
+     * reference is equivalent to comparing their codes.
+     */
+    public synchronized StringDataBox canonicalize(DataBox value) {
+        int code = lookup(value);
+        return code == -1 ? null : values.get(code);
+    }
+
+    /**
+     * Returns the canonical value with code `code`.
+     */
+    public synchronized StringDataBox decode(int code) {
+        return values.get(code);
+    }
+
+    /**
+     * Returns the code of value, adding value to the dictionary (and to its
+     * file) if it is not already present. Throws a DatabaseException if the
+     * dictionary has run out of codes.
+     */
+    public synchronized int encode(BaseTransaction transaction,
+                                   DataBox value) throws DatabaseException {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (!value.type().equals(type)) {
+            String msg = String.format("Cannot add value of type %s to a dictionary of type %s.",
+                                       value.type(), type);
+            throw new DatabaseException(msg);
+        }
+        if (values.size() >= getMaxSize()) {
+            String msg = String.format("Dictionary %s is full; %d-byte codes hold at most %d values.",
+                                       filename, codeSizeInBytes, getMaxSize());
+            throw new DatabaseException(msg);
+        }
+
+        int newCode = values.size();
+        int pageIndex = 1 + newCode / valuesPerPage;
+        if (pageIndex >= allocator.getNumPages()) {
+            int pageNum = allocator.allocPage(transaction);
+            assert(pageNum == pageIndex);
+        }
+        Page page = allocator.fetchPage(transaction, pageIndex);
+        value.writeTo(page.getBuffer(transaction), (newCode % valuesPerPage) * type.getSizeInBytes());
+
+        StringDataBox canonical = (StringDataBox) value;
+        values.add(canonical);
+        codes.put(canonical, newCode);
+        writeHeader(transaction);
+        return newCode;
+    }
+
+    // Code Serialization ////////////////////////////////////////////////////////
+    /** Writes code into buf at offset using codeSizeInBytes bytes. */
+    public void writeCode(Buffer buf, int offset, int code) {
+        if (codeSizeInBytes == Short.BYTES) {
+            buf.putShort(offset, (short) code);
+        } else {
+            buf.putInt(offset, code);
+        }
+    }
+
+    /** Reads a code written by writeCode out of buf at offset. */
+    public int readCode(Buffer buf, int offset) {
+        if (codeSizeInBytes == Short.BYTES) {
+            return buf.getShort(offset) & 0xFFFF;
+        }
+        return buf.getInt(offset);
+    }
+
+    public void close() {
+        allocator.close();
+    }
+
+    // Helpers ///////////////////////////////////////////////////////////////////
+    private void writeHeader(BaseTransaction transaction) {
+        Buffer header = allocator.fetchPage(transaction, 0).getBuffer(transaction);
+        header.putInt(0, codeSizeInBytes);
+        header.putInt(Integer.BYTES, values.size());
+    }
+
+    private static void checkCodeSize(int codeSizeInBytes) throws DatabaseException {
+        if (codeSizeInBytes != Short.BYTES && codeSizeInBytes != Integer.BYTES) {
+            String msg = String.format("Dictionary codes must be %d or %d bytes, not %d.",
+                                       Short.BYTES, Integer.BYTES, codeSizeInBytes);
+            throw new DatabaseException(msg);
+        }
+    }
+}
@@ -9,10 +9,14 @@ import edu.berkeley.cs186.database.common.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 /**
@@ -91,6 +95,15 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
  *
  *  When we add a record to a table, we add it to the very first free slot in
  *  the table. See addRecord for more information.
+ *
+ * # Dictionary Encoding
+ * String columns with few distinct values can be dictionary encoded (see
+ * StringDictionary). Records then store a 2- or 4-byte code in place of each
+ * encoded value, and the dictionary itself is kept in a separate file per
+ * column, named after the table's file. The header page lists the encoded
+ * columns right after the serialized schema. Encoding is invisible to users
+ * of the table: getRecord always returns decoded values, although every
+ * decoded value of an encoded column is the dictionary's canonical instance.
  */
 public class Table implements Closeable {
     public static final String FILENAME_PREFIX = "db";
@@ -108,6 +121,17 @@ public class Table implements Closeable {
     // The allocator used to persist the database.
     private PageAllocator allocator;
 
+    // dictionaries[i] is the dictionary of column i, or null if column i is not
+    // dictionary encoded.
+    private StringDictionary[] dictionaries;
+
+    // Whether any column is dictionary encoded.
+    private boolean hasDictionaries;
+
+    // The number of bytes each record takes up on a data page. This is the
+    // schema's size, less whatever dictionary encoding saves.
+    private int recordSizeInBytes;
+
     // The size (in bytes) of the bitmap found at the beginning of each data page.
     private int bitmapSizeInBytes;
 
@@ -137,14 +161,60 @@ public class Table implements Closeable {
         this.filename = filename;
         this.schema = schema;
         this.allocator = new PageAllocator(lockContext, filename, true, transaction);
-        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, schema);
-        numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, schema);
+        this.dictionaries = new StringDictionary[schema.getFieldNames().size()];
+        this.hasDictionaries = false;
+        this.recordSizeInBytes = schema.getSizeInBytes();
+        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, recordSizeInBytes);
+        numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, recordSizeInBytes);
+        this.stats = new TableStats(this.schema);
+        this.freePageNums = new TreeSet<Integer>();
+        this.numRecords = 0;
+        this.lockContext = lockContext;
+
+        writeSchemaToHeaderPage(transaction, allocator, schema, dictionaries);
+    }
+
+    /**
+     * Construct a brand new table named `name` with schema `schema` persisted in
+     * file `filename`, in which every column in `dictionaryColumns` is
+     * dictionary encoded using codes of `codeSizeInBytes` (2 or 4) bytes. Every
+     * dictionary encoded column must be a string column.
+     */
+    public Table(String name, Schema schema, String filename, LockContext lockContext,
+                 BaseTransaction transaction, List<String> dictionaryColumns,
+                 int codeSizeInBytes) throws DatabaseException {
+        this.name = name;
+        this.filename = filename;
+        this.schema = schema;
+        this.dictionaries = new StringDictionary[schema.getFieldNames().size()];
+        for (String column : dictionaryColumns) {
+            int i = schema.getFieldNames().indexOf(column);
+            if (i == -1) {
+                throw new DatabaseException("Column desired for dictionary does not exist");
+            }
+            if (schema.getFieldTypes().get(i).getTypeId() != TypeId.STRING) {
+                String msg = String.format("Only string columns can be dictionary encoded, " +
+                                           "but %s has type %s.", column, schema.getFieldTypes().get(i));
+                throw new DatabaseException(msg);
+            }
+            if (dictionaries[i] != null) {
+                throw new DatabaseException("Column desired for dictionary has been duplicated");
+            }
+            dictionaries[i] = new StringDictionary(getDictionaryFilename(filename, i),
+                                                   schema.getFieldTypes().get(i), codeSizeInBytes, transaction);
+        }
+
+        this.allocator = new PageAllocator(lockContext, filename, true, transaction);
+        this.hasDictionaries = !dictionaryColumns.isEmpty();
+        this.recordSizeInBytes = computeRecordSizeInBytes(schema, dictionaries);
+        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, recordSizeInBytes);
+        this.numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, recordSizeInBytes);
         this.stats = new TableStats(this.schema);
         this.freePageNums = new TreeSet<Integer>();
         this.numRecords = 0;
         this.lockContext = lockContext;
 
-        writeSchemaToHeaderPage(transaction, allocator, schema);
+        writeSchemaToHeaderPage(transaction, allocator, schema, dictionaries);
     }
 
     /**
@@ -157,8 +227,15 @@ public class Table implements Closeable {
         this.filename = filename;
         this.allocator = new PageAllocator(lockContext, filename, false, transaction);
         this.schema = readSchemaFromHeaderPage(transaction, this.allocator);
-        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, this.schema);
-        this.numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, this.schema);
+        this.dictionaries = readDictionariesFromHeaderPage(transaction, this.allocator,
+                            this.schema, filename);
+        this.hasDictionaries = false;
+        for (StringDictionary dictionary : this.dictionaries) {
+            this.hasDictionaries |= dictionary != null;
+        }
+        this.recordSizeInBytes = computeRecordSizeInBytes(this.schema, this.dictionaries);
+        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, this.recordSizeInBytes);
+        this.numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, this.recordSizeInBytes);
 
         // We compute the stats, free pages, and number of records naively. We
         // iterate through every single data page of the file, and for each data
@@ -211,6 +288,18 @@ public class Table implements Closeable {
         return bitmapSizeInBytes;
     }
 
+    public int getRecordSizeInBytes() {
+        return recordSizeInBytes;
+    }
+
+    /**
+     * Returns the dictionary of column `columnIndex`, or null if the column is
+     * not dictionary encoded.
+     */
+    public StringDictionary getDictionary(int columnIndex) {
+        return dictionaries[columnIndex];
+    }
+
     public int getNumRecordsPerPage() {
         return numRecordsPerPage;
     }
@@ -237,15 +326,23 @@ public class Table implements Closeable {
     }
 
     public static int computeBitmapSizeInBytes(int pageSize, Schema schema) {
+        return computeBitmapSizeInBytes(pageSize, schema.getSizeInBytes());
+    }
+
+    public static int computeBitmapSizeInBytes(int pageSize, int recordSizeInBytes) {
         // Dividing by 8 simultaneously (a) rounds down the number of records to a
         // multiple of 8 and (b) converts bits to bytes.
-        return computeUnroundedNumRecordsPerPage(pageSize, schema) / 8;
+        return computeUnroundedNumRecordsPerPage(pageSize, recordSizeInBytes) / 8;
     }
 
     public static int computeNumRecordsPerPage(int pageSize, Schema schema) {
+        return computeNumRecordsPerPage(pageSize, schema.getSizeInBytes());
+    }
+
+    public static int computeNumRecordsPerPage(int pageSize, int recordSizeInBytes) {
         // Dividing by 8 and then multiplying by 8 rounds down to the nearest
         // multiple of 8.
-        return computeUnroundedNumRecordsPerPage(pageSize, schema) / 8 * 8;
+        return computeUnroundedNumRecordsPerPage(pageSize, recordSizeInBytes) / 8 * 8;
     }
 
     // Modifiers /////////////////////////////////////////////////////////////////
@@ -260,9 +357,46 @@ public class Table implements Closeable {
 
     // Modifiers /////////////////////////////////////////////////////////////////
     private synchronized void insertRecord(BaseTransaction transaction, Page page, int entryNum,
-                                           Record record) {
-        int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
-        page.getBuffer(transaction).position(offset).put(record.toBytes(schema));
+                                           Record record) throws DatabaseException {
+        int offset = bitmapSizeInBytes + (entryNum * recordSizeInBytes);
+        writeRecord(transaction, page.getBuffer(transaction), offset, record);
+    }
+
+    private void writeRecord(BaseTransaction transaction, Buffer buf, int offset,
+                             Record record) throws DatabaseException {
+        if (!hasDictionaries) {
+            record.writeTo(buf, offset);
+            return;
+        }
+
+        List<DataBox> values = record.getValues();
+        for (int i = 0; i < values.size(); ++i) {
+            if (dictionaries[i] == null) {
+                offset += values.get(i).writeTo(buf, offset);
+            } else {
+                dictionaries[i].writeCode(buf, offset, dictionaries[i].encode(transaction, values.get(i)));
+                offset += dictionaries[i].getCodeSizeInBytes();
+            }
+        }
+    }
+
+    private Record readRecord(Buffer buf, int offset) {
+        if (!hasDictionaries) {
+            return Record.fromBytes(buf, offset, schema);
+        }
+
+        List<Type> types = schema.getFieldTypes();
+        List<DataBox> values = new ArrayList<>(types.size());
+        for (int i = 0; i < types.size(); ++i) {
+            if (dictionaries[i] == null) {
+                values.add(DataBox.fromBytes(buf, offset, types.get(i)));
+                offset += types.get(i).getSizeInBytes();
+            } else {
+                values.add(dictionaries[i].decode(dictionaries[i].readCode(buf, offset)));
+                offset += dictionaries[i].getCodeSizeInBytes();
+            }
+        }
+        return new Record(values);
     }
 
     /**
@@ -323,10 +457,121 @@ public class Table implements Closeable {
             throw new DatabaseException(msg);
         }
 
-        int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
-        Buffer buf = page.getBuffer(transaction);
-        buf.position(offset);
-        return Record.fromBytes(buf, schema);
+        int offset = bitmapSizeInBytes + (rid.getEntryNum() * recordSizeInBytes);
+        return readRecord(page.getBuffer(transaction), offset);
+    }
+
+    /**
+     * Returns the page numbers of every data page of the table in increasing
+     * order.
+     */
+    public List<Integer> getDataPageNums(BaseTransaction transaction) {
+        List<Integer> pageNums = allocator.getAllocatedPageNums(transaction);
+        // Page 0 is the header page.
+        pageNums.remove(Integer.valueOf(0));
+        return pageNums;
+    }
+
+    /**
+     * Returns every record on data page pageNum in entry number order. Unlike
+     * getRecord, this does not synchronize on the table: the page is copied out
+     * in one read and decoded from the copy, so several threads can read
+     * distinct pages of the table at once. A concurrent writer may or may not
+     * be reflected in the result, but each record is read whole.
+     */
+    public List<Record> getPageRecords(BaseTransaction transaction,
+                                       int pageNum) throws DatabaseException {
+        return getPageRecords(transaction, pageNum, null);
+    }
+
+    /**
+     * Like getPageRecords(transaction, pageNum), but only returns the records
+     * that satisfy predicate (which must have been compiled by this table's
+     * compilePredicate), or every record if predicate is null. Records are
+     * tested in place in the page and only the ones that qualify are decoded.
+     */
+    public List<Record> getPageRecords(BaseTransaction transaction, int pageNum,
+                                       ScanPredicate predicate) throws DatabaseException {
+        validateRecordId(new RecordId(pageNum, (short) 0));
+        Page page = allocator.fetchPage(transaction, pageNum);
+        Buffer buf = ByteBuffer.wrap(page.readBytes(transaction));
+
+        byte[] bitmap = new byte[bitmapSizeInBytes];
+        buf.get(bitmap);
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecordsPerPage; ++i) {
+            int offset = bitmapSizeInBytes + i * recordSizeInBytes;
+            if (Bits.getBit(bitmap, i) == Bits.Bit.ONE &&
+                    (predicate == null || predicate.test(buf, offset))) {
+                records.add(readRecord(buf, offset));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Compiles the conjunction of `columnIndices[i] operators[i] values[i]`
+     * against the record layout of this table, for getPageRecords.
+     */
+    public ScanPredicate compilePredicate(List<Integer> columnIndices,
+                                          List<PredicateOperator> operators,
+                                          List<DataBox> values) {
+        return new ScanPredicate(schema, dictionaries, columnIndices, operators, values);
+    }
+
+    /**
+     * Allocates numPages new, empty data pages and returns their page numbers in
+     * order. The pages are reserved: addRecord will not place records on them,
+     * and they are meant to be written exactly once with fillDataPage. This
+     * lets several threads write disjoint pages of a table at once, e.g. the
+     * key ranges of a parallel sort's final merge.
+     */
+    public synchronized List<Integer> allocDataPages(BaseTransaction transaction, int numPages) {
+        List<Integer> pageNums = new ArrayList<>(numPages);
+        for (int i = 0; i < numPages; ++i) {
+            pageNums.add(allocator.allocPage(transaction));
+        }
+        return pageNums;
+    }
+
+    /**
+     * Writes records to entries 0 through records.size() - 1 of page pageNum,
+     * which must be an empty page returned by allocDataPages. Only the metadata
+     * update at the end synchronizes on the table.
+     */
+    public void fillDataPage(BaseTransaction transaction, int pageNum,
+                             List<Record> records) throws DatabaseException {
+        validateRecordId(new RecordId(pageNum, (short) 0));
+        if (records.size() > numRecordsPerPage) {
+            String msg = String.format("Cannot fill a page with %d records; a page holds at most %d.",
+                                       records.size(), numRecordsPerPage);
+            throw new DatabaseException(msg);
+        }
+
+        List<Record> verified = new ArrayList<>(records.size());
+        for (Record record : records) {
+            verified.add(schema.verify(record.getValues()));
+        }
+
+        byte[] bytes = new byte[Page.pageSize];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        byte[] bitmap = new byte[bitmapSizeInBytes];
+        for (int i = 0; i < verified.size(); ++i) {
+            writeRecord(transaction, buf, bitmapSizeInBytes + i * recordSizeInBytes, verified.get(i));
+            setBit(bitmap, i, Bits.Bit.ONE);
+        }
+        buf.position(0).put(bitmap);
+        allocator.fetchPage(transaction, pageNum).writeBytes(transaction, bytes);
+
+        synchronized (this) {
+            for (Record record : verified) {
+                stats.addRecord(record);
+            }
+            numRecords += verified.size();
+            if (verified.size() < numRecordsPerPage) {
+                freePageNums.add(pageNum);
+            }
+        }
     }
 
     /**
@@ -378,8 +623,103 @@ public class Table implements Closeable {
         freePageNums.clear();
     }
 
+    /**
+     * Compacts the table in place so that it occupies as few data pages as
+     * possible. Records are moved out of the highest numbered data pages into
+     * free slots of the lowest numbered ones until every data page but the last
+     * is full; the data pages emptied this way are freed and the file is
+     * truncated. Records are copied byte for byte, so neither stats nor
+     * dictionaries change. The table's monitor is held throughout, so no
+     * other operation on the table runs during compaction. Any index over
+     * the table has to be repointed at the moved records before anyone else
+     * uses the table, so callers repoint the indexes while still holding the
+     * monitor; see Database.Transaction#compactTable.
+     *
+     * @return a map from the old record id of every moved record to its new
+     * record id, in the order the records were moved
+     */
+    public synchronized Map<RecordId, RecordId> compact(BaseTransaction transaction) {
+        List<Page> pages = new ArrayList<>();
+        List<byte[]> bitmaps = new ArrayList<>();
+        Iterator<Page> iter = allocator.iterator(transaction);
+        iter.next(); // Skip the header page.
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            pages.add(page);
+            bitmaps.add(getBitMap(transaction, page));
+        }
+
+        Map<RecordId, RecordId> moved = new LinkedHashMap<>();
+        byte[] bytes = new byte[recordSizeInBytes];
+        int dst = 0;
+        int dstEntry = 0;
+        int src = pages.size() - 1;
+        int srcEntry = numRecordsPerPage - 1;
+        while (dst < src) {
+            // Find the next free slot, scanning forwards from the front...
+            if (dstEntry == numRecordsPerPage) {
+                dst++;
+                dstEntry = 0;
+                continue;
+            }
+            if (Bits.getBit(bitmaps.get(dst), dstEntry) == Bits.Bit.ONE) {
+                dstEntry++;
+                continue;
+            }
+            // ...and the next record, scanning backwards from the back.
+            if (srcEntry < 0) {
+                src--;
+                srcEntry = numRecordsPerPage - 1;
+                continue;
+            }
+            if (Bits.getBit(bitmaps.get(src), srcEntry) == Bits.Bit.ZERO) {
+                srcEntry--;
+                continue;
+            }
+
+            Page srcPage = pages.get(src);
+            Page dstPage = pages.get(dst);
+            srcPage.getBuffer(transaction).position(bitmapSizeInBytes + srcEntry * recordSizeInBytes).get(bytes);
+            dstPage.getBuffer(transaction).position(bitmapSizeInBytes + dstEntry * recordSizeInBytes).put(bytes);
+            Bits.setBit(dstPage.getBuffer(transaction), dstEntry, Bits.Bit.ONE);
+            Bits.setBit(srcPage.getBuffer(transaction), srcEntry, Bits.Bit.ZERO);
+            setBit(bitmaps.get(dst), dstEntry, Bits.Bit.ONE);
+            setBit(bitmaps.get(src), srcEntry, Bits.Bit.ZERO);
+            moved.put(new RecordId(srcPage.getPageNum(), (short) srcEntry),
+                      new RecordId(dstPage.getPageNum(), (short) dstEntry));
+        }
+
+        // Free every page left empty and rebuild freePageNums from scratch.
+        freePageNums.clear();
+        for (int i = 0; i < pages.size(); ++i) {
+            int numRecordsOnPage = 0;
+            for (int j = 0; j < numRecordsPerPage; ++j) {
+                if (Bits.getBit(bitmaps.get(i), j) == Bits.Bit.ONE) {
+                    numRecordsOnPage++;
+                }
+            }
+            if (numRecordsOnPage == 0) {
+                allocator.freePage(transaction, pages.get(i));
+            } else if (numRecordsOnPage < numRecordsPerPage) {
+                freePageNums.add(pages.get(i).getPageNum());
+            }
+        }
+        allocator.truncate(transaction);
+
+        return moved;
+    }
+
+    private static void setBit(byte[] bitmap, int i, Bits.Bit bit) {
+        bitmap[i / 8] = Bits.setBit(bitmap[i / 8], i % 8, bit);
+    }
+
     public void close() {
         allocator.close();
+        for (StringDictionary dictionary : dictionaries) {
+            if (dictionary != null) {
+                dictionary.close();
+            }
+        }
     }
 
     // Helpers ///////////////////////////////////////////////////////////////////
@@ -391,10 +731,59 @@ public class Table implements Closeable {
     }
 
     private static void writeSchemaToHeaderPage(BaseTransaction transaction, PageAllocator allocator,
-            Schema schema) {
+            Schema schema, StringDictionary[] dictionaries) {
         Page headerPage = allocator.fetchPage(transaction, allocator.allocPage(transaction));
         assert(0 == headerPage.getPageNum());
-        headerPage.getBuffer(transaction).put(schema.toBytes());
+        Buffer buf = headerPage.getBuffer(transaction);
+        buf.put(schema.toBytes());
+
+        // The schema is followed by the number of dictionary encoded columns (4
+        // bytes) and then the index of each one (4 bytes each). Tables written
+        // before dictionary encoding existed have zeros here.
+        List<Integer> encoded = new ArrayList<>();
+        for (int i = 0; i < dictionaries.length; ++i) {
+            if (dictionaries[i] != null) {
+                encoded.add(i);
+            }
+        }
+        buf.putInt(encoded.size());
+        for (int i : encoded) {
+            buf.putInt(i);
+        }
+    }
+
+    private static StringDictionary[] readDictionariesFromHeaderPage(BaseTransaction transaction,
+            PageAllocator allocator, Schema schema, String filename) throws DatabaseException {
+        Buffer buf = allocator.fetchPage(transaction, 0).getBuffer(transaction);
+        buf.position(schema.toBytes().length);
+        StringDictionary[] dictionaries = new StringDictionary[schema.getFieldNames().size()];
+        int numEncoded = buf.getInt();
+        for (int j = 0; j < numEncoded; ++j) {
+            int i = buf.getInt();
+            dictionaries[i] = new StringDictionary(getDictionaryFilename(filename, i),
+                                                   schema.getFieldTypes().get(i), transaction);
+        }
+        return dictionaries;
+    }
+
+    /**
+     * Returns the name of the file in which the dictionary of column
+     * columnIndex of the table persisted in tableFilename is stored.
+     */
+    public static String getDictionaryFilename(String tableFilename, int columnIndex) {
+        return tableFilename + "." + columnIndex + StringDictionary.FILENAME_EXTENSION;
+    }
+
+    private static int computeRecordSizeInBytes(Schema schema, StringDictionary[] dictionaries) {
+        int size = 0;
+        for (int i = 0; i < schema.getFieldNames().size(); ++i) {
+            if (dictionaries[i] == null) {
+                size += schema.getFieldTypes().get(i).getSizeInBytes();
+            } else {
+                size += dictionaries[i].getCodeSizeInBytes();
+            }
+        }
+        return size;
     }
 
     /**
@@ -415,10 +804,10 @@ public class Table implements Closeable {
      *   | 18 bytes  | 2 byte      | 2                 | 16                |
      *   | 19 bytes  | 2 byte      | 2                 | 16                |
      */
-    private static int computeUnroundedNumRecordsPerPage(int pageSize, Schema schema) {
+    private static int computeUnroundedNumRecordsPerPage(int pageSize, int recordSizeInBytes) {
         // Storing each record requires 1 bit for the bitmap and 8 *
-        // schema.getSizeInBytes() bits for the record.
-        int recordOverheadInBits = 1 + 8 * schema.getSizeInBytes();
+        // recordSizeInBytes bits for the record.
+        int recordOverheadInBits = 1 + 8 * recordSizeInBytes;
         int pageSizeInBits = pageSize * 8;
         return pageSizeInBits / recordOverheadInBits;
     }
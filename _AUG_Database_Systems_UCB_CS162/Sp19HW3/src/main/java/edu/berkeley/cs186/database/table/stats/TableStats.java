@@ -177,6 +177,23 @@ public class TableStats {
         return new TableStats(this.tableSchema, numRecords, copyHistograms);
     }
 
+    /**
+     * Estimates the table statistics for the table that would be produced by
+     * keeping only the given columns of each record, in the given order: the
+     * same number of records, with the histograms of those columns.
+     */
+    public TableStats copyWithColumns(List<Integer> columns) {
+        List<String> fieldNames = new ArrayList<>();
+        List<Type> fieldTypes = new ArrayList<>();
+        List<Histogram> copyHistograms = new ArrayList<>();
+        for (int column : columns) {
+            fieldNames.add(tableSchema.getFieldNames().get(column));
+            fieldTypes.add(tableSchema.getFieldTypes().get(column));
+            copyHistograms.add(histograms.get(column));
+        }
+        return new TableStats(new Schema(fieldNames, fieldTypes), this.numRecords, copyHistograms);
+    }
+
     /**
      * Creates a new TableStats which is the statistics for the table
      * that results from this TableStats joined with the given TableStats.
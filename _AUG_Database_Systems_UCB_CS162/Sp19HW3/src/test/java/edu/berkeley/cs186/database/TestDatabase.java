@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.table.*;
 
 import org.junit.After;
@@ -13,6 +14,11 @@ import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 @Category({HW99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -109,6 +115,162 @@ public class TestDatabase {
         t2.end();
     }
 
+    @Test
+    public void testTransactionSpillFile() throws DatabaseException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+
+        Database.Transaction t1 = db.beginTransaction();
+        SpillFile spill1 = t1.createSpillFile(s);
+        SpillFile spill2 = t1.createSpillFile(s);
+        spill1.append(input);
+        assertEquals(input, spill1.get(0));
+        assertEquals(2, t1.spillFiles.size());
+
+        // A closed spill file is deleted and no longer held by the transaction.
+        spill1.close();
+        assertFalse(new File(spill1.getFilename()).exists());
+        assertEquals(Collections.singleton(spill2), t1.spillFiles);
+
+        t1.end();
+        assertFalse(new File(spill2.getFilename()).exists());
+        assertTrue(t1.spillFiles.isEmpty());
+    }
+
+    @Test
+    public void testCreateIndex() throws DatabaseException {
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(TestUtils.createSchemaWithTwoInts(), tableName);
+        for (int i = 0; i < 1000; ++i) {
+            t1.addRecord(tableName, Arrays.asList(new IntDataBox(i % 10), new IntDataBox(i)));
+        }
+        t1.createIndex(tableName, "int1", 1.0f);
+        t1.createCompositeIndex(tableName, Arrays.asList("int2", "int1"), 0.75f);
+
+        assertTrue(t1.indexExists(tableName, "int1"));
+        assertTrue(t1.indexExists(tableName, "int2,int1"));
+        assertFalse(t1.indexExists(tableName, "int2"));
+        assertEquals(Arrays.asList(Collections.singletonList("int1"), Arrays.asList("int2", "int1")),
+                     t1.getIndexColumns(tableName));
+        t1.end();
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testCreateIndexTwice() throws DatabaseException {
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(TestUtils.createSchemaWithTwoInts(), tableName,
+                                  Collections.singletonList("int1"));
+        t1.createIndex(tableName, "int1", 1.0f);
+        t1.end();
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testCreateIndexOnMissingColumn() throws DatabaseException {
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(TestUtils.createSchemaWithTwoInts(), tableName);
+        t1.createIndex(tableName, "int3", 1.0f);
+        t1.end();
+    }
+
+    @Test
+    public void testHashIndex() throws DatabaseException {
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(TestUtils.createSchemaWithTwoInts(), tableName,
+                                  Collections.emptyList(), Collections.singletonList("int1"));
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rids.add(t1.addRecord(tableName, Arrays.asList(new IntDataBox(i % 10), new IntDataBox(i))));
+        }
+        assertTrue(t1.hashIndexExists(tableName, "int1"));
+        assertFalse(t1.indexExists(tableName, "int1"));
+        assertFalse(t1.hashIndexExists(tableName, "int2"));
+        assertEquals(100, count(t1.lookupKey(tableName, "int1", new IntDataBox(3))));
+        assertFalse(t1.contains(tableName, "int1", new IntDataBox(10)));
+
+        // Deletes and updates keep the index in step with the table.
+        for (int i = 3; i < 1000; i += 10) {
+            t1.deleteRecord(tableName, rids.get(i));
+        }
+        assertFalse(t1.contains(tableName, "int1", new IntDataBox(3)));
+        t1.updateRecord(tableName, Arrays.asList(new IntDataBox(3), new IntDataBox(4)), rids.get(4));
+        assertEquals(1, count(t1.lookupKey(tableName, "int1", new IntDataBox(3))));
+        assertEquals(99, count(t1.lookupKey(tableName, "int1", new IntDataBox(4))));
+
+        // An index added to a table that has records is loaded with them.
+        t1.createHashIndex(tableName, "int2");
+        Iterator<Record> records = t1.lookupKey(tableName, "int2", new IntDataBox(4));
+        assertEquals(Arrays.asList(new IntDataBox(3), new IntDataBox(4)), records.next().getValues());
+        assertFalse(records.hasNext());
+        t1.end();
+
+        db.close();
+        db = new Database(this.filename);
+        t1 = db.beginTransaction();
+        assertTrue(t1.hashIndexExists(tableName, "int2"));
+        assertEquals(99, count(t1.lookupKey(tableName, "int1", new IntDataBox(4))));
+        t1.end();
+    }
+
+    @Test
+    public void testHashIndexConcurrentInserts() throws DatabaseException, InterruptedException {
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(TestUtils.createSchemaWithTwoInts(), tableName);
+        for (int i = 0; i < 2000; ++i) {
+            t1.addRecord(tableName, Arrays.asList(new IntDataBox(i % 10), new IntDataBox(i)));
+        }
+
+        // Records inserted while the index is built end up in it exactly once.
+        Database.Transaction t2 = db.beginTransaction();
+        List<DatabaseException> errors = Collections.synchronizedList(new ArrayList<>());
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 2000; i < 4000; ++i) {
+                    t2.addRecord(tableName, Arrays.asList(new IntDataBox(i % 10), new IntDataBox(i)));
+                }
+            } catch (DatabaseException e) {
+                errors.add(e);
+            }
+        });
+        writer.start();
+        t1.createHashIndex(tableName, "int2");
+        writer.join();
+        assertEquals(Collections.emptyList(), errors);
+        for (int i = 0; i < 4000; ++i) {
+            assertEquals(1, count(t1.lookupKey(tableName, "int2", new IntDataBox(i))));
+        }
+        t2.end();
+        t1.end();
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testHashIndexTwice() throws DatabaseException {
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(TestUtils.createSchemaWithTwoInts(), tableName,
+                                  Collections.emptyList(), Collections.singletonList("int1"));
+        t1.createHashIndex(tableName, "int1");
+        t1.end();
+    }
+
+    private static int count(Iterator<Record> records) {
+        int n = 0;
+        for (; records.hasNext(); records.next()) {
+            ++n;
+        }
+        return n;
+    }
+
     @Test
     public void testDatabaseDurablity() throws DatabaseException {
         Schema s = TestUtils.createSchemaWithAllTypes();
@@ -84,6 +84,10 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public List<List<String>> getIndexColumns(String tableName) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -98,6 +102,18 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public Iterator<Record> rangeScan(String tableName, String columnName,
+                                      DataBox lo, boolean loInclusive,
+                                      DataBox hi, boolean hiInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> indexOnlyScan(String tableName, String columnName,
+                                          DataBox lo, boolean loInclusive,
+                                          DataBox hi, boolean hiInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -1,12 +1,16 @@
 package edu.berkeley.cs186.database.databox;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
@@ -46,6 +50,23 @@ public class TestIntDataBox {
         }
     }
 
+    @Test
+    public void testWriteToAndFromBytes() {
+        byte[] bytes = new byte[2 + 20 * Integer.BYTES];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        for (int i = -10; i < 10; ++i) {
+            IntDataBox d = new IntDataBox(i);
+            int offset = 2 + (i + 10) * Integer.BYTES;
+            assertEquals(Integer.BYTES, d.writeTo(buf, offset));
+            assertArrayEquals(d.toBytes(), Arrays.copyOfRange(bytes, offset, offset + Integer.BYTES));
+        }
+        for (int i = -10; i < 10; ++i) {
+            int offset = 2 + (i + 10) * Integer.BYTES;
+            assertEquals(new IntDataBox(i), DataBox.fromBytes(buf, offset, Type.intType()));
+        }
+        assertEquals(0, buf.position());
+    }
+
     @Test
     public void testEquals() {
         IntDataBox zero = new IntDataBox(0);
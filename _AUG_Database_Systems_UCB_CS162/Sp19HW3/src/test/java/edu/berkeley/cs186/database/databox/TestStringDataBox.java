@@ -1,12 +1,16 @@
 package edu.berkeley.cs186.database.databox;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
@@ -76,6 +80,22 @@ public class TestStringDataBox {
         }
     }
 
+    @Test
+    public void testWriteToAndFromBytes() {
+        byte[] bytes = new byte[1 + 3 * 5];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        String[] strings = new String[] {"foo", "bar", "baz"};
+        for (int i = 0; i < strings.length; ++i) {
+            StringDataBox d = new StringDataBox(strings[i], 5);
+            assertEquals(5, d.writeTo(buf, 1 + i * 5));
+            assertArrayEquals(d.toBytes(), Arrays.copyOfRange(bytes, 1 + i * 5, 1 + (i + 1) * 5));
+        }
+        for (int i = 0; i < strings.length; ++i) {
+            DataBox d = DataBox.fromBytes(buf, 1 + i * 5, Type.stringType(5));
+            assertEquals(new StringDataBox(strings[i], 5), d);
+        }
+    }
+
     @Test
     public void testEquals() {
         StringDataBox foo = new StringDataBox("foo", 3);
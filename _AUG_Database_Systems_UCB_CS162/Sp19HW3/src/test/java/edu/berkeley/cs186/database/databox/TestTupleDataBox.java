@@ -0,0 +1,114 @@
+package edu.berkeley.cs186.database.databox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({HW99Tests.class, SystemTests.class})
+public class TestTupleDataBox {
+    private static TupleDataBox tuple(int i, String s) {
+        return new TupleDataBox(Arrays.asList(new IntDataBox(i), new StringDataBox(s, 3)));
+    }
+
+    private static TupleDataBox tuple(int i) {
+        return new TupleDataBox(Collections.singletonList(new IntDataBox(i)));
+    }
+
+    @Test
+    public void testType() {
+        assertEquals(Type.tupleType(Arrays.asList(Type.intType(), Type.stringType(3))),
+                     tuple(0, "a").type());
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testGetInt() {
+        tuple(0, "a").getInt();
+    }
+
+    @Test
+    public void testGetValues() {
+        assertEquals(Arrays.asList(new IntDataBox(0), new StringDataBox("a", 3)), tuple(0, "a").getValues());
+    }
+
+    @Test
+    public void testToAndFromBytes() {
+        for (int i = -10; i < 10; ++i) {
+            TupleDataBox d = tuple(i, "x" + (i + 10));
+            byte[] bytes = d.toBytes();
+            assertEquals(7, bytes.length);
+            assertEquals(d, DataBox.fromBytes(ByteBuffer.wrap(bytes), d.type()));
+        }
+    }
+
+    @Test
+    public void testWriteToAndFromBytes() {
+        byte[] bytes = new byte[2 + 20 * 7];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        for (int i = -10; i < 10; ++i) {
+            TupleDataBox d = tuple(i, "x" + (i + 10));
+            int offset = 2 + (i + 10) * 7;
+            assertEquals(7, d.writeTo(buf, offset));
+            assertArrayEquals(d.toBytes(), Arrays.copyOfRange(bytes, offset, offset + 7));
+        }
+        for (int i = -10; i < 10; ++i) {
+            int offset = 2 + (i + 10) * 7;
+            TupleDataBox d = tuple(i, "x" + (i + 10));
+            assertEquals(d, DataBox.fromBytes(buf, offset, d.type()));
+        }
+        assertEquals(0, buf.position());
+    }
+
+    @Test
+    public void testEquals() {
+        assertEquals(tuple(0, "a"), tuple(0, "a"));
+        assertNotEquals(tuple(0, "a"), tuple(0, "b"));
+        assertNotEquals(tuple(0, "a"), tuple(1, "a"));
+        assertNotEquals(tuple(0), tuple(0, "a"));
+        assertNotEquals(tuple(0), new IntDataBox(0));
+    }
+
+    @Test
+    public void testCompareTo() {
+        // Lexicographic on the fields.
+        assertTrue(tuple(0, "a").compareTo(tuple(0, "a")) == 0);
+        assertTrue(tuple(0, "a").compareTo(tuple(0, "b")) < 0);
+        assertTrue(tuple(0, "z").compareTo(tuple(1, "a")) < 0);
+        assertTrue(tuple(1, "a").compareTo(tuple(0, "z")) > 0);
+
+        // A prefix comes before the tuples that start with it.
+        assertTrue(tuple(0).compareTo(tuple(0, "a")) < 0);
+        assertTrue(tuple(0, "a").compareTo(tuple(0)) > 0);
+        assertTrue(tuple(1).compareTo(tuple(0, "z")) > 0);
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testCompareToPrimitive() {
+        tuple(0).compareTo(new IntDataBox(0));
+    }
+
+    @Test
+    public void testComparePrefix() {
+        assertTrue(tuple(0, "a").comparePrefix(tuple(0)) == 0);
+        assertTrue(tuple(0, "z").comparePrefix(tuple(0)) == 0);
+        assertTrue(tuple(0, "z").comparePrefix(tuple(1)) < 0);
+        assertTrue(tuple(1, "a").comparePrefix(tuple(0)) > 0);
+        assertTrue(tuple(0, "a").comparePrefix(tuple(0, "b")) < 0);
+        assertTrue(tuple(0).comparePrefix(tuple(0, "a")) < 0);
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("(0, abc)", tuple(0, "abc").toString());
+    }
+}
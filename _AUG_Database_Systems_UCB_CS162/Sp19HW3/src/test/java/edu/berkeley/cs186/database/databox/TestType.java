@@ -1,12 +1,17 @@
 package edu.berkeley.cs186.database.databox;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
@@ -111,4 +116,40 @@ public class TestType {
         assertNotEquals(stringType, Type.stringType(1));
         assertEquals(stringType, Type.stringType(2));
     }
+
+    @Test
+    public void testTupleType() {
+        // Check type id and size.
+        Type tupleType = Type.tupleType(Arrays.asList(Type.intType(), Type.stringType(3)));
+        assertEquals(tupleType.getTypeId(), TypeId.TUPLE);
+        assertEquals(tupleType.getSizeInBytes(), 7);
+        assertEquals(tupleType.getFieldTypes(), Arrays.asList(Type.intType(), Type.stringType(3)));
+
+        // Check toBytes and fromBytes.
+        Buffer buf = ByteBuffer.wrap(tupleType.toBytes());
+        assertEquals(tupleType, Type.fromBytes(buf));
+
+        // Check equality.
+        assertEquals(tupleType, Type.tupleType(Arrays.asList(Type.intType(), Type.stringType(3))));
+        assertNotEquals(tupleType, Type.tupleType(Arrays.asList(Type.intType(), Type.stringType(2))));
+        assertNotEquals(tupleType, Type.tupleType(Arrays.asList(Type.stringType(3), Type.intType())));
+        assertNotEquals(tupleType, Type.intType());
+        assertNotEquals(tupleType, Type.stringType(7));
+
+        // Check prefixes.
+        assertTrue(Type.tupleType(Collections.singletonList(Type.intType())).isPrefixOf(tupleType));
+        assertTrue(tupleType.isPrefixOf(tupleType));
+        assertFalse(tupleType.isPrefixOf(Type.tupleType(Collections.singletonList(Type.intType()))));
+        assertFalse(Type.intType().isPrefixOf(tupleType));
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testEmptyTupleType() {
+        Type.tupleType(Collections.emptyList());
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testNestedTupleType() {
+        Type.tupleType(Collections.singletonList(Type.tupleType(Collections.singletonList(Type.intType()))));
+    }
 }
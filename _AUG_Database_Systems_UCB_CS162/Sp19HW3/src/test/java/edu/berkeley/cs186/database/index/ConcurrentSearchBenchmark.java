@@ -0,0 +1,184 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * Measures the throughput of concurrent lookups in a B+ tree of integer
+ * keys while a writer splits its leaves. This is not a unit test (surefire
+ * does not pick it up); run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.berkeley.cs186.database.index.ConcurrentSearchBenchmark \
+ *       -Dexec.args="<numKeys> <millisPerRun> <maxThreads>"
+ *
+ * for 1, 2, 4, ... up to maxThreads reader threads, each of
+ *
+ *   - latched: readers and the writer take turns on one latch of the tree,
+ *     which is what sharing a tree between threads took before readers
+ *     could follow right links;
+ *   - latch-free: only the writer takes the latch, and readers search the
+ *     tree as it is split under them (see BPlusNode.search).
+ *
+ * The writer splits a leaf, and releases the latch, about every 100
+ * microseconds, without telling the parents of the leaves, so lookups of
+ * the keys that moved go through right links. Lookups per second are
+ * reported, summed over the readers. Readers only scale with the cores of
+ * the machine, and the pages they read are fetched through the page cache
+ * of PageAllocator, which all threads share.
+ */
+public class ConcurrentSearchBenchmark {
+    public static void main(String[] args) throws Exception {
+        int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        long millisPerRun = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        System.out.printf("%d keys, %d cores%n%10s %12s %16s%n", numKeys,
+                          Runtime.getRuntime().availableProcessors(), "threads", "layout", "lookups/s");
+        // Warm up the JIT before measuring.
+        measure(numKeys, maxThreads, true, millisPerRun);
+        measure(numKeys, maxThreads, false, millisPerRun);
+        for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+            for (boolean latched : new boolean[] {true, false}) {
+                double rate = measure(numKeys, numThreads, latched, millisPerRun);
+                System.out.printf("%10d %12s %16.0f%n", numThreads, latched ? "latched" : "latch-free", rate);
+            }
+        }
+    }
+
+    /** Loads a new tree of numKeys keys and returns the lookups per second of run. */
+    private static double measure(int numKeys, int numThreads, boolean latched, long millis)
+    throws Exception {
+        File file = File.createTempFile("ConcurrentSearchBenchmark", ".index");
+        file.deleteOnExit();
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), true, false, null);
+        BPlusTreeMetadata metadata = new BPlusTreeMetadata(allocator, Type.intType(),
+                BPlusTree.maxOrder(Page.pageSize, Type.intType()));
+        List<LeafNode> leaves = new ArrayList<>();
+        int root = load(metadata, numKeys, leaves);
+        double rate = run(metadata, root, leaves, numKeys, numThreads, latched, millis);
+        allocator.close();
+        return rate;
+    }
+
+    /** Runs numThreads readers and a writer for millis, and returns the lookups per second. */
+    private static double run(BPlusTreeMetadata metadata, int root, List<LeafNode> leaves, int numKeys,
+                              int numThreads, boolean latched, long millis) throws InterruptedException {
+        ReentrantLock latch = new ReentrantLock();
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicLong numLookups = new AtomicLong(0);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                long n = 0;
+                while (!done.get()) {
+                    DataBox key = new IntDataBox(random.nextInt(numKeys));
+                    Optional<RecordId> rid;
+                    if (latched) {
+                        latch.lock();
+                        try {
+                            rid = BPlusNode.search(null, metadata, root, key);
+                        } finally {
+                            latch.unlock();
+                        }
+                    } else {
+                        rid = BPlusNode.search(null, metadata, root, key);
+                    }
+                    if (!rid.isPresent()) {
+                        throw new IllegalStateException("Lost key " + key + ".");
+                    }
+                    ++n;
+                }
+                numLookups.addAndGet(n);
+            }));
+        }
+        threads.add(new Thread(() -> {
+            Random random = new Random(42);
+            while (!done.get()) {
+                LeafNode leaf = leaves.get(random.nextInt(leaves.size()));
+                if (leaf.getKeys().size() > 1) {
+                    latch.lock();
+                    try {
+                        leaves.add(leaf.split(null));
+                    } finally {
+                        latch.unlock();
+                    }
+                }
+                try {
+                    Thread.sleep(0, 100000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }));
+
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        Thread.sleep(millis);
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return numLookups.get() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Loads the keys 0, ..., numKeys - 1 into full leaves and a single level
+     * of inner nodes under a root, adds the leaves to leaves, and returns the
+     * page number of the root.
+     */
+    private static int load(BPlusTreeMetadata metadata, int numKeys, List<LeafNode> leaves) {
+        int maxKeys = 2 * metadata.getOrder();
+        int numLeaves = (numKeys + maxKeys - 1) / maxKeys;
+        LeafNode[] built = new LeafNode[numLeaves];
+        Optional<Integer> sibling = Optional.empty();
+        for (int i = numLeaves - 1; i >= 0; --i) {
+            List<DataBox> keys = new ArrayList<>();
+            List<RecordId> rids = new ArrayList<>();
+            for (int k = i * maxKeys; k < Math.min(numKeys, (i + 1) * maxKeys); ++k) {
+                keys.add(new IntDataBox(k));
+                rids.add(new RecordId(k, (short) 0));
+            }
+            built[i] = new LeafNode(metadata, keys, rids, sibling, null);
+            sibling = Optional.of(built[i].getPage().getPageNum());
+        }
+        for (LeafNode leaf : built) {
+            leaves.add(leaf);
+        }
+
+        // Group the leaves under inner nodes of up to maxKeys + 1 children,
+        // and those under the root.
+        List<DataBox> rootKeys = new ArrayList<>();
+        List<Integer> rootChildren = new ArrayList<>();
+        for (int first = 0; first < numLeaves; first += maxKeys + 1) {
+            List<DataBox> keys = new ArrayList<>();
+            List<Integer> children = new ArrayList<>();
+            for (int i = first; i < Math.min(numLeaves, first + maxKeys + 1); ++i) {
+                if (i > first) {
+                    keys.add(new IntDataBox(i * maxKeys));
+                }
+                children.add(built[i].getPage().getPageNum());
+            }
+            if (first > 0) {
+                rootKeys.add(new IntDataBox(first * maxKeys));
+            }
+            rootChildren.add(new InnerNode(metadata, keys, children, null).getPage().getPageNum());
+        }
+        return new InnerNode(metadata, rootKeys, rootChildren, null).getPage().getPageNum();
+    }
+}
@@ -0,0 +1,179 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * Compares the height of, and lookups in, B+ trees of stringType(64) keys
+ * whose nodes are filled the way fixed-width keys allow and the way
+ * compressed keys (see KeyCompression) allow. This is not a unit test
+ * (surefire does not pick it up); run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.berkeley.cs186.database.index.StringKeyBenchmark \
+ *       -Dexec.args="<numKeys> <numLookups> <numTrials>"
+ *
+ *   - fixed: every node holds at most 2d keys for the order d of 64 byte
+ *     keys, and a split passes up the first key of the right node, as
+ *     before keys were compressed;
+ *   - compressed: every node holds as many keys as fit on its page, and a
+ *     split passes up the shortest separator.
+ *
+ * Both trees are loaded bottom up from the same sorted keys, which share
+ * long prefixes like the keys of most string indexes do. A lookup is a
+ * BPlusNode.search, which reads one page per level. The best time of all
+ * trials is reported for each.
+ */
+public class StringKeyBenchmark {
+    private static final Type keySchema = Type.stringType(64);
+
+    public static void main(String[] args) throws Exception {
+        int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int numTrials = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<DataBox> keys = new ArrayList<>(numKeys);
+        for (int i = 0; i < numKeys; ++i) {
+            keys.add(new StringDataBox(String.format("customer%08d order%04d", i / 16, i % 16), 64));
+        }
+        Random random = new Random(42);
+        List<DataBox> lookups = new ArrayList<>(numLookups);
+        for (int i = 0; i < numLookups; ++i) {
+            lookups.add(keys.get(random.nextInt(numKeys)));
+        }
+
+        int fixedOrder = (Page.pageSize - 9) / (keySchema.getSizeInBytes() + RecordId.getSizeInBytes()) / 2;
+        System.out.printf("%d keys, %d lookups%n%12s %8s %8s %14s %14s%n", numKeys, numLookups,
+                          "layout", "leaves", "height", "keys per leaf", "best us/lookup");
+        for (String layout : new String[] {"fixed", "compressed"}) {
+            File file = File.createTempFile("StringKeyBenchmark", ".index");
+            file.deleteOnExit();
+            PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), true, false, null);
+            BPlusTreeMetadata metadata = new BPlusTreeMetadata(allocator, keySchema,
+                    BPlusTree.maxOrder(Page.pageSize, keySchema));
+            boolean fixed = layout.equals("fixed");
+            Tree tree = load(metadata, keys, fixed, 2 * (fixed ? fixedOrder : metadata.getOrder()));
+
+            long best = Long.MAX_VALUE;
+            for (int trial = 0; trial < numTrials; ++trial) {
+                long start = System.nanoTime();
+                for (DataBox key : lookups) {
+                    if (!BPlusNode.search(null, metadata, tree.root, key).isPresent()) {
+                        throw new IllegalStateException(layout + " lost key " + key + ".");
+                    }
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%12s %8d %8d %14.1f %14.2f%n", layout, tree.numLeaves, tree.height,
+                              (double) numKeys / tree.numLeaves, best / 1e3 / numLookups);
+            allocator.close();
+        }
+    }
+
+    private static class Tree {
+        int root;
+        int numLeaves;
+        int height;
+    }
+
+    /**
+     * Loads sorted keys into full nodes of at most maxKeys keys each, level by
+     * level, and returns the root.
+     */
+    private static Tree load(BPlusTreeMetadata metadata, List<DataBox> keys, boolean fixed, int maxKeys) {
+        // Split the keys into leaves, and write them right to left so that each
+        // leaf knows its right sibling.
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int from = 0;
+        while (from < keys.size()) {
+            // The size of a leaf only grows with its keys, so binary search for
+            // the most keys that fit.
+            int lo = from + 1;
+            int hi = Math.min(keys.size(), from + maxKeys);
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (9 + KeyCompression.leafEntriesSize(keys.subList(from, mid)) <= Page.pageSize) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            bounds.add(lo);
+            from = lo;
+        }
+        int numLeaves = bounds.size() - 1;
+        int[] pageNums = new int[numLeaves];
+        Optional<Integer> sibling = Optional.empty();
+        for (int i = numLeaves - 1; i >= 0; --i) {
+            List<DataBox> leafKeys = new ArrayList<>(keys.subList(bounds.get(i), bounds.get(i + 1)));
+            List<RecordId> rids = new ArrayList<>();
+            for (int j = bounds.get(i); j < bounds.get(i + 1); ++j) {
+                rids.add(new RecordId(j, (short) 0));
+            }
+            pageNums[i] = new LeafNode(metadata, leafKeys, rids, sibling, null).getPage().getPageNum();
+            sibling = Optional.of(pageNums[i]);
+        }
+
+        // The nodes of each level, by page number and the first and last keys
+        // below them.
+        List<Integer> children = new ArrayList<>();
+        List<DataBox> firstKeys = new ArrayList<>();
+        List<DataBox> lastKeys = new ArrayList<>();
+        for (int i = 0; i < numLeaves; ++i) {
+            children.add(pageNums[i]);
+            firstKeys.add(keys.get(bounds.get(i)));
+            lastKeys.add(keys.get(bounds.get(i + 1) - 1));
+        }
+
+        int height = 1;
+        while (children.size() > 1) {
+            List<Integer> parents = new ArrayList<>();
+            List<DataBox> parentFirstKeys = new ArrayList<>();
+            List<DataBox> parentLastKeys = new ArrayList<>();
+            int i = 0;
+            while (i < children.size()) {
+                List<DataBox> innerKeys = new ArrayList<>();
+                List<Integer> innerChildren = new ArrayList<>();
+                innerChildren.add(children.get(i));
+                int first = i;
+                ++i;
+                while (i < children.size() && innerKeys.size() < maxKeys) {
+                    DataBox key = fixed ? firstKeys.get(i)
+                                  : KeyCompression.separator(lastKeys.get(i - 1), firstKeys.get(i));
+                    innerKeys.add(key);
+                    int size = 9 + KeyCompression.keysSize(innerKeys) + Integer.BYTES * (innerChildren.size() + 1);
+                    if (size > Page.pageSize) {
+                        innerKeys.remove(innerKeys.size() - 1);
+                        break;
+                    }
+                    innerChildren.add(children.get(i));
+                    ++i;
+                }
+                parents.add(new InnerNode(metadata, innerKeys, innerChildren, null).getPage().getPageNum());
+                parentFirstKeys.add(firstKeys.get(first));
+                parentLastKeys.add(lastKeys.get(i - 1));
+            }
+            children = parents;
+            firstKeys = parentFirstKeys;
+            lastKeys = parentLastKeys;
+            ++height;
+        }
+
+        Tree tree = new Tree();
+        tree.root = children.get(0);
+        tree.numLeaves = numLeaves;
+        tree.height = height;
+        return tree;
+    }
+}
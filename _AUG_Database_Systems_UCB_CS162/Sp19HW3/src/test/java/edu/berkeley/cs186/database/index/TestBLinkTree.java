@@ -0,0 +1,303 @@
+package edu.berkeley.cs186.database.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestBLinkTree {
+    public static final String testFile = "TestBLinkTree";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 1 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (1000 * TimeoutScaling.factor)));
+
+    @Before
+    public void clearCache() {
+        NodeCache.clear();
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private BPlusTreeMetadata getBPlusTreeMetadata(Type keySchema) throws IOException {
+        File file = tempFolder.newFile(testFile);
+        // Splits allocate many pages, which a durable allocator would flush
+        // to disk one at a time.
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), false, false, null);
+        return new BPlusTreeMetadata(allocator, keySchema, BPlusTree.maxOrder(Page.pageSize, keySchema));
+    }
+
+    private static RecordId ridOf(int i) {
+        return new RecordId(i, (short) (i % 100));
+    }
+
+    /**
+     * Writes numLeaves leaves of keys.size() / numLeaves keys each, linked
+     * left to right, and an inner node over them. Adds the leaves to leaves
+     * and returns the page number of the inner node.
+     */
+    private static int buildTree(BPlusTreeMetadata meta, List<DataBox> keys, int numLeaves,
+                                 List<LeafNode> leaves) {
+        int perLeaf = keys.size() / numLeaves;
+        LeafNode[] built = new LeafNode[numLeaves];
+        Optional<Integer> sibling = Optional.empty();
+        for (int i = numLeaves - 1; i >= 0; --i) {
+            List<DataBox> leafKeys = new ArrayList<>(keys.subList(i * perLeaf, (i + 1) * perLeaf));
+            List<RecordId> rids = new ArrayList<>();
+            for (int j = i * perLeaf; j < (i + 1) * perLeaf; ++j) {
+                rids.add(ridOf(j));
+            }
+            built[i] = new LeafNode(meta, leafKeys, rids, sibling, null);
+            sibling = Optional.of(built[i].getPage().getPageNum());
+        }
+        List<DataBox> innerKeys = new ArrayList<>();
+        List<Integer> children = new ArrayList<>();
+        for (int i = 0; i < numLeaves; ++i) {
+            if (i > 0) {
+                innerKeys.add(keys.get(i * perLeaf));
+            }
+            children.add(built[i].getPage().getPageNum());
+        }
+        leaves.addAll(Arrays.asList(built));
+        return new InnerNode(meta, innerKeys, children, null).getPage().getPageNum();
+    }
+
+    /**
+     * Splits the leaves of a tree over keys again and again, without ever
+     * telling their parent, while readers search for every key, and checks
+     * that every search finds its key.
+     */
+    private void searchWhileSplitting(BPlusTreeMetadata meta, List<DataBox> keys) throws Exception {
+        List<LeafNode> leaves = new ArrayList<>();
+        int root = buildTree(meta, keys, 4, leaves);
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 2; ++t) {
+            Random random = new Random(t);
+            readers.add(new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        int i = random.nextInt(keys.size());
+                        Optional<RecordId> rid = BPlusNode.search(null, meta, root, keys.get(i));
+                        if (!rid.equals(Optional.of(ridOf(i)))) {
+                            throw new AssertionError(keys.get(i) + " found as " + rid);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+
+        // Split until every leaf holds a single key. The inner node keeps
+        // pointing at the four leaves it started with.
+        while (!leaves.isEmpty()) {
+            LeafNode leaf = leaves.remove(leaves.size() - 1);
+            if (leaf.getKeys().size() > 1) {
+                LeafNode right = leaf.split(null);
+                leaves.add(leaf);
+                leaves.add(right);
+            }
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+
+        for (int i = 0; i < keys.size(); ++i) {
+            assertEquals(Optional.of(ridOf(i)), BPlusNode.search(null, meta, root, keys.get(i)));
+        }
+    }
+
+    /**
+     * Replaces the record id of every key, back and forth, while readers
+     * search for every key, and checks that every search finds its key with
+     * one of its two record ids. The first leaf is split beforehand without
+     * telling its parent, so some replacements follow a right link.
+     */
+    private void searchWhileReplacing(BPlusTreeMetadata meta, List<DataBox> keys) throws Exception {
+        List<LeafNode> leaves = new ArrayList<>();
+        int root = buildTree(meta, keys, 4, leaves);
+        leaves.get(0).split(null);
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 2; ++t) {
+            Random random = new Random(t);
+            readers.add(new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        int i = random.nextInt(keys.size());
+                        Optional<RecordId> rid = BPlusNode.search(null, meta, root, keys.get(i));
+                        if (!rid.equals(Optional.of(ridOf(i)))
+                                && !rid.equals(Optional.of(ridOf(i + keys.size())))) {
+                            throw new AssertionError(keys.get(i) + " found as " + rid);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+
+        for (int round = 1; round <= 4; ++round) {
+            int shift = round % 2 == 1 ? keys.size() : 0;
+            for (int i = 0; i < keys.size(); ++i) {
+                assertTrue(BPlusNode.replace(null, meta, root, keys.get(i), ridOf(i + shift)));
+            }
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+
+        for (int i = 0; i < keys.size(); ++i) {
+            assertEquals(Optional.of(ridOf(i)), BPlusNode.search(null, meta, root, keys.get(i)));
+        }
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testSplit() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType());
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            keys.add(new IntDataBox(i));
+            rids.add(ridOf(i));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.of(42), null);
+        LeafNode right = leaf.split(null);
+
+        assertEquals(Arrays.asList(new IntDataBox(0), new IntDataBox(1)), leaf.getKeys());
+        assertEquals(Arrays.asList(new IntDataBox(2), new IntDataBox(3), new IntDataBox(4)),
+                     right.getKeys());
+
+        // Only keys past the left leaf follow its right link, and past the
+        // right leaf, its old sibling.
+        Page page = leaf.getPage();
+        assertEquals(-1, LeafNode.rightLink(null, meta, page, new IntDataBox(1)));
+        assertEquals(right.getPage().getPageNum(), LeafNode.rightLink(null, meta, page, new IntDataBox(2)));
+        assertEquals(42, LeafNode.rightLink(null, meta, right.getPage(), new IntDataBox(5)));
+        assertEquals(-1, LeafNode.rightLink(null, meta, right.getPage(), new IntDataBox(4)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSearchFollowsRightLinks() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.stringType(8));
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            keys.add(new StringDataBox(String.format("key%03d", i), 8));
+        }
+        List<LeafNode> leaves = new ArrayList<>();
+        int root = buildTree(meta, keys, 2, leaves);
+
+        // The parent of the split leaves still sends every key of the first
+        // 20 to the first leaf.
+        LeafNode right = leaves.get(0).split(null);
+        right.split(null);
+        for (int i = 0; i < keys.size(); ++i) {
+            assertEquals(Optional.of(ridOf(i)), BPlusNode.search(null, meta, root, keys.get(i)));
+        }
+        assertEquals(Optional.empty(), BPlusNode.search(null, meta, root, new StringDataBox("key0185", 8)));
+        assertEquals(Optional.empty(), BPlusNode.search(null, meta, root, new StringDataBox("zzz", 8)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentSearchesWhileSplittingIntKeys() throws Exception {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType());
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 256; ++i) {
+            keys.add(new IntDataBox(2 * i));
+        }
+        searchWhileSplitting(meta, keys);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentSearchesWhileSplittingStringKeys() throws Exception {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.stringType(12));
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 256; ++i) {
+            keys.add(new StringDataBox(String.format("order%05d", i), 12));
+        }
+        searchWhileSplitting(meta, keys);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReplaceMissingKey() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType());
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            keys.add(new IntDataBox(2 * i));
+        }
+        int root = buildTree(meta, keys, 2, new ArrayList<>());
+        assertFalse(BPlusNode.replace(null, meta, root, new IntDataBox(3), ridOf(0)));
+        assertFalse(BPlusNode.replace(null, meta, root, new IntDataBox(16), ridOf(0)));
+        assertTrue(BPlusNode.replace(null, meta, root, new IntDataBox(14), ridOf(0)));
+        assertEquals(Optional.of(ridOf(0)), BPlusNode.search(null, meta, root, new IntDataBox(14)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentSearchesWhileReplacingIntKeys() throws Exception {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType());
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 256; ++i) {
+            keys.add(new IntDataBox(2 * i));
+        }
+        searchWhileReplacing(meta, keys);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentSearchesWhileReplacingStringKeys() throws Exception {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.stringType(12));
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 256; ++i) {
+            keys.add(new StringDataBox(String.format("order%05d", i), 12));
+        }
+        searchWhileReplacing(meta, keys);
+    }
+}
@@ -0,0 +1,177 @@
+package edu.berkeley.cs186.database.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestHashIndex {
+    public static final String testFile = "TestHashIndex";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 1 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (1000 * TimeoutScaling.factor)));
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private HashIndex getHashIndex(File file, Type keySchema) {
+        return new HashIndex(file.getAbsolutePath(), keySchema, new DummyLockContext(), null);
+    }
+
+    private static <T> List<T> toList(Iterator<T> iter) {
+        List<T> l = new ArrayList<>();
+        while (iter.hasNext()) {
+            l.add(iter.next());
+        }
+        return l;
+    }
+
+    private static RecordId ridOf(int i) {
+        return new RecordId(i, (short) (i % 100));
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testAddAndGet() throws IOException {
+        HashIndex index = getHashIndex(tempFolder.newFile(testFile), Type.intType());
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(1)));
+
+        index.add(null, new IntDataBox(1), ridOf(1));
+        index.add(null, new IntDataBox(2), ridOf(2));
+        index.add(null, new IntDataBox(1), ridOf(3));
+        index.add(null, new IntDataBox(1), ridOf(3));
+        assertEquals(Arrays.asList(ridOf(1), ridOf(3)), toList(index.scanEqual(null, new IntDataBox(1))));
+        assertEquals(Optional.of(ridOf(2)), index.get(null, new IntDataBox(2)));
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(3)));
+        assertEquals(0, index.getGlobalDepth());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSplits() throws IOException {
+        HashIndex index = getHashIndex(tempFolder.newFile(testFile), Type.intType());
+        for (int i = 0; i < 5000; ++i) {
+            index.add(null, new IntDataBox(i), ridOf(i));
+        }
+        // 5000 keys need at least 13 buckets of 408 entries, and none of
+        // them overflows.
+        assertTrue(index.getGlobalDepth() >= 4);
+        assertEquals(1, index.getPagesPerLookup());
+        for (int i = 0; i < 5000; ++i) {
+            assertEquals(Collections.singletonList(ridOf(i)), toList(index.scanEqual(null, new IntDataBox(i))));
+        }
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(5000)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOverflow() throws IOException {
+        HashIndex index = getHashIndex(tempFolder.newFile(testFile), Type.intType());
+        // More record ids of one key than fit on a page, which no split can
+        // tell apart, and a few other keys.
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rids.add(ridOf(i));
+            index.add(null, new IntDataBox(42), ridOf(i));
+        }
+        for (int i = 0; i < 10; ++i) {
+            index.add(null, new IntDataBox(i), ridOf(i));
+        }
+        assertEquals(new HashSet<>(rids), new HashSet<>(toList(index.scanEqual(null, new IntDataBox(42)))));
+        assertEquals(1000, toList(index.scanEqual(null, new IntDataBox(42))).size());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(Optional.of(ridOf(i)), index.get(null, new IntDataBox(i)));
+        }
+
+        // Emptied overflow pages are freed.
+        int numPages = index.getNumPages();
+        for (int i = 0; i < 1000; ++i) {
+            index.remove(null, new IntDataBox(42), ridOf(i));
+        }
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(42)));
+        assertTrue(index.getNumPages() < numPages);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(Optional.of(ridOf(i)), index.get(null, new IntDataBox(i)));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRemove() throws IOException {
+        HashIndex index = getHashIndex(tempFolder.newFile(testFile), Type.intType());
+        for (int i = 0; i < 1000; ++i) {
+            index.add(null, new IntDataBox(i % 100), ridOf(i));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            index.remove(null, new IntDataBox(i % 100), ridOf(i));
+        }
+        index.remove(null, new IntDataBox(1), ridOf(0));
+        for (int k = 0; k < 100; ++k) {
+            List<RecordId> expected = new ArrayList<>();
+            for (int i = k; i < 1000; i += 100) {
+                if (i % 2 == 1) {
+                    expected.add(ridOf(i));
+                }
+            }
+            assertEquals(new HashSet<>(expected), new HashSet<>(toList(index.scanEqual(null, new IntDataBox(k)))));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReadFromDisk() throws IOException {
+        File file = tempFolder.newFile(testFile);
+        Type keySchema = Type.stringType(10);
+        HashIndex index = getHashIndex(file, keySchema);
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            keys.add(new StringDataBox(String.format("key%05d", i), 10));
+            index.add(null, keys.get(i), ridOf(i));
+        }
+        int globalDepth = index.getGlobalDepth();
+        index.close();
+
+        HashIndex fromDisk = new HashIndex(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(globalDepth, fromDisk.getGlobalDepth());
+        for (int i = 0; i < 2000; ++i) {
+            assertEquals(Optional.of(ridOf(i)), fromDisk.get(null, keys.get(i)));
+        }
+        fromDisk.add(null, new StringDataBox("new", 10), ridOf(7));
+        assertEquals(Optional.of(ridOf(7)), fromDisk.get(null, new StringDataBox("new", 10)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @Category(PublicTests.class)
+    public void testWrongKeyType() throws IOException {
+        HashIndex index = getHashIndex(tempFolder.newFile(testFile), Type.intType());
+        index.add(null, new StringDataBox("a", 1), ridOf(0));
+    }
+}
@@ -376,6 +376,32 @@ public class TestInnerNode {
         assertEquals(5, InnerNode.numLessThan(7, sparseWithDuplicates));
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testSearchChild() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), 2);
+        for (int i = 0; i < 30; ++i) {
+            int child = i < 10 ? leaf0 : i < 20 ? leaf1 : leaf2;
+            assertEquals(child, InnerNode.searchChild(null, meta, inner.getPage(), new IntDataBox(i)));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSearch() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), 2);
+        int root = inner.getPage().getPageNum();
+        for (List<DataBox> keys : Arrays.asList(keys0, keys1, keys2)) {
+            for (DataBox key : keys) {
+                RecordId rid = new RecordId(key.getInt(), (short) key.getInt());
+                assertEquals(Optional.of(rid), BPlusNode.search(null, meta, root, key));
+            }
+        }
+        assertEquals(Optional.empty(), BPlusNode.search(null, meta, root, new IntDataBox(0)));
+        assertEquals(Optional.empty(), BPlusNode.search(null, meta, root, new IntDataBox(10)));
+        assertEquals(Optional.empty(), BPlusNode.search(null, meta, root, new IntDataBox(24)));
+    }
+
     @Test
     @Category(SystemTests.class)
     public void testToSexp() {
@@ -0,0 +1,171 @@
+package edu.berkeley.cs186.database.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestKeyCompression {
+    public static final String testFile = "TestKeyCompression";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 1 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (1000 * TimeoutScaling.factor)));
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private BPlusTreeMetadata getBPlusTreeMetadata(Type keySchema, int order) throws IOException {
+        File file = tempFolder.newFile(testFile);
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), false, null);
+        return new BPlusTreeMetadata(allocator, keySchema, order);
+    }
+
+    private static DataBox string(String s) {
+        return new StringDataBox(s, 64);
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testSeparator() {
+        assertEquals(string("b"), KeyCompression.separator(string("apple"), string("banana")));
+        assertEquals(string("customer12"), KeyCompression.separator(string("customer1199"),
+                     string("customer1200")));
+        assertEquals(string("ab"), KeyCompression.separator(string("a"), string("ab")));
+        assertEquals(new IntDataBox(7), KeyCompression.separator(new IntDataBox(3), new IntDataBox(7)));
+
+        // The separator routes every key to the same side as the split did.
+        List<String> left = Arrays.asList("a", "az", "customer1199", "customer1199zz");
+        List<String> right = Arrays.asList("b", "customer12", "customer1200", "customer1200 a");
+        for (int i = 0; i < left.size(); ++i) {
+            DataBox s = KeyCompression.separator(string(left.get(i)), string(right.get(i)));
+            assertTrue(string(left.get(i)).compareTo(s) < 0);
+            assertTrue(s.compareTo(string(right.get(i))) <= 0);
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLeafEntries() {
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            keys.add(string("customer" + (1000 + i)));
+            rids.add(new RecordId(i, (short) i));
+        }
+        assertEquals("customer100".length(), KeyCompression.commonPrefixLength(keys));
+
+        // The prefix once, then a one byte suffix and a rid per key.
+        int size = KeyCompression.leafEntriesSize(keys);
+        assertEquals(2 + 11 + 10 * (2 + 1 + 6), size);
+
+        byte[] bytes = new byte[size];
+        assertEquals(size, KeyCompression.writeLeafEntries(ByteBuffer.wrap(bytes), 0, keys, rids));
+        List<DataBox> readKeys = new ArrayList<>();
+        List<RecordId> readRids = new ArrayList<>();
+        KeyCompression.readLeafEntries(ByteBuffer.wrap(bytes), Type.stringType(64), keys.size(),
+                                       readKeys, readRids);
+        assertEquals(keys, readKeys);
+        assertEquals(rids, readRids);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testInnerNodeToAndFromBytes() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.stringType(64), 2);
+        List<DataBox> keys = Arrays.asList(string("b"), string("customer12"), string("x y"));
+        List<Integer> children = Arrays.asList(1, 2, 3, 4);
+        InnerNode inner = new InnerNode(meta, new ArrayList<>(keys), new ArrayList<>(children), null);
+
+        assertEquals(1 + 4 + (2 + 1) + (2 + 10) + (2 + 3) + 4 * 4, inner.toBytes().length);
+        InnerNode read = InnerNode.fromBytes(null, meta, inner.getPage().getPageNum());
+        assertEquals(inner, read);
+        assertEquals(keys, read.getKeys());
+
+        // Searches compare the keys where they are on the page.
+        List<String> searches = Arrays.asList("a", "b", "banana", "customer11", "customer12",
+                                              "customer120", "x", "x y", "zzz");
+        List<Integer> expected = Arrays.asList(1, 2, 2, 2, 3, 3, 3, 4, 4);
+        for (int i = 0; i < searches.size(); ++i) {
+            DataBox key = string(searches.get(i));
+            assertEquals((int) expected.get(i), InnerNode.searchChild(null, meta, inner.getPage(), key));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSearchLeaf() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.stringType(64), 10);
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (String s : Arrays.asList("customer1", "customer1 x", "customer10", "customer2")) {
+            keys.add(string(s));
+            rids.add(new RecordId(keys.size(), (short) 0));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.empty(), null);
+
+        for (int i = 0; i < keys.size(); ++i) {
+            assertEquals(Optional.of(rids.get(i)), LeafNode.searchKey(null, meta, leaf.getPage(), keys.get(i)));
+        }
+        for (String s : Arrays.asList("c", "customer", "customer0", "customer1 ", "customer11", "d")) {
+            assertEquals(s.trim().equals("customer1") ? Optional.of(rids.get(0)) : Optional.empty(),
+                         LeafNode.searchKey(null, meta, leaf.getPage(), string(s)));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testMaxOrderAndOverflows() throws IOException {
+        Type keySchema = Type.stringType(64);
+        int fixedLeafOrder = (Page.pageSize - 9) / (64 + 6) / 2;
+        assertTrue(LeafNode.maxOrder(Page.pageSize, keySchema) > 4 * fixedLeafOrder);
+        assertTrue(BPlusTree.maxOrder(Page.pageSize, keySchema) > 4 * fixedLeafOrder);
+
+        // Keys that share a prefix fit many times more than at full width...
+        int order = BPlusTree.maxOrder(Page.pageSize, keySchema);
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(keySchema, order);
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 4 * fixedLeafOrder; ++i) {
+            keys.add(string("customer" + (100000 + i)));
+            rids.add(new RecordId(i, (short) 0));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.empty(), null);
+        assertFalse(leaf.overflows());
+
+        // ...but keys that don't compress overflow the page before 2d keys.
+        List<DataBox> wide = new ArrayList<>();
+        for (int i = 0; i < 4 * fixedLeafOrder; ++i) {
+            wide.add(string(String.format("%-64d", i).replace(' ', 'x')));
+        }
+        assertEquals(0, KeyCompression.commonPrefixLength(wide));
+        assertTrue(KeyCompression.leafEntriesSize(wide) > Page.pageSize);
+    }
+}
@@ -25,7 +25,9 @@ import org.junit.rules.Timeout;
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
@@ -240,6 +242,134 @@ public class TestLeafNode {
         assertFalse(iter.hasNext());
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testScanRange() throws IOException {
+        int d = 5;
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), d);
+
+        // Keys 0, 2, 4, ..., 18.
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2 * d; ++i) {
+            keys.add(new IntDataBox(2 * i));
+            rids.add(new RecordId(2 * i, (short) 0));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.empty(), null);
+
+        DataBox lo = new IntDataBox(4);
+        DataBox hi = new IntDataBox(10);
+        assertEquals(Arrays.asList(4, 6, 8, 10), pageNums(leaf.scanRange(lo, true, hi, true)));
+        assertEquals(Arrays.asList(6, 8), pageNums(leaf.scanRange(lo, false, hi, false)));
+        assertEquals(Arrays.asList(0, 2, 4, 6, 8), pageNums(leaf.scanRange(null, false, hi, false)));
+        assertEquals(Arrays.asList(12, 14, 16, 18), pageNums(leaf.scanRange(hi, false, null, false)));
+        assertEquals(Arrays.asList(), pageNums(leaf.scanRange(new IntDataBox(5), true, lo, true)));
+        assertEquals(Arrays.asList(), pageNums(leaf.scanRange(new IntDataBox(5), true, new IntDataBox(5), true)));
+
+        assertTrue(leaf.passes(new IntDataBox(18), false));
+        assertFalse(leaf.passes(new IntDataBox(18), true));
+        assertFalse(leaf.passes(new IntDataBox(30), false));
+        assertFalse(leaf.passes(null, false));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanPrefixRange() throws IOException {
+        int d = 5;
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(
+                Type.tupleType(Arrays.asList(Type.intType(), Type.intType())), d);
+
+        // Keys (0, 0), (0, 1), ..., (1, 4): record i has key (i / 5, i % 5).
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2 * d; ++i) {
+            keys.add(new TupleDataBox(Arrays.asList(new IntDataBox(i / 5), new IntDataBox(i % 5))));
+            rids.add(new RecordId(i, (short) 0));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.empty(), null);
+
+        // A bound on the leading column alone covers every key that starts with it.
+        DataBox zero = new TupleDataBox(Collections.singletonList(new IntDataBox(0)));
+        DataBox one = new TupleDataBox(Collections.singletonList(new IntDataBox(1)));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), pageNums(leaf.scanRange(zero, true, zero, true)));
+        assertEquals(Arrays.asList(5, 6, 7, 8, 9), pageNums(leaf.scanRange(zero, false, null, false)));
+        assertEquals(Arrays.asList(), pageNums(leaf.scanRange(zero, false, one, false)));
+
+        // A range on the second column within a prefix.
+        DataBox lo = new TupleDataBox(Arrays.asList(new IntDataBox(1), new IntDataBox(1)));
+        DataBox hi = new TupleDataBox(Arrays.asList(new IntDataBox(1), new IntDataBox(3)));
+        assertEquals(Arrays.asList(6, 7, 8), pageNums(leaf.scanRange(lo, true, hi, true)));
+        assertEquals(Arrays.asList(7), pageNums(leaf.scanRange(lo, false, hi, false)));
+        assertEquals(Arrays.asList(8, 9), pageNums(leaf.scanRange(hi, true, one, true)));
+
+        assertTrue(leaf.passes(zero, true));
+        assertFalse(leaf.passes(one, true));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanRangeKeys() throws IOException {
+        int d = 5;
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), d);
+
+        // Keys 0, 2, 4, ..., 18.
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2 * d; ++i) {
+            keys.add(new IntDataBox(2 * i));
+            rids.add(new RecordId(2 * i, (short) 0));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.empty(), null);
+
+        DataBox lo = new IntDataBox(4);
+        DataBox hi = new IntDataBox(10);
+        assertEquals(Arrays.asList(new IntDataBox(6), new IntDataBox(8)),
+                     toList(leaf.scanRangeKeys(lo, false, hi, false)));
+        assertEquals(keys, toList(leaf.scanRangeKeys(null, false, null, false)));
+        assertEquals(Arrays.asList(), toList(leaf.scanRangeKeys(new IntDataBox(5), true, lo, true)));
+    }
+
+    private static <T> List<T> toList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    private static List<Integer> pageNums(Iterator<RecordId> iter) {
+        List<Integer> pageNums = new ArrayList<>();
+        while (iter.hasNext()) {
+            pageNums.add(iter.next().getPageNum());
+        }
+        return pageNums;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSearchKey() throws IOException {
+        int d = 5;
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.floatType(), d);
+        LeafNode empty = getEmptyLeaf(meta, Optional.empty());
+        assertEquals(Optional.empty(), LeafNode.searchKey(null, meta, empty.getPage(), new FloatDataBox(0f)));
+
+        // Keys -4.5, -3.5, ..., 4.5.
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2 * d; ++i) {
+            keys.add(new FloatDataBox(i - 4.5f));
+            rids.add(new RecordId(i, (short) i));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.empty(), null);
+
+        for (int i = 0; i < 2 * d; ++i) {
+            assertEquals(Optional.of(rids.get(i)), LeafNode.searchKey(null, meta, leaf.getPage(), keys.get(i)));
+        }
+        assertEquals(Optional.empty(), LeafNode.searchKey(null, meta, leaf.getPage(), new FloatDataBox(-5f)));
+        assertEquals(Optional.empty(), LeafNode.searchKey(null, meta, leaf.getPage(), new FloatDataBox(0f)));
+        assertEquals(Optional.empty(), LeafNode.searchKey(null, meta, leaf.getPage(), new FloatDataBox(5f)));
+    }
+
     @Test
     @Category(SystemTests.class)
     public void testMaxOrder() {
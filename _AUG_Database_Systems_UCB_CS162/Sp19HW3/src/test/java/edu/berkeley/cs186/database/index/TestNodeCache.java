@@ -0,0 +1,198 @@
+package edu.berkeley.cs186.database.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.PageAllocator;
+
+@Category(HW2Tests.class)
+public class TestNodeCache {
+    public static final String testFile = "TestNodeCache";
+
+    private long capacityInBytes;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 1 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (1000 * TimeoutScaling.factor)));
+
+    @Before
+    public void setup() {
+        capacityInBytes = NodeCache.getCapacityInBytes();
+        NodeCache.clear();
+    }
+
+    @After
+    public void cleanup() {
+        NodeCache.setCapacityInBytes(capacityInBytes);
+        NodeCache.clear();
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private BPlusTreeMetadata getBPlusTreeMetadata() throws IOException {
+        File file = tempFolder.newFile(testFile);
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), false, null);
+        return new BPlusTreeMetadata(allocator, Type.intType(), 2);
+    }
+
+    private InnerNode getInnerNode(BPlusTreeMetadata meta, int key) {
+        List<DataBox> keys = new ArrayList<>(Arrays.asList(new IntDataBox(key)));
+        List<Integer> children = new ArrayList<>(Arrays.asList(key, key + 1));
+        return new InnerNode(meta, keys, children, null);
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testHitReturnsCopy() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        InnerNode inner = getInnerNode(meta, 10);
+        int pageNum = inner.getPage().getPageNum();
+
+        BPlusNode first = BPlusNode.fromBytes(null, meta, pageNum);
+        assertEquals(0, NodeCache.getNumHits());
+        assertEquals(1, NodeCache.getNumMisses());
+        assertEquals(1, NodeCache.getNumNodes());
+
+        BPlusNode second = BPlusNode.fromBytes(null, meta, pageNum);
+        assertEquals(1, NodeCache.getNumHits());
+        assertEquals(inner, first);
+        assertEquals(inner, second);
+        assertNotSame(first, second);
+        assertEquals(0.5, NodeCache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testInvalidate() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        InnerNode inner = getInnerNode(meta, 10);
+        int pageNum = inner.getPage().getPageNum();
+
+        BPlusNode.fromBytes(null, meta, pageNum);
+        NodeCache.invalidate(meta, pageNum);
+        assertEquals(0, NodeCache.getNumNodes());
+        assertEquals(0, NodeCache.getSizeInBytes());
+        assertEquals(1, NodeCache.getNumInvalidations());
+
+        BPlusNode.fromBytes(null, meta, pageNum);
+        assertEquals(0, NodeCache.getNumHits());
+        assertEquals(2, NodeCache.getNumMisses());
+
+        // Closing the tree drops its nodes.
+        NodeCache.invalidateAll(meta.getAllocator());
+        assertEquals(0, NodeCache.getNumNodes());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCapacity() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        List<Integer> pageNums = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            pageNums.add(getInnerNode(meta, i).getPage().getPageNum());
+        }
+
+        BPlusNode.fromBytes(null, meta, pageNums.get(0));
+        long nodeSize = NodeCache.getSizeInBytes();
+        assertTrue(nodeSize > 0);
+
+        // Room for three nodes: the least recently used ones are evicted.
+        NodeCache.setCapacityInBytes(3 * nodeSize);
+        for (int pageNum : pageNums.subList(1, pageNums.size())) {
+            BPlusNode.fromBytes(null, meta, pageNum);
+            assertTrue(NodeCache.getSizeInBytes() <= NodeCache.getCapacityInBytes());
+        }
+        assertEquals(3, NodeCache.getNumNodes());
+        assertEquals(7, NodeCache.getNumEvictions());
+
+        // Pages 7, 8 and 9 are cached.
+
+        BPlusNode.fromBytes(null, meta, pageNums.get(9));
+        BPlusNode.fromBytes(null, meta, pageNums.get(0));
+        assertEquals(1, NodeCache.getNumHits());
+        assertEquals(11, NodeCache.getNumMisses());
+        assertEquals(1.0 / 12, NodeCache.getHitRate(), 1e-9);
+
+        NodeCache.setCapacityInBytes(nodeSize);
+        assertEquals(1, NodeCache.getNumNodes());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSecondChance() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        List<Integer> pageNums = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            pageNums.add(getInnerNode(meta, i).getPage().getPageNum());
+        }
+        BPlusNode.fromBytes(null, meta, pageNums.get(0));
+        NodeCache.setCapacityInBytes(3 * NodeCache.getSizeInBytes());
+        BPlusNode.fromBytes(null, meta, pageNums.get(1));
+        BPlusNode.fromBytes(null, meta, pageNums.get(2));
+
+        // Page 0 was cached first, but it was used since, so page 1 goes.
+        BPlusNode.fromBytes(null, meta, pageNums.get(0));
+        BPlusNode.fromBytes(null, meta, pageNums.get(3));
+        assertEquals(3, NodeCache.getNumNodes());
+        assertEquals(1, NodeCache.getNumEvictions());
+        BPlusNode.fromBytes(null, meta, pageNums.get(0));
+        assertEquals(2, NodeCache.getNumHits());
+        BPlusNode.fromBytes(null, meta, pageNums.get(1));
+        assertEquals(2, NodeCache.getNumHits());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentReaders() throws IOException, InterruptedException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        InnerNode inner = getInnerNode(meta, 10);
+        int pageNum = inner.getPage().getPageNum();
+        BPlusNode.fromBytes(null, meta, pageNum);
+
+        // Readers share the cached node, and every one of their lookups is
+        // counted as a hit.
+        List<Thread> readers = new ArrayList<>();
+        List<BPlusNode> read = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 4; ++i) {
+            readers.add(new Thread(() -> {
+                for (int j = 0; j < 100; ++j) {
+                    read.add(BPlusNode.fromBytes(null, meta, pageNum));
+                }
+            }));
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(400, NodeCache.getNumHits());
+        assertEquals(1, NodeCache.getNumMisses());
+        for (BPlusNode node : read) {
+            assertEquals(inner, node);
+        }
+    }
+}
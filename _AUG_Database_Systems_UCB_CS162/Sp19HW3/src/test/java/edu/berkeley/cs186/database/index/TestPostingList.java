@@ -0,0 +1,176 @@
+package edu.berkeley.cs186.database.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestPostingList {
+    public static final String testFile = "TestPostingList";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 1 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (1000 * TimeoutScaling.factor)));
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private BPlusTreeMetadata getBPlusTreeMetadata() throws IOException {
+        File file = tempFolder.newFile(testFile);
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), false, null);
+        return new BPlusTreeMetadata(allocator, Type.intType(), 2);
+    }
+
+    private static List<RecordId> toList(Iterator<RecordId> iter) {
+        List<RecordId> rids = new ArrayList<>();
+        while (iter.hasNext()) {
+            rids.add(iter.next());
+        }
+        return rids;
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testEncodeDecode() {
+        List<RecordId> rids = Arrays.asList(new RecordId(0, (short) 0), new RecordId(0, (short) 3),
+                                            new RecordId(1, (short) 2), new RecordId(1000, (short) 300),
+                                            new RecordId(Integer.MAX_VALUE, Short.MAX_VALUE));
+        assertEquals(rids, PostingList.decode(PostingList.encode(rids), rids.size()));
+
+        // Record ids on the same page take two bytes each.
+        List<RecordId> samePage = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            samePage.add(new RecordId(5, (short) i));
+        }
+        assertEquals(2 * 100, PostingList.encode(samePage).length);
+        assertEquals(samePage, PostingList.decode(PostingList.encode(samePage), samePage.size()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testPointer() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        PostingList list = PostingList.create(null, meta, Arrays.asList(new RecordId(3, (short) 1)));
+        assertTrue(PostingList.isPointer(list.toPointer()));
+        assertFalse(PostingList.isPointer(new RecordId(3, (short) 1)));
+        assertEquals(Arrays.asList(new RecordId(3, (short) 1)),
+                     toList(PostingList.fromPointer(meta, list.toPointer()).iterator(null)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAddRemoveInPageOrder() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        RecordId r0 = new RecordId(9, (short) 0);
+        RecordId r1 = new RecordId(2, (short) 7);
+        RecordId r2 = new RecordId(2, (short) 1);
+        PostingList list = PostingList.create(null, meta, Arrays.asList(r0, r1));
+        list.add(null, r2);
+        list.add(null, r0);
+        assertEquals(Arrays.asList(r2, r1, r0), toList(list.iterator(null)));
+        assertEquals(3, list.size(null));
+
+        assertTrue(list.remove(null, r1));
+        assertFalse(list.remove(null, r1));
+        assertEquals(Arrays.asList(r2, r0), toList(list.iterator(null)));
+        assertEquals(2, list.size(null));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOverflowPages() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            rids.add(new RecordId(i * 1000, (short) (i % 50)));
+        }
+        List<RecordId> shuffled = new ArrayList<>(rids);
+        Collections.shuffle(shuffled, new Random(42));
+
+        PostingList list = PostingList.create(null, meta, shuffled.subList(0, 1));
+        int numPages = meta.getAllocator().getNumPages();
+        for (RecordId rid : shuffled.subList(1, shuffled.size())) {
+            list.add(null, rid);
+        }
+        assertTrue(meta.getAllocator().getNumPages() > numPages);
+        assertEquals(rids, toList(list.iterator(null)));
+        assertEquals(rids.size(), list.size(null));
+
+        // Emptying the pages frees all but the first.
+        for (RecordId rid : shuffled.subList(1, shuffled.size())) {
+            assertTrue(list.remove(null, rid));
+        }
+        assertEquals(Arrays.asList(shuffled.get(0)), toList(list.iterator(null)));
+        assertEquals(numPages, meta.getAllocator().getNumPages());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCreateFromIterator() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            rids.add(new RecordId(i * 1000, (short) (i % 50)));
+        }
+        int numPages = meta.getAllocator().getNumPages();
+        PostingList list = PostingList.create(null, meta, rids.iterator());
+        assertTrue(meta.getAllocator().getNumPages() > numPages + 1);
+        assertEquals(rids, toList(list.iterator(null)));
+        assertEquals(rids.size(), list.size(null));
+
+        // A list can still grow after it was created full.
+        list.add(null, new RecordId(5, (short) 0));
+        assertEquals(rids.size() + 1, list.size(null));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCollapse() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata();
+        RecordId r0 = new RecordId(1, (short) 0);
+        RecordId r1 = new RecordId(1, (short) 4);
+        RecordId r2 = new RecordId(3, (short) 2);
+        RecordId r3 = new RecordId(8, (short) 1);
+        List<Pair<DataBox, RecordId>> data = Arrays.asList(
+                new Pair<>(new IntDataBox(1), r0), new Pair<>(new IntDataBox(2), r1),
+                new Pair<>(new IntDataBox(2), r2), new Pair<>(new IntDataBox(2), r3),
+                new Pair<>(new IntDataBox(5), r3));
+
+        List<Pair<DataBox, RecordId>> collapsed = new ArrayList<>();
+        PostingList.collapse(null, meta, data.iterator()).forEachRemaining(collapsed::add);
+        assertEquals(3, collapsed.size());
+        assertEquals(new Pair<>(new IntDataBox(1), r0), collapsed.get(0));
+        assertEquals(new IntDataBox(2), collapsed.get(1).getFirst());
+        assertTrue(PostingList.isPointer(collapsed.get(1).getSecond()));
+        assertEquals(Arrays.asList(r1, r2, r3),
+                     toList(PostingList.fromPointer(meta, collapsed.get(1).getSecond()).iterator(null)));
+        assertEquals(new Pair<>(new IntDataBox(5), r3), collapsed.get(2));
+    }
+}
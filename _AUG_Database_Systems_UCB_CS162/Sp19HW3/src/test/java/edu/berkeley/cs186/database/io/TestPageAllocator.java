@@ -438,4 +438,33 @@ public class TestPageAllocator {
         }
     }
 
+    @Test
+    public void TestPageAllocatorTruncate() throws IOException, FileNotFoundException {
+        File tempFile = tempFolder.newFile(fName);
+        PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false, null);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, pA.allocPage(null));
+        }
+        FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+        assertEquals(byteEstimate(10), fc.size());
+
+        // Freeing pages from the middle does not let the file shrink.
+        pA.freePage(null, 3);
+        assertEquals(0, pA.truncate(null));
+        assertEquals(byteEstimate(10), fc.size());
+
+        // Freeing pages from the tail does.
+        for (int i = 6; i < 10; i++) {
+            pA.freePage(null, i);
+        }
+        assertEquals(4 * Page.pageSize, pA.truncate(null));
+        assertEquals(byteEstimate(6), fc.size());
+
+        // Freed pages at the tail can be reallocated after truncation.
+        assertEquals(3, pA.allocPage(null));
+        assertEquals(6, pA.allocPage(null));
+        assertEquals(byteEstimate(7), fc.size());
+        fc.close();
+        pA.close();
+    }
 }
@@ -0,0 +1,87 @@
+package edu.berkeley.cs186.database.query;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * Measures how ParallelScanOperator scales from 1 worker up to one worker per
+ * core. This is not a unit test (surefire does not pick it up); run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.berkeley.cs186.database.query.ParallelScanBenchmark \
+ *       -Dexec.args="<numRecords> <numTrials>"
+ *
+ * Each trial scans the table once, ordered and unordered, with a selection and
+ * a projection pushed into the workers. The best time of all trials is
+ * reported along with the speedup over a single worker.
+ */
+public class ParallelScanBenchmark {
+    public static void main(String[] args) throws Exception {
+        int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int numTrials = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int maxParallelism = Runtime.getRuntime().availableProcessors();
+
+        File dir = Files.createTempDirectory("parallelScanBenchmark").toFile();
+        Database db = new Database(dir.getAbsolutePath());
+        Database.Transaction transaction = db.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        for (int i = 0; i < numRecords; ++i) {
+            transaction.addRecord("table", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        System.out.printf("%d records on %d pages, %d cores%n", numRecords,
+                          transaction.getNumDataPages("table"), maxParallelism);
+
+        List<String> selectColumns = Collections.singletonList("int");
+        List<QueryPlan.PredicateOperator> selectOperators =
+            Collections.singletonList(QueryPlan.PredicateOperator.GREATER_THAN_EQUALS);
+        List<DataBox> selectValues = Collections.singletonList(new IntDataBox(numRecords / 2));
+        List<String> projectColumns = Arrays.asList("int", "float");
+
+        for (boolean ordered : new boolean[] {true, false}) {
+            System.out.printf("%n%s%n%12s %12s %12s%n", ordered ? "ordered" : "unordered",
+                              "threads", "best ms", "speedup");
+            double baseline = 0;
+            for (int parallelism = 1; parallelism <= maxParallelism; ++parallelism) {
+                long best = Long.MAX_VALUE;
+                for (int trial = 0; trial < numTrials; ++trial) {
+                    ParallelScanOperator scan = new ParallelScanOperator(transaction, "table",
+                            selectColumns, selectOperators, selectValues, projectColumns,
+                            ordered, parallelism);
+                    long start = System.nanoTime();
+                    Iterator<Record> iter = scan.iterator();
+                    int count = 0;
+                    while (iter.hasNext()) {
+                        iter.next();
+                        count++;
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                    if (count != numRecords - numRecords / 2) {
+                        throw new IllegalStateException("Scan returned " + count + " records.");
+                    }
+                }
+                double ms = best / 1e6;
+                if (parallelism == 1) {
+                    baseline = ms;
+                }
+                System.out.printf("%12d %12.1f %12.2f%n", parallelism, ms, baseline / ms);
+            }
+        }
+
+        transaction.end();
+        db.close();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+}
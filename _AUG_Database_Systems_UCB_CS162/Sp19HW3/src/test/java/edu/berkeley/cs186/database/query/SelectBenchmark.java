@@ -0,0 +1,146 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * Compares three ways of evaluating a conjunction of select predicates over
+ * records in memory. This is not a unit test (surefire does not pick it up);
+ * run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.berkeley.cs186.database.query.SelectBenchmark \
+ *       -Dexec.args="<numRecords> <numTrials>"
+ *
+ *   - interpreted: one iterator per predicate, each switching on the operator
+ *     and calling DataBox#compareTo for every record, as SelectOperator used
+ *     to;
+ *   - chained: one compiled single predicate SelectOperator per predicate;
+ *   - fused: a single SelectOperator for the whole conjunction, whose
+ *     predicates run most selective first.
+ *
+ * The predicates are listed least selective first, which is the worst order
+ * for the interpreted and chained plans. The best time of all trials is
+ * reported for each.
+ */
+public class SelectBenchmark {
+    public static void main(String[] args) throws Exception {
+        int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int numTrials = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        List<Record> records = new ArrayList<>(numRecords);
+        for (int i = 0; i < numRecords; ++i) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i % 10000);
+            records.add(r);
+        }
+
+        List<String> columns = Arrays.asList("float", "string", "int", "int");
+        List<QueryPlan.PredicateOperator> operators = Arrays.asList(
+                    QueryPlan.PredicateOperator.NOT_EQUALS,
+                    QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                    QueryPlan.PredicateOperator.LESS_THAN,
+                    QueryPlan.PredicateOperator.EQUALS);
+        List<DataBox> values = Arrays.asList(new FloatDataBox(3), new StringDataBox("0100", 5),
+                                             new IntDataBox(9000), new IntDataBox(4321));
+        int expected = -1;
+
+        System.out.printf("%d records, %d predicates%n%12s %12s%n", numRecords, columns.size(),
+                          "plan", "best ms");
+        for (String plan : new String[] {"interpreted", "chained", "fused"}) {
+            long best = Long.MAX_VALUE;
+            for (int trial = 0; trial < numTrials; ++trial) {
+                QueryOperator source = new TestSourceOperator(records, schema);
+                long start = System.nanoTime();
+                Iterator<Record> iter;
+                if (plan.equals("interpreted")) {
+                    iter = source.iterator();
+                    for (int i = 0; i < columns.size(); ++i) {
+                        int index = schema.getFieldNames().indexOf(columns.get(i));
+                        iter = new InterpretedSelectIterator(iter, index, operators.get(i), values.get(i));
+                    }
+                } else if (plan.equals("chained")) {
+                    for (int i = 0; i < columns.size(); ++i) {
+                        source = new SelectOperator(source, columns.get(i), operators.get(i), values.get(i));
+                    }
+                    iter = source.iterator();
+                } else {
+                    iter = new SelectOperator(source, columns, operators, values).iterator();
+                }
+                int count = 0;
+                while (iter.hasNext()) {
+                    iter.next();
+                    count++;
+                }
+                best = Math.min(best, System.nanoTime() - start);
+                if (expected == -1) {
+                    expected = count;
+                } else if (count != expected) {
+                    throw new IllegalStateException(plan + " returned " + count + " records, not " + expected + ".");
+                }
+            }
+            System.out.printf("%12s %12.1f%n", plan, best / 1e6);
+        }
+    }
+
+    /**
+     * A single predicate evaluated the way SelectOperator used to: a switch
+     * on the operator and a compareTo per record.
+     */
+    private static class InterpretedSelectIterator implements Iterator<Record> {
+        private Iterator<Record> source;
+        private int columnIndex;
+        private QueryPlan.PredicateOperator operator;
+        private DataBox value;
+        private Record nextRecord;
+
+        InterpretedSelectIterator(Iterator<Record> source, int columnIndex,
+                                  QueryPlan.PredicateOperator operator, DataBox value) {
+            this.source = source;
+            this.columnIndex = columnIndex;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        private boolean satisfies(DataBox d) {
+            switch (this.operator) {
+            case EQUALS:
+                return d.equals(this.value);
+            case NOT_EQUALS:
+                return !d.equals(this.value);
+            default:
+                return this.operator.evaluate(d, this.value);
+            }
+        }
+
+        public boolean hasNext() {
+            while (this.nextRecord == null && this.source.hasNext()) {
+                Record r = this.source.next();
+                if (this.satisfies(r.getValues().get(this.columnIndex))) {
+                    this.nextRecord = r;
+                }
+            }
+            return this.nextRecord != null;
+        }
+
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record r = this.nextRecord;
+            this.nextRecord = null;
+            return r;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.berkeley.cs186.database.query;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * Compares the two ways SortOperator can generate its initial runs: sorting
+ * blocks of numBuffers - 1 pages, and replacement selection. This is not a
+ * unit test (surefire does not pick it up); run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.berkeley.cs186.database.query.SortBenchmark \
+ *       -Dexec.args="<numRecords> <numTrials>"
+ *
+ * Every input is sorted with 3, 5 and 9 buffers. For each we report the
+ * number of initial runs, the number of merge passes, the number of spill
+ * file pages written and read, and the best time of all trials. The inputs
+ * are in random order, nearly sorted (in order except that 1% of the records
+ * are swapped with a random other record), and in reverse order.
+ */
+public class SortBenchmark {
+    public static void main(String[] args) throws Exception {
+        int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int numTrials = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Random random = new Random(42);
+
+        List<Record> sorted = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            sorted.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        List<Record> shuffled = new ArrayList<>(sorted);
+        Collections.shuffle(shuffled, random);
+        List<Record> nearlySorted = new ArrayList<>(sorted);
+        for (int i = 0; i < numRecords / 100; ++i) {
+            Collections.swap(nearlySorted, random.nextInt(numRecords), random.nextInt(numRecords));
+        }
+        List<Record> reversed = new ArrayList<>(sorted);
+        Collections.reverse(reversed);
+
+        String[] inputNames = {"random", "nearly sorted", "reversed"};
+        List<List<Record>> inputs = new ArrayList<>();
+        inputs.add(shuffled);
+        inputs.add(nearlySorted);
+        inputs.add(reversed);
+        Comparator<Record> comparator = new TestSortOperator.SortRecordComparator(1);
+
+        for (int numBuffers : new int[] {3, 5, 9}) {
+            File dir = Files.createTempDirectory("sortBenchmark").toFile();
+            Database db = new Database(dir.getAbsolutePath(), numBuffers);
+            Database.Transaction transaction = db.beginTransaction();
+            for (int i = 0; i < inputs.size(); ++i) {
+                transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table" + i);
+                fillTable(transaction, "table" + i, inputs.get(i));
+            }
+
+            System.out.printf("%n%d records on %d pages, %d buffers%n", numRecords,
+                              transaction.getNumDataPages("table0"), numBuffers);
+            System.out.printf("%-15s %-22s %8s %8s %12s %10s%n", "input", "run generation",
+                              "runs", "passes", "spill I/Os", "best ms");
+            for (int i = 0; i < inputs.size(); ++i) {
+                for (SortOperator.RunGeneration runGeneration : SortOperator.RunGeneration.values()) {
+                    SortOperator sort = null;
+                    long best = Long.MAX_VALUE;
+                    for (int trial = 0; trial < numTrials; ++trial) {
+                        sort = new SortOperator(transaction, "table" + i, comparator, 1, runGeneration);
+                        long start = System.nanoTime();
+                        sort.sort();
+                        best = Math.min(best, System.nanoTime() - start);
+                    }
+                    System.out.printf("%-15s %-22s %8d %8d %12d %10.1f%n", inputNames[i], runGeneration,
+                                      sort.getNumInitialRuns(), sort.getNumMergePasses(),
+                                      sort.getNumSpillPageIOs(), best / 1e6);
+                }
+            }
+
+            transaction.end();
+            db.close();
+            deleteRecursively(dir);
+        }
+    }
+
+    private static void fillTable(Database.Transaction transaction, String tableName,
+                                  List<Record> records) throws Exception {
+        int recordsPerPage = transaction.getNumEntriesPerPage(tableName);
+        int numPages = (records.size() + recordsPerPage - 1) / recordsPerPage;
+        List<Integer> pageNums = transaction.allocDataPages(tableName, numPages);
+        for (int i = 0; i < numPages; ++i) {
+            int from = i * recordsPerPage;
+            transaction.fillDataPage(tableName, pageNums.get(i),
+                                     records.subList(from, Math.min(records.size(), from + recordsPerPage)));
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,215 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.table.Record;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestAggregateOperator {
+    private static final List<QueryPlan.AggregateFunction> ALL_AGGREGATES = Arrays.asList(
+                QueryPlan.AggregateFunction.COUNT, QueryPlan.AggregateFunction.SUM,
+                QueryPlan.AggregateFunction.AVERAGE, QueryPlan.AggregateFunction.MIN,
+                QueryPlan.AggregateFunction.MAX);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    private Database.Transaction beginTransaction(int numMemoryPages) throws DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        return new Database(tempDir.getAbsolutePath(), numMemoryPages).beginTransaction();
+    }
+
+    /**
+     * Returns numGroups * perGroup records in random order, where the string
+     * column is the group and the int column of the records of group g is
+     * g, g + 1, ..., g + perGroup - 1.
+     */
+    private static List<Record> groupedRecords(int numGroups, int perGroup) {
+        List<Record> records = new ArrayList<>();
+        for (int g = 0; g < numGroups; ++g) {
+            for (int i = 0; i < perGroup; ++i) {
+                List<DataBox> values = new ArrayList<>(TestUtils.createRecordWithAllTypesWithValue(g + i).getValues());
+                values.set(2, new StringDataBox(String.format("%05d", g), 5));
+                records.add(new Record(values));
+            }
+        }
+        Collections.shuffle(records, new Random(numGroups));
+        return records;
+    }
+
+    private static HashAggregateOperator aggregate(Database.Transaction transaction,
+                                                   List<Record> records) throws QueryPlanException {
+        TestSourceOperator source = new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes());
+        return new HashAggregateOperator(source, transaction, "string", ALL_AGGREGATES,
+                                         Arrays.asList(null, "int", "int", "int", "int"));
+    }
+
+    /**
+     * Checks that iter returns exactly one record per group of
+     * groupedRecords(numGroups, perGroup), with the right aggregates.
+     */
+    private static void checkGroups(Iterator<Record> iter, int numGroups, int perGroup) {
+        Set<String> seen = new HashSet<>();
+        while (iter.hasNext()) {
+            List<DataBox> values = iter.next().getValues();
+            int g = Integer.parseInt(values.get(0).getString());
+            assertTrue(seen.add(values.get(0).getString()));
+            int sum = perGroup * g + perGroup * (perGroup - 1) / 2;
+            assertEquals(new IntDataBox(perGroup), values.get(1));
+            assertEquals(new IntDataBox(sum), values.get(2));
+            assertEquals(new FloatDataBox((float) ((double) sum / perGroup)), values.get(3));
+            assertEquals(new IntDataBox(g), values.get(4));
+            assertEquals(new IntDataBox(g + perGroup - 1), values.get(5));
+        }
+        assertEquals(numGroups, seen.size());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testAggregateInMemory() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = beginTransaction(5);
+        HashAggregateOperator operator = aggregate(transaction, groupedRecords(100, 10));
+        assertEquals(Arrays.asList("string", "countAgg", "sumAgg", "averageAgg", "minAgg", "maxAgg"),
+                     operator.getOutputSchema().getFieldNames());
+
+        checkGroups(operator.iterator(), 100, 10);
+        assertEquals(0, operator.getNumSpilledPartitions());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testAggregateSpills() throws QueryPlanException, DatabaseException, IOException {
+        // A partial aggregate is 33 bytes, so 4 pages hold 496 groups.
+        Database.Transaction transaction = beginTransaction(5);
+        HashAggregateOperator operator = aggregate(transaction, groupedRecords(1500, 4));
+        checkGroups(operator.iterator(), 1500, 4);
+        assertTrue(operator.getNumSpilledPartitions() > 0);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testAggregateFloatSums() throws QueryPlanException, DatabaseException, IOException {
+        // Sums of floats are carried through partial aggregates as doubles.
+        Database.Transaction transaction = beginTransaction(3);
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            List<DataBox> values = new ArrayList<>(TestUtils.createRecordWithAllTypesWithValue(i % 1000).getValues());
+            values.set(3, new FloatDataBox(0.5f));
+            records.add(new Record(values));
+        }
+        TestSourceOperator source = new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes());
+        HashAggregateOperator operator = new HashAggregateOperator(source, transaction, "int",
+                Arrays.asList(QueryPlan.AggregateFunction.SUM, QueryPlan.AggregateFunction.MAX),
+                Arrays.asList("float", "float"));
+        Iterator<Record> iter = operator.iterator();
+        int count = 0;
+        while (iter.hasNext()) {
+            List<DataBox> values = iter.next().getValues();
+            assertEquals(new FloatDataBox(1.5f), values.get(1));
+            assertEquals(new FloatDataBox(0.5f), values.get(2));
+            count++;
+        }
+        assertEquals(1000, count);
+        assertTrue(operator.getNumSpilledPartitions() > 0);
+    }
+
+    @Test(expected = QueryPlanException.class)
+    @Category(SystemTests.class)
+    public void testSumOverString() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = beginTransaction(5);
+        TestSourceOperator source = new TestSourceOperator(groupedRecords(1, 1), TestUtils.createSchemaWithAllTypes());
+        new HashAggregateOperator(source, transaction, "int",
+                                  Collections.singletonList(QueryPlan.AggregateFunction.SUM),
+                                  Collections.singletonList("string"));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanGroupBy() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = beginTransaction(5);
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        for (int i = 0; i < 100; ++i) {
+            transaction.addRecord("table", TestUtils.createRecordWithAllTypesWithValue(i % 10).getValues());
+        }
+
+        QueryPlan query = transaction.query("table");
+        query.groupBy("int");
+        query.project(Collections.singletonList("int"));
+        query.count();
+        query.sum("float");
+        Iterator<Record> iter = query.execute();
+        assertTrue(query.getFinalOperator().getSource() instanceof HashAggregateOperator);
+        Set<Integer> groups = new HashSet<>();
+        while (iter.hasNext()) {
+            List<DataBox> values = iter.next().getValues();
+            assertEquals(3, values.size());
+            int g = values.get(0).getInt();
+            assertTrue(groups.add(g));
+            assertEquals(new IntDataBox(10), values.get(1));
+            assertEquals(new FloatDataBox(10 * (float) g), values.get(2));
+        }
+        assertEquals(10, groups.size());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testStreamAggregate() throws QueryPlanException, DatabaseException, IOException {
+        // With only 3 buffers, hashing 1500 groups would spill; streaming
+        // them in order never keeps more than one.
+        Database.Transaction transaction = beginTransaction(3);
+        List<Record> records = groupedRecords(1500, 4);
+        records.sort(Comparator.comparing(r -> r.getValues().get(2)));
+        TestSourceOperator source = new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes());
+        StreamAggregateOperator operator = new StreamAggregateOperator(source, transaction, "string",
+                ALL_AGGREGATES, Arrays.asList(null, "int", "int", "int", "int"));
+        assertEquals(aggregate(transaction, records).getOutputSchema(), operator.getOutputSchema());
+
+        Iterator<Record> iter = operator.iterator();
+        Record previous = null;
+        List<Record> output = new ArrayList<>();
+        while (iter.hasNext()) {
+            Record r = iter.next();
+            if (previous != null) {
+                assertTrue(previous.getValues().get(0).compareTo(r.getValues().get(0)) < 0);
+            }
+            output.add(r);
+            previous = r;
+        }
+        checkGroups(output.iterator(), 1500, 4);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testStreamAggregateEmpty() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = beginTransaction(3);
+        TestSourceOperator source = new TestSourceOperator(new ArrayList<>(), TestUtils.createSchemaWithAllTypes());
+        StreamAggregateOperator operator = new StreamAggregateOperator(source, transaction, "int",
+                Collections.singletonList(QueryPlan.AggregateFunction.COUNT), Collections.singletonList(null));
+        assertFalse(operator.iterator().hasNext());
+    }
+}
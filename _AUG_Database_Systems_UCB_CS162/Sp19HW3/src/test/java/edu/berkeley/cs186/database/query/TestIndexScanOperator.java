@@ -0,0 +1,250 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.table.Record;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestIndexScanOperator {
+    private Database.Transaction transaction;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    @Before
+    public void setup() throws DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("indexScanTest");
+        this.transaction = new Database(tempDir.getAbsolutePath(), 5).beginTransaction();
+        this.transaction.createTableWithIndices(TestUtils.createSchemaWithAllTypes(), "table",
+                                                Collections.singletonList("int"));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanRange() throws QueryPlanException, DatabaseException {
+        // Both bounds on the index column go into one range scan; only the
+        // predicate on the other column is left to a select.
+        QueryPlan query = this.transaction.query("table");
+        query.select("float", QueryPlan.PredicateOperator.NOT_EQUALS, new FloatDataBox(3));
+        query.select("int", QueryPlan.PredicateOperator.LESS_THAN, new IntDataBox(20));
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(10));
+        query.execute();
+
+        QueryOperator select = query.getFinalOperator();
+        assertTrue(select.isSelect());
+        assertEquals(Collections.singletonList("table.float"), ((SelectOperator) select).getColumnNames());
+        QueryOperator scan = select.getSource();
+        assertTrue(scan.isIndexScan());
+        assertEquals("type: INDEXSCAN\ntable: table\ncolumn: int" +
+                     "\noperator: GREATER_THAN_EQUALS\nvalue: 10" +
+                     "\nupper operator: LESS_THAN\nupper value: 20", scan.str());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanOneBound() throws QueryPlanException, DatabaseException {
+        // Two lower bounds do not make a range: one is scanned, the other
+        // selected.
+        QueryPlan query = this.transaction.query("table");
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN, new IntDataBox(10));
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(15));
+        query.execute();
+
+        QueryOperator select = query.getFinalOperator();
+        assertTrue(select.isSelect());
+        QueryOperator scan = select.getSource();
+        assertTrue(scan.isIndexScan());
+        assertFalse(scan.str().contains("upper"));
+    }
+
+    @Test(expected = QueryPlanException.class)
+    @Category(SystemTests.class)
+    public void testRangeNeedsBothBounds() throws QueryPlanException, DatabaseException {
+        new IndexScanOperator(this.transaction, "table", "int",
+                              QueryPlan.PredicateOperator.LESS_THAN, new IntDataBox(10),
+                              QueryPlan.PredicateOperator.LESS_THAN_EQUALS, new IntDataBox(20));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanComposite() throws QueryPlanException, DatabaseException {
+        // An equality on the leading column and a range on the next one are
+        // all answered by one scan of the index on both, even though int has
+        // an index of its own.
+        this.transaction.createTableWithCompositeIndices(TestUtils.createSchemaWithAllTypes(), "pairs",
+                Arrays.asList(Collections.singletonList("int"), Arrays.asList("int", "float")));
+        QueryPlan query = this.transaction.query("pairs");
+        query.select("float", QueryPlan.PredicateOperator.LESS_THAN_EQUALS, new FloatDataBox(2));
+        query.select("bool", QueryPlan.PredicateOperator.EQUALS, new BoolDataBox(true));
+        query.select("int", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(7));
+        query.execute();
+
+        QueryOperator select = query.getFinalOperator();
+        assertTrue(select.isSelect());
+        assertEquals(Collections.singletonList("pairs.bool"), ((SelectOperator) select).getColumnNames());
+        QueryOperator scan = select.getSource();
+        assertTrue(scan.isIndexScan());
+        assertEquals("type: INDEXSCAN\ntable: pairs\ncolumn: float" +
+                     "\nindex: [int, float]\nprefix: [7]" +
+                     "\noperator: LESS_THAN_EQUALS\nvalue: 2.0", scan.str());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanCompositeNeedsLeadingColumn() throws QueryPlanException, DatabaseException {
+        // Without a predicate on the leading column, the index on both columns
+        // is of no use: the predicate is evaluated by the sequential scan.
+        this.transaction.createTableWithCompositeIndices(TestUtils.createSchemaWithAllTypes(), "pairs",
+                Collections.singletonList(Arrays.asList("int", "float")));
+        QueryPlan query = this.transaction.query("pairs");
+        query.select("float", QueryPlan.PredicateOperator.EQUALS, new FloatDataBox(2));
+        query.execute();
+
+        assertTrue(query.getFinalOperator().isSequentialScan());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanCovering() throws QueryPlanException, DatabaseException {
+        // Every column the query reads is in the index, so the records come
+        // from its leaves alone, and one restricted column is enough.
+        this.transaction.createTableWithCompositeIndices(TestUtils.createSchemaWithAllTypes(), "pairs",
+                Collections.singletonList(Arrays.asList("int", "float")));
+        QueryPlan query = this.transaction.query("pairs");
+        query.project(Collections.singletonList("float"));
+        query.select("pairs.float", QueryPlan.PredicateOperator.NOT_EQUALS, new FloatDataBox(2));
+        query.select("int", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(7));
+        query.execute();
+
+        QueryOperator project = query.getFinalOperator();
+        assertTrue(project.isProject());
+        QueryOperator select = project.getSource();
+        assertTrue(select.isSelect());
+        QueryOperator scan = select.getSource();
+        assertTrue(scan.isIndexScan());
+        assertTrue(scan.str().endsWith("\nindex only: true"));
+        assertEquals(Arrays.asList("pairs.int", "pairs.float"), scan.getOutputSchema().getFieldNames());
+        assertEquals(2, scan.getStats().getHistograms().size());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanNotCovering() throws QueryPlanException, DatabaseException {
+        // The query reads bool, which the index does not hold.
+        this.transaction.createTableWithCompositeIndices(TestUtils.createSchemaWithAllTypes(), "pairs",
+                Collections.singletonList(Arrays.asList("int", "float")));
+        QueryPlan query = this.transaction.query("pairs");
+        query.project(Arrays.asList("float", "bool"));
+        query.select("int", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(7));
+        query.execute();
+
+        QueryOperator scan = query.getFinalOperator().getSource();
+        assertFalse(scan.isIndexScan());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testIndexOnlyCost() throws QueryPlanException, DatabaseException {
+        this.transaction.createTableWithCompositeIndices(TestUtils.createSchemaWithAllTypes(), "pairs",
+                Collections.singletonList(Arrays.asList("int", "float")));
+        for (int i = 0; i < 100; ++i) {
+            this.transaction.addRecord("pairs", TestUtils.createRecordWithAllTypes().getValues());
+        }
+        List<String> index = Arrays.asList("int", "float");
+        List<DataBox> prefix = Collections.singletonList(new IntDataBox(1));
+        QueryOperator fetching = new IndexScanOperator(this.transaction, "pairs", index, prefix,
+                null, null, null, null, false);
+        QueryOperator indexOnly = new IndexScanOperator(this.transaction, "pairs", index, prefix,
+                null, null, null, null, true);
+
+        // Without fetching records, at most the leaves of the index are read.
+        int numIndexPages = this.transaction.getNumIndexPages("pairs", "int,float");
+        assertTrue(indexOnly.getIOCost() <= Math.max(1, numIndexPages));
+        assertTrue(indexOnly.getIOCost() < fetching.getIOCost());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanHashIndex() throws QueryPlanException, DatabaseException {
+        // The B+ tree index on int answers the range, and the hash index the
+        // equality.
+        this.transaction.createHashIndex("table", "int");
+        for (int i = 0; i < 100; ++i) {
+            this.transaction.addRecord("table", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        QueryPlan query = this.transaction.query("table");
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN, new IntDataBox(10));
+        query.execute();
+        assertFalse(query.getFinalOperator().str().contains("hash"));
+
+        query = this.transaction.query("table");
+        query.select("int", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(10));
+        Iterator<Record> records = query.execute();
+        QueryOperator scan = query.getFinalOperator();
+        assertTrue(scan.isIndexScan());
+        assertEquals("type: INDEXSCAN\ntable: table\ncolumn: table.int\nindex: hash" +
+                     "\noperator: EQUALS\nvalue: 10", scan.str());
+        assertEquals(TestUtils.createRecordWithAllTypesWithValue(10), records.next());
+        assertFalse(records.hasNext());
+
+        QueryOperator tree = new IndexScanOperator(this.transaction, "table", "int",
+                QueryPlan.PredicateOperator.EQUALS, new IntDataBox(10));
+        assertTrue(scan.getIOCost() < tree.getIOCost());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanHashIndexOnlyEquals() throws QueryPlanException, DatabaseException {
+        // A hash index answers no range: the range is selected, and the
+        // equality after it looked up.
+        this.transaction.createTableWithIndices(TestUtils.createSchemaWithAllTypes(), "hashed",
+                Collections.emptyList(), Collections.singletonList("float"));
+        QueryPlan query = this.transaction.query("hashed");
+        query.select("float", QueryPlan.PredicateOperator.LESS_THAN, new FloatDataBox(3));
+        query.select("float", QueryPlan.PredicateOperator.EQUALS, new FloatDataBox(2));
+        query.execute();
+
+        QueryOperator select = query.getFinalOperator();
+        assertTrue(select.isSelect());
+        assertTrue(select.getSource().isIndexScan());
+        assertTrue(select.getSource().str().contains("index: hash"));
+
+        query = this.transaction.query("hashed");
+        query.select("float", QueryPlan.PredicateOperator.LESS_THAN, new FloatDataBox(3));
+        query.execute();
+        assertFalse(query.getFinalOperator().isIndexScan());
+    }
+
+    @Test(expected = DatabaseException.class)
+    @Category(SystemTests.class)
+    public void testCompositeIndexDuplicateColumn() throws DatabaseException {
+        this.transaction.createTableWithCompositeIndices(TestUtils.createSchemaWithAllTypes(), "pairs",
+                Collections.singletonList(Arrays.asList("int", "int")));
+    }
+}
@@ -456,4 +456,282 @@ public class TestJoinOperator {
         }
         assertTrue(count == 82944);
     }
+
+    private static List<Record> recordsWithKeys(int numRecords, int numKeys) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i);
+            List<DataBox> values = new ArrayList<>(r.getValues());
+            values.set(1, new IntDataBox(i % numKeys));
+            records.add(new Record(values));
+        }
+        Collections.shuffle(records, new Random(numRecords));
+        return records;
+    }
+
+    /**
+     * Joins left and right on the column at index columnIndex, and returns the
+     * joined records as sorted strings.
+     */
+    private static List<String> naiveJoin(List<Record> left, List<Record> right, int columnIndex) {
+        List<String> joined = new ArrayList<>();
+        for (Record l : left) {
+            for (Record r : right) {
+                if (l.getValues().get(columnIndex).equals(r.getValues().get(columnIndex))) {
+                    List<DataBox> values = new ArrayList<>(l.getValues());
+                    values.addAll(r.getValues());
+                    joined.add(new Record(values).toString());
+                }
+            }
+        }
+        Collections.sort(joined);
+        return joined;
+    }
+
+    private static List<String> drainSorted(Iterator<Record> iter) {
+        List<String> records = new ArrayList<>();
+        while (iter.hasNext()) {
+            records.add(iter.next().toString());
+        }
+        Collections.sort(records);
+        return records;
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testGraceHashJoin() throws QueryPlanException, DatabaseException, IOException {
+        // With 3 buffers there are 2 partitions, and a build side of more
+        // than 1 page has to be partitioned again.
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 3).beginTransaction();
+        List<Record> leftRecords = recordsWithKeys(2000, 400);
+        List<Record> rightRecords = recordsWithKeys(1500, 600);
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        JoinOperator joinOperator = new GraceHashOperator(new TestSourceOperator(leftRecords, schema),
+                new TestSourceOperator(rightRecords, schema), "int", "int", transaction);
+        assertEquals(JoinOperator.JoinType.GRACEHASH, joinOperator.getJoinType());
+
+        List<String> actual = drainSorted(joinOperator.iterator());
+        assertEquals(5 * 3 * 300 + 5 * 2 * 100, actual.size());
+        assertEquals(naiveJoin(leftRecords, rightRecords, 1), actual);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testGraceHashJoinSkewedKey() throws QueryPlanException, DatabaseException, IOException {
+        // Every record has the same key, so partitioning never shrinks the
+        // 2 page build side and it is joined a page at a time.
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 3).beginTransaction();
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        JoinOperator joinOperator = new GraceHashOperator(
+            new TestSourceOperator(recordsWithKeys(500, 1), schema),
+            new TestSourceOperator(recordsWithKeys(300, 1), schema), "int", "int", transaction);
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        int count = 0;
+        while (outputIterator.hasNext()) {
+            Record r = outputIterator.next();
+            assertEquals(0, r.getValues().get(1).getInt());
+            assertEquals(0, r.getValues().get(5).getInt());
+            count++;
+        }
+        assertEquals(500 * 300, count);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testGraceHashJoinCost() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 5).beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "leftTable");
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "rightTable");
+        for (int i = 0; i < 288 * 4; i++) {
+            transaction.addRecord("leftTable", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        for (int i = 0; i < 288 * 2; i++) {
+            transaction.addRecord("rightTable", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        QueryOperator s1 = new SequentialScanOperator(transaction, "leftTable");
+        QueryOperator s2 = new SequentialScanOperator(transaction, "rightTable");
+        JoinOperator joinOperator = new GraceHashOperator(s1, s2, "int", "int", transaction);
+        assertEquals(3 * (4 + 2), joinOperator.estimateIOCost());
+
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        int count = 0;
+        while (outputIterator.hasNext()) {
+            Record r = outputIterator.next();
+            assertEquals(r.getValues().get(1), r.getValues().get(5));
+            count++;
+        }
+        assertEquals(288 * 2, count);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testJoinFilteredScan() throws QueryPlanException, DatabaseException, IOException {
+        // A scan with predicates must be read through, not by its table name.
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 5).beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "leftTable");
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "rightTable");
+        for (int i = 0; i < 100; i++) {
+            transaction.addRecord("leftTable", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+            transaction.addRecord("rightTable", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        SequentialScanOperator s1 = new SequentialScanOperator(transaction, "leftTable",
+                Arrays.asList("int", "float"),
+                Arrays.asList(QueryPlan.PredicateOperator.LESS_THAN, QueryPlan.PredicateOperator.NOT_EQUALS),
+                Arrays.asList(new IntDataBox(10), new FloatDataBox(3)));
+        assertFalse(s1.isFullScan());
+        QueryOperator s2 = new SequentialScanOperator(transaction, "rightTable");
+        JoinOperator joinOperator = new SNLJOperator(s1, s2, "int", "int", transaction);
+
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        Set<Integer> keys = new HashSet<>();
+        while (outputIterator.hasNext()) {
+            Record r = outputIterator.next();
+            assertEquals(r.getValues().get(1), r.getValues().get(5));
+            keys.add(r.getValues().get(1).getInt());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 4, 5, 6, 7, 8, 9)), keys);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testIndexNLJCost() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 5).beginTransaction();
+        List<Record> leftRecords = new ArrayList<>();
+        for (int i = 0; i < 288 * 4; i++) {
+            leftRecords.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "leftTable");
+        TestSortOperator.fillTable(transaction, "leftTable", leftRecords);
+        transaction.createTableWithIndices(TestUtils.createSchemaWithAllTypes(), "rightTable",
+                                           Collections.singletonList("int"));
+
+        QueryOperator s1 = new SequentialScanOperator(transaction, "leftTable");
+        QueryOperator s2 = new SequentialScanOperator(transaction, "rightTable");
+        try {
+            new IndexNLJOperator(s2, s1, "int", "int", transaction);
+            fail("joined against a table without an index");
+        } catch (QueryPlanException e) {
+            // expected
+        }
+
+        // The index is only a root, and the right table is empty: every probe
+        // reads one page and matches nothing.
+        IndexNLJOperator joinOperator = new IndexNLJOperator(s1, s2, "int", "int", transaction);
+        assertEquals(JoinOperator.JoinType.INDEXNL, joinOperator.getJoinType());
+        assertEquals(1, joinOperator.getIndexHeight());
+        assertEquals(0.0, joinOperator.getMatchesPerKey(), 0.0);
+        assertEquals(4 + 288 * 4, joinOperator.estimateIOCost());
+
+        // Sorted probes read the index once, after sorting the 4 left pages,
+        // which fit in memory, in a single pass.
+        IndexNLJOperator sortedOperator = new IndexNLJOperator(s1, s2, "int", "int", transaction, true);
+        int numIndexPages = transaction.getNumIndexPages("rightTable", "int");
+        assertEquals(4 + 2 * 4 + numIndexPages, sortedOperator.estimateIOCost());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testHybridHashJoinInMemory() throws QueryPlanException, DatabaseException, IOException {
+        // 4 pages of memory hold the whole 1000 record build side.
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 5).beginTransaction();
+        List<Record> leftRecords = recordsWithKeys(1000, 200);
+        List<Record> rightRecords = recordsWithKeys(1500, 300);
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        HybridHashOperator joinOperator = new HybridHashOperator(new TestSourceOperator(leftRecords, schema),
+                new TestSourceOperator(rightRecords, schema), "int", "int", transaction);
+        assertEquals(JoinOperator.JoinType.HYBRIDHASH, joinOperator.getJoinType());
+
+        List<String> actual = drainSorted(joinOperator.iterator());
+        assertEquals(0, joinOperator.getNumSpilledPartitions());
+        assertEquals(200 * 5 * 5, actual.size());
+        assertEquals(naiveJoin(leftRecords, rightRecords, 1), actual);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testHybridHashJoinOverflow() throws QueryPlanException, DatabaseException, IOException {
+        // A 14 page build side and 7 pages of memory: of 3 partitions of
+        // about 4.7 pages, one stays in memory next to the output buffers of
+        // the other two.
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 8).beginTransaction();
+        List<Record> leftRecords = new ArrayList<>();
+        for (int i = 0; i < 288 * 14; i++) {
+            leftRecords.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        List<Record> rightRecords = new ArrayList<>();
+        for (int i = 0; i < 288 * 20; i++) {
+            rightRecords.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        Collections.shuffle(leftRecords, new Random(1));
+        Collections.shuffle(rightRecords, new Random(2));
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "leftTable");
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "rightTable");
+        TestSortOperator.fillTable(transaction, "leftTable", leftRecords);
+        TestSortOperator.fillTable(transaction, "rightTable", rightRecords);
+
+        QueryOperator s1 = new SequentialScanOperator(transaction, "leftTable");
+        QueryOperator s2 = new SequentialScanOperator(transaction, "rightTable");
+        HybridHashOperator joinOperator = new HybridHashOperator(s1, s2, "int", "int", transaction);
+        assertEquals(3, joinOperator.getNumPartitions());
+        // 2 of 3 partitions spill: (14 + 20) + 2 * ceil(2/3 * 34).
+        assertEquals(34 + 2 * 23, joinOperator.estimateIOCost());
+        assertTrue(joinOperator.estimateIOCost() < new GraceHashOperator(s1, s2, "int", "int",
+                   transaction).estimateIOCost());
+
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        int count = 0;
+        while (outputIterator.hasNext()) {
+            Record r = outputIterator.next();
+            assertEquals(r.getValues().get(1), r.getValues().get(5));
+            count++;
+        }
+        assertEquals(288 * 14, count);
+        assertEquals(2, joinOperator.getNumSpilledPartitions());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testHybridHashJoinFloatKeys() throws QueryPlanException, DatabaseException, IOException {
+        // Float keys go through the primitive hash table, where 0.0 and -0.0
+        // must match and NaN must match nothing. With 3 buffers the build
+        // side does not fit, so the spilled partitions are joined too.
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 3).beginTransaction();
+        List<Record> leftRecords = new ArrayList<>();
+        List<Record> rightRecords = new ArrayList<>();
+        for (int i = 0; i < 900; i++) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i);
+            List<DataBox> values = new ArrayList<>(r.getValues());
+            values.set(3, new FloatDataBox((i % 150) * 0.25f));
+            leftRecords.add(new Record(values));
+            if (i < 400) {
+                values = new ArrayList<>(values);
+                values.set(3, new FloatDataBox((i % 100) * 0.25f));
+                rightRecords.add(new Record(values));
+            }
+        }
+        for (float f : new float[] {0.0f, -0.0f, Float.NaN}) {
+            for (List<Record> records : Arrays.asList(leftRecords, rightRecords)) {
+                List<DataBox> values = new ArrayList<>(TestUtils.createRecordWithAllTypesWithValue(1000).getValues());
+                values.set(3, new FloatDataBox(f));
+                records.add(new Record(values));
+            }
+        }
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        HybridHashOperator joinOperator = new HybridHashOperator(new TestSourceOperator(leftRecords, schema),
+                new TestSourceOperator(rightRecords, schema), "float", "float", transaction);
+
+        List<String> actual = drainSorted(joinOperator.iterator());
+        assertTrue(joinOperator.getNumSpilledPartitions() > 0);
+        assertEquals(naiveJoin(leftRecords, rightRecords, 3), actual);
+        // Key 0.0 has 6 + 2 records on the left and 4 + 2 on the right.
+        assertEquals(99 * 6 * 4 + 8 * 6, actual.size());
+    }
 }
@@ -0,0 +1,174 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestOrderByOperator {
+    private Database.Transaction transaction;
+    private List<Record> records;
+    private List<Record> shuffled;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    @Before
+    public void setup() throws DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("orderByTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 3);
+        this.transaction = d.beginTransaction();
+        // 2 pages of memory hold 576 records of this schema.
+        this.records = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            this.records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        this.shuffled = new ArrayList<>(this.records);
+        Collections.shuffle(this.shuffled, new Random(42));
+    }
+
+    private OrderByOperator orderBy(QueryPlan.SortDirection direction,
+                                    int limit) throws QueryPlanException {
+        TestSourceOperator source = new TestSourceOperator(this.shuffled,
+                TestUtils.createSchemaWithAllTypes());
+        return new OrderByOperator(source, this.transaction, "int", direction, limit);
+    }
+
+    private static List<Record> drain(Iterator<Record> iter) {
+        List<Record> records = new ArrayList<>();
+        while (iter.hasNext()) {
+            records.add(iter.next());
+        }
+        return records;
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testTopK() throws QueryPlanException, DatabaseException {
+        OrderByOperator ascending = orderBy(QueryPlan.SortDirection.ASCENDING, 100);
+        assertTrue(ascending.isTopK());
+        assertEquals(this.records.subList(0, 100), drain(ascending.iterator()));
+
+        OrderByOperator descending = orderBy(QueryPlan.SortDirection.DESCENDING, 10);
+        List<Record> expected = new ArrayList<>(this.records.subList(990, 1000));
+        Collections.reverse(expected);
+        assertEquals(expected, drain(descending.iterator()));
+
+        assertFalse(orderBy(QueryPlan.SortDirection.ASCENDING, 0).iterator().hasNext());
+        assertEquals(this.records, drain(orderBy(QueryPlan.SortDirection.ASCENDING, 5000).iterator()));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testLimitLargerThanMemory() throws QueryPlanException, DatabaseException {
+        OrderByOperator ascending = orderBy(QueryPlan.SortDirection.ASCENDING, 700);
+        assertFalse(ascending.isTopK());
+        assertEquals(this.records.subList(0, 700), drain(ascending.iterator()));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testOrderByWithoutLimit() throws QueryPlanException, DatabaseException {
+        OrderByOperator descending = orderBy(QueryPlan.SortDirection.DESCENDING, -1);
+        assertFalse(descending.isTopK());
+        List<Record> expected = new ArrayList<>(this.records);
+        Collections.reverse(expected);
+        assertEquals(expected, drain(descending.iterator()));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testSortIteratorWithLimit() throws QueryPlanException, DatabaseException {
+        this.transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        for (Record r : this.shuffled) {
+            this.transaction.addRecord("table", r.getValues());
+        }
+        // 4 pages make 2 runs of 2 pages, but only the first 50 records of
+        // each run are kept, so each run is a single page written and read.
+        SortOperator s = new SortOperator(this.transaction, "table",
+                                          new TestSortOperator.SortRecordComparator(1), 1);
+        assertEquals(this.records.subList(0, 50), drain(s.iterator(50)));
+        assertEquals(2, s.getNumInitialRuns());
+        assertEquals(4, s.getNumSpillPageIOs());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testEstimateSpillPageIOs() throws QueryPlanException, DatabaseException {
+        this.transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        for (Record r : this.shuffled) {
+            this.transaction.addRecord("table", r.getValues());
+        }
+        int numPages = this.transaction.getStats("table").getNumPages();
+        int recordsPerPage = Page.pageSize / TestUtils.createSchemaWithAllTypes().getSizeInBytes();
+        for (long limit : new long[] {Long.MAX_VALUE, 700, 50}) {
+            SortOperator s = new SortOperator(this.transaction, "table",
+                                              new TestSortOperator.SortRecordComparator(1), 1);
+            drain(s.iterator(limit));
+            assertEquals(s.getNumSpillPageIOs(),
+                         SortOperator.estimateSpillPageIOs(3, 1, SortOperator.RunGeneration.SORTED_BLOCKS,
+                                                           numPages, recordsPerPage, limit));
+        }
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testQueryPlanOrderByLimit() throws QueryPlanException, DatabaseException {
+        this.transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        List<Integer> expected = new ArrayList<>();
+        for (Record r : this.shuffled.subList(0, 200)) {
+            this.transaction.addRecord("table", r.getValues());
+            int value = r.getValues().get(1).getInt();
+            if (value < 500) {
+                expected.add(value);
+            }
+        }
+        Collections.sort(expected, Collections.reverseOrder());
+
+        QueryPlan query = this.transaction.query("table");
+        query.select("int", QueryPlan.PredicateOperator.LESS_THAN, new IntDataBox(500));
+        query.orderBy("int", QueryPlan.SortDirection.DESCENDING);
+        query.project(Collections.singletonList("int"));
+        query.limit(5);
+        List<Integer> actual = new ArrayList<>();
+        Iterator<Record> iter = query.execute();
+        while (iter.hasNext()) {
+            Record r = iter.next();
+            assertEquals(1, r.getValues().size());
+            actual.add(r.getValues().get(0).getInt());
+        }
+        assertTrue(query.getFinalOperator().isLimit());
+        assertEquals(expected.subList(0, 5), actual);
+    }
+
+    @Test(expected = QueryPlanException.class)
+    @Category(SystemTests.class)
+    public void testNegativeLimit() throws QueryPlanException, DatabaseException {
+        this.transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        this.transaction.query("table").limit(-1);
+    }
+}
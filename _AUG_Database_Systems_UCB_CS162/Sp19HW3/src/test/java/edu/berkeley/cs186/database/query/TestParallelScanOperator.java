@@ -0,0 +1,133 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestParallelScanOperator {
+    private static final int NUM_RECORDS = 2000;
+
+    private Database.Transaction transaction;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    @Before
+    public void setup() throws DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("parallelScanTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 3);
+        this.transaction = d.beginTransaction();
+        this.transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < NUM_RECORDS; ++i) {
+            rids.add(this.transaction.addRecord("table",
+                                                TestUtils.createRecordWithAllTypesWithValue(i).getValues()));
+        }
+        // Leave holes so that pages are only partially full.
+        for (int i = 0; i < NUM_RECORDS; i += 7) {
+            this.transaction.deleteRecord("table", rids.get(i));
+        }
+    }
+
+    private List<Record> sequentialScan() throws DatabaseException {
+        List<Record> records = new ArrayList<>();
+        Iterator<Record> iter = this.transaction.getRecordIterator("table");
+        while (iter.hasNext()) {
+            records.add(iter.next());
+        }
+        return records;
+    }
+
+    private static List<Record> drain(Iterator<Record> iter) {
+        List<Record> records = new ArrayList<>();
+        while (iter.hasNext()) {
+            records.add(iter.next());
+        }
+        return records;
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testOrderedScanMatchesSequentialScan() throws QueryPlanException, DatabaseException {
+        List<Record> expected = sequentialScan();
+        for (int parallelism = 1; parallelism <= 4; ++parallelism) {
+            ParallelScanOperator scan = new ParallelScanOperator(transaction, "table",
+                    Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                    null, true, parallelism);
+            assertEquals(TestUtils.createSchemaWithAllTypes().getFieldTypes(),
+                         scan.getOutputSchema().getFieldTypes());
+            assertEquals(expected, drain(scan.iterator()));
+        }
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testUnorderedScanReturnsEveryRecord() throws QueryPlanException, DatabaseException {
+        Comparator<Record> byInt = Comparator.comparing(r -> r.getValues().get(1));
+        List<Record> expected = sequentialScan();
+        expected.sort(byInt);
+
+        ParallelScanOperator scan = new ParallelScanOperator(transaction, "table", false);
+        List<Record> actual = drain(scan.iterator());
+        actual.sort(byInt);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testSelectAndProjectPushdown() throws QueryPlanException, DatabaseException {
+        List<Record> expected = new ArrayList<>();
+        for (Record r : sequentialScan()) {
+            int x = r.getValues().get(1).getInt();
+            if (x >= 100 && x < 1500 && x != 700) {
+                expected.add(new Record(Arrays.asList(r.getValues().get(3), r.getValues().get(1))));
+            }
+        }
+
+        List<String> selectColumns = Arrays.asList("int", "int", "table.int");
+        List<QueryPlan.PredicateOperator> selectOperators = Arrays.asList(
+                    QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                    QueryPlan.PredicateOperator.LESS_THAN,
+                    QueryPlan.PredicateOperator.NOT_EQUALS);
+        List<DataBox> selectValues = Arrays.asList(new IntDataBox(100), new IntDataBox(1500),
+                                     new IntDataBox(700));
+        ParallelScanOperator scan = new ParallelScanOperator(transaction, "table", selectColumns,
+                selectOperators, selectValues, Arrays.asList("float", "int"), true, 3);
+        assertEquals(Arrays.asList("table.float", "table.int"), scan.getOutputSchema().getFieldNames());
+        assertEquals(expected, drain(scan.iterator()));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testEmptyTable() throws QueryPlanException, DatabaseException {
+        this.transaction.createTable(TestUtils.createSchemaWithAllTypes(), "empty");
+        ParallelScanOperator scan = new ParallelScanOperator(transaction, "empty", true);
+        assertFalse(scan.iterator().hasNext());
+    }
+}
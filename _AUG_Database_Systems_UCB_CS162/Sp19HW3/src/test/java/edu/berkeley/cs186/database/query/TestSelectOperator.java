@@ -0,0 +1,115 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestSelectOperator {
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    private static final Schema SCHEMA = new Schema(Arrays.asList("bool", "int", "string", "float"),
+            Arrays.asList(Type.boolType(), Type.intType(), Type.stringType(4), Type.floatType()));
+
+    private static List<Record> records() {
+        List<Record> records = new ArrayList<>();
+        float[] floats = {-1.5f, -0.0f, 0.0f, 2.5f, Float.NaN};
+        for (int i = 0; i < 200; ++i) {
+            records.add(new Record(Arrays.asList(new BoolDataBox(i % 2 == 0), new IntDataBox(i - 100),
+                                                 new StringDataBox(Integer.toString(i), 4),
+                                                 new FloatDataBox(floats[i % floats.length]))));
+        }
+        return records;
+    }
+
+    private static List<Record> drain(Iterator<Record> iter) {
+        List<Record> records = new ArrayList<>();
+        while (iter.hasNext()) {
+            records.add(iter.next());
+        }
+        return records;
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testCompiledComparisons() throws QueryPlanException, DatabaseException {
+        // Every type specialized comparison must agree with DataBox#compareTo.
+        List<Record> records = records();
+        List<List<DataBox>> constants = Arrays.asList(
+                                            Arrays.asList(new BoolDataBox(false), new BoolDataBox(true)),
+                                            Arrays.asList(new IntDataBox(-100), new IntDataBox(7)),
+                                            Arrays.asList(new StringDataBox("12", 4), new StringDataBox("12", 2)),
+                                            Arrays.asList(new FloatDataBox(0.0f), new FloatDataBox(-0.0f),
+                                                    new FloatDataBox(Float.NaN), new FloatDataBox(1)));
+        for (int column = 0; column < constants.size(); ++column) {
+            for (DataBox value : constants.get(column)) {
+                for (QueryPlan.PredicateOperator operator : QueryPlan.PredicateOperator.values()) {
+                    List<Record> expected = new ArrayList<>();
+                    for (Record r : records) {
+                        if (operator.evaluate(r.getValues().get(column), value)) {
+                            expected.add(r);
+                        }
+                    }
+                    SelectOperator select = new SelectOperator(new TestSourceOperator(records, SCHEMA),
+                            SCHEMA.getFieldNames().get(column), operator, value);
+                    assertEquals(column + " " + operator + " " + value, expected, drain(select.iterator()));
+                }
+            }
+        }
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testConjunction() throws QueryPlanException, DatabaseException {
+        List<Record> records = records();
+        List<Record> expected = new ArrayList<>();
+        for (Record r : records) {
+            int i = r.getValues().get(1).getInt();
+            if (i >= -50 && i < 50 && i != 0 && r.getValues().get(0).getBool()) {
+                expected.add(r);
+            }
+        }
+        SelectOperator select = new SelectOperator(new TestSourceOperator(records, SCHEMA),
+                Arrays.asList("int", "int", "int", "bool"),
+                Arrays.asList(QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, QueryPlan.PredicateOperator.LESS_THAN,
+                              QueryPlan.PredicateOperator.NOT_EQUALS, QueryPlan.PredicateOperator.EQUALS),
+                Arrays.asList(new IntDataBox(-50), new IntDataBox(50), new IntDataBox(0), new BoolDataBox(true)));
+        assertEquals(expected, drain(select.iterator()));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testSelectivityOrder() throws QueryPlanException {
+        // Without histograms: equality first, then ranges (ints before
+        // strings), and inequality last.
+        SelectOperator select = new SelectOperator(new TestSourceOperator(records(), SCHEMA),
+                Arrays.asList("bool", "string", "int", "float"),
+                Arrays.asList(QueryPlan.PredicateOperator.NOT_EQUALS, QueryPlan.PredicateOperator.LESS_THAN,
+                              QueryPlan.PredicateOperator.GREATER_THAN, QueryPlan.PredicateOperator.EQUALS),
+                Arrays.asList(new BoolDataBox(true), new StringDataBox("5", 4), new IntDataBox(3),
+                              new FloatDataBox(0)));
+        assertEquals(Arrays.asList("float", "int", "string", "bool"), select.getColumnNames());
+    }
+}
@@ -247,4 +247,171 @@ public class TestSortOperator {
 
     }
 
+    /**
+     * Sorts numRecords records whose int column cycles through numKeys values
+     * (in shuffled order) with 1 and with 3 threads, and checks that
+     * the output is sorted and is a permutation of the input.
+     */
+    private void checkParallelSort(int numBuffers, int numRecords, int numKeys)
+    throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("sortTest");
+        Database d = new Database(tempDir.getAbsolutePath(), numBuffers);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i % numKeys));
+        }
+        Collections.shuffle(records, new Random(42));
+        for (Record r : records) {
+            transaction.addRecord("table", r.getValues());
+        }
+        Comparator<Record> byAllColumns = Comparator.comparing((Record r) -> r.getValues().get(1))
+                                          .thenComparing(r -> r.getValues().get(2));
+        records.sort(byAllColumns);
+
+        for (SortOperator.RunGeneration runGeneration : SortOperator.RunGeneration.values()) {
+            for (int parallelism : new int[] {1, 3}) {
+                SortOperator s = new SortOperator(transaction, "table", new SortRecordComparator(1),
+                                                  parallelism, runGeneration);
+                List<Record> sorted = drainSorted(transaction, s);
+                assertEquals(numRecords, sorted.size());
+                for (int i = 1; i < sorted.size(); i++) {
+                    assertTrue(sorted.get(i - 1).getValues().get(1).compareTo(sorted.get(i).getValues().get(1)) <= 0);
+                }
+                sorted.sort(byAllColumns);
+                assertEquals(records, sorted);
+            }
+        }
+    }
+
+    private static List<Record> drainSorted(Database.Transaction transaction,
+                                            SortOperator s) throws DatabaseException {
+        Iterator<Record> iter = transaction.getRecordIterator(s.sort());
+        List<Record> sorted = new ArrayList<>();
+        while (iter.hasNext()) {
+            sorted.add(iter.next());
+        }
+        return sorted;
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testParallelSortDistinctKeys() throws QueryPlanException, DatabaseException, IOException {
+        checkParallelSort(3, 288 * 4 + 17, 288 * 4 + 17);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testParallelSortDuplicateKeys() throws QueryPlanException, DatabaseException, IOException {
+        checkParallelSort(4, 288 * 4, 3);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testParallelSortEmptyTable() throws QueryPlanException, DatabaseException, IOException {
+        checkParallelSort(3, 0, 1);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testParallelSortManyBuffers() throws QueryPlanException, DatabaseException, IOException {
+        checkParallelSort(9, 288 * 6 + 5, 288 * 6 + 5);
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testParallelSortSplitsMemory() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("sortTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 10);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 288 * 18; i++) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        List<Record> shuffled = new ArrayList<>(records);
+        Collections.shuffle(shuffled, new Random(42));
+        fillTable(transaction, "table", shuffled);
+
+        // A single thread sorts blocks of 9 pages and merges 9 runs at once.
+        SortOperator s = new SortOperator(transaction, "table", new SortRecordComparator(1), 1);
+        assertEquals(records, drainSorted(transaction, s));
+        assertEquals(2, s.getNumInitialRuns());
+        assertEquals(1, s.getNumMergePasses());
+
+        // 3 threads get 3 of the 10 pages each: blocks of 2 pages make 9
+        // runs, and 2-way merges take 3 passes before the final merge.
+        s = new SortOperator(transaction, "table", new SortRecordComparator(1), 3);
+        assertEquals(3, s.getParallelism());
+        assertEquals(records, drainSorted(transaction, s));
+        assertEquals(9, s.getNumInitialRuns());
+        assertEquals(4, s.getNumMergePasses());
+
+        // No more threads than leave each of them 3 pages.
+        s = new SortOperator(transaction, "table", new SortRecordComparator(1), 8);
+        assertEquals(3, s.getParallelism());
+
+        // Unless asked to, a sort keeps the full fan-in of a single thread.
+        s = new SortOperator(transaction, "table", new SortRecordComparator(1));
+        assertEquals(1, s.getParallelism());
+    }
+
+    /**
+     * Fills table with records a page at a time, which is much quicker than
+     * adding them one by one.
+     */
+    static void fillTable(Database.Transaction transaction, String tableName,
+                          List<Record> records) throws DatabaseException {
+        int recordsPerPage = transaction.getNumEntriesPerPage(tableName);
+        int numPages = (records.size() + recordsPerPage - 1) / recordsPerPage;
+        List<Integer> pageNums = transaction.allocDataPages(tableName, numPages);
+        for (int i = 0; i < numPages; i++) {
+            int from = i * recordsPerPage;
+            transaction.fillDataPage(tableName, pageNums.get(i),
+                                     records.subList(from, Math.min(records.size(), from + recordsPerPage)));
+        }
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testReplacementSelectionRunLengths() throws QueryPlanException, DatabaseException,
+        IOException {
+        File tempDir = tempFolder.newFolder("sortTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "sorted");
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "shuffled");
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 288 * 18; i++) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        List<Record> shuffled = new ArrayList<>(records);
+        Collections.shuffle(shuffled, new Random(42));
+        fillTable(transaction, "sorted", records);
+        fillTable(transaction, "shuffled", shuffled);
+
+        // Sorted input is a single run, so there is nothing to merge.
+        SortOperator s = new SortOperator(transaction, "sorted", new SortRecordComparator(1), 1,
+                                          SortOperator.RunGeneration.REPLACEMENT_SELECTION);
+        assertEquals(records, drainSorted(transaction, s));
+        assertEquals(1, s.getNumInitialRuns());
+        assertEquals(0, s.getNumMergePasses());
+
+        // 18 pages in blocks of 2 make 9 runs, and 2-way merges take 4
+        // passes. Replacement selection makes runs about twice as long (a
+        // little less for the first and last run), which saves a pass.
+        SortOperator blocks = new SortOperator(transaction, "shuffled", new SortRecordComparator(1), 1,
+                                               SortOperator.RunGeneration.SORTED_BLOCKS);
+        assertEquals(records, drainSorted(transaction, blocks));
+        assertEquals(9, blocks.getNumInitialRuns());
+        assertEquals(4, blocks.getNumMergePasses());
+        s = new SortOperator(transaction, "shuffled", new SortRecordComparator(1), 1,
+                             SortOperator.RunGeneration.REPLACEMENT_SELECTION);
+        assertEquals(records, drainSorted(transaction, s));
+        assertTrue(s.getNumInitialRuns() <= 6);
+        assertTrue(s.getNumMergePasses() < blocks.getNumMergePasses());
+        assertTrue(s.getNumSpillPageIOs() < blocks.getNumSpillPageIOs());
+    }
+
 }
@@ -1,5 +1,6 @@
 package edu.berkeley.cs186.database.table;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
@@ -8,6 +9,7 @@ import java.util.Arrays;
 import edu.berkeley.cs186.database.categories.*;
 import org.junit.Test;
 
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.databox.BoolDataBox;
 import edu.berkeley.cs186.database.databox.FloatDataBox;
@@ -51,6 +53,31 @@ public class TestRecord {
         }
     }
 
+    @Test
+    public void testWriteToAndFromBytes() {
+        Schema s = new Schema(Arrays.asList("w", "x", "y", "z"),
+                              Arrays.asList(Type.boolType(), Type.intType(),
+                                            Type.floatType(), Type.stringType(3)));
+        Record[] records = {
+            new Record(Arrays.asList(new BoolDataBox(false), new IntDataBox(0),
+                                     new FloatDataBox(0f), new StringDataBox("foo", 3))),
+            new Record(Arrays.asList(new BoolDataBox(true), new IntDataBox(-42),
+                                     new FloatDataBox(1.5f), new StringDataBox("bar", 3))),
+        };
+
+        int size = s.getSizeInBytes();
+        byte[] bytes = new byte[3 + records.length * size];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < records.length; ++i) {
+            int offset = 3 + i * size;
+            assertEquals(size, records[i].writeTo(buf, offset));
+            assertArrayEquals(records[i].toBytes(s), Arrays.copyOfRange(bytes, offset, offset + size));
+        }
+        for (int i = 0; i < records.length; ++i) {
+            assertEquals(records[i], Record.fromBytes(buf, 3 + i * size, s));
+        }
+    }
+
     @Test
     public void testEquals() {
         Record a = new Record(Arrays.asList(new BoolDataBox(false)));
@@ -0,0 +1,104 @@
+package edu.berkeley.cs186.database.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.io.Page;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({HW99Tests.class, SystemTests.class})
+public class TestSpillFile {
+    private String filename;
+    private Schema schema;
+    private SpillFile spillFile;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws IOException, DatabaseException {
+        this.filename = tempFolder.newFile("test" + SpillFile.FILENAME_EXTENSION).getAbsolutePath();
+        this.schema = TestUtils.createSchemaWithAllTypes();
+        this.spillFile = new SpillFile(filename, schema);
+    }
+
+    private static List<Record> drain(Iterator<Record> iter) {
+        List<Record> records = new ArrayList<>();
+        while (iter.hasNext()) {
+            records.add(iter.next());
+        }
+        return records;
+    }
+
+    @Test
+    public void testEmpty() throws DatabaseException {
+        assertEquals(0, spillFile.getNumRecords());
+        assertFalse(spillFile.iterator().hasNext());
+    }
+
+    @Test
+    public void testAppendAndRead() throws DatabaseException {
+        // Enough records for a few full pages and one partial page.
+        int numRecords = spillFile.getNumRecordsPerPage() * 3 + 10;
+        List<Record> expected = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i);
+            expected.add(r);
+            spillFile.append(r);
+        }
+
+        assertEquals(numRecords, spillFile.getNumRecords());
+        assertEquals(expected, drain(spillFile.iterator()));
+        assertEquals(expected.subList(100, 500), drain(spillFile.iterator(100, 500)));
+        for (int i = 0; i < numRecords; i += 37) {
+            assertEquals(expected.get(i), spillFile.get(i));
+        }
+        assertEquals(4L * Page.pageSize, new File(filename).length());
+    }
+
+    @Test
+    public void testAppendAfterRead() throws DatabaseException {
+        List<Record> expected = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            expected.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        spillFile.append(expected);
+        assertEquals(expected, drain(spillFile.iterator()));
+
+        // Appending after a read rewrites the partial last page in place.
+        for (int i = 5; i < 10; ++i) {
+            expected.add(TestUtils.createRecordWithAllTypesWithValue(i));
+            spillFile.append(expected.get(i));
+        }
+        assertEquals(expected, drain(spillFile.iterator()));
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testGetOutOfBounds() throws DatabaseException {
+        spillFile.append(TestUtils.createRecordWithAllTypes());
+        spillFile.get(1);
+    }
+
+    @Test
+    public void testCloseDeletesFile() {
+        assertTrue(new File(filename).exists());
+        spillFile.close();
+        assertFalse(new File(filename).exists());
+        // Closing twice is harmless.
+        spillFile.close();
+    }
+}
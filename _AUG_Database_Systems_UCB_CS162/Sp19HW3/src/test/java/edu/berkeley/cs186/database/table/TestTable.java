@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
@@ -26,9 +27,14 @@ import org.junit.runners.MethodSorters;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.TestUtils;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
 
 @Category(HW3Tests.class)
 public class TestTable {
@@ -272,6 +278,144 @@ public class TestTable {
         }
     }
 
+    @Test
+    @Category(SystemTests.class)
+    public void testDictionaryEncodedTable() throws Exception {
+        Schema s = new Schema(Arrays.asList("id", "color"),
+                              Arrays.asList(Type.intType(), Type.stringType(20)));
+        String[] colors = {"red", "green", "blue"};
+        File file = tempFolder.newFile("dicttable" + Table.FILENAME_EXTENSION);
+        Table t = new Table("dicttable", s, file.getAbsolutePath(), new DummyLockContext(), null,
+                            Arrays.asList("color"), 2);
+
+        // Each record is a 4-byte int and a 2-byte code rather than 24 bytes.
+        assertEquals(6, t.getRecordSizeInBytes());
+        assertEquals(Table.computeNumRecordsPerPage(Page.pageSize, 6), t.getNumRecordsPerPage());
+
+        int numRecords = t.getNumRecordsPerPage() + 42;
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            rids.add(t.addRecord(null, Arrays.asList(new IntDataBox(i),
+                                 new StringDataBox(colors[i % colors.length], 20))));
+        }
+        assertEquals(colors.length, t.getDictionary(1).size());
+        assertEquals(null, t.getDictionary(0));
+
+        // Decoded values of the same color are the same canonical instance.
+        Record a = t.getRecord(null, rids.get(0));
+        Record b = t.getRecord(null, rids.get(colors.length));
+        assertTrue(a.getValues().get(1) == b.getValues().get(1));
+
+        // The dictionary survives reloading the table.
+        t.close();
+        t = new Table("dicttable", file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(6, t.getRecordSizeInBytes());
+        assertEquals(colors.length, t.getDictionary(1).size());
+        for (int i = 0; i < numRecords; ++i) {
+            Record r = new Record(Arrays.asList(new IntDataBox(i),
+                                                new StringDataBox(colors[i % colors.length], 20)));
+            assertEquals(r, t.getRecord(null, rids.get(i)));
+        }
+        t.close();
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testPageRecordsWithPredicate() throws Exception {
+        // Every comparison on the raw bytes of a page must agree with comparing
+        // the decoded values, including on a dictionary encoded column.
+        Schema s = new Schema(Arrays.asList("bool", "int", "string", "float", "color"),
+                              Arrays.asList(Type.boolType(), Type.intType(), Type.stringType(5),
+                                            Type.floatType(), Type.stringType(8)));
+        String[] colors = {"red", "green", "blue", "Red"};
+        File file = tempFolder.newFile("predtable" + Table.FILENAME_EXTENSION);
+        Table t = new Table("predtable", s, file.getAbsolutePath(), new DummyLockContext(), null,
+                            Arrays.asList("color"), 2);
+        for (int i = 0; i < t.getNumRecordsPerPage() + 100; ++i) {
+            t.addRecord(null, Arrays.asList(new BoolDataBox(i % 3 == 0), new IntDataBox(i - 300),
+                                            new StringDataBox(Integer.toString(i * 7), 5),
+                                            new FloatDataBox(i / 4.0f - 50), new StringDataBox(colors[i % 4], 8)));
+        }
+
+        List<Record> records = new ArrayList<>();
+        for (int pageNum : t.getDataPageNums(null)) {
+            records.addAll(t.getPageRecords(null, pageNum));
+        }
+        List<List<DataBox>> constants = Arrays.asList(
+                                            Arrays.asList(new BoolDataBox(false), new BoolDataBox(true)),
+                                            Arrays.asList(new IntDataBox(-300), new IntDataBox(0), new IntDataBox(17)),
+                                            Arrays.asList(new StringDataBox("21", 5), new StringDataBox("70", 2),
+                                                    new StringDataBox("700", 4), new StringDataBox("9", 5)),
+                                            Arrays.asList(new FloatDataBox(-50f), new FloatDataBox(3.25f)),
+                                            Arrays.asList(new StringDataBox("green", 8), new StringDataBox("green", 5),
+                                                    new StringDataBox("purple", 8)));
+        for (int column = 0; column < constants.size(); ++column) {
+            for (DataBox value : constants.get(column)) {
+                for (PredicateOperator operator : PredicateOperator.values()) {
+                    ScanPredicate predicate = t.compilePredicate(Arrays.asList(column),
+                                              Arrays.asList(operator), Arrays.asList(value));
+                    List<Record> expected = new ArrayList<>();
+                    for (Record r : records) {
+                        if (operator.evaluate(r.getValues().get(column), value)) {
+                            expected.add(r);
+                        }
+                    }
+                    List<Record> actual = new ArrayList<>();
+                    for (int pageNum : t.getDataPageNums(null)) {
+                        actual.addAll(t.getPageRecords(null, pageNum, predicate));
+                    }
+                    assertEquals(column + " " + operator + " " + value, expected, actual);
+                }
+            }
+        }
+
+        // A conjunction only returns the records that satisfy every term.
+        ScanPredicate predicate = t.compilePredicate(Arrays.asList(1, 4),
+                                  Arrays.asList(PredicateOperator.GREATER_THAN_EQUALS, PredicateOperator.EQUALS),
+                                  Arrays.asList(new IntDataBox(0), new StringDataBox("blue", 8)));
+        int count = 0;
+        for (int pageNum : t.getDataPageNums(null)) {
+            for (Record r : t.getPageRecords(null, pageNum, predicate)) {
+                assertTrue(r.getValues().get(1).getInt() >= 0);
+                assertEquals("blue    ", r.getValues().get(4).getString());
+                count++;
+            }
+        }
+        assertEquals((t.getNumRecordsPerPage() + 100 - 300 + 1) / 4, count);
+        t.close();
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testCompact() throws DatabaseException {
+        List<RecordId> rids = new ArrayList<>();
+        int numRecords = table.getNumRecordsPerPage() * 4;
+        for (int i = 0; i < numRecords; ++i) {
+            rids.add(table.addRecord(null, createRecordWithAllTypes(i).getValues()));
+        }
+        assertEquals(4, table.getNumDataPages());
+
+        // Keep every fourth record, which leaves every page a quarter full.
+        for (int i = 0; i < numRecords; ++i) {
+            if (i % 4 != 0) {
+                table.deleteRecord(null, rids.get(i));
+            }
+        }
+        assertEquals(4, table.getNumDataPages());
+
+        Map<RecordId, RecordId> moved = table.compact(null);
+        assertEquals(1, table.getNumDataPages());
+        assertEquals(numRecords / 4, table.getNumRecords());
+        for (int i = 0; i < numRecords; i += 4) {
+            RecordId rid = moved.getOrDefault(rids.get(i), rids.get(i));
+            assertEquals(createRecordWithAllTypes(i), table.getRecord(null, rid));
+        }
+
+        // The compacted table is full, so new records go to a new page.
+        table.addRecord(null, createRecordWithAllTypes(numRecords).getValues());
+        assertEquals(2, table.getNumDataPages());
+    }
+
     /**
      * Loads some number of pages of records. rids will be loaded with all the record IDs
      * of the new records, and the number of records will be returned.